@@ -2,6 +2,8 @@ package com.reportsapp.feign_client;
 
 import org.springframework.cloud.openfeign.FeignClient;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 
 import java.util.Map;
@@ -15,4 +17,14 @@ public interface ReportsFeignClient {
                                    @RequestParam(value = "toDate", required = false) String toDate,
                                    @RequestParam(value = "locationId", required = false) String locationId,
                                    @RequestParam(value = "waiterId", required = false) String waiterId);
+
+    @PostMapping("/reports/jobs")
+    Map<String, Object> submitReportJob(@RequestParam("reportType") String reportType,
+                                        @RequestParam(value = "fromDate", required = false) String fromDate,
+                                        @RequestParam(value = "toDate", required = false) String toDate,
+                                        @RequestParam(value = "locationId", required = false) String locationId,
+                                        @RequestParam(value = "waiterId", required = false) String waiterId);
+
+    @GetMapping("/reports/jobs/{jobId}")
+    Map<String, Object> getReportJob(@PathVariable("jobId") String jobId);
 }
\ No newline at end of file
@@ -18,10 +18,11 @@ public class RepoConfig {
     @Value("${reservation.table}")
     String reservationTableName;
 
-    @Bean("reportsRepo")
+    @Bean(name = "reportsRepo", initMethod = "prepareReportItems")
 //    @Qualifier("reportsRepo")
-    ReportsRepo provideReportsRepo(@Qualifier("dynamoDBClient") DynamoDB dynamoDBClient) {
-        return new ReportsRepo(dynamoDBClient, reportTableName);
+    ReportsRepo provideReportsRepo(@Qualifier("newDynamoDBClient") AmazonDynamoDB amazonDynamoDBClient,
+                                   @Qualifier("dynamoDBClient") DynamoDB dynamoDBClient) {
+        return new ReportsRepo(amazonDynamoDBClient, dynamoDBClient, reportTableName);
     }
 
     @Bean("dishRepo")
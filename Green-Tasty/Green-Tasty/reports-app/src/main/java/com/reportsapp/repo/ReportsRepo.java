@@ -1,35 +1,373 @@
 package com.reportsapp.repo;
 
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.document.DynamoDB;
 import com.amazonaws.services.dynamodbv2.document.Item;
+import com.amazonaws.services.dynamodbv2.document.ItemUtils;
 import com.amazonaws.services.dynamodbv2.document.Table;
+import com.amazonaws.services.dynamodbv2.document.spec.GetItemSpec;
+import com.amazonaws.services.dynamodbv2.document.spec.PutItemSpec;
+import com.amazonaws.services.dynamodbv2.document.spec.ScanSpec;
 import com.amazonaws.services.dynamodbv2.document.spec.UpdateItemSpec;
+import com.amazonaws.services.dynamodbv2.document.utils.NameMap;
+import com.amazonaws.services.dynamodbv2.document.utils.ValueMap;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.CancellationReason;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.Put;
+import com.amazonaws.services.dynamodbv2.model.TransactWriteItem;
+import com.amazonaws.services.dynamodbv2.model.TransactWriteItemsRequest;
+import com.amazonaws.services.dynamodbv2.model.TransactionCanceledException;
+import com.amazonaws.services.dynamodbv2.model.Update;
+import com.reportsapp.util.DateFormatter;
+import com.reportsapp.util.RatingAggregate;
+import com.reportsapp.util.ReportPeriod;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 public class ReportsRepo {
+    public static final String SERVICE_FEEDBACK_ATTRIBUTE = "service_feedback_stats";
+    public static final String CUISINE_FEEDBACK_ATTRIBUTE = "cuisine_feedback_stats";
+    /**
+     * Rating lists and minimums that report items kept before {@link RatingAggregate}.
+     */
+    public static final String LEGACY_FEEDBACK_ATTRIBUTES =
+            "total_service_feedback, minimum_service_feedback, total_cuisine_feedback, minimum_cuisine_feedback";
+    /**
+     * Marks that rollups cover every daily report item, see {@link #backfillRollups()}.
+     */
+    public static final String ROLLUP_MARKER_ID = "ROLLUP#READY";
+    /**
+     * Hours each reservation event added to a daily item, keyed by event.
+     */
+    static final String RESERVATIONS_ATTRIBUTE = "reservations";
+    /**
+     * {@code <event>#<rollup id>} of every rollup a daily item's events were added to.
+     */
+    static final String ROLLED_UP_ATTRIBUTE = "rolled_up";
+    /**
+     * Ids of the feedback edits restaurant-app has applied to a rollup; kept when the rollup
+     * is rewritten.
+     */
+    static final String APPLIED_EDITS_ATTRIBUTE = "applied_edits";
+
+    private static final int MAX_ROLLUP_ATTEMPTS = 5;
+
+    private static final Logger logger = LoggerFactory.getLogger(ReportsRepo.class);
+
+    private final AmazonDynamoDB amazonDynamoDBClient;
     private final DynamoDB dynamoDBClient;
     private final Table reportsTable;
+    private volatile boolean rollupsReady;
 
-    public ReportsRepo(DynamoDB dynamoDBClient, String reportTableName) {
+    public ReportsRepo(AmazonDynamoDB amazonDynamoDBClient, DynamoDB dynamoDBClient, String reportTableName) {
+        this.amazonDynamoDBClient = amazonDynamoDBClient;
         this.dynamoDBClient = dynamoDBClient;
         this.reportsTable = dynamoDBClient.getTable(reportTableName);
     }
 
-    public void updateTable( String waiterId, String date, String updateExpression, Map<String, Object> valueMap) {
-        reportsTable.updateItem(new UpdateItemSpec()
-                .withPrimaryKey("report_id", waiterId + "#" + date)
-                .withUpdateExpression(updateExpression)
-                .withValueMap(valueMap)
-        );
+    /**
+     * Adds one reservation event to the waiter's daily report item, unless an earlier
+     * delivery of the same event already did. Read-modify-write guarded by a {@code version}
+     * attribute.
+     *
+     * @param eventKey         identifies the event across deliveries
+     * @param hoursIfDayExists hours to add when the waiter already has an item for the date
+     * @return the hours the event added to the item, also when an earlier delivery added them
+     */
+    public BigDecimal addReservationToDaily(String eventKey, String waiterId, String locationId, String date,
+                                            BigDecimal slotHours, Supplier<BigDecimal> hoursIfDayExists, BigDecimal revenue,
+                                            BigDecimal serviceRating, BigDecimal cuisineRating) {
+        String reportId = waiterId + "#" + date;
+        for (int attempt = 0; attempt < MAX_ROLLUP_ATTEMPTS; attempt++) {
+            Item daily = reportsTable.getItem(new GetItemSpec().withPrimaryKey("report_id", reportId).withConsistentRead(true));
+            Map<String, Object> reservations = daily == null || !daily.isPresent(RESERVATIONS_ATTRIBUTE)
+                    ? new HashMap<>() : new HashMap<>(daily.getRawMap(RESERVATIONS_ATTRIBUTE));
+            if (reservations.containsKey(eventKey)) return (BigDecimal) reservations.get(eventKey);
+
+            try {
+                if (daily == null) {
+                    reportsTable.putItem(new PutItemSpec()
+                            .withItem(new Item()
+                                    .withPrimaryKey("report_id", reportId)
+                                    .withString("location_id", locationId)
+                                    .withString("date", DateFormatter.convertToISOFormat(date))
+                                    .withString("waiter_email", waiterId)
+                                    .withNumber("waiter_working_hours", slotHours)
+                                    .withNumber("waiter_orders_processed", 1)
+                                    .withMap(SERVICE_FEEDBACK_ATTRIBUTE, RatingAggregate.empty().add(serviceRating).toMap())
+                                    .withMap(CUISINE_FEEDBACK_ATTRIBUTE, RatingAggregate.empty().add(cuisineRating).toMap())
+                                    .withNumber("total_revenue", revenue)
+                                    .withMap(RESERVATIONS_ATTRIBUTE, Map.of(eventKey, slotHours))
+                                    .withLong("version", 1))
+                            .withConditionExpression("attribute_not_exists(report_id)"));
+                    return slotHours;
+                }
+
+                BigDecimal addedHours = hoursIfDayExists.get();
+                reservations.put(eventKey, addedHours);
+                long version = daily.isPresent("version") ? daily.getLong("version") : 0;
+                reportsTable.updateItem(new UpdateItemSpec()
+                        .withPrimaryKey("report_id", reportId)
+                        .withUpdateExpression("SET waiter_working_hours = :waiter_working_hours,"
+                                + " waiter_orders_processed = :waiter_orders_processed,"
+                                + " total_revenue = :total_revenue,"
+                                + " " + SERVICE_FEEDBACK_ATTRIBUTE + " = :service_feedback,"
+                                + " " + CUISINE_FEEDBACK_ATTRIBUTE + " = :cuisine_feedback,"
+                                + " " + RESERVATIONS_ATTRIBUTE + " = :reservations,"
+                                + " version = :next_version"
+                                + " REMOVE " + LEGACY_FEEDBACK_ATTRIBUTES)
+                        .withConditionExpression(version == 0 ? "attribute_not_exists(version)" : "version = :version")
+                        .withValueMap(withVersion(new ValueMap()
+                                .withNumber(":waiter_working_hours", daily.getNumber("waiter_working_hours").add(addedHours))
+                                .withNumber(":waiter_orders_processed", daily.getNumber("waiter_orders_processed").add(BigDecimal.ONE))
+                                .withNumber(":total_revenue", daily.getNumber("total_revenue").add(revenue))
+                                .withMap(":service_feedback", getServiceFeedback(daily).add(serviceRating).toMap())
+                                .withMap(":cuisine_feedback", getCuisineFeedback(daily).add(cuisineRating).toMap())
+                                .withMap(":reservations", reservations)
+                                .withLong(":next_version", version + 1), version)));
+                return addedHours;
+            } catch (ConditionalCheckFailedException e) {
+                // Changed concurrently, read again
+            }
+        }
+        throw new IllegalStateException("Too many concurrent updates to report item " + reportId);
+    }
+
+    private static ValueMap withVersion(ValueMap values, long version) {
+        return version == 0 ? values : values.withLong(":version", version);
+    }
+
+    /**
+     * Applies a reservation event to the week and month rollups, per waiter and per
+     * location, that contain the date of the waiter's daily report item.
+     * <p>
+     * A rollup item is keyed {@code ROLLUP#<period>#<start>#WAITER|LOCATION#<id>} and keeps,
+     * per waiter, the same figures as a daily item under {@code waiters}. Rollups have no
+     * {@code date} attribute, so the date indexes only contain daily items. Updates are
+     * read-modify-write guarded by a {@code version} attribute, and each is written in one
+     * transaction with an entry in the daily item's {@code rolled_up} set, so a redelivered
+     * event skips the rollups it was already added to.
+     *
+     * @param change applied to the waiter's entry in each rollup
+     */
+    public void updateRollups(String eventKey, String waiterId, String locationId, String date, Consumer<Map<String, Object>> change) {
+        String dailyReportId = waiterId + "#" + date;
+        LocalDate isoDate = LocalDate.parse(DateFormatter.convertToISOFormat(date));
+        for (ReportPeriod period : ReportPeriod.values()) {
+            LocalDate start = period.start(isoDate);
+            for (String rollupId : List.of(rollupId(period, start, "WAITER", waiterId), rollupId(period, start, "LOCATION", locationId))) {
+                updateRollup(eventKey, dailyReportId, rollupId, period, start, waiterId, locationId, change);
+            }
+        }
+    }
+
+    /**
+     * @return whether {@link #backfillRollups()} has finished; until then rollups must not
+     * be updated, or the backfill would count the same reservations again
+     */
+    public boolean rollupsReady() {
+        if (!rollupsReady) {
+            rollupsReady = reportsTable.getItem(new GetItemSpec().withPrimaryKey("report_id", ROLLUP_MARKER_ID)
+                    .withConsistentRead(true)) != null;
+        }
+        return rollupsReady;
+    }
+
+    /**
+     * Adds one processed reservation to a waiter's entry of a rollup or daily item.
+     */
+    public static void addReservation(Map<String, Object> entry, BigDecimal hours, BigDecimal revenue,
+                                      BigDecimal serviceRating, BigDecimal cuisineRating) {
+        entry.merge("waiter_working_hours", hours, (a, b) -> ((BigDecimal) a).add((BigDecimal) b));
+        entry.merge("waiter_orders_processed", BigDecimal.ONE, (a, b) -> ((BigDecimal) a).add((BigDecimal) b));
+        entry.merge("total_revenue", revenue, (a, b) -> ((BigDecimal) a).add((BigDecimal) b));
+        entry.put(SERVICE_FEEDBACK_ATTRIBUTE, RatingAggregate.fromMap(rawMap(entry.get(SERVICE_FEEDBACK_ATTRIBUTE)))
+                .add(serviceRating).toMap());
+        entry.put(CUISINE_FEEDBACK_ATTRIBUTE, RatingAggregate.fromMap(rawMap(entry.get(CUISINE_FEEDBACK_ATTRIBUTE)))
+                .add(cuisineRating).toMap());
+    }
+
+    private void updateRollup(String eventKey, String dailyReportId, String rollupId, ReportPeriod period, LocalDate start,
+                              String waiterId, String locationId, Consumer<Map<String, Object>> change) {
+        String rolledUp = eventKey + "#" + rollupId;
+        Update markDaily = new Update()
+                .withTableName(reportsTable.getTableName())
+                .withKey(Map.of("report_id", new AttributeValue(dailyReportId)))
+                .withUpdateExpression("ADD " + ROLLED_UP_ATTRIBUTE + " :rolled_up_set")
+                .withConditionExpression("attribute_exists(report_id) AND NOT contains(" + ROLLED_UP_ATTRIBUTE + ", :rolled_up)")
+                .withExpressionAttributeValues(Map.of(
+                        ":rolled_up_set", new AttributeValue().withSS(rolledUp),
+                        ":rolled_up", new AttributeValue(rolledUp)));
+        for (int attempt = 0; attempt < MAX_ROLLUP_ATTEMPTS; attempt++) {
+            Item rollup = reportsTable.getItem(new GetItemSpec().withPrimaryKey("report_id", rollupId).withConsistentRead(true));
+            Map<String, Object> waiters = rollup == null ? new HashMap<>() : new HashMap<>(rollup.getRawMap("waiters"));
+            Map<String, Object> entry = waiters.containsKey(waiterId)
+                    ? new HashMap<>(rawMap(waiters.get(waiterId)))
+                    : new HashMap<>(Map.of("location_id", locationId));
+            change.accept(entry);
+            waiters.put(waiterId, entry);
+
+            long version = rollup == null ? 0 : rollup.getLong("version");
+            Item rollupItem = new Item()
+                    .withPrimaryKey("report_id", rollupId)
+                    .withString("rollup_period", period.name())
+                    .withString("period_start", start.toString())
+                    .withLong("version", version + 1)
+                    .withMap("waiters", waiters);
+            if (rollup != null && rollup.hasAttribute(APPLIED_EDITS_ATTRIBUTE))
+                rollupItem.withStringSet(APPLIED_EDITS_ATTRIBUTE, rollup.getStringSet(APPLIED_EDITS_ATTRIBUTE));
+            Put put = new Put()
+                    .withTableName(reportsTable.getTableName())
+                    .withItem(ItemUtils.toAttributeValues(rollupItem));
+            if (rollup == null) put.withConditionExpression("attribute_not_exists(report_id)");
+            else put.withConditionExpression("version = :v")
+                    .withExpressionAttributeValues(Map.of(":v", new AttributeValue().withN(Long.toString(version))));
+            try {
+                amazonDynamoDBClient.transactWriteItems(new TransactWriteItemsRequest().withTransactItems(
+                        new TransactWriteItem().withUpdate(markDaily),
+                        new TransactWriteItem().withPut(put)));
+                return;
+            } catch (TransactionCanceledException e) {
+                List<CancellationReason> reasons = e.getCancellationReasons();
+                if (reasons == null || reasons.size() < 2) throw e;
+                // Added by an earlier delivery of the event
+                if ("ConditionalCheckFailed".equals(reasons.get(0).getCode())) return;
+                // Otherwise the rollup changed concurrently, read again
+            }
+        }
+        throw new IllegalStateException("Too many concurrent updates to rollup " + rollupId);
+    }
+
+    /**
+     * Builds the rollups from the daily report items once, so that rollups also cover the
+     * items written before they existed, and then writes {@link #ROLLUP_MARKER_ID}. Readers
+     * only use rollups once the marker exists, and reservation events are not processed
+     * before it, see {@link #rollupsReady()}.
+     * <p>
+     * Rollups are only created, never overwritten: one that already exists was written by an
+     * earlier, interrupted run of this backfill over the same daily items.
+     */
+    public void backfillRollups() {
+        if (rollupsReady()) return;
+
+        Map<String, Map<String, Object>> waitersByRollup = new HashMap<>();
+        Map<String, Item> rollups = new HashMap<>();
+        for (Item daily : reportsTable.scan(new ScanSpec()
+                .withFilterExpression("attribute_exists(#date)")
+                .withNameMap(new NameMap().with("#date", "date")))) {
+            String waiterId = daily.getString("waiter_email");
+            String locationId = daily.getString("location_id");
+            LocalDate date = LocalDate.parse(daily.getString("date"));
+            for (ReportPeriod period : ReportPeriod.values()) {
+                LocalDate start = period.start(date);
+                for (String rollupId : List.of(rollupId(period, start, "WAITER", waiterId), rollupId(period, start, "LOCATION", locationId))) {
+                    rollups.computeIfAbsent(rollupId, id -> new Item()
+                            .withPrimaryKey("report_id", id)
+                            .withString("rollup_period", period.name())
+                            .withString("period_start", start.toString())
+                            .withLong("version", 1));
+                    Map<String, Object> entry = rawMap(waitersByRollup.computeIfAbsent(rollupId, id -> new HashMap<>())
+                            .computeIfAbsent(waiterId, id -> new HashMap<>(Map.of("location_id", locationId))));
+                    mergeDaily(entry, daily);
+                }
+            }
+        }
+        int created = 0;
+        for (Map.Entry<String, Item> rollup : rollups.entrySet()) {
+            try {
+                reportsTable.putItem(new PutItemSpec()
+                        .withItem(rollup.getValue().withMap("waiters", waitersByRollup.get(rollup.getKey())))
+                        .withConditionExpression("attribute_not_exists(report_id)"));
+                created++;
+            } catch (ConditionalCheckFailedException e) {
+                // Written by an earlier run
+            }
+        }
+        reportsTable.putItem(new Item().withPrimaryKey("report_id", ROLLUP_MARKER_ID).withBoolean("ready", true));
+        rollupsReady = true;
+        logger.info("Built {} of {} report rollups", created, rollups.size());
+    }
+
+    /**
+     * Adds a daily report item to a waiter's entry of a rollup.
+     */
+    static void mergeDaily(Map<String, Object> entry, Item daily) {
+        entry.merge("waiter_working_hours", daily.getNumber("waiter_working_hours"), (a, b) -> ((BigDecimal) a).add((BigDecimal) b));
+        entry.merge("waiter_orders_processed", daily.getNumber("waiter_orders_processed"), (a, b) -> ((BigDecimal) a).add((BigDecimal) b));
+        entry.merge("total_revenue", daily.getNumber("total_revenue"), (a, b) -> ((BigDecimal) a).add((BigDecimal) b));
+        entry.put(SERVICE_FEEDBACK_ATTRIBUTE, RatingAggregate.fromMap(rawMap(entry.get(SERVICE_FEEDBACK_ATTRIBUTE)))
+                .merge(getServiceFeedback(daily)).toMap());
+        entry.put(CUISINE_FEEDBACK_ATTRIBUTE, RatingAggregate.fromMap(rawMap(entry.get(CUISINE_FEEDBACK_ATTRIBUTE)))
+                .merge(getCuisineFeedback(daily)).toMap());
     }
 
-    public void putItem(Item item) {
-        reportsTable.putItem(item);
+    private static String rollupId(ReportPeriod period, LocalDate start, String scope, String id) {
+        return "ROLLUP#" + period.name() + "#" + start + "#" + scope + "#" + id;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> rawMap(Object value) {
+        return (Map<String, Object>) value;
     }
 
     public Item getItem(String waiterId, String date) {
         return reportsTable.getItem("report_id", waiterId + "#" + date);
     }
+
+    public static RatingAggregate getServiceFeedback(Item reportItem) {
+        return readAggregate(reportItem, SERVICE_FEEDBACK_ATTRIBUTE, "total_service_feedback");
+    }
+
+    public static RatingAggregate getCuisineFeedback(Item reportItem) {
+        return readAggregate(reportItem, CUISINE_FEEDBACK_ATTRIBUTE, "total_cuisine_feedback");
+    }
+
+    private static RatingAggregate readAggregate(Item reportItem, String attribute, String legacyListAttribute) {
+        if (reportItem.isPresent(attribute)) return RatingAggregate.fromMap(reportItem.getRawMap(attribute));
+        return RatingAggregate.fromRatings(reportItem.isPresent(legacyListAttribute) ? reportItem.getList(legacyListAttribute) : null);
+    }
+
+    /**
+     * Startup migration of the Reports table: rating aggregates first, then rollups.
+     */
+    public void prepareReportItems() {
+        migrateRatingAggregates();
+        backfillRollups();
+    }
+
+    /**
+     * Converts report items that still keep every rating in a list to rating aggregates.
+     * Runs at startup; items written in the meantime already have aggregates and are left
+     * alone.
+     */
+    public void migrateRatingAggregates() {
+        int migrated = 0;
+        for (Item item : reportsTable.scan(new ScanSpec()
+                .withFilterExpression("attribute_exists(#date) AND attribute_not_exists(" + SERVICE_FEEDBACK_ATTRIBUTE + ")")
+                .withNameMap(new NameMap().with("#date", "date")))) {
+            try {
+                reportsTable.updateItem(new UpdateItemSpec()
+                        .withPrimaryKey("report_id", item.getString("report_id"))
+                        .withUpdateExpression("SET " + SERVICE_FEEDBACK_ATTRIBUTE + " = :s, " + CUISINE_FEEDBACK_ATTRIBUTE + " = :c"
+                                + " REMOVE " + LEGACY_FEEDBACK_ATTRIBUTES)
+                        .withConditionExpression("attribute_not_exists(" + SERVICE_FEEDBACK_ATTRIBUTE + ")")
+                        .withValueMap(new ValueMap()
+                                .withMap(":s", getServiceFeedback(item).toMap())
+                                .withMap(":c", getCuisineFeedback(item).toMap())));
+                migrated++;
+            } catch (ConditionalCheckFailedException e) {
+                // Updated by a new feedback in the meantime
+            }
+        }
+        if (migrated > 0) logger.info("Converted {} report items to rating aggregates", migrated);
+    }
 }
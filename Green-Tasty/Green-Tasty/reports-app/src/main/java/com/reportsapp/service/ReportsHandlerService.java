@@ -5,12 +5,13 @@ import com.reportsapp.repo.BookingRepo;
 import com.reportsapp.repo.DishRepo;
 import com.reportsapp.repo.FeedbackRepo;
 import com.reportsapp.repo.ReportsRepo;
-import com.reportsapp.util.DateFormatter;
+import com.reportsapp.util.TimeSlot;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import io.awspring.cloud.sqs.annotation.SqsListener;
+import org.json.JSONException;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -18,6 +19,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.util.*;
 
 @Service
@@ -37,14 +39,31 @@ public class ReportsHandlerService {
         this.logger = LoggerFactory.getLogger(ReportsHandlerService.class);
     }
 
+    /**
+     * Adds a finished reservation, or the feedback on one, to the reports. A message that
+     * fails is not acknowledged, so SQS delivers it again; every write is keyed by the
+     * event, so a redelivery only does what an earlier one did not finish. Messages wait in
+     * the queue until the rollup backfill has finished.
+     */
     @SqsListener("tm9-report-info-queue-test")
-    public void handleQueueMessage(String message) {
+    public void handleQueueMessage(String message) throws Exception {
+        logger.info("Received message from queue: {}", message);
+        if (!reportsRepo.rollupsReady()) {
+            throw new IllegalStateException("Report rollups are not built yet, leaving the message for redelivery");
+        }
+
+        JSONObject reservation;
+        try {
+            reservation = new JSONObject(message);
+        } catch (JSONException e) {
+            logger.error("Dropping malformed message: {}", e.getMessage());
+            return;
+        }
         try {
-            logger.info("Received message from queue: {}", message);
-            updateReportsTable(new JSONObject(message));
+            updateReportsTable(reservation);
         } catch (Exception e) {
-            logger.error("An unknown error occurred: {}", e.getMessage());
-            logger.error("Stack Trace: {}", Arrays.toString(e.getStackTrace()));
+            logger.error("Failed to process message, it will be delivered again", e);
+            throw e;
         }
 
         logger.info("Processed messages from queue successfully");
@@ -58,74 +77,24 @@ public class ReportsHandlerService {
 
         Item feedbackItem = null;
         String feedbackId = reservation.getString("feedback_id");
+        // A reservation is reported when it finishes and again when feedback is left on it
+        String eventKey = reservation.getString("reservation_id") + "#" + feedbackId;
         if (feedbackId != null && !feedbackId.isBlank())
             feedbackItem = feedbackRepo.getItem(feedbackId);
 
 
-        Item reportItem = reportsRepo.getItem(waiterId, date);
+        BigDecimal serviceRating = feedbackItem != null ? feedbackItem.getNumber("service_rating") : null;
+        BigDecimal cuisineRating = feedbackItem != null ? feedbackItem.getNumber("cuisine_rating") : null;
+
+        BigDecimal slotHours = BigDecimal.valueOf(TimeSlot.of(reservation.getString("time_slot")).getDurationMinutes())
+                .divide(BigDecimal.valueOf(60), 2, RoundingMode.HALF_UP);
         BigDecimal revenue = calculateRevenueForOrder(parseJSONMap(reservation.get("pre_order").toString()));
-        if (reportItem == null) {
-            reportsRepo.putItem(new Item()
-                    .withPrimaryKey("report_id", waiterId + "#" + date)
-                    .withString("location_id", locationId)
-                    .withString("date", DateFormatter.convertToISOFormat(date))
-                    .withString("waiter_email", waiterId)
-                    .withNumber("waiter_working_hours", 1.5)
-                    .withNumber("waiter_orders_processed", 1)
-                    .withList("total_service_feedback", feedbackItem != null ? feedbackItem.getNumber("service_rating") : 0)
-                    .withNumber("minimum_service_feedback", feedbackItem != null ? feedbackItem.getNumber("service_rating") : 0)
-                    .withList("total_cuisine_feedback", feedbackItem != null ? feedbackItem.getNumber("cuisine_rating") : 0)
-                    .withNumber("minimum_cuisine_feedback", feedbackItem != null ? feedbackItem.getNumber("cuisine_rating") : 0)
-                    .withNumber("total_revenue", revenue)
-            );
-        } else {
-            BigDecimal waiterWorkingHours;
-            if (isWorkingDiffSlot(waiterId, reservation.getString("time_slot")))
-                waiterWorkingHours = reportItem.getNumber("waiter_working_hours").add(BigDecimal.valueOf(1.5));
-            else waiterWorkingHours = reportItem.getNumber("waiter_working_hours");
-
-            String updateExpression = "SET waiter_working_hours = :waiter_working_hours," +
-                    "waiter_orders_processed = :waiter_orders_processed," +
-                    "total_revenue = :total_revenue";
-            Map<String, Object> valueMap = null;
-            if (feedbackItem == null || feedbackItem.getNumber("service_rating").equals(BigDecimal.ZERO)) {
-                valueMap = Map.of(
-                        ":waiter_working_hours", waiterWorkingHours,
-                        ":waiter_orders_processed", reportItem.getNumber("waiter_orders_processed").add(BigDecimal.ONE),
-                        ":total_revenue", reportItem.getNumber("total_revenue").add(revenue)
-                );
-            } else {
+        BigDecimal addedHours = reportsRepo.addReservationToDaily(eventKey, waiterId, locationId, date, slotHours,
+                () -> isWorkingDiffSlot(waiterId, reservation.getString("time_slot")) ? slotHours : BigDecimal.ZERO,
+                revenue, serviceRating, cuisineRating);
 
-                List<BigDecimal> totalServiceFeedback = new ArrayList<>(reportItem.getList("total_service_feedback"));
-                totalServiceFeedback.add(feedbackItem.getNumber("service_rating"));
-                List<BigDecimal> totalCuisineFeedback = new ArrayList<>(reportItem.getList("total_cuisine_feedback"));
-                totalCuisineFeedback.add(feedbackItem.getNumber("cuisine_rating"));
-
-                BigDecimal minServiceFeedback = reportItem.getNumber("minimum_service_feedback").equals(BigDecimal.ZERO)
-                        ? feedbackItem.getNumber("service_rating")
-                        : reportItem.getNumber("minimum_service_feedback").min(feedbackItem.getNumber("service_rating"));
-                BigDecimal minCuisineFeedback = reportItem.getNumber("minimum_cuisine_feedback").equals(BigDecimal.ZERO)
-                        ? feedbackItem.getNumber("cuisine_rating")
-                        : reportItem.getNumber("minimum_cuisine_feedback").min(feedbackItem.getNumber("cuisine_rating"));
-
-
-                updateExpression = updateExpression +
-                        ",total_service_feedback = :total_service_feedback," +
-                        "minimum_service_feedback = :minimum_service_feedback," +
-                        "total_cuisine_feedback = :total_cuisine_feedback," +
-                        "minimum_cuisine_feedback = :minimum_cuisine_feedback";
-                valueMap = Map.of(
-                        ":waiter_working_hours", waiterWorkingHours,
-                        ":waiter_orders_processed", reportItem.getNumber("waiter_orders_processed").add(BigDecimal.ONE),
-                        ":total_service_feedback", totalServiceFeedback.stream().toList(),
-                        ":minimum_service_feedback", minServiceFeedback,
-                        ":total_cuisine_feedback", totalCuisineFeedback.stream().toList(),
-                        ":minimum_cuisine_feedback", minCuisineFeedback,
-                        ":total_revenue", reportItem.getNumber("total_revenue").add(revenue)
-                );
-                reportsRepo.updateTable(waiterId, date, updateExpression, valueMap);
-            }
-        }
+        reportsRepo.updateRollups(eventKey, waiterId, locationId, date,
+                entry -> ReportsRepo.addReservation(entry, addedHours, revenue, serviceRating, cuisineRating));
     }
 
     private boolean isWorkingDiffSlot(String waiterId, String timeSlot) {
@@ -157,12 +126,14 @@ public class ReportsHandlerService {
             String key = field.getKey();
             JsonNode valueNode = field.getValue();
 
-            // Check if the value is an object with an "s" field
+            // Check if the value is an object with an "s" or "n" field
             if (valueNode.isObject() && valueNode.has("s")) {
                 resultMap.put(key, valueNode.get("s").asText());
+            } else if (valueNode.isObject() && valueNode.has("n")) {
+                resultMap.put(key, valueNode.get("n").asText());
             }
-            // Otherwise, assume the value is a plain string
-            else if (valueNode.isTextual()) {
+            // Otherwise, assume the value is a plain string or number
+            else if (valueNode.isTextual() || valueNode.isNumber()) {
                 resultMap.put(key, valueNode.asText());
             } else {
                 // Handle unexpected formats (optional)
@@ -7,6 +7,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.thymeleaf.spring6.SpringTemplateEngine;
 import org.thymeleaf.context.Context;
@@ -18,6 +19,10 @@ public class ReportsSenderService {
     private final ReportsFeignClient reportsFeignClient;
     private final AmazonSimpleEmailService sesClient;
     private final SpringTemplateEngine templateEngine;
+    @Value("${reports.jobs.poll-interval-ms:2000}")
+    private long pollIntervalMillis;
+    @Value("${reports.jobs.max-wait-ms:600000}")
+    private long maxWaitMillis;
 
     private static final Logger logger = LoggerFactory.getLogger(ReportsSenderService.class);
 
@@ -29,13 +34,19 @@ public class ReportsSenderService {
     }
 
     public void sendReports(){
+        // Submit both reports at once; each job renders the PDF and the CSV
+        String waiterJobId = submitReport("Staff_Performance");
+        String locationJobId = submitReport("Location_Performance");
+
         // Generate links for Staff Performance (Waiter) reports
-        String waiterPdfUrl = generateReport("Staff_Performance", "pdf");
-        String waiterCsvUrl = generateReport("Staff_Performance", "csv");
+        Map<String, Object> waiterReport = awaitReport("Staff_Performance", waiterJobId);
+        String waiterPdfUrl = link(waiterReport, "pdf");
+        String waiterCsvUrl = link(waiterReport, "csv");
 
         // Generate links for Location Performance reports
-        String locationPdfUrl = generateReport("Location_Performance", "pdf");
-        String locationCsvUrl = generateReport("Location_Performance", "csv");
+        Map<String, Object> locationReport = awaitReport("Location_Performance", locationJobId);
+        String locationPdfUrl = link(locationReport, "pdf");
+        String locationCsvUrl = link(locationReport, "csv");
 
         String emailHTMLBody = generateEmailBody(waiterCsvUrl, waiterPdfUrl, locationCsvUrl, locationPdfUrl);
 
@@ -46,26 +57,58 @@ public class ReportsSenderService {
         );
     }
 
-    private String generateReport(String reportType, String format) {
+    private String submitReport(String reportType) {
         try {
-            // Trigger the report generation request
-            Map<String, Object> response = reportsFeignClient.getReports(reportType, null, null, null, null);
-
-            // Check and return links dynamically based on the format
-            if ("pdf".equalsIgnoreCase(format)) {
-                return (String) response.get("downloadLinkPDF"); // Extract PDF link from the map
-            } else if ("csv".equalsIgnoreCase(format)) {
-                return (String) response.get("downloadLinkCSV"); // Extract CSV link from the map
-            } else {
-                throw new IllegalArgumentException("Unsupported format: " + format);
-            }
+            return (String) reportsFeignClient.submitReportJob(reportType, null, null, null, null).get("jobId");
         } catch (Exception e) {
-            // Log an error and gracefully handle it
-            logger.error("Failed to generate report of type: {} due to {}" ,reportType, e.getMessage());
+            logger.error("Failed to submit report of type: {} due to {}", reportType, e.getMessage());
             return null;
         }
     }
 
+    /**
+     * Polls a report job every {@code reports.jobs.poll-interval-ms} until it finishes or
+     * {@code reports.jobs.max-wait-ms} has passed.
+     *
+     * @return the report with its download links, or {@code null} if it is not available
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> awaitReport(String reportType, String jobId) {
+        if (jobId == null) return null;
+        long deadline = System.currentTimeMillis() + maxWaitMillis;
+        try {
+            do {
+                Map<String, Object> job = reportsFeignClient.getReportJob(jobId);
+                if ("DONE".equals(job.get("status"))) return (Map<String, Object>) job.get("result");
+                if ("FAILED".equals(job.get("status"))) {
+                    logger.error("Failed to generate report of type: {} due to {}", reportType, job.get("message"));
+                    return null;
+                }
+                Thread.sleep(pollIntervalMillis);
+            } while (System.currentTimeMillis() < deadline);
+            logger.error("Report of type: {} was not ready after {} ms", reportType, maxWaitMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Interrupted while waiting for report of type: {}", reportType);
+        } catch (Exception e) {
+            logger.error("Failed to generate report of type: {} due to {}", reportType, e.getMessage());
+        }
+        return null;
+    }
+
+    private String link(Map<String, Object> report, String format) {
+        if (report == null) return null;
+
+        // Check and return links dynamically based on the format
+        if ("pdf".equalsIgnoreCase(format)) {
+            return (String) report.get("downloadLinkPDF"); // Extract PDF link from the map
+        } else if ("csv".equalsIgnoreCase(format)) {
+            return (String) report.get("downloadLinkCSV"); // Extract CSV link from the map
+        } else {
+            throw new IllegalArgumentException("Unsupported format: " + format);
+        }
+    }
+
     private String generateEmailBody(String csvWaiterUrl, String pdfWaiterUrl, String csvLocationUrl, String pdfLocationUrl) {
         // Prepare the Thymeleaf context with dynamic variables
         Context context = new Context();
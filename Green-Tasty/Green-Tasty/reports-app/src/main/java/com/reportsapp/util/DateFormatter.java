@@ -5,9 +5,27 @@ import org.jetbrains.annotations.NotNull;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class DateFormatter {
 
+    /**
+     * Format in which dates are stored and exchanged: dd-MM-yyyy.
+     */
+    public static final DateTimeFormatter STANDARD_FORMATTER = DateTimeFormatter.ofPattern("dd-MM-yyyy");
+    public static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm");
+
+    private static final DateTimeFormatter ISO_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    private static final DateTimeFormatter SHORT_STANDARD_FORMATTER = DateTimeFormatter.ofPattern("dd-MM-yy");
+    private static final DateTimeFormatter SHORT_ISO_FORMATTER = DateTimeFormatter.ofPattern("yy-MM-dd");
+    private static final DateTimeFormatter[] INPUT_FORMATTERS = {
+            STANDARD_FORMATTER, ISO_FORMATTER, SHORT_STANDARD_FORMATTER, SHORT_ISO_FORMATTER
+    };
+
+    private static final int MAX_CACHED_DATES = 4096;
+    private static final ConcurrentMap<String, LocalDate> PARSED_DATES = new ConcurrentHashMap<>();
+
     private DateFormatter() {
         throw new UnsupportedOperationException("Utility class cannot be instantiated");
     }
@@ -20,11 +38,7 @@ public class DateFormatter {
      * @throws DateTimeParseException If the input date cannot be parsed.
      */
     public static String convertToStandardFormat(String date) {
-        DateTimeFormatter outputFormatter = DateTimeFormatter.ofPattern("dd-MM-yyyy");
-        DateTimeFormatter[] inputFormatters = getSupportedInputFormatters();
-
-        LocalDate parsedDate = getParsedDate(date, inputFormatters);
-        return parsedDate.format(outputFormatter);
+        return parseDate(date).format(STANDARD_FORMATTER);
     }
 
     /**
@@ -35,45 +49,55 @@ public class DateFormatter {
      * @throws DateTimeParseException If the input date cannot be parsed.
      */
     public static String convertToISOFormat(String date) {
-        DateTimeFormatter outputFormatter = DateTimeFormatter.ISO_LOCAL_DATE; // yyyy-MM-dd format
-        DateTimeFormatter[] inputFormatters = getSupportedInputFormatters();
+        return parseDate(date).format(DateTimeFormatter.ISO_LOCAL_DATE);
+    }
 
-        LocalDate parsedDate = getParsedDate(date, inputFormatters);
-        return parsedDate.format(outputFormatter);
+    /**
+     * Parses a date in any of the supported formats. Results are cached, dates
+     * repeat heavily across reservations and table items.
+     *
+     * @param date The input date string in one of the supported formats.
+     * @return The parsed LocalDate object.
+     * @throws DateTimeParseException If the input date cannot be parsed.
+     */
+    public static LocalDate parseDate(String date) {
+        LocalDate parsedDate = PARSED_DATES.get(date);
+        if (parsedDate != null) return parsedDate;
+
+        parsedDate = getParsedDate(date);
+        if (PARSED_DATES.size() < MAX_CACHED_DATES) PARSED_DATES.putIfAbsent(date, parsedDate);
+        return parsedDate;
     }
 
     /**
-     * Attempts to parse the date string using multiple supported formats.
+     * Attempts to parse the date string using the supported formats. The format is picked
+     * from the position of the separators, so only the ambiguous two-digit-year form
+     * falls back to trying a second format.
      *
-     * @param date            The input date string.
-     * @param inputFormatters Array of supported input formatters.
+     * @param date The input date string.
      * @return The parsed LocalDate object.
      * @throws DateTimeParseException If none of the formats match the input date.
      */
     @NotNull
-    private static LocalDate getParsedDate(String date, DateTimeFormatter[] inputFormatters) {
-        for (DateTimeFormatter formatter : inputFormatters) {
+    private static LocalDate getParsedDate(String date) {
+        DateTimeFormatter formatter = null;
+        if (date.length() == 10 && date.charAt(2) == '-' && date.charAt(5) == '-') formatter = STANDARD_FORMATTER;
+        else if (date.length() == 10 && date.charAt(4) == '-' && date.charAt(7) == '-') formatter = ISO_FORMATTER;
+        if (formatter != null) {
             try {
                 return LocalDate.parse(date, formatter);
+            } catch (DateTimeParseException e) {
+                throw new DateTimeParseException("Date provided in unsupported format.", date, 0);
+            }
+        }
+
+        for (DateTimeFormatter inputFormatter : INPUT_FORMATTERS) {
+            try {
+                return LocalDate.parse(date, inputFormatter);
             } catch (DateTimeParseException e) {
                 // Ignore and try the next format
             }
         }
         throw new DateTimeParseException("Date provided in unsupported format.", date, 0);
     }
-
-    /**
-     * Provides an array of supported input date formatters.
-     *
-     * @return An array of DateTimeFormatter objects.
-     */
-    @NotNull
-    private static DateTimeFormatter[] getSupportedInputFormatters() {
-        return new DateTimeFormatter[]{
-                DateTimeFormatter.ofPattern("dd-MM-yyyy"),
-                DateTimeFormatter.ofPattern("yyyy-MM-dd"),
-                DateTimeFormatter.ofPattern("dd-MM-yy"),
-                DateTimeFormatter.ofPattern("yy-MM-dd")
-        };
-    }
 }
@@ -0,0 +1,44 @@
+package com.reportsapp.util;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+
+/**
+ * Periods that report items are rolled up into: ISO weeks starting on Monday and calendar
+ * months.
+ */
+public enum ReportPeriod {
+    WEEK {
+        @Override
+        public LocalDate start(LocalDate date) {
+            return date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+        }
+
+        @Override
+        public LocalDate end(LocalDate date) {
+            return start(date).plusDays(6);
+        }
+    },
+    MONTH {
+        @Override
+        public LocalDate start(LocalDate date) {
+            return date.withDayOfMonth(1);
+        }
+
+        @Override
+        public LocalDate end(LocalDate date) {
+            return date.with(TemporalAdjusters.lastDayOfMonth());
+        }
+    };
+
+    /**
+     * First day of the period that contains the date.
+     */
+    public abstract LocalDate start(LocalDate date);
+
+    /**
+     * Last day of the period that contains the date.
+     */
+    public abstract LocalDate end(LocalDate date);
+}
@@ -0,0 +1,162 @@
+package com.reportsapp.util;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A reservation time slot such as {@code "12:15-13:45"}.
+ * <p>
+ * Slots are parsed once into minute-of-day offsets and interned, so repeated lookups
+ * of the same label return the same instance without splitting or re-parsing.
+ */
+public final class TimeSlot implements Comparable<TimeSlot> {
+
+    private static final int MAX_INTERNED = 1024;
+    private static final ConcurrentMap<String, TimeSlot> INTERNED = new ConcurrentHashMap<>();
+
+    private final String label;
+    private final int startMinute;
+    private final int endMinute;
+
+    private TimeSlot(String label, int startMinute, int endMinute) {
+        this.label = label;
+        this.startMinute = startMinute;
+        this.endMinute = endMinute;
+    }
+
+    /**
+     * Returns the slot for a label in the {@code HH:mm-HH:mm} form.
+     *
+     * @param label The slot label, whitespace around the times is ignored.
+     * @return The interned slot.
+     * @throws DateTimeParseException If the label is not a valid slot.
+     */
+    public static TimeSlot of(String label) {
+        TimeSlot slot = INTERNED.get(label);
+        if (slot != null) return slot;
+
+        slot = parse(label);
+        if (INTERNED.size() < MAX_INTERNED) {
+            TimeSlot existing = INTERNED.putIfAbsent(label, slot);
+            if (existing != null) return existing;
+        }
+        return slot;
+    }
+
+    /**
+     * Returns the slot spanning {@code timeFrom} to {@code timeTo}.
+     */
+    public static TimeSlot of(String timeFrom, String timeTo) {
+        return of(timeFrom + "-" + timeTo);
+    }
+
+    /**
+     * Parses a single {@code HH:mm} time into its minute of the day.
+     *
+     * @throws DateTimeParseException If the time is not valid.
+     */
+    public static int parseMinuteOfDay(String time) {
+        int minute = minuteOfDay(time, 0, time.length());
+        if (minute < 0) throw new DateTimeParseException("Invalid time provided.", time, 0);
+        return minute;
+    }
+
+    private static TimeSlot parse(String label) {
+        int separator = label.indexOf('-');
+        int start = separator < 0 ? -1 : minuteOfDay(label, 0, separator);
+        int end = separator < 0 ? -1 : minuteOfDay(label, separator + 1, label.length());
+        if (start < 0 || end < 0) throw new DateTimeParseException("Invalid time slot provided.", label, 0);
+        return new TimeSlot(label, start, end);
+    }
+
+    /**
+     * Reads {@code HH:mm} from {@code text[from, to)} ignoring surrounding whitespace.
+     * Returns -1 instead of throwing so callers decide how to report the failure.
+     */
+    private static int minuteOfDay(String text, int from, int to) {
+        while (from < to && Character.isWhitespace(text.charAt(from))) from++;
+        while (to > from && Character.isWhitespace(text.charAt(to - 1))) to--;
+        if (to - from != 5 || text.charAt(from + 2) != ':') return -1;
+
+        int hour = twoDigits(text, from);
+        int minute = twoDigits(text, from + 3);
+        if (hour < 0 || hour > 23 || minute < 0 || minute > 59) return -1;
+        return hour * 60 + minute;
+    }
+
+    private static int twoDigits(String text, int index) {
+        int tens = text.charAt(index) - '0';
+        int ones = text.charAt(index + 1) - '0';
+        if (tens < 0 || tens > 9 || ones < 0 || ones > 9) return -1;
+        return tens * 10 + ones;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public int getStartMinute() {
+        return startMinute;
+    }
+
+    public int getEndMinute() {
+        return endMinute;
+    }
+
+    public int getDurationMinutes() {
+        return endMinute - startMinute;
+    }
+
+    public LocalTime getStart() {
+        return LocalTime.of(startMinute / 60, startMinute % 60);
+    }
+
+    public LocalTime getEnd() {
+        return LocalTime.of(endMinute / 60, endMinute % 60);
+    }
+
+    public String getTimeFrom() {
+        return label.substring(0, label.indexOf('-')).trim();
+    }
+
+    public String getTimeTo() {
+        return label.substring(label.indexOf('-') + 1).trim();
+    }
+
+    public LocalDateTime startOn(LocalDate date) {
+        return date.atTime(startMinute / 60, startMinute % 60);
+    }
+
+    public LocalDateTime endOn(LocalDate date) {
+        return date.atTime(endMinute / 60, endMinute % 60);
+    }
+
+    @Override
+    public int compareTo(TimeSlot other) {
+        int byStart = Integer.compare(startMinute, other.startMinute);
+        return byStart != 0 ? byStart : Integer.compare(endMinute, other.endMinute);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        TimeSlot timeSlot = (TimeSlot) o;
+        return startMinute == timeSlot.startMinute && endMinute == timeSlot.endMinute;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(startMinute, endMinute);
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
@@ -0,0 +1,91 @@
+package com.reportsapp.repo;
+
+import com.amazonaws.services.dynamodbv2.document.Item;
+import com.reportsapp.util.RatingAggregate;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ReportsRepoTest {
+
+    @Test
+    void addReservation_accumulatesFiguresAndIgnoresMissingRatings() {
+        Map<String, Object> entry = new HashMap<>(Map.of("location_id", "loc-1"));
+
+        ReportsRepo.addReservation(entry, new BigDecimal("1.50"), new BigDecimal("20"), new BigDecimal("4"), new BigDecimal("5"));
+        ReportsRepo.addReservation(entry, BigDecimal.ZERO, new BigDecimal("12.5"), null, new BigDecimal("3"));
+
+        assertEquals(0, new BigDecimal("1.50").compareTo((BigDecimal) entry.get("waiter_working_hours")));
+        assertEquals(0, new BigDecimal("2").compareTo((BigDecimal) entry.get("waiter_orders_processed")));
+        assertEquals(0, new BigDecimal("32.5").compareTo((BigDecimal) entry.get("total_revenue")));
+        assertEquals(RatingAggregate.empty().add(new BigDecimal("4")), serviceFeedback(entry));
+        assertEquals(RatingAggregate.empty().add(new BigDecimal("5")).add(new BigDecimal("3")), cuisineFeedback(entry));
+        assertEquals("loc-1", entry.get("location_id"));
+    }
+
+    @Test
+    void mergeDaily_sumsDailyItemsIncludingLegacyRatingLists() {
+        Item withAggregates = new Item()
+                .withNumber("waiter_working_hours", new BigDecimal("3"))
+                .withNumber("waiter_orders_processed", 2)
+                .withNumber("total_revenue", new BigDecimal("40"))
+                .withMap(ReportsRepo.SERVICE_FEEDBACK_ATTRIBUTE, RatingAggregate.empty().add(new BigDecimal("5")).toMap())
+                .withMap(ReportsRepo.CUISINE_FEEDBACK_ATTRIBUTE, RatingAggregate.empty().toMap());
+        Item legacy = new Item()
+                .withNumber("waiter_working_hours", new BigDecimal("1.5"))
+                .withNumber("waiter_orders_processed", 1)
+                .withNumber("total_revenue", new BigDecimal("10"))
+                .withList("total_service_feedback", List.of(new BigDecimal("2"), new BigDecimal("3")))
+                .withList("total_cuisine_feedback", List.of(new BigDecimal("4")));
+        Map<String, Object> entry = new HashMap<>();
+
+        ReportsRepo.mergeDaily(entry, withAggregates);
+        ReportsRepo.mergeDaily(entry, legacy);
+
+        assertEquals(0, new BigDecimal("4.5").compareTo((BigDecimal) entry.get("waiter_working_hours")));
+        assertEquals(0, new BigDecimal("3").compareTo((BigDecimal) entry.get("waiter_orders_processed")));
+        assertEquals(0, new BigDecimal("50").compareTo((BigDecimal) entry.get("total_revenue")));
+        assertEquals(RatingAggregate.fromRatings(List.of(5, 2, 3)), serviceFeedback(entry));
+        assertEquals(RatingAggregate.fromRatings(List.of(4)), cuisineFeedback(entry));
+    }
+
+    @Test
+    void backfilledRollupMatchesRollupUpdatedPerReservation() {
+        // The backfill merges daily items; the listener adds each reservation to the rollup
+        Map<String, Object> day1 = new HashMap<>();
+        ReportsRepo.addReservation(day1, new BigDecimal("1.5"), new BigDecimal("30"), new BigDecimal("5"), null);
+        ReportsRepo.addReservation(day1, BigDecimal.ZERO, new BigDecimal("15"), new BigDecimal("3"), new BigDecimal("4"));
+        Map<String, Object> day2 = new HashMap<>();
+        ReportsRepo.addReservation(day2, new BigDecimal("2"), new BigDecimal("25"), null, new BigDecimal("2"));
+
+        Map<String, Object> backfilled = new HashMap<>();
+        ReportsRepo.mergeDaily(backfilled, Item.fromMap(day1));
+        ReportsRepo.mergeDaily(backfilled, Item.fromMap(day2));
+
+        Map<String, Object> incremental = new HashMap<>();
+        ReportsRepo.addReservation(incremental, new BigDecimal("1.5"), new BigDecimal("30"), new BigDecimal("5"), null);
+        ReportsRepo.addReservation(incremental, BigDecimal.ZERO, new BigDecimal("15"), new BigDecimal("3"), new BigDecimal("4"));
+        ReportsRepo.addReservation(incremental, new BigDecimal("2"), new BigDecimal("25"), null, new BigDecimal("2"));
+
+        for (String figure : List.of("waiter_working_hours", "waiter_orders_processed", "total_revenue")) {
+            assertEquals(0, ((BigDecimal) incremental.get(figure)).compareTo((BigDecimal) backfilled.get(figure)), figure);
+        }
+        assertEquals(serviceFeedback(incremental), serviceFeedback(backfilled));
+        assertEquals(cuisineFeedback(incremental), cuisineFeedback(backfilled));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static RatingAggregate serviceFeedback(Map<String, Object> entry) {
+        return RatingAggregate.fromMap((Map<String, Object>) entry.get(ReportsRepo.SERVICE_FEEDBACK_ATTRIBUTE));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static RatingAggregate cuisineFeedback(Map<String, Object> entry) {
+        return RatingAggregate.fromMap((Map<String, Object>) entry.get(ReportsRepo.CUISINE_FEEDBACK_ATTRIBUTE));
+    }
+}
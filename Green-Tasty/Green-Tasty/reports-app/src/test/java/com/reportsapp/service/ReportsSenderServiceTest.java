@@ -6,12 +6,14 @@ import com.reportsapp.feign_client.ReportsFeignClient;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.*;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.thymeleaf.context.Context;
 import org.thymeleaf.spring6.SpringTemplateEngine;
 
 import java.util.HashMap;
 import java.util.Map;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.Mockito.*;
 
 class ReportsSenderServiceTest {
@@ -31,6 +33,9 @@ class ReportsSenderServiceTest {
     @Captor
     ArgumentCaptor<SendEmailRequest> emailRequestCaptor;
 
+    @Captor
+    ArgumentCaptor<Context> contextCaptor;
+
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
@@ -39,12 +44,21 @@ class ReportsSenderServiceTest {
     @Test
     void testSendReports_shouldGenerateReportsAndSendEmail() {
         // Arrange
-        Map<String, Object> dummyResponse = new HashMap<>();
-        dummyResponse.put("downloadLinkPDF", "http://example.com/report.pdf");
-        dummyResponse.put("downloadLinkCSV", "http://example.com/report.csv");
-
-        when(reportsFeignClient.getReports(any(), any(), any(), any(), any()))
-                .thenReturn(dummyResponse);
+        Map<String, Object> staffResponse = new HashMap<>();
+        staffResponse.put("downloadLinkPDF", "http://example.com/staff.pdf");
+        staffResponse.put("downloadLinkCSV", "http://example.com/staff.csv");
+        Map<String, Object> locationResponse = new HashMap<>();
+        locationResponse.put("downloadLinkPDF", "http://example.com/location.pdf");
+        locationResponse.put("downloadLinkCSV", "http://example.com/location.csv");
+
+        when(reportsFeignClient.submitReportJob(eq("Staff_Performance"), any(), any(), any(), any()))
+                .thenReturn(Map.of("jobId", "job-staff", "status", "PENDING"));
+        when(reportsFeignClient.submitReportJob(eq("Location_Performance"), any(), any(), any(), any()))
+                .thenReturn(Map.of("jobId", "job-location", "status", "PENDING"));
+        when(reportsFeignClient.getReportJob("job-staff"))
+                .thenReturn(Map.of("jobId", "job-staff", "status", "DONE", "result", staffResponse));
+        when(reportsFeignClient.getReportJob("job-location"))
+                .thenReturn(Map.of("jobId", "job-location", "status", "DONE", "result", locationResponse));
 
         when(templateEngine.process(eq("report-email-template"), any(Context.class)))
                 .thenReturn("Rendered Email Body");
@@ -53,9 +67,16 @@ class ReportsSenderServiceTest {
         reportsSenderService.sendReports();
 
         // Assert
-        verify(reportsFeignClient, times(4)).getReports(any(), any(), any(), any(), any());
+        verify(reportsFeignClient).getReportJob("job-staff");
+        verify(reportsFeignClient).getReportJob("job-location");
+        verify(reportsFeignClient, never()).getReports(any(), any(), any(), any(), any());
 
-        verify(templateEngine).process(eq("report-email-template"), any(Context.class));
+        verify(templateEngine).process(eq("report-email-template"), contextCaptor.capture());
+        Context context = contextCaptor.getValue();
+        assertEquals("http://example.com/staff.pdf", context.getVariable("pdfWaiterUrl"));
+        assertEquals("http://example.com/staff.csv", context.getVariable("csvWaiterUrl"));
+        assertEquals("http://example.com/location.pdf", context.getVariable("pdfLocationUrl"));
+        assertEquals("http://example.com/location.csv", context.getVariable("csvLocationUrl"));
 
         verify(sesClient).sendEmail(emailRequestCaptor.capture());
         SendEmailRequest emailRequest = emailRequestCaptor.getValue();
@@ -66,4 +87,49 @@ class ReportsSenderServiceTest {
         assert emailRequest.getMessage().getSubject().getData().equals("Weekly Reports");
         assert emailRequest.getMessage().getBody().getHtml().getData().equals("Rendered Email Body");
     }
+
+    @Test
+    void testSendReports_shouldPollPendingJobsUntilDone() {
+        // Arrange
+        ReflectionTestUtils.setField(reportsSenderService, "pollIntervalMillis", 1L);
+        ReflectionTestUtils.setField(reportsSenderService, "maxWaitMillis", 5000L);
+
+        Map<String, Object> staffResponse = Map.of(
+                "downloadLinkPDF", "http://example.com/staff.pdf",
+                "downloadLinkCSV", "http://example.com/staff.csv");
+        Map<String, Object> locationResponse = Map.of(
+                "downloadLinkPDF", "http://example.com/location.pdf",
+                "downloadLinkCSV", "http://example.com/location.csv");
+
+        when(reportsFeignClient.submitReportJob(eq("Staff_Performance"), any(), any(), any(), any()))
+                .thenReturn(Map.of("jobId", "job-staff", "status", "PENDING"));
+        when(reportsFeignClient.submitReportJob(eq("Location_Performance"), any(), any(), any(), any()))
+                .thenReturn(Map.of("jobId", "job-location", "status", "PENDING"));
+        when(reportsFeignClient.getReportJob("job-staff"))
+                .thenReturn(Map.of("jobId", "job-staff", "status", "PENDING"))
+                .thenReturn(Map.of("jobId", "job-staff", "status", "RUNNING"))
+                .thenReturn(Map.of("jobId", "job-staff", "status", "DONE", "result", staffResponse));
+        when(reportsFeignClient.getReportJob("job-location"))
+                .thenReturn(Map.of("jobId", "job-location", "status", "PENDING"))
+                .thenReturn(Map.of("jobId", "job-location", "status", "DONE", "result", locationResponse));
+
+        when(templateEngine.process(eq("report-email-template"), any(Context.class)))
+                .thenReturn("Rendered Email Body");
+
+        // Act
+        reportsSenderService.sendReports();
+
+        // Assert
+        verify(reportsFeignClient, times(3)).getReportJob("job-staff");
+        verify(reportsFeignClient, times(2)).getReportJob("job-location");
+
+        verify(templateEngine).process(eq("report-email-template"), contextCaptor.capture());
+        Context context = contextCaptor.getValue();
+        assertEquals("http://example.com/staff.pdf", context.getVariable("pdfWaiterUrl"));
+        assertEquals("http://example.com/staff.csv", context.getVariable("csvWaiterUrl"));
+        assertEquals("http://example.com/location.pdf", context.getVariable("pdfLocationUrl"));
+        assertEquals("http://example.com/location.csv", context.getVariable("csvLocationUrl"));
+
+        verify(sesClient).sendEmail(any(SendEmailRequest.class));
+    }
 }
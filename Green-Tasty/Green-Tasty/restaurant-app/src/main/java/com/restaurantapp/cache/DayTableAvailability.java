@@ -0,0 +1,159 @@
+package com.restaurantapp.cache;
+
+import com.restaurantapp.dto.Tables;
+import com.restaurantapp.util.DateFormatter;
+import com.restaurantapp.util.TimeSlot;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Slot availability of every table of one location on one date.
+ * <p>
+ * The slot labels of the day are indexed once and each table keeps its free
+ * slots as a {@link BitSet} over those indexes. Instances are never mutated
+ * after construction; {@link #withSlot} returns a copy, so readers can use a
+ * snapshot without locking while writers swap in a new one.
+ */
+public final class DayTableAvailability {
+
+    private final String locationId;
+    private final String date;
+    private final LocalDate localDate;
+    private final String[] slots;
+    private final LocalDateTime[] slotStarts;
+    private final Map<String, Integer> slotIndexes;
+    private final List<TableSlots> tables;
+
+    private DayTableAvailability(String locationId, String date, LocalDate localDate, String[] slots,
+                                 LocalDateTime[] slotStarts, Map<String, Integer> slotIndexes, List<TableSlots> tables) {
+        this.locationId = locationId;
+        this.date = date;
+        this.localDate = localDate;
+        this.slots = slots;
+        this.slotStarts = slotStarts;
+        this.slotIndexes = slotIndexes;
+        this.tables = tables;
+    }
+
+    /**
+     * Builds the structure from table items as they are stored, i.e. table number,
+     * capacity and the full slot map including booked slots.
+     */
+    public static DayTableAvailability of(String locationId, String date, List<Tables> tableItems) {
+        LocalDate localDate = DateFormatter.parseDate(date);
+        SortedSet<String> labels = new TreeSet<>();
+        for (Tables table : tableItems) {
+            labels.addAll(table.getAvailableSlots().keySet());
+        }
+
+        String[] slots = labels.toArray(new String[0]);
+        LocalDateTime[] slotStarts = new LocalDateTime[slots.length];
+        Map<String, Integer> slotIndexes = new HashMap<>();
+        for (int i = 0; i < slots.length; i++) {
+            slotIndexes.put(slots[i], i);
+            slotStarts[i] = TimeSlot.of(slots[i]).startOn(localDate);
+        }
+
+        List<TableSlots> tables = new ArrayList<>(tableItems.size());
+        for (Tables table : tableItems) {
+            BitSet known = new BitSet(slots.length);
+            BitSet free = new BitSet(slots.length);
+            for (Map.Entry<String, Boolean> entry : table.getAvailableSlots().entrySet()) {
+                int index = slotIndexes.get(entry.getKey());
+                known.set(index);
+                if (Boolean.TRUE.equals(entry.getValue())) free.set(index);
+            }
+            tables.add(new TableSlots(table.getTableNumber(), table.getCapacity(), known, free));
+        }
+        return new DayTableAvailability(locationId, date, localDate, slots, slotStarts, slotIndexes,
+                Collections.unmodifiableList(tables));
+    }
+
+    /**
+     * Returns the tables that seat at least {@code guests} people and have a free slot
+     * starting at or after {@code time} (or after now when no time is given).
+     */
+    public List<Tables> findAvailable(String time, String guests, LocalDateTime currDateTime) {
+        LocalDateTime requestedDateTime = null;
+        if (time != null) {
+            int minuteOfDay = TimeSlot.parseMinuteOfDay(time);
+            requestedDateTime = localDate.atTime(minuteOfDay / 60, minuteOfDay % 60);
+        }
+        int minCapacity = guests == null ? 0 : Integer.parseInt(guests);
+
+        List<Tables> result = new ArrayList<>();
+        for (TableSlots table : tables) {
+            if (table.capacityValue < minCapacity) continue;
+
+            Map<String, Boolean> matchingTimeRanges = new TreeMap<>();
+            for (int i = table.free.nextSetBit(0); i >= 0; i = table.free.nextSetBit(i + 1)) {
+                LocalDateTime startDateTime = slotStarts[i];
+                if (requestedDateTime != null) {
+                    if (!requestedDateTime.isAfter(startDateTime) && !requestedDateTime.isBefore(currDateTime)) {
+                        matchingTimeRanges.put(slots[i], true);
+                    }
+                } else if (startDateTime.isAfter(currDateTime)) {
+                    matchingTimeRanges.put(slots[i], true);
+                }
+            }
+            if (!matchingTimeRanges.isEmpty()) {
+                result.add(new Tables(table.tableNumber, locationId, table.capacity, date, matchingTimeRanges));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns a copy with one slot of one table flipped, or {@code null} if the table
+     * or slot is unknown to this snapshot and it therefore has to be reloaded.
+     */
+    DayTableAvailability withSlot(String tableNumber, String timeSlot, boolean isAvailable) {
+        Integer index = slotIndexes.get(timeSlot);
+        if (index == null) return null;
+
+        List<TableSlots> updated = new ArrayList<>(tables.size());
+        boolean found = false;
+        for (TableSlots table : tables) {
+            if (table.tableNumber.equals(tableNumber) && table.known.get(index)) {
+                BitSet free = (BitSet) table.free.clone();
+                free.set(index, isAvailable);
+                updated.add(new TableSlots(table.tableNumber, table.capacity, table.known, free));
+                found = true;
+            } else {
+                updated.add(table);
+            }
+        }
+        return found ? new DayTableAvailability(locationId, date, localDate, slots, slotStarts, slotIndexes,
+                Collections.unmodifiableList(updated)) : null;
+    }
+
+    public String getLocationId() {
+        return locationId;
+    }
+
+    public String getDate() {
+        return date;
+    }
+
+    public LocalDate getLocalDate() {
+        return localDate;
+    }
+
+    private static final class TableSlots {
+        private final String tableNumber;
+        private final String capacity;
+        private final int capacityValue;
+        private final BitSet known;
+        private final BitSet free;
+
+        private TableSlots(String tableNumber, String capacity, BitSet known, BitSet free) {
+            this.tableNumber = tableNumber;
+            this.capacity = capacity;
+            this.capacityValue = Integer.parseInt(capacity);
+            this.known = known;
+            this.free = free;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.restaurantapp.cache;
+
+import java.util.*;
+
+/**
+ * Location by dish availability as stored in the DishLocation table.
+ * <p>
+ * Dish and location ids are mapped to dense ordinals when loaded, and every location keeps
+ * two bitsets over the dish ordinals: the dishes it offers and the dishes it has on stop.
+ * Lookups are a map access and a bit test. The matrix is immutable once published; a
+ * stop/unstop change copies the one affected bitset and publishes a new matrix, so readers
+ * never see a partial update.
+ */
+public final class DishAvailabilityMatrix {
+
+    public static final DishAvailabilityMatrix EMPTY = new DishAvailabilityMatrix(Map.of(), new String[0], Map.of(), new BitSet[0], new BitSet[0]);
+
+    private final Map<String, Integer> dishOrdinals;
+    private final String[] dishIds;
+    private final Map<String, Integer> locationOrdinals;
+    private final BitSet[] offered;
+    private final BitSet[] onStop;
+
+    private DishAvailabilityMatrix(Map<String, Integer> dishOrdinals, String[] dishIds, Map<String, Integer> locationOrdinals,
+                                   BitSet[] offered, BitSet[] onStop) {
+        this.dishOrdinals = dishOrdinals;
+        this.dishIds = dishIds;
+        this.locationOrdinals = locationOrdinals;
+        this.offered = offered;
+        this.onStop = onStop;
+    }
+
+    /**
+     * Builds a matrix from DishLocation entries, given as location id to dish id to whether
+     * the dish is on stop at that location.
+     */
+    public static DishAvailabilityMatrix of(Map<String, Map<String, Boolean>> onStopByLocation) {
+        Map<String, Integer> dishOrdinals = new HashMap<>();
+        List<String> dishIds = new ArrayList<>();
+        Map<String, Integer> locationOrdinals = new HashMap<>();
+        BitSet[] offered = new BitSet[onStopByLocation.size()];
+        BitSet[] onStop = new BitSet[onStopByLocation.size()];
+
+        for (Map.Entry<String, Map<String, Boolean>> location : onStopByLocation.entrySet()) {
+            int locationOrdinal = locationOrdinals.size();
+            locationOrdinals.put(location.getKey(), locationOrdinal);
+            offered[locationOrdinal] = new BitSet();
+            onStop[locationOrdinal] = new BitSet();
+            for (Map.Entry<String, Boolean> dish : location.getValue().entrySet()) {
+                int dishOrdinal = dishOrdinals.computeIfAbsent(dish.getKey(), id -> {
+                    dishIds.add(id);
+                    return dishIds.size() - 1;
+                });
+                offered[locationOrdinal].set(dishOrdinal);
+                if (Boolean.TRUE.equals(dish.getValue())) onStop[locationOrdinal].set(dishOrdinal);
+            }
+        }
+        return new DishAvailabilityMatrix(Map.copyOf(dishOrdinals), dishIds.toArray(new String[0]),
+                Map.copyOf(locationOrdinals), offered, onStop);
+    }
+
+    /**
+     * Whether the location offers any dish.
+     */
+    public boolean hasLocation(String locationId) {
+        return locationOrdinals.containsKey(locationId);
+    }
+
+    /**
+     * Whether the location offers the dish at all, on stop or not.
+     */
+    public boolean isOffered(String locationId, String dishId) {
+        Integer locationOrdinal = locationOrdinals.get(locationId);
+        Integer dishOrdinal = dishOrdinals.get(dishId);
+        return locationOrdinal != null && dishOrdinal != null && offered[locationOrdinal].get(dishOrdinal);
+    }
+
+    /**
+     * Whether the location has put the dish on stop.
+     */
+    public boolean isOnStop(String locationId, String dishId) {
+        Integer locationOrdinal = locationOrdinals.get(locationId);
+        Integer dishOrdinal = dishOrdinals.get(dishId);
+        return locationOrdinal != null && dishOrdinal != null && onStop[locationOrdinal].get(dishOrdinal);
+    }
+
+    /**
+     * Returns the ids of the dishes the location offers, on stop or not.
+     */
+    public List<String> getDishIds(String locationId) {
+        Integer locationOrdinal = locationOrdinals.get(locationId);
+        if (locationOrdinal == null) return List.of();
+        BitSet dishes = offered[locationOrdinal];
+        List<String> ids = new ArrayList<>(dishes.cardinality());
+        for (int ordinal = dishes.nextSetBit(0); ordinal >= 0; ordinal = dishes.nextSetBit(ordinal + 1)) {
+            ids.add(dishIds[ordinal]);
+        }
+        return ids;
+    }
+
+    /**
+     * Returns a matrix with the dish put on or taken off stop at the location, or this matrix
+     * if the location does not offer the dish.
+     */
+    public DishAvailabilityMatrix withOnStop(String locationId, String dishId, boolean stopped) {
+        if (!isOffered(locationId, dishId)) return this;
+        int locationOrdinal = locationOrdinals.get(locationId);
+        BitSet locationOnStop = (BitSet) onStop[locationOrdinal].clone();
+        locationOnStop.set(dishOrdinals.get(dishId), stopped);
+        BitSet[] updatedOnStop = onStop.clone();
+        updatedOnStop[locationOrdinal] = locationOnStop;
+        return new DishAvailabilityMatrix(dishOrdinals, dishIds, locationOrdinals, offered, updatedOnStop);
+    }
+}
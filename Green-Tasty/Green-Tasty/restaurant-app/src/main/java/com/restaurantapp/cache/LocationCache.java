@@ -0,0 +1,174 @@
+package com.restaurantapp.cache;
+
+import com.restaurantapp.dto.Location;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.time.ZoneId;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Locations by id with their zone already resolved, plus the full location list.
+ * <p>
+ * Locations change rarely but are read on almost every request, so entries live for a
+ * TTL and are dropped early when this instance changes a location. Ids that do not exist
+ * are remembered for a shorter TTL so that repeated lookups of a bad id do not reach the
+ * table either. Cached {@link Location} instances are shared and must not be modified.
+ * <p>
+ * Since ids come from public endpoints, the least recently used entry is evicted once
+ * {@code maxEntries} is reached, and expired entries are purged periodically.
+ */
+public class LocationCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocationCache.class);
+
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final long negativeTtlMillis;
+    private final Map<String, CachedLocation> locations;
+    private volatile CachedList allLocations;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public LocationCache(int maxEntries, long ttlSeconds, long negativeTtlSeconds) {
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlSeconds * 1000;
+        this.negativeTtlMillis = negativeTtlSeconds * 1000;
+        this.locations = new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedLocation> eldest) {
+                boolean evict = size() > LocationCache.this.maxEntries;
+                if (evict) evictions.increment();
+                return evict;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached entry for an id, which may record that the location does not
+     * exist, or {@code null} if the id has to be loaded.
+     */
+    public CachedLocation get(String locationId) {
+        synchronized (locations) {
+            CachedLocation cached = locations.get(locationId);
+            if (cached != null && !cached.isExpired(System.currentTimeMillis())) {
+                hits.increment();
+                return cached;
+            }
+            if (cached != null) locations.remove(locationId);
+        }
+        misses.increment();
+        return null;
+    }
+
+    public CachedLocation put(Location location) {
+        ZoneId zone = location.getZone() == null ? null : ZoneId.of(location.getZone());
+        CachedLocation cached = new CachedLocation(location, zone, System.currentTimeMillis() + ttlMillis);
+        synchronized (locations) {
+            locations.put(location.getLocationId(), cached);
+        }
+        return cached;
+    }
+
+    public CachedLocation putMissing(String locationId) {
+        CachedLocation cached = new CachedLocation(null, null, System.currentTimeMillis() + negativeTtlMillis);
+        synchronized (locations) {
+            locations.put(locationId, cached);
+        }
+        return cached;
+    }
+
+    /**
+     * Returns every location, or {@code null} if the list has to be loaded.
+     */
+    public List<Location> getAll() {
+        CachedList cached = allLocations;
+        if (cached == null || cached.expiresAt < System.currentTimeMillis()) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return cached.locations;
+    }
+
+    /**
+     * Caches the full location list and each of its locations.
+     */
+    public void putAll(List<Location> all) {
+        all.forEach(this::put);
+        allLocations = new CachedList(List.copyOf(all), System.currentTimeMillis() + ttlMillis);
+    }
+
+    /**
+     * Drops a location and the full list after the location was changed.
+     */
+    public void invalidate(String locationId) {
+        synchronized (locations) {
+            locations.remove(locationId);
+        }
+        allLocations = null;
+    }
+
+    @Scheduled(fixedDelayString = "${locations.cache.purge-interval-ms:60000}")
+    public void purgeExpired() {
+        long now = System.currentTimeMillis();
+        int size;
+        int removed;
+        synchronized (locations) {
+            int before = locations.size();
+            locations.values().removeIf(cached -> cached.isExpired(now));
+            size = locations.size();
+            removed = before - size;
+        }
+        logger.debug("Location cache: size={}, hits={}, misses={}, evictions={}, purged={}",
+                size, getHitCount(), getMissCount(), getEvictionCount(), removed);
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public static final class CachedLocation {
+        private final Location location;
+        private final ZoneId zone;
+        private final long expiresAt;
+
+        private CachedLocation(Location location, ZoneId zone, long expiresAt) {
+            this.location = location;
+            this.zone = zone;
+            this.expiresAt = expiresAt;
+        }
+
+        /**
+         * @return the location, or {@code null} if it does not exist
+         */
+        public Location getLocation() {
+            return location;
+        }
+
+        public ZoneId getZone() {
+            return zone;
+        }
+
+        private boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+
+    private record CachedList(List<Location> locations, long expiresAt) {
+    }
+}
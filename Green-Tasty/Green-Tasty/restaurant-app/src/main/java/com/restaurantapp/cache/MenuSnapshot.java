@@ -0,0 +1,155 @@
+package com.restaurantapp.cache;
+
+import java.util.*;
+
+/**
+ * Immutable copy of the Dish table as served by {@code GET /dishes} and {@code GET /dishes/popular}.
+ * <p>
+ * Prices and order counts are parsed once while building and every sort order the API offers
+ * is materialized per dish type, so requests only pick a prepared list. A new snapshot with
+ * a higher version replaces the old one on refresh; readers holding the old one are unaffected.
+ */
+public final class MenuSnapshot {
+
+    public static final String ALL_DISH_TYPES = "";
+
+    private static final List<String> SORTS = List.of("popularity,asc", "popularity,desc", "price,asc", "price,desc");
+
+    private final long version;
+    private final long loadedAt;
+    private final Map<String, Map<String, List<Map<String, Object>>>> viewsByType;
+    private final Map<String, MenuDish> dishesById;
+
+    private MenuSnapshot(long version, long loadedAt, Map<String, Map<String, List<Map<String, Object>>>> viewsByType,
+                         Map<String, MenuDish> dishesById) {
+        this.version = version;
+        this.loadedAt = loadedAt;
+        this.viewsByType = viewsByType;
+        this.dishesById = dishesById;
+    }
+
+    /**
+     * Builds a snapshot from dish attribute maps in scan order. Each map must hold the
+     * attributes returned by {@code GET /dishes} plus {@code dishType}.
+     */
+    public static MenuSnapshot of(long version, List<Map<String, Object>> dishItems) {
+        List<MenuDish> dishes = new ArrayList<>(dishItems.size());
+        for (Map<String, Object> item : dishItems) {
+            dishes.add(new MenuDish(item));
+        }
+
+        Map<String, List<MenuDish>> byType = new HashMap<>();
+        byType.put(ALL_DISH_TYPES, dishes);
+        for (MenuDish dish : dishes) {
+            if (dish.dishType != null) byType.computeIfAbsent(dish.dishType, type -> new ArrayList<>()).add(dish);
+        }
+
+        Map<String, Map<String, List<Map<String, Object>>>> viewsByType = new HashMap<>();
+        for (Map.Entry<String, List<MenuDish>> entry : byType.entrySet()) {
+            viewsByType.put(entry.getKey(), views(entry.getValue()));
+        }
+
+        Map<String, MenuDish> dishesById = new HashMap<>();
+        for (MenuDish dish : dishes) {
+            if (dish.id != null) dishesById.put(dish.id, dish);
+        }
+
+        return new MenuSnapshot(version, System.currentTimeMillis(), Map.copyOf(viewsByType), Map.copyOf(dishesById));
+    }
+
+    private static Map<String, List<Map<String, Object>>> views(List<MenuDish> dishes) {
+        Map<String, List<Map<String, Object>>> views = new HashMap<>();
+        views.put(null, dishes.stream().map(dish -> dish.view).toList());
+        for (String sort : SORTS) {
+            views.put(sort, dishes.stream().sorted(comparator(sort)).map(dish -> dish.view).toList());
+        }
+        return Collections.unmodifiableMap(views);
+    }
+
+    private static Comparator<MenuDish> comparator(String sort) {
+        return switch (sort) {
+            case "popularity,asc" -> Comparator.comparingInt(dish -> dish.orderCount);
+            case "popularity,desc" -> Comparator.comparingInt((MenuDish dish) -> dish.orderCount).reversed();
+            case "price,asc" -> Comparator.comparingDouble(dish -> dish.price);
+            case "price,desc" -> Comparator.comparingDouble((MenuDish dish) -> dish.price).reversed();
+            default -> throw new IllegalArgumentException("Unsupported sort parameter: " + sort);
+        };
+    }
+
+    /**
+     * Returns the dishes of a type (or of all types for {@link #ALL_DISH_TYPES}) in the
+     * requested order, or in table order when {@code sort} is {@code null}.
+     *
+     * @throws IllegalArgumentException if the sort is not supported
+     */
+    public List<Map<String, Object>> getDishes(String dishType, String sort) {
+        String normalizedSort = sort == null ? null : sort.toLowerCase();
+        if (normalizedSort != null && !SORTS.contains(normalizedSort))
+            throw new IllegalArgumentException("Unsupported sort parameter: " + sort);
+        Map<String, List<Map<String, Object>>> views = viewsByType.get(dishType);
+        return views == null ? List.of() : views.get(normalizedSort);
+    }
+
+    /**
+     * Returns the attributes shown for a dish in {@code GET /dishes/popular}, or {@code null}
+     * if the dish is not on the menu.
+     */
+    public Map<String, Object> getPopularView(String dishId) {
+        MenuDish dish = dishesById.get(dishId);
+        return dish == null ? null : dish.popularView;
+    }
+
+    /**
+     * Returns the stored order count of every dish by dish id.
+     */
+    public Map<String, Long> getOrderCounts() {
+        Map<String, Long> orderCounts = new HashMap<>();
+        dishesById.forEach((id, dish) -> orderCounts.put(id, (long) dish.orderCount));
+        return orderCounts;
+    }
+
+    /**
+     * Sort key of a price string as it is stored, e.g. {@code "$12"}; only digits are kept.
+     */
+    public static double parsePrice(String price) {
+        String digits = price == null ? "" : price.replaceAll("[^0-9+]", "");
+        return digits.isEmpty() ? 0 : Double.parseDouble(digits);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public long getLoadedAt() {
+        return loadedAt;
+    }
+
+    private static final class MenuDish {
+        private final String id;
+        private final String dishType;
+        private final int orderCount;
+        private final double price;
+        private final Map<String, Object> view;
+        private final Map<String, Object> popularView;
+
+        private MenuDish(Map<String, Object> item) {
+            Map<String, Object> view = new HashMap<>(item);
+            this.id = (String) item.get("id");
+            this.dishType = (String) view.remove("dishType");
+            this.view = Collections.unmodifiableMap(view);
+
+            Object orderCount = item.get("orderCount");
+            this.orderCount = orderCount == null ? 0 : Integer.parseInt(orderCount.toString());
+            String price = (String) item.get("price");
+            this.price = parsePrice(price);
+
+            Map<String, Object> popularView = new HashMap<>();
+            popularView.put("name", item.get("name"));
+            popularView.put("price", price);
+            popularView.put("weight", item.get("weight"));
+            popularView.put("imageUrl", item.get("imageUrl"));
+            popularView.put("orderCount", this.orderCount);
+            this.popularView = Collections.unmodifiableMap(popularView);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.restaurantapp.cache;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Dish order counts ranked globally and per location.
+ * <p>
+ * Each ranking keeps the counts by dish id and an ordered set of dish ids by count, so an
+ * order change moves one dish in O(log n) and the top K are read in O(K). Rankings are
+ * loaded from the stored counts and then updated with the deltas applied by this instance;
+ * they are reloaded periodically so that deltas from other instances are picked up.
+ */
+public class PopularDishIndex {
+
+    public static final String GLOBAL = "";
+
+    private final ConcurrentMap<String, Ranking> rankings = new ConcurrentHashMap<>();
+
+    /**
+     * Replaces a ranking ({@link #GLOBAL} or a location id) with the given counts.
+     */
+    public void load(String scope, Map<String, Long> orderCounts) {
+        Ranking ranking = new Ranking();
+        orderCounts.forEach(ranking::set);
+        rankings.put(scope, ranking);
+    }
+
+    /**
+     * Applies an order count change to a ranking if it is loaded; an unloaded ranking will
+     * read the stored count, which already includes the change, when it is loaded.
+     */
+    public void add(String scope, String dishId, long delta) {
+        Ranking ranking = rankings.get(scope);
+        if (ranking != null) ranking.add(dishId, delta);
+    }
+
+    /**
+     * Returns up to {@code limit} dish ids with their counts, most ordered first, or
+     * {@code null} if the ranking is not loaded.
+     */
+    public List<Map.Entry<String, Long>> top(String scope, int limit) {
+        Ranking ranking = rankings.get(scope);
+        return ranking == null ? null : ranking.top(limit);
+    }
+
+    /**
+     * Drops every per-location ranking so they are reloaded on next use.
+     */
+    public void invalidateLocations() {
+        rankings.keySet().removeIf(scope -> !GLOBAL.equals(scope));
+    }
+
+    private static final class Ranking {
+        private final Map<String, Long> counts = new HashMap<>();
+        private final TreeSet<String> ordered = new TreeSet<>(Comparator
+                .comparingLong((String dishId) -> counts.get(dishId)).reversed()
+                .thenComparing(Comparator.naturalOrder()));
+
+        private synchronized void set(String dishId, long count) {
+            if (counts.containsKey(dishId)) ordered.remove(dishId);
+            counts.put(dishId, count);
+            ordered.add(dishId);
+        }
+
+        private synchronized void add(String dishId, long delta) {
+            set(dishId, counts.getOrDefault(dishId, 0L) + delta);
+        }
+
+        private synchronized List<Map.Entry<String, Long>> top(int limit) {
+            List<Map.Entry<String, Long>> top = new ArrayList<>(Math.min(limit, ordered.size()));
+            for (String dishId : ordered) {
+                if (top.size() == limit) break;
+                top.add(Map.entry(dishId, counts.get(dishId)));
+            }
+            return top;
+        }
+    }
+}
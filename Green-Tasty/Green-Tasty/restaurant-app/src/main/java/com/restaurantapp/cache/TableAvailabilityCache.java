@@ -0,0 +1,148 @@
+package com.restaurantapp.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded in-memory cache of {@link DayTableAvailability} keyed by location and date.
+ * <p>
+ * Entries are loaded on a miss, kept current by write-through from {@code TableRepo.updateTable}
+ * and expire after a short TTL so that bookings made by other instances become visible.
+ * The least recently used entry is evicted once {@code maxEntries} is reached and entries
+ * for past dates are purged periodically.
+ */
+public class TableAvailabilityCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(TableAvailabilityCache.class);
+
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final Map<String, Entry> entries;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public TableAvailabilityCache(int maxEntries, long ttlSeconds) {
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlSeconds * 1000;
+        this.entries = new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                boolean evict = size() > TableAvailabilityCache.this.maxEntries;
+                if (evict) evictions.increment();
+                return evict;
+            }
+        };
+    }
+
+    public DayTableAvailability get(String locationId, String date) {
+        String key = key(locationId, date);
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && !entry.isExpired(System.currentTimeMillis())) {
+                hits.increment();
+                return entry.availability;
+            }
+            if (entry != null) entries.remove(key);
+        }
+        misses.increment();
+        return null;
+    }
+
+    public void put(DayTableAvailability availability) {
+        synchronized (entries) {
+            entries.put(key(availability.getLocationId(), availability.getDate()),
+                    new Entry(availability, System.currentTimeMillis() + ttlMillis));
+        }
+    }
+
+    /**
+     * Applies a single slot change to the cached day, if present. Unknown tables or slots
+     * drop the entry so the next read reloads it.
+     */
+    public void updateSlot(String locationId, String date, String tableNumber, String timeSlot, boolean isAvailable) {
+        String key = key(locationId, date);
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry == null) return;
+            DayTableAvailability updated = entry.availability.withSlot(tableNumber, timeSlot, isAvailable);
+            if (updated == null) entries.remove(key);
+            else entries.put(key, new Entry(updated, entry.expiresAt));
+        }
+    }
+
+    public void invalidate(String locationId, String date) {
+        synchronized (entries) {
+            entries.remove(key(locationId, date));
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${tables.cache.purge-interval-ms:60000}")
+    public void purgeExpired() {
+        long now = System.currentTimeMillis();
+        LocalDate yesterday = LocalDate.now().minusDays(1);
+        int removed = 0;
+        synchronized (entries) {
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (entry.isExpired(now) || entry.availability.getLocalDate().isBefore(yesterday)) {
+                    iterator.remove();
+                    removed++;
+                }
+            }
+        }
+        logger.debug("Table availability cache: size={}, hits={}, misses={}, hitRate={}, evictions={}, purged={}",
+                size(), getHitCount(), getMissCount(), String.format("%.3f", getHitRate()), getEvictionCount(), removed);
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public double getHitRate() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0.0 : (double) hitCount / total;
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private static String key(String locationId, String date) {
+        return locationId + "#" + date;
+    }
+
+    private static final class Entry {
+        private final DayTableAvailability availability;
+        private final long expiresAt;
+
+        private Entry(DayTableAvailability availability, long expiresAt) {
+            this.availability = availability;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+}
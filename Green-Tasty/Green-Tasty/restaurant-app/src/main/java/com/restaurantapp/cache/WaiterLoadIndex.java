@@ -0,0 +1,191 @@
+package com.restaurantapp.cache;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory index of waiter loads per location, used to pick the least busy waiter
+ * without reading the Waiter table.
+ * <p>
+ * For every location and weekday the waiters are kept in two ordered sets: one by that
+ * day's customer count and one by customer count plus visitor count, which is what a
+ * booking for the current day is assigned by. The smallest element of either set is the
+ * least busy waiter, and a count change re-positions a single waiter in O(log n).
+ * <p>
+ * Locations are replaced as a whole when loaded and expire after a TTL so that bookings
+ * made by other instances are eventually picked up; {@link #leastBusy} returns
+ * {@code null} for a missing or expired location and the caller reloads it.
+ */
+public class WaiterLoadIndex {
+
+    private static final int DAYS_PER_WEEK = 7;
+
+    private final long ttlMillis;
+    private final ConcurrentMap<String, LocationLoads> locations = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, String> waiterLocations = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public WaiterLoadIndex(long ttlSeconds) {
+        this.ttlMillis = ttlSeconds * 1000;
+    }
+
+    /**
+     * Replaces everything known about one location with the given waiters.
+     */
+    public void replaceLocation(String locationId, ZoneId zone, Collection<WaiterLoad> waiters) {
+        LocationLoads loads = new LocationLoads(zone, System.currentTimeMillis() + ttlMillis);
+        for (WaiterLoad waiter : waiters) {
+            loads.add(new Load(waiter.getEmail(), waiter.getCustomerCounts(), waiter.getVisitorCount()));
+            waiterLocations.put(waiter.getEmail(), locationId);
+        }
+        locations.put(locationId, loads);
+    }
+
+    /**
+     * Returns the email of the waiter with the fewest bookings at the location on the
+     * given date, counting visitors only when the date is today in the location's zone,
+     * or {@code null} if the location has to be (re)loaded first.
+     */
+    public String leastBusy(String locationId, LocalDate date) {
+        LocationLoads loads = locations.get(locationId);
+        if (loads == null || loads.expiresAt < System.currentTimeMillis()) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return loads.leastBusy(date);
+    }
+
+    /**
+     * Sets the stored customer counts of a waiter, e.g. from the item returned by an update.
+     */
+    public void updateCustomerCounts(String email, int[] customerCounts) {
+        LocationLoads loads = locationOf(email);
+        if (loads != null) loads.update(email, customerCounts, null);
+    }
+
+    /**
+     * Sets the stored visitor count of a waiter, e.g. from the item returned by an update.
+     */
+    public void updateVisitorCount(String email, int visitorCount) {
+        LocationLoads loads = locationOf(email);
+        if (loads != null) loads.update(email, null, visitorCount);
+    }
+
+    public void invalidate(String locationId) {
+        locations.remove(locationId);
+    }
+
+    private LocationLoads locationOf(String email) {
+        String locationId = waiterLocations.get(email);
+        return locationId == null ? null : locations.get(locationId);
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Load figures of one waiter as stored in the Waiter table.
+     */
+    public static final class WaiterLoad {
+        private final String email;
+        private final int[] customerCounts;
+        private final int visitorCount;
+
+        public WaiterLoad(String email, int[] customerCounts, int visitorCount) {
+            if (customerCounts.length != DAYS_PER_WEEK)
+                throw new IllegalArgumentException("Expected " + DAYS_PER_WEEK + " customer counts for waiter " + email);
+            this.email = email;
+            this.customerCounts = customerCounts.clone();
+            this.visitorCount = visitorCount;
+        }
+
+        public String getEmail() {
+            return email;
+        }
+
+        public int[] getCustomerCounts() {
+            return customerCounts.clone();
+        }
+
+        public int getVisitorCount() {
+            return visitorCount;
+        }
+    }
+
+    private static final class Load {
+        private final String email;
+        private final int[] customerCounts;
+        private int visitorCount;
+
+        private Load(String email, int[] customerCounts, int visitorCount) {
+            this.email = email;
+            this.customerCounts = customerCounts;
+            this.visitorCount = visitorCount;
+        }
+    }
+
+    private static final class LocationLoads {
+        private final ZoneId zone;
+        private final long expiresAt;
+        private final Map<String, Load> byEmail = new HashMap<>();
+        private final List<TreeSet<Load>> byCustomers = new ArrayList<>(DAYS_PER_WEEK);
+        private final List<TreeSet<Load>> byCustomersAndVisitors = new ArrayList<>(DAYS_PER_WEEK);
+
+        private LocationLoads(ZoneId zone, long expiresAt) {
+            this.zone = zone;
+            this.expiresAt = expiresAt;
+            for (int day = 0; day < DAYS_PER_WEEK; day++) {
+                int index = day;
+                byCustomers.add(new TreeSet<>(Comparator
+                        .comparingInt((Load load) -> load.customerCounts[index])
+                        .thenComparing(load -> load.email)));
+                byCustomersAndVisitors.add(new TreeSet<>(Comparator
+                        .comparingInt((Load load) -> load.customerCounts[index] + load.visitorCount)
+                        .thenComparing(load -> load.email)));
+            }
+        }
+
+        private synchronized void add(Load load) {
+            byEmail.put(load.email, load);
+            for (int day = 0; day < DAYS_PER_WEEK; day++) {
+                byCustomers.get(day).add(load);
+                byCustomersAndVisitors.get(day).add(load);
+            }
+        }
+
+        private synchronized String leastBusy(LocalDate date) {
+            int day = date.getDayOfWeek().getValue() - 1;
+            TreeSet<Load> loads = date.equals(LocalDate.now(zone))
+                    ? byCustomersAndVisitors.get(day) : byCustomers.get(day);
+            return loads.isEmpty() ? null : loads.first().email;
+        }
+
+        /**
+         * The sets are ordered by the mutable counts, so the waiter is taken out of every
+         * set before the counts change and put back afterwards.
+         */
+        private synchronized void update(String email, int[] customerCounts, Integer visitorCount) {
+            Load load = byEmail.get(email);
+            if (load == null) return;
+            for (int day = 0; day < DAYS_PER_WEEK; day++) {
+                byCustomers.get(day).remove(load);
+                byCustomersAndVisitors.get(day).remove(load);
+            }
+            if (customerCounts != null) System.arraycopy(customerCounts, 0, load.customerCounts, 0, DAYS_PER_WEEK);
+            if (visitorCount != null) load.visitorCount = visitorCount;
+            add(load);
+        }
+    }
+}
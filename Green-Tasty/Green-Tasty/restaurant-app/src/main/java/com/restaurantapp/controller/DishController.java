@@ -5,8 +5,10 @@ import com.restaurantapp.service.DishService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
@@ -42,11 +44,31 @@ public class DishController {
         }
     }
     @GetMapping("/popular")
-    public ResponseEntity<List<Map<String, Object>>> getAllPopularDishes() {
-        List<Map<String, Object>> dishes = dishService.getPopularDishes();
+    public ResponseEntity<List<Map<String, Object>>> getAllPopularDishes(@RequestParam(required = false) String locationId) {
+        List<Map<String, Object>> dishes = dishService.getPopularDishes(locationId);
         return new ResponseEntity<>(dishes, HttpStatus.OK);
     }
 
+    @PostMapping("/menu/refresh")
+    public ResponseEntity<Object> refreshMenu(Authentication authentication) throws Exception {
+        long version = dishService.refreshMenu(authentication.getName());
+        return ResponseEntity.ok(Map.of("message", "Menu has been refreshed.", "version", version));
+    }
+
+    @PostMapping("/{id}/locations/{locationId}/stop")
+    public ResponseEntity<Object> stopDish(@PathVariable String id, @PathVariable String locationId,
+                                           Authentication authentication) throws Exception {
+        dishService.updateDishAvailability(authentication.getName(), id, locationId, true);
+        return ResponseEntity.ok(Map.of("message", "Dish has been put on stop."));
+    }
+
+    @PostMapping("/{id}/locations/{locationId}/unstop")
+    public ResponseEntity<Object> unstopDish(@PathVariable String id, @PathVariable String locationId,
+                                             Authentication authentication) throws Exception {
+        dishService.updateDishAvailability(authentication.getName(), id, locationId, false);
+        return ResponseEntity.ok(Map.of("message", "Dish is available again."));
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<Dish> getDishById(@PathVariable String id) throws Exception {
 
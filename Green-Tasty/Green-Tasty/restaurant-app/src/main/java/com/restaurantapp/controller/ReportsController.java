@@ -1,10 +1,13 @@
 package com.restaurantapp.controller;
 
+import com.restaurantapp.service.ReportJobService;
 import com.restaurantapp.service.ReportsService;
 import com.restaurantapp.util.DateFormatter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
@@ -16,10 +19,12 @@ import java.util.HashMap;
 @RequestMapping("/reports")
 public class ReportsController {
     private ReportsService reportsService;
+    private ReportJobService reportJobService;
 
     @Autowired
-    public ReportsController(ReportsService reportsService) {
+    public ReportsController(ReportsService reportsService, ReportJobService reportJobService) {
         this.reportsService = reportsService;
+        this.reportJobService = reportJobService;
     }
 
     @GetMapping
@@ -28,12 +33,30 @@ public class ReportsController {
                                              @RequestParam(required = false, value = "toDate") String toDate,
                                              @RequestParam(required = false, value = "locationId") String locationId,
                                              @RequestParam(required = false, value = "waiterId") String waiterId) throws Exception {
-        return ResponseEntity.ok(reportsService.getReports(new HashMap<>() {{
+        return ResponseEntity.ok(reportsService.getReports(queryParameters(reportType, fromDate, toDate, locationId, waiterId)));
+    }
+
+    @PostMapping("/jobs")
+    public ResponseEntity<Object> submitReportJob(@RequestParam(required = false, value = "reportType") String reportType,
+                                                  @RequestParam(required = false, value = "fromDate") String fromDate,
+                                                  @RequestParam(required = false, value = "toDate") String toDate,
+                                                  @RequestParam(required = false, value = "locationId") String locationId,
+                                                  @RequestParam(required = false, value = "waiterId") String waiterId) {
+        return ResponseEntity.accepted().body(reportJobService.submit(queryParameters(reportType, fromDate, toDate, locationId, waiterId)));
+    }
+
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<Object> getReportJob(@PathVariable("jobId") String jobId) {
+        return ResponseEntity.ok(reportJobService.getJob(jobId));
+    }
+
+    private static HashMap<Object, Object> queryParameters(String reportType, String fromDate, String toDate, String locationId, String waiterId) {
+        return new HashMap<>() {{
             put("reportType", reportType);
             put("fromDate", fromDate == null ? DateFormatter.convertToStandardFormat(LocalDate.now().minusDays(7).toString()) : DateFormatter.convertToStandardFormat(fromDate));
             put("toDate", toDate == null ? DateFormatter.convertToStandardFormat(LocalDate.now().toString()) : DateFormatter.convertToStandardFormat(toDate));
             put("locationId", locationId);
             put("waiterId", waiterId);
-        }}));
+        }};
     }
 }
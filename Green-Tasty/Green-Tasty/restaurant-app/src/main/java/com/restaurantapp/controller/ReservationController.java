@@ -15,6 +15,7 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.List;
 import java.util.Map;
 
 @RestController
@@ -68,8 +69,15 @@ public class ReservationController {
     public ResponseEntity<Object> getAllReservations(Authentication authentication,
                                                      @RequestParam(required = false, value = "date") String date,
                                                      @RequestParam(required = false, value = "time") String time,
-                                                     @RequestParam(required = false, value = "tableNumber") String tableNumber) throws Exception {
-        return ResponseEntity.ok(bookingService.getAllReservations(authentication.getName(),date,time,tableNumber));
+                                                     @RequestParam(required = false, value = "tableNumber") String tableNumber,
+                                                     @RequestParam(required = false, value = "cursor") String cursor,
+                                                     @RequestParam(defaultValue = "50", value = "size") int size) throws Exception {
+        Map<String, Object> page = bookingService.getAllReservations(authentication.getName(), date, time, tableNumber, cursor, size);
+        // The body stays a plain list; paging state travels in headers.
+        List<?> content = (List<?>) page.get("content");
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().header("X-Page-Size", String.valueOf(content.size()));
+        if (page.get("nextCursor") != null) response.header("X-Next-Cursor", page.get("nextCursor").toString());
+        return response.body(content);
     }
 }
 
@@ -0,0 +1,14 @@
+package com.restaurantapp.dto;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One page of a location's feedbacks.
+ *
+ * @param content       the feedback items of the page
+ * @param nextCursor    cursor for the next page, or {@code null} on the last page
+ * @param totalElements number of feedbacks in the whole listing
+ */
+public record FeedbackPage(List<Map<String, Object>> content, String nextCursor, int totalElements) {
+}
@@ -1,5 +1,8 @@
 package com.restaurantapp.dto;
 
+import com.restaurantapp.util.Ratings;
+
+import java.math.BigDecimal;
 import java.util.Map;
 import java.util.Objects;
 
@@ -92,6 +95,7 @@ public final class Location {
     }
 
     public static Location fromMap(Map<String, Object> attributes) {
+        BigDecimal rating = Ratings.average(attributes, "rating");
         return new Location(
                 (String) attributes.get("location_id"),
                 (String) attributes.get("address"),
@@ -99,7 +103,7 @@ public final class Location {
                 (String) attributes.get("totalCapacity"),
                 (String) attributes.get("averageOccupancy"),
                 (String) attributes.get("imageUrl"),
-                (String) attributes.get("rating"),
+                rating == null ? null : rating.toPlainString(),
                 (String) attributes.get("zone")
         );
     }
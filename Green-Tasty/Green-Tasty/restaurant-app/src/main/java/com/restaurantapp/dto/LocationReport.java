@@ -1,6 +1,5 @@
 package com.restaurantapp.dto;
 
-import java.util.List;
 import java.util.Objects;
 
 
@@ -9,22 +8,20 @@ public class LocationReport {
     String startDate;
     String endDate;
     double ordersProcessed;
-    List<Double> totalCuisineFeedback;
-    double minCuisineFeedback;
+    RatingAggregate cuisineFeedback;
     double revenue;
 
-    public LocationReport(String locationId, String startDate, String endDate, double ordersProcessed, List<Double> totalCuisineFeedback, double minCuisineFeedback, double revenue) {
+    public LocationReport(String locationId, String startDate, String endDate, double ordersProcessed, RatingAggregate cuisineFeedback, double revenue) {
         this.locationId = locationId;
         this.startDate = startDate;
         this.endDate = endDate;
         this.ordersProcessed = ordersProcessed;
-        this.totalCuisineFeedback = totalCuisineFeedback;
-        this.minCuisineFeedback = minCuisineFeedback;
+        this.cuisineFeedback = cuisineFeedback;
         this.revenue = revenue;
     }
 
     public static LocationReport getBlankReport(){
-        return new LocationReport(null, null, null, 0, List.of(), 0, 0);
+        return new LocationReport(null, null, null, 0, RatingAggregate.empty(), 0);
     }
 
     public String getLocationId() {
@@ -43,12 +40,12 @@ public class LocationReport {
         return ordersProcessed;
     }
 
-    public List<Double> getTotalCuisineFeedback() {
-        return totalCuisineFeedback;
+    public RatingAggregate getCuisineFeedback() {
+        return cuisineFeedback;
     }
 
     public double getMinCuisineFeedback() {
-        return minCuisineFeedback;
+        return cuisineFeedback.getMin().doubleValue();
     }
 
     public double getRevenue() {
@@ -71,12 +68,8 @@ public class LocationReport {
         this.ordersProcessed = ordersProcessed;
     }
 
-    public void setTotalCuisineFeedback(List<Double> totalCuisineFeedback) {
-        this.totalCuisineFeedback = totalCuisineFeedback;
-    }
-
-    public void setMinCuisineFeedback(double minCuisineFeedback) {
-        this.minCuisineFeedback = minCuisineFeedback;
+    public void setCuisineFeedback(RatingAggregate cuisineFeedback) {
+        this.cuisineFeedback = cuisineFeedback;
     }
 
     public void setRevenue(double revenue) {
@@ -87,12 +80,12 @@ public class LocationReport {
     public boolean equals(Object o) {
         if (o == null || getClass() != o.getClass()) return false;
         LocationReport that = (LocationReport) o;
-        return Double.compare(ordersProcessed, that.ordersProcessed) == 0 && Double.compare(minCuisineFeedback, that.minCuisineFeedback) == 0 && Double.compare(revenue, that.revenue) == 0 && Objects.equals(locationId, that.locationId) && Objects.equals(startDate, that.startDate) && Objects.equals(endDate, that.endDate) && Objects.equals(totalCuisineFeedback, that.totalCuisineFeedback);
+        return Double.compare(ordersProcessed, that.ordersProcessed) == 0 && Double.compare(revenue, that.revenue) == 0 && Objects.equals(locationId, that.locationId) && Objects.equals(startDate, that.startDate) && Objects.equals(endDate, that.endDate) && Objects.equals(cuisineFeedback, that.cuisineFeedback);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(locationId, startDate, endDate, ordersProcessed, totalCuisineFeedback, minCuisineFeedback, revenue);
+        return Objects.hash(locationId, startDate, endDate, ordersProcessed, cuisineFeedback, revenue);
     }
 
     @Override
@@ -102,8 +95,7 @@ public class LocationReport {
                 ", startDate='" + startDate + '\'' +
                 ", endDate='" + endDate + '\'' +
                 ", ordersProcessed=" + ordersProcessed +
-                ", totalCuisineFeedback=" + totalCuisineFeedback +
-                ", minCuisineFeedback=" + minCuisineFeedback +
+                ", cuisineFeedback=" + cuisineFeedback +
                 ", revenue=" + revenue +
                 '}';
     }
@@ -0,0 +1,181 @@
+package com.restaurantapp.dto;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Fixed-size summary of a set of 1 to 5 ratings: count, sum, minimum, maximum and a
+ * histogram by whole star. Two aggregates merge in constant time, so report items and
+ * reports over any range stay the same size however many ratings they cover.
+ * <p>
+ * Ratings of zero or less mean "not rated" and are ignored. Stored in DynamoDB as a map
+ * attribute, see {@link #toMap()}.
+ */
+public final class RatingAggregate {
+
+    private static final int STARS = 5;
+
+    private long count;
+    private BigDecimal sum = BigDecimal.ZERO;
+    private BigDecimal min;
+    private BigDecimal max;
+    private final long[] histogram = new long[STARS];
+
+    private RatingAggregate() {
+    }
+
+    public static RatingAggregate empty() {
+        return new RatingAggregate();
+    }
+
+    /**
+     * Reads an aggregate stored by {@link #toMap()}; {@code null} gives an empty one.
+     */
+    public static RatingAggregate fromMap(Map<String, Object> stored) {
+        RatingAggregate aggregate = new RatingAggregate();
+        if (stored == null) return aggregate;
+        aggregate.count = ((Number) stored.get("count")).longValue();
+        aggregate.sum = toDecimal(stored.get("sum"));
+        aggregate.min = stored.get("min") == null ? null : toDecimal(stored.get("min"));
+        aggregate.max = stored.get("max") == null ? null : toDecimal(stored.get("max"));
+        List<?> stars = (List<?>) stored.get("histogram");
+        for (int i = 0; i < STARS && i < stars.size(); i++) {
+            aggregate.histogram[i] = ((Number) stars.get(i)).longValue();
+        }
+        return aggregate;
+    }
+
+    /**
+     * Builds an aggregate from the rating lists report items used to keep.
+     */
+    public static RatingAggregate fromRatings(List<?> ratings) {
+        RatingAggregate aggregate = new RatingAggregate();
+        if (ratings != null) ratings.forEach(rating -> aggregate.add(toDecimal(rating)));
+        return aggregate;
+    }
+
+    public RatingAggregate add(BigDecimal rating) {
+        if (rating == null || rating.signum() <= 0) return this;
+        count++;
+        sum = sum.add(rating);
+        histogram[star(rating)]++;
+        min = min == null ? rating : min.min(rating);
+        max = max == null ? rating : max.max(rating);
+        return this;
+    }
+
+    /**
+     * Replaces a rating that was added before. If the removed rating was the minimum or
+     * maximum, the new bound is taken from the histogram, which is exact for whole-star
+     * ratings.
+     */
+    public RatingAggregate replace(BigDecimal oldRating, BigDecimal newRating) {
+        if (oldRating != null && oldRating.signum() > 0 && count > 0 && histogram[star(oldRating)] > 0) {
+            count--;
+            sum = sum.subtract(oldRating);
+            histogram[star(oldRating)]--;
+            if (oldRating.compareTo(min) == 0 || oldRating.compareTo(max) == 0) boundsFromHistogram();
+        }
+        return add(newRating);
+    }
+
+    public RatingAggregate merge(RatingAggregate other) {
+        if (other.count == 0) return this;
+        count += other.count;
+        sum = sum.add(other.sum);
+        for (int i = 0; i < STARS; i++) histogram[i] += other.histogram[i];
+        min = min == null ? other.min : min.min(other.min);
+        max = max == null ? other.max : max.max(other.max);
+        return this;
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> stored = new HashMap<>();
+        stored.put("count", count);
+        stored.put("sum", sum);
+        if (min != null) stored.put("min", min);
+        if (max != null) stored.put("max", max);
+        List<Long> stars = new ArrayList<>(STARS);
+        for (long starCount : histogram) stars.add(starCount);
+        stored.put("histogram", stars);
+        return stored;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public BigDecimal getSum() {
+        return sum;
+    }
+
+    /**
+     * @return the lowest rating, or zero if there is none
+     */
+    public BigDecimal getMin() {
+        return min == null ? BigDecimal.ZERO : min;
+    }
+
+    /**
+     * @return the highest rating, or zero if there is none
+     */
+    public BigDecimal getMax() {
+        return max == null ? BigDecimal.ZERO : max;
+    }
+
+    /**
+     * @return the average rating, or zero if there is none
+     */
+    public double getAverage() {
+        return count == 0 ? 0 : sum.doubleValue() / count;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == null || getClass() != o.getClass()) return false;
+        RatingAggregate that = (RatingAggregate) o;
+        return count == that.count && sum.compareTo(that.sum) == 0 && getMin().compareTo(that.getMin()) == 0
+                && getMax().compareTo(that.getMax()) == 0 && Arrays.equals(histogram, that.histogram);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(count, sum.stripTrailingZeros(), Arrays.hashCode(histogram));
+    }
+
+    @Override
+    public String toString() {
+        return "RatingAggregate{" +
+                "count=" + count +
+                ", sum=" + sum +
+                ", min=" + min +
+                ", max=" + max +
+                ", histogram=" + Arrays.toString(histogram) +
+                '}';
+    }
+
+    private void boundsFromHistogram() {
+        min = null;
+        max = null;
+        for (int i = 0; i < STARS; i++) {
+            if (histogram[i] == 0) continue;
+            if (min == null) min = BigDecimal.valueOf(i + 1);
+            max = BigDecimal.valueOf(i + 1);
+        }
+    }
+
+    private static int star(BigDecimal rating) {
+        int star = rating.setScale(0, RoundingMode.HALF_UP).intValue();
+        return Math.max(1, Math.min(STARS, star)) - 1;
+    }
+
+    private static BigDecimal toDecimal(Object value) {
+        return value instanceof BigDecimal decimal ? decimal : new BigDecimal(value.toString());
+    }
+}
@@ -0,0 +1,77 @@
+package com.restaurantapp.dto;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A report generation request that runs in the background. Clients poll it by id until it
+ * is {@code DONE}, when it carries the same result {@code GET /reports} returns, or
+ * {@code FAILED}.
+ */
+public class ReportJob {
+
+    public enum Status { PENDING, RUNNING, DONE, FAILED }
+
+    private final String jobId;
+    private final String requestKey;
+    private final long createdAt;
+    private volatile Status status = Status.PENDING;
+    private volatile Map<String, Object> result;
+    private volatile String message;
+    private volatile long finishedAt;
+
+    public ReportJob(String jobId, String requestKey) {
+        this.jobId = jobId;
+        this.requestKey = requestKey;
+        this.createdAt = System.currentTimeMillis();
+    }
+
+    public void running() {
+        status = Status.RUNNING;
+    }
+
+    public void done(Map<String, Object> result) {
+        this.result = result;
+        this.finishedAt = System.currentTimeMillis();
+        status = Status.DONE;
+    }
+
+    public void failed(String message) {
+        this.message = message;
+        this.finishedAt = System.currentTimeMillis();
+        status = Status.FAILED;
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public String getRequestKey() {
+        return requestKey;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public boolean isFinished() {
+        return status == Status.DONE || status == Status.FAILED;
+    }
+
+    public long getFinishedAt() {
+        return finishedAt;
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("jobId", jobId);
+        body.put("status", status.name());
+        if (status == Status.DONE) body.put("result", result);
+        if (status == Status.FAILED) body.put("message", message);
+        return body;
+    }
+}
@@ -1,7 +1,5 @@
 package com.restaurantapp.dto;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Objects;
 
 public class WaiterReport {
@@ -12,13 +10,11 @@ public class WaiterReport {
     String endDate;
     double hoursWorked;
     double ordersProcessed;
-    List<Double> totalServiceFeedback;
-    double minServiceFeedback;
-    List<Double> totalCuisineFeedback;
-    double minCuisineFeedback;
+    RatingAggregate serviceFeedback;
+    RatingAggregate cuisineFeedback;
     double revenue;
 
-    public WaiterReport(String locationId, String waiterName, String waiterEmail, String startDate, String endDate, double hoursWorked, double ordersProcessed, List<Double> totalServiceFeedback, double minServiceFeedback, List<Double> totalCuisineFeedback, double minCuisineFeedback, double revenue) {
+    public WaiterReport(String locationId, String waiterName, String waiterEmail, String startDate, String endDate, double hoursWorked, double ordersProcessed, RatingAggregate serviceFeedback, RatingAggregate cuisineFeedback, double revenue) {
         this.locationId = locationId;
         this.waiterName = waiterName;
         this.waiterEmail = waiterEmail;
@@ -26,15 +22,13 @@ public class WaiterReport {
         this.endDate = endDate;
         this.hoursWorked = hoursWorked;
         this.ordersProcessed = ordersProcessed;
-        this.totalServiceFeedback = totalServiceFeedback;
-        this.minServiceFeedback = minServiceFeedback;
-        this.totalCuisineFeedback = totalCuisineFeedback;
-        this.minCuisineFeedback = minCuisineFeedback;
+        this.serviceFeedback = serviceFeedback;
+        this.cuisineFeedback = cuisineFeedback;
         this.revenue = revenue;
     }
 
     public static WaiterReport getBlankReport() {
-        return new WaiterReport(null, null, null, null, null, 0, 0 , new ArrayList<>() , 0 , new ArrayList<>() , 0, 0);
+        return new WaiterReport(null, null, null, null, null, 0, 0, RatingAggregate.empty(), RatingAggregate.empty(), 0);
     }
 
     public String getLocationId() {
@@ -93,36 +87,28 @@ public class WaiterReport {
         this.ordersProcessed = ordersProcessed;
     }
 
-    public List<Double> getTotalServiceFeedback() {
-        return totalServiceFeedback;
+    public RatingAggregate getServiceFeedback() {
+        return serviceFeedback;
     }
 
-    public void setTotalServiceFeedback(List<Double> totalServiceFeedback) {
-        this.totalServiceFeedback = totalServiceFeedback;
+    public void setServiceFeedback(RatingAggregate serviceFeedback) {
+        this.serviceFeedback = serviceFeedback;
     }
 
     public double getMinServiceFeedback() {
-        return minServiceFeedback;
+        return serviceFeedback.getMin().doubleValue();
     }
 
-    public void setMinServiceFeedback(double minServiceFeedback) {
-        this.minServiceFeedback = minServiceFeedback;
+    public RatingAggregate getCuisineFeedback() {
+        return cuisineFeedback;
     }
 
-    public List<Double> getTotalCuisineFeedback() {
-        return totalCuisineFeedback;
-    }
-
-    public void setTotalCuisineFeedback(List<Double> totalCuisineFeedback) {
-        this.totalCuisineFeedback = totalCuisineFeedback;
+    public void setCuisineFeedback(RatingAggregate cuisineFeedback) {
+        this.cuisineFeedback = cuisineFeedback;
     }
 
     public double getMinCuisineFeedback() {
-        return minCuisineFeedback;
-    }
-
-    public void setMinCuisineFeedback(double minCuisineFeedback) {
-        this.minCuisineFeedback = minCuisineFeedback;
+        return cuisineFeedback.getMin().doubleValue();
     }
 
     public double getRevenue() {
@@ -137,12 +123,12 @@ public class WaiterReport {
     public boolean equals(Object o) {
         if (o == null || getClass() != o.getClass()) return false;
         WaiterReport report = (WaiterReport) o;
-        return Double.compare(hoursWorked, report.hoursWorked) == 0 && Double.compare(ordersProcessed, report.ordersProcessed) == 0 && Double.compare(minServiceFeedback, report.minServiceFeedback) == 0 && Double.compare(minCuisineFeedback, report.minCuisineFeedback) == 0 && Double.compare(revenue, report.revenue) == 0 && Objects.equals(locationId, report.locationId) && Objects.equals(waiterName, report.waiterName) && Objects.equals(waiterEmail, report.waiterEmail) && Objects.equals(startDate, report.startDate) && Objects.equals(endDate, report.endDate) && Objects.equals(totalServiceFeedback, report.totalServiceFeedback) && Objects.equals(totalCuisineFeedback, report.totalCuisineFeedback);
+        return Double.compare(hoursWorked, report.hoursWorked) == 0 && Double.compare(ordersProcessed, report.ordersProcessed) == 0 && Double.compare(revenue, report.revenue) == 0 && Objects.equals(locationId, report.locationId) && Objects.equals(waiterName, report.waiterName) && Objects.equals(waiterEmail, report.waiterEmail) && Objects.equals(startDate, report.startDate) && Objects.equals(endDate, report.endDate) && Objects.equals(serviceFeedback, report.serviceFeedback) && Objects.equals(cuisineFeedback, report.cuisineFeedback);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(locationId, waiterName, waiterEmail, startDate, endDate, hoursWorked, ordersProcessed, totalServiceFeedback, minServiceFeedback, totalCuisineFeedback, minCuisineFeedback, revenue);
+        return Objects.hash(locationId, waiterName, waiterEmail, startDate, endDate, hoursWorked, ordersProcessed, serviceFeedback, cuisineFeedback, revenue);
     }
 
     @Override
@@ -155,10 +141,8 @@ public class WaiterReport {
                 ", endDate='" + endDate + '\'' +
                 ", hoursWorked=" + hoursWorked +
                 ", ordersProcessed=" + ordersProcessed +
-                ", averageServiceFeedback=" + totalServiceFeedback +
-                ", minServiceFeedback=" + minServiceFeedback +
-                ", averageCuisineFeedback=" + totalCuisineFeedback +
-                ", minCuisineFeedback=" + minCuisineFeedback +
+                ", serviceFeedback=" + serviceFeedback +
+                ", cuisineFeedback=" + cuisineFeedback +
                 ", revenue=" + revenue +
                 '}';
     }
@@ -26,7 +26,8 @@ public class GlobalExceptionHandler extends ResponseEntityExceptionHandler {
                 || exception instanceof WaiterNotFoundException
                 || exception instanceof FeedbackNotFoundException
                 || exception instanceof UserDoesNotExistsException
-                || exception instanceof ReservationNotFoundException) {
+                || exception instanceof ReservationNotFoundException
+                || exception instanceof ReportJobNotFoundException) {
             return handleExceptionInternal(exception, Map.of("message", exception.getMessage()),
                     new HttpHeaders(),
                     HttpStatusCode.valueOf(404),
@@ -79,6 +80,7 @@ public class GlobalExceptionHandler extends ResponseEntityExceptionHandler {
                 || exception instanceof ReservationAlreadyCancelledException
                 || (exception instanceof IllegalStateException illegalStateException && exception.getMessage().contains("currently 'on stop'"))
                 || exception instanceof FeedbackAlreadyExistException
+                || exception instanceof PreOrderConflictException
                 || (exception instanceof TableNotAvailableException tableNotAvailableException && tableNotAvailableException.getHttpMethod().equalsIgnoreCase("PATCH"))
                 || exception instanceof TableAlreadyReservedException) {
             return handleExceptionInternal(exception, Map.of("message", exception.getMessage()),
@@ -98,6 +100,14 @@ public class GlobalExceptionHandler extends ResponseEntityExceptionHandler {
 
         }
 
+        if (exception instanceof ReportJobRejectedException) {
+            return handleExceptionInternal(exception, Map.of("message", exception.getMessage()),
+                    new HttpHeaders(),
+                    HttpStatusCode.valueOf(503),
+                    request
+            );
+        }
+
         if(exception instanceof HttpMessageNotReadableException){
             return handleExceptionInternal(exception, Map.of("message", exception.getMessage()),
                     new HttpHeaders(),
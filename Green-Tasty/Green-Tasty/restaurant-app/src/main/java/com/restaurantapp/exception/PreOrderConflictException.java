@@ -0,0 +1,7 @@
+package com.restaurantapp.exception;
+
+public class PreOrderConflictException extends RuntimeException {
+    public PreOrderConflictException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package com.restaurantapp.exception;
+
+public class ReportJobRejectedException extends RuntimeException {
+    public ReportJobRejectedException(String message) {
+        super(message);
+    }
+}
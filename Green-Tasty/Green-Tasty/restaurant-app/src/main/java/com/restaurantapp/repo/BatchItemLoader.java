@@ -0,0 +1,111 @@
+package com.restaurantapp.repo;
+
+import com.amazonaws.services.dynamodbv2.document.BatchGetItemOutcome;
+import com.amazonaws.services.dynamodbv2.document.DynamoDB;
+import com.amazonaws.services.dynamodbv2.document.Item;
+import com.amazonaws.services.dynamodbv2.document.TableKeysAndAttributes;
+import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Loads items of a single-key table by their partition key with {@code BatchGetItem},
+ * splitting the keys into chunks of {@value #MAX_KEYS_PER_BATCH} and re-requesting
+ * {@code UnprocessedKeys} with a short backoff until every key is answered. With an
+ * executor the chunks are requested in parallel.
+ */
+class BatchItemLoader {
+    static final int MAX_KEYS_PER_BATCH = 100;
+    private static final int MAX_ATTEMPTS = 8;
+    private static final long BASE_BACKOFF_MILLIS = 25;
+
+    private final DynamoDB dynamoDBClient;
+    private final Executor executor;
+
+    BatchItemLoader(DynamoDB dynamoDBClient) {
+        this(dynamoDBClient, null);
+    }
+
+    BatchItemLoader(DynamoDB dynamoDBClient, Executor executor) {
+        this.dynamoDBClient = dynamoDBClient;
+        this.executor = executor;
+    }
+
+    /**
+     * @param projection attributes to read; all attributes when empty
+     * @return the found items keyed by their partition key value; missing keys are absent
+     */
+    Map<String, Item> load(String tableName, String keyName, Collection<String> keys, String... projection) {
+        List<String> distinctKeys = new ArrayList<>(new LinkedHashSet<>(keys));
+        List<List<String>> chunks = new ArrayList<>();
+        for (int from = 0; from < distinctKeys.size(); from += MAX_KEYS_PER_BATCH) {
+            chunks.add(distinctKeys.subList(from, Math.min(from + MAX_KEYS_PER_BATCH, distinctKeys.size())));
+        }
+
+        Map<String, Item> items = new HashMap<>();
+        if (executor == null || chunks.size() < 2) {
+            for (List<String> chunk : chunks) {
+                items.putAll(loadChunk(tableName, keyName, chunk, projection));
+            }
+            return items;
+        }
+
+        List<CompletableFuture<Map<String, Item>>> futures = chunks.stream()
+                .map(chunk -> CompletableFuture.supplyAsync(() -> loadChunk(tableName, keyName, chunk, projection), executor))
+                .toList();
+        try {
+            for (CompletableFuture<Map<String, Item>> future : futures) {
+                items.putAll(future.join());
+            }
+        } catch (CompletionException e) {
+            futures.forEach(future -> future.cancel(true));
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            throw e;
+        }
+        return items;
+    }
+
+    private Map<String, Item> loadChunk(String tableName, String keyName, List<String> chunk, String[] projection) {
+        Map<String, Item> items = new HashMap<>();
+        TableKeysAndAttributes keysAndAttributes = new TableKeysAndAttributes(tableName)
+                .addHashOnlyPrimaryKeys(keyName, chunk.toArray());
+        if (projection.length > 0) {
+            Set<String> attributes = new LinkedHashSet<>(Arrays.asList(projection));
+            attributes.add(keyName);
+            Map<String, String> nameMap = new HashMap<>();
+            StringJoiner projectionExpression = new StringJoiner(", ");
+            for (String attribute : attributes) {
+                String placeholder = "#a" + nameMap.size();
+                nameMap.put(placeholder, attribute);
+                projectionExpression.add(placeholder);
+            }
+            keysAndAttributes.withProjectionExpression(projectionExpression.toString()).withNameMap(nameMap);
+        }
+
+        BatchGetItemOutcome outcome = dynamoDBClient.batchGetItem(keysAndAttributes);
+        for (int attempt = 1; ; attempt++) {
+            for (Item item : outcome.getTableItems().getOrDefault(tableName, List.of())) {
+                items.put(item.getString(keyName), item);
+            }
+            Map<String, KeysAndAttributes> unprocessedKeys = outcome.getUnprocessedKeys();
+            if (unprocessedKeys == null || unprocessedKeys.isEmpty()) return items;
+            if (attempt == MAX_ATTEMPTS)
+                throw new IllegalStateException("Unprocessed keys left after " + MAX_ATTEMPTS + " attempts on " + tableName);
+
+            backoff(attempt);
+            outcome = dynamoDBClient.batchGetItemUnprocessed(unprocessedKeys);
+        }
+    }
+
+    private static void backoff(int attempt) {
+        try {
+            Thread.sleep(BASE_BACKOFF_MILLIS << Math.min(attempt, 6));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while retrying unprocessed keys", e);
+        }
+    }
+}
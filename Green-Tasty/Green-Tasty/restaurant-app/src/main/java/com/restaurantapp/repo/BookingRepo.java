@@ -2,11 +2,14 @@ package com.restaurantapp.repo;
 
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.document.*;
+import com.amazonaws.services.dynamodbv2.document.spec.GetItemSpec;
 import com.amazonaws.services.dynamodbv2.document.spec.QuerySpec;
 import com.amazonaws.services.dynamodbv2.document.spec.UpdateItemSpec;
 import com.amazonaws.services.dynamodbv2.document.utils.NameMap;
 import com.amazonaws.services.dynamodbv2.document.utils.ValueMap;
 import com.amazonaws.services.dynamodbv2.model.*;
+import com.restaurantapp.cache.DishAvailabilityMatrix;
+import com.restaurantapp.cache.TableAvailabilityCache;
 import com.restaurantapp.exception.ReservationAlreadyCancelledException;
 import com.restaurantapp.exception.ReservationCancellationOrModificationException;
 import com.restaurantapp.exception.ReservationNotFoundException;
@@ -15,29 +18,42 @@ import com.restaurantapp.dto.Reservation;
 import com.restaurantapp.dto.ReservationStatus;
 import com.restaurantapp.dto.Tables;
 import com.restaurantapp.exception.*;
+import com.restaurantapp.util.DateFormatter;
+import com.restaurantapp.util.PreOrderQuantities;
+import com.restaurantapp.util.TimeSlot;
+import org.json.JSONObject;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.LocalTime;
-import java.time.format.DateTimeFormatter;
+import java.time.ZoneId;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
 
 public class BookingRepo {
+    static final String WAITER_DATE_INDEX = "waiter_email-date-index";
+    static final String CUSTOMER_DATE_INDEX = "customer_email-date-index";
+
     AmazonDynamoDB amazonDynamoDBClient;
     DynamoDB dynamoDBClient;
     Table reservationTable;
     Table tablesTable;
     Table waiterTable;
-    Table dishLocationTable;
 
     CustomerRepo customerRepo;
+    DishRepo dishRepo;
     LocationRepo locationRepo;
     WaiterRepo waiterRepo;
+    TableAvailabilityCache tableAvailabilityCache;
+    BatchItemLoader batchItemLoader;
 
+    static final String RESERVATION_START_ATTRIBUTE = "reservation_start";
+    private static final long MODIFICATION_CUTOFF_SECONDS = 30 * 60;
+    private static final int PRE_ORDER_ATTEMPTS = 3;
 
     @Autowired
     public BookingRepo(
@@ -45,21 +61,33 @@ public class BookingRepo {
             LocationRepo locationRepo,
             WaiterRepo waiterRepo,
             CustomerRepo customerRepo,
+            DishRepo dishRepo,
+            TableAvailabilityCache tableAvailabilityCache,
             String reservationTableName,
             String tablesTableName,
-            String waiterTableName,
-            String dishLocationTableName
+            String waiterTableName
     ) {
         this.amazonDynamoDBClient = amazonDynamoDBClient;
         this.dynamoDBClient = new DynamoDB(amazonDynamoDBClient);
         this.locationRepo = locationRepo;
         this.waiterRepo = waiterRepo;
         this.customerRepo = customerRepo;
+        this.dishRepo = dishRepo;
+        this.tableAvailabilityCache = tableAvailabilityCache;
 
         this.reservationTable = dynamoDBClient.getTable(reservationTableName);
         this.tablesTable = dynamoDBClient.getTable(tablesTableName);
         this.waiterTable = dynamoDBClient.getTable(waiterTableName);
-        this.dishLocationTable = dynamoDBClient.getTable(dishLocationTableName);
+        this.batchItemLoader = new BatchItemLoader(dynamoDBClient);
+    }
+
+    /**
+     * Start of the reservation as epoch seconds in the location's zone, so the
+     * modification cut-off can be checked inside a condition expression.
+     */
+    private long reservationStart(String locationId, String date, String timeSlot) throws LocationNotFoundException {
+        ZoneId zone = locationRepo.getLocationZone(locationId);
+        return TimeSlot.of(timeSlot).startOn(DateFormatter.parseDate(date)).atZone(zone).toEpochSecond();
     }
 
     public boolean isReserved(String id) throws ReservationNotFoundException {
@@ -72,17 +100,74 @@ public class BookingRepo {
         }
     }
 
+    /**
+     * Books the requested tables and inserts the reservation in one DynamoDB transaction.
+     * Every slot update is conditional on the slot currently being free, so either all
+     * tables are taken and the reservation exists, or nothing is written.
+     *
+     * @throws TimeSlotNotFoundException     if a table has no such slot on that date
+     * @throws TableAlreadyReservedException if a slot is already taken or is being booked concurrently
+     */
+    private void commitReservation(Reservation reservation, Item reservationItem) throws Exception {
+        reservationItem.withLong(RESERVATION_START_ATTRIBUTE,
+                reservationStart(reservation.getLocationId(), reservation.getDate(), reservation.getTimeSlot()));
+
+        List<TransactWriteItem> actions = new ArrayList<>();
+        for (String tableId : reservation.getTableIds()) {
+            actions.add(new TransactWriteItem().withUpdate(new Update()
+                    .withTableName(tablesTable.getTableName())
+                    .withKey(Map.of(
+                            "location_id", new AttributeValue().withS(reservation.getLocationId()),
+                            "table_number", new AttributeValue().withS(tableId + "#" + reservation.getDate())))
+                    .withUpdateExpression("SET available_slots.#slot = :booked")
+                    .withConditionExpression("available_slots.#slot = :free")
+                    .withExpressionAttributeNames(Map.of("#slot", reservation.getTimeSlot()))
+                    .withExpressionAttributeValues(Map.of(
+                            ":booked", new AttributeValue().withBOOL(false),
+                            ":free", new AttributeValue().withBOOL(true)))
+                    .withReturnValuesOnConditionCheckFailure(ReturnValuesOnConditionCheckFailure.ALL_OLD)));
+        }
+        actions.add(new TransactWriteItem().withPut(new Put()
+                .withTableName(reservationTable.getTableName())
+                .withItem(ItemUtils.toAttributeValues(reservationItem))
+                .withConditionExpression("attribute_not_exists(reservation_id)")));
+
+        try {
+            amazonDynamoDBClient.transactWriteItems(new TransactWriteItemsRequest().withTransactItems(actions));
+        } catch (TransactionCanceledException e) {
+            List<CancellationReason> reasons = e.getCancellationReasons();
+            for (int i = 0; reasons != null && i < reservation.getTableIds().size() && i < reasons.size(); i++) {
+                CancellationReason reason = reasons.get(i);
+                if ("ConditionalCheckFailed".equals(reason.getCode())) {
+                    Map<String, AttributeValue> table = reason.getItem();
+                    if (table == null || table.get("available_slots") == null
+                            || !table.get("available_slots").getM().containsKey(reservation.getTimeSlot()))
+                        throw new TimeSlotNotFoundException("Invalid date/timeslot provided.");
+                    throw new TableAlreadyReservedException("Table already reserved.");
+                }
+                if ("TransactionConflict".equals(reason.getCode()))
+                    throw new TableAlreadyReservedException("Table already reserved.");
+            }
+            throw e;
+        }
+
+        for (String tableId : reservation.getTableIds()) {
+            tableAvailabilityCache.updateSlot(reservation.getLocationId(), reservation.getDate(),
+                    tableId + "#" + reservation.getDate(), reservation.getTimeSlot(), false);
+        }
+    }
+
     public void addReservation(String customerEmail, String waiterEmail, String visitor_id, Reservation reservation) throws Exception {
         try {
             waiterEmail = waiterRepo.getLeastBusyWaiter(reservation.getLocationId(), reservation.getDate());
-            reservationTable.putItem(new Item()
+            commitReservation(reservation, new Item()
                     .withPrimaryKey("reservation_id", reservation.getId())
                     .withList("table_id", reservation.getTableIds())
                     .withString("location_id", reservation.getLocationId())
                     .withString("status", ReservationStatus.RESERVED.toString())
                     .withString("date", reservation.getDate())
                     .withString("time_slot", reservation.getTimeSlot())
-                    .withMap("pre_order", reservation.getPreOrder())
+                    .withMap("pre_order", PreOrderQuantities.toDocumentMap(reservation.getPreOrder()))
                     .withString("pre_order_state", reservation.getPreOrderState())
                     .withInt("guests_number", reservation.getGuestsNumber())
                     .withString("feedback_id", "")
@@ -93,6 +178,8 @@ public class BookingRepo {
             if (!customerEmail.isBlank())
                 waiterRepo.updateWaiterBusyCount(waiterEmail, reservation.getDate(), "customer_count", 1);
             else waiterRepo.updateWaiterBusyCount(waiterEmail, reservation.getDate(), "visitor_count", 1);
+        } catch (TimeSlotNotFoundException | TableAlreadyReservedException e) {
+            throw e;
         } catch (Exception e) {
             System.out.println(Arrays.toString(e.getStackTrace()));
             System.out.println(e.getMessage());
@@ -105,14 +192,14 @@ public class BookingRepo {
             if (!customerRepo.isCustomer(customerEmail)) throw new Exception("Customer not found");
             String userInfo;
 
-            reservationTable.putItem(new Item()
+            commitReservation(reservation, new Item()
                     .withPrimaryKey("reservation_id", reservation.getId())
                     .withList("table_id", reservation.getTableIds())
                     .withString("location_id", reservation.getLocationId())
                     .withString("status", ReservationStatus.RESERVED.toString())
                     .withString("date", reservation.getDate())
                     .withString("time_slot", reservation.getTimeSlot())
-                    .withMap("pre_order", reservation.getPreOrder())
+                    .withMap("pre_order", PreOrderQuantities.toDocumentMap(reservation.getPreOrder()))
                     .withString("pre_order_state", reservation.getPreOrderState())
                     .withInt("guests_number", reservation.getGuestsNumber())
                     .withString("feedback_id", feedbackId)
@@ -122,6 +209,8 @@ public class BookingRepo {
             waiterRepo.updateWaiterBusyCount(waiterEmail, reservation.getDate(), "customer_count", 1);
             userInfo = "Customer " + customerName;
             return userInfo;
+        } catch (TimeSlotNotFoundException | TableAlreadyReservedException e) {
+            throw e;
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -133,22 +222,29 @@ public class BookingRepo {
             String userInfo;
             String visitorId = waiterRepo.getVisitorCount(waiterEmail);
 
-            reservationTable.putItem(new Item()
-                    .withPrimaryKey("reservation_id", reservation.getId())
-                    .withList("table_id", reservation.getTableIds())
-                    .withString("location_id", reservation.getLocationId())
-                    .withString("status", ReservationStatus.RESERVED.toString())
-                    .withString("date", reservation.getDate())
-                    .withString("time_slot", reservation.getTimeSlot())
-                    .withMap("pre_order", reservation.getPreOrder())
-                    .withString("pre_order_state", reservation.getPreOrderState())
-                    .withInt("guests_number", reservation.getGuestsNumber())
-                    .withString("feedback_id", "feedbackId")
-                    .withString("visitor_id", visitorId)
-                    .withString("waiter_email", waiterEmail)
-            );
+            try {
+                commitReservation(reservation, new Item()
+                        .withPrimaryKey("reservation_id", reservation.getId())
+                        .withList("table_id", reservation.getTableIds())
+                        .withString("location_id", reservation.getLocationId())
+                        .withString("status", ReservationStatus.RESERVED.toString())
+                        .withString("date", reservation.getDate())
+                        .withString("time_slot", reservation.getTimeSlot())
+                        .withMap("pre_order", PreOrderQuantities.toDocumentMap(reservation.getPreOrder()))
+                        .withString("pre_order_state", reservation.getPreOrderState())
+                        .withInt("guests_number", reservation.getGuestsNumber())
+                        .withString("feedback_id", feedbackId)
+                        .withString("visitor_id", visitorId)
+                        .withString("waiter_email", waiterEmail)
+                );
+            } catch (TimeSlotNotFoundException | TableAlreadyReservedException e) {
+                waiterRepo.updateWaiterBusyCount(waiterEmail, reservation.getDate(), "visitor_count", -1);
+                throw e;
+            }
             userInfo = "Visitor " + visitorId;
             return userInfo;
+        } catch (TimeSlotNotFoundException | TableAlreadyReservedException e) {
+            throw e;
         } catch (Exception e) {
             System.out.println(e.getMessage());
             System.out.println(Arrays.toString(e.getStackTrace()));
@@ -157,12 +253,7 @@ public class BookingRepo {
     }
 
     public void validateBookingTime(String date, String timeSlot, LocalDateTime currentDateTime) throws ReservationBookingTimeException {
-        String[] timeParts = timeSlot.split("-");
-        String timeFrom = timeParts[0];
-
-        LocalDate reservationDate = LocalDate.parse(date, DateTimeFormatter.ofPattern("dd-MM-yyyy"));
-        LocalTime reservationStartTime = LocalTime.parse(timeFrom, DateTimeFormatter.ofPattern("HH:mm"));
-        LocalDateTime reservationDateTime = LocalDateTime.of(reservationDate, reservationStartTime);
+        LocalDateTime reservationDateTime = TimeSlot.of(timeSlot).startOn(DateFormatter.parseDate(date));
 
         long timeDifference = ChronoUnit.MINUTES.between(currentDateTime, reservationDateTime);
         if (timeDifference < 0) {
@@ -171,12 +262,7 @@ public class BookingRepo {
     }
 
     public void validateCancellationOrModificationTime(String date, String timeSlot, LocalDateTime currentDateTime) throws ReservationCancellationOrModificationException {
-        String[] timeParts = timeSlot.split("-");
-        String timeFrom = timeParts[0];
-
-        LocalDate reservationDate = LocalDate.parse(date, DateTimeFormatter.ofPattern("dd-MM-yyyy"));
-        LocalTime reservationStartTime = LocalTime.parse(timeFrom, DateTimeFormatter.ofPattern("HH:mm"));
-        LocalDateTime reservationDateTime = LocalDateTime.of(reservationDate, reservationStartTime);
+        LocalDateTime reservationDateTime = TimeSlot.of(timeSlot).startOn(DateFormatter.parseDate(date));
 
         long timeDifference = ChronoUnit.MINUTES.between(currentDateTime, reservationDateTime);
         if (timeDifference < 30) {
@@ -185,18 +271,51 @@ public class BookingRepo {
     }
 
     public void updateReservationStatus(String reservationId, String newStatus) throws Exception {
+        Item updated;
         try {
             UpdateItemSpec updateItemSpec = new UpdateItemSpec()
                     .withPrimaryKey("reservation_id", reservationId)
                     .withUpdateExpression("SET #status = :newStatus")
                     .withNameMap(new NameMap().with("#status", "status"))
-                    .withValueMap(new ValueMap().with(":newStatus", newStatus));
+                    .withValueMap(new ValueMap().with(":newStatus", newStatus))
+                    .withReturnValues(ReturnValue.ALL_NEW);
 
-            reservationTable.updateItem(updateItemSpec);
+            updated = reservationTable.updateItem(updateItemSpec).getItem();
             System.out.println("Reservation ID: " + reservationId + " status updated to: " + newStatus);
         } catch (Exception e) {
             throw new Exception("Failed to update reservation status in Reservation Table: " + e.getMessage());
         }
+
+        // A cancelled reservation no longer counts towards dish popularity, a finished one
+        // counts with what was submitted last
+        if (ReservationStatus.CANCELLED.name().equalsIgnoreCase(newStatus)) {
+            syncOrderCounts(updated, Map.of());
+        } else if (ReservationStatus.FINISHED.name().equalsIgnoreCase(newStatus)
+                && PreOrderState.SUBMITTED.name().equalsIgnoreCase(updated.getString("pre_order_state"))) {
+            syncOrderCounts(updated, PreOrderQuantities.toCounts(PreOrderQuantities.fromDocumentMap(updated.getMap("pre_order"))));
+        }
+    }
+
+    /**
+     * Counts a finished reservation's submitted pre-order towards dish popularity, for
+     * callers that finished the reservation with their own write.
+     *
+     * @param reservation the reservation attributes as read before it was finished
+     */
+    public void syncFinishedOrderCounts(Map<String, Object> reservation) {
+        Item reservationItem = Item.fromMap(reservation);
+        if (PreOrderState.SUBMITTED.name().equalsIgnoreCase(reservationItem.getString("pre_order_state"))) {
+            syncOrderCounts(reservationItem, PreOrderQuantities.toCounts(PreOrderQuantities.fromDocumentMap(reservationItem.getMap("pre_order"))));
+        }
+    }
+
+    private void syncOrderCounts(Item reservationItem, Map<String, Integer> target) {
+        Map<String, Object> counted = reservationItem.getMap("counted_pre_order");
+        dishRepo.syncOrderCounts(
+                reservationItem.getString("reservation_id"),
+                reservationItem.getString("location_id"),
+                counted == null ? null : PreOrderQuantities.toCounts(PreOrderQuantities.fromDocumentMap(counted)),
+                target);
     }
 
 
@@ -218,10 +337,11 @@ public class BookingRepo {
                     .withPrimaryKey("reservation_id", reservationId)
                     .withUpdateExpression("SET pre_order = :p, pre_order_state = :s")
                     .withValueMap(new ValueMap()
-                            .withMap(":p", preOrder)
+                            .withMap(":p", PreOrderQuantities.toDocumentMap(preOrder))
                             .withString(":s", newPreOrderState)
                     );
             reservationTable.updateItem(updateItemSpec);
+            syncOrderCounts(item, Map.of());
             return;
         }
 
@@ -238,10 +358,14 @@ public class BookingRepo {
                 .withPrimaryKey("reservation_id", reservationId)
                 .withUpdateExpression("SET pre_order = :p, pre_order_state = :s")
                 .withValueMap(new ValueMap()
-                        .withMap(":p", preOrder)
+                        .withMap(":p", PreOrderQuantities.toDocumentMap(preOrder))
                         .withString(":s", newPreOrderState)
                 );
         reservationTable.updateItem(updateItemSpec);
+
+        if (PreOrderState.SUBMITTED.name().equalsIgnoreCase(newPreOrderState)) {
+            syncOrderCounts(item, PreOrderQuantities.toCounts(preOrder));
+        }
     }
 
     private void validateStateTransition(String currentState, String newState) throws PreOrderStateChangeException {
@@ -306,6 +430,17 @@ public class BookingRepo {
             // Step 2: Throw ReservationNotFoundException if no item is found
             throw new ReservationNotFoundException("Reservation with ID " + reservationId + " not found.");
         }
+        return toReservation(reservationItem);
+    }
+
+    /**
+     * Maps reservation attributes as returned by {@link #getReservation(String)}.
+     */
+    public Reservation toReservation(Map<String, Object> reservation) {
+        return toReservation(Item.fromMap(reservation));
+    }
+
+    private static Reservation toReservation(Item reservationItem) {
         return new Reservation(reservationItem.getList("table_id"),
                 reservationItem.getString("location_id"),
                 ReservationStatus.valueOf(reservationItem.getString("status").toUpperCase()),
@@ -313,9 +448,9 @@ public class BookingRepo {
                 Integer.parseInt(reservationItem.getString("guests_number")),
                 reservationItem.getString("feedback_id"),
                 reservationItem.getString("date"),
-                reservationItem.getString("time_slot").split("-")[0],
-                reservationItem.getString("time_slot").split("-")[1],
-                reservationItem.getMap("pre_order"),
+                TimeSlot.of(reservationItem.getString("time_slot")).getTimeFrom(),
+                TimeSlot.of(reservationItem.getString("time_slot")).getTimeTo(),
+                PreOrderQuantities.fromDocumentMap(reservationItem.getMap("pre_order")),
                 reservationItem.getString("pre_order_state")
         );
     }
@@ -329,45 +464,102 @@ public class BookingRepo {
         return reservationItem.asMap();
     }
 
-    public List<Map<String, Object>> getAllReservation(String userEmail, String dateReq, String time, String tableNumber) throws Exception {
+    /**
+     * Batch variant of {@link #getReservation(String)} for list views.
+     *
+     * @param attributes the attributes to read; all attributes when empty
+     * @return reservation attributes keyed by reservation id; unknown ids are absent
+     */
+    public Map<String, Map<String, Object>> getReservations(Collection<String> reservationIds, String... attributes) {
+        Map<String, Map<String, Object>> reservations = new HashMap<>();
+        batchItemLoader.load(reservationTable.getTableName(), "reservation_id", reservationIds, attributes)
+                .forEach((reservationId, item) -> reservations.put(reservationId, item.asMap()));
+        return reservations;
+    }
+
+    /**
+     * Returns one page of the user's reservations, read through the waiter_email-date or
+     * customer_email-date index. The date filter is a key condition; time and table number
+     * are applied as filters, so the index is read past short pages until {@code pageSize}
+     * matches are collected.
+     *
+     * @param cursor opaque cursor from a previous page, or null for the first page
+     * @return a map with "content" (the reservations) and "nextCursor" (null on the last page)
+     */
+    public Map<String, Object> getAllReservation(String userEmail, String dateReq, String time, String tableNumber,
+                                                 String cursor, int pageSize) throws Exception {
+        boolean isWaiter = waiterRepo.isWaiter(userEmail);
+        String userKey = isWaiter ? "waiter_email" : "customer_email";
+        Map<String, AttributeValue> exclusiveStartKey = decodeReservationCursor(cursor, userKey);
         try {
             Map<String, AttributeValue> expressionAttributeValues = new HashMap<>();
-            StringBuilder filter = new StringBuilder();
-            Map<String, String> expressionAttributeNames = null;
+            Map<String, String> expressionAttributeNames = new HashMap<>();
+            StringBuilder keyCondition = new StringBuilder("#userKey = :user_email");
+            List<String> filters = new ArrayList<>();
+            expressionAttributeNames.put("#userKey", userKey);
+            expressionAttributeValues.put(":user_email", new AttributeValue().withS(userEmail));
+            if (dateReq != null) {
+                expressionAttributeValues.put(":dateReq", new AttributeValue().withS(dateReq));
+                expressionAttributeNames.put("#dateAlias", "date");
+                keyCondition.append(" AND #dateAlias = :dateReq");
+            }
+            if (tableNumber != null) {
+                expressionAttributeValues.put(":table_num", new AttributeValue().withS(tableNumber));
+                filters.add("contains(table_id, :table_num)");
+            }
+            if (time != null) {
+                expressionAttributeValues.put(":time", new AttributeValue().withS(time));
+                filters.add("begins_with(time_slot, :time)");
+            }
+
             String waiterName = "";
-            if (waiterRepo.isWaiter(userEmail)) {
-                expressionAttributeValues.put(":waiter_email", new AttributeValue().withS(userEmail));
-                filter.append("waiter_email = :waiter_email");
-                if (dateReq != null) {
-                    expressionAttributeValues.put(":dateReq", new AttributeValue().withS(dateReq));
-                    filter.append(" AND #dateAlias = :dateReq");
-                    expressionAttributeNames = Map.of("#dateAlias", "date");
-                }
-                if (tableNumber != null) {
-                    expressionAttributeValues.put(":table_num", new AttributeValue().withS(tableNumber));
-                    filter.append(" AND contains(table_id, :table_num)");
-                }
-                if (time != null) {
-                    expressionAttributeValues.put(":time", new AttributeValue().withS(time));
-                    filter.append(" AND begins_with(time_slot, :time)");
-                }
+            if (isWaiter) {
                 Map<String, Object> waiterDetails = waiterRepo.getWaiterDetails(userEmail);
                 waiterName = waiterDetails.get("first_name") + " " + waiterDetails.get("last_name");
-            } else {
-                expressionAttributeValues = Map.of(":customer_email", new AttributeValue().withS(userEmail));
-                filter.append("customer_email = :customer_email");
             }
-            ScanRequest scanRequest = new ScanRequest()
-                    .withTableName(reservationTable.getTableName())
-                    .withFilterExpression(filter.toString())
-                    .withExpressionAttributeNames(expressionAttributeNames)
-                    .withExpressionAttributeValues(expressionAttributeValues);
-
-            ScanResult scanResult = amazonDynamoDBClient.scan(scanRequest);
-            List<Map<String, AttributeValue>> items = scanResult.getItems();
-            List<Map<String, Object>> reservations = new ArrayList<>();
 
+            List<Map<String, AttributeValue>> items = new ArrayList<>();
+            Map<String, AttributeValue> lastEvaluatedKey = exclusiveStartKey;
+            String nextCursor = null;
+            do {
+                QueryRequest queryRequest = new QueryRequest()
+                        .withTableName(reservationTable.getTableName())
+                        .withIndexName(isWaiter ? WAITER_DATE_INDEX : CUSTOMER_DATE_INDEX)
+                        .withKeyConditionExpression(keyCondition.toString())
+                        .withExpressionAttributeNames(expressionAttributeNames)
+                        .withExpressionAttributeValues(expressionAttributeValues)
+                        .withLimit(pageSize)
+                        .withExclusiveStartKey(lastEvaluatedKey);
+                if (!filters.isEmpty()) queryRequest.withFilterExpression(String.join(" AND ", filters));
+
+                QueryResult queryResult = amazonDynamoDBClient.query(queryRequest);
+                for (Map<String, AttributeValue> item : queryResult.getItems()) {
+                    if (items.size() == pageSize) {
+                        nextCursor = encodeReservationCursor(items.get(items.size() - 1), userKey);
+                        break;
+                    }
+                    items.add(item);
+                }
+                lastEvaluatedKey = queryResult.getLastEvaluatedKey();
+                if (nextCursor == null && items.size() == pageSize && lastEvaluatedKey != null && !lastEvaluatedKey.isEmpty())
+                    nextCursor = encodeReservationCursor(items.get(items.size() - 1), userKey);
+            } while (nextCursor == null && items.size() < pageSize && lastEvaluatedKey != null && !lastEvaluatedKey.isEmpty());
+
+            // Resolve everything the rows refer to once per page instead of once per row.
+            boolean isCustomer = customerRepo.isCustomer(userEmail);
+            Set<String> locationIds = new HashSet<>();
+            Set<String> customerEmails = new HashSet<>();
+            for (Map<String, AttributeValue> item : items) {
+                locationIds.add(item.get("location_id").getS());
+                if (!waiterName.isBlank() && item.containsKey("customer_email"))
+                    customerEmails.add(item.get("customer_email").getS());
+            }
+            Map<String, String> locationAddresses = locationIds.isEmpty()
+                    ? Map.of() : locationRepo.getLocationAddresses(locationIds);
+            Map<String, Map<String, Object>> customers = customerEmails.isEmpty()
+                    ? Map.of() : customerRepo.getCustomersDetails(customerEmails);
 
+            List<Map<String, Object>> reservations = new ArrayList<>();
             for (Map<String, AttributeValue> item : items) {
                 Map<String, String> preOrder = new HashMap<>();
                 String id = item.get("reservation_id").getS();
@@ -378,7 +570,9 @@ public class BookingRepo {
                 if (!waiterName.isBlank()) {
                     if (item.containsKey("customer_email")) {
                         String customerEmail = item.get("customer_email").getS();
-                        Map<String, Object> customerDetails = customerRepo.getCustomerDetails(customerEmail);
+                        Map<String, Object> customerDetails = customers.get(customerEmail);
+                        if (customerDetails == null)
+                            throw new UserDoesNotExistsException("Customer with email " + customerEmail + " not found.");
                         customerName = customerDetails.get("first_name").toString() + " " + customerDetails.get("last_name").toString();
                     } else {
                         visitor = item.get("visitor_id").getS();
@@ -387,12 +581,9 @@ public class BookingRepo {
 
                 int guestNumber = Integer.parseInt(item.get("guests_number").getN());
                 String feedbackId = item.get("feedback_id").getS();
-                String locationAddress = locationRepo.getLocationAddress(item.get("location_id").getS());
+                String locationAddress = locationAddresses.get(item.get("location_id").getS());
                 String preOrderState = item.get("pre_order_state").getS();
-                Map<String, AttributeValue> preOrderMap = item.get("pre_order").getM();
-                for (Map.Entry<String, AttributeValue> entry : preOrderMap.entrySet()) {
-                    preOrder.put(entry.getKey(), entry.getValue().getS());
-                }
+                preOrder.putAll(PreOrderQuantities.fromAttributeMap(item.get("pre_order").getM()));
                 String waiterEmail = item.get("waiter_email").getS();
                 List<String> tables = item.get("table_id").getL()
                         .stream()
@@ -410,7 +601,7 @@ public class BookingRepo {
                 reservationDetails.put("locationAddress", locationAddress);
                 reservationDetails.put("waiterEmail", waiterEmail);
                 reservationDetails.put("preOrderState", preOrderState);
-                if (customerRepo.isCustomer(userEmail)) {
+                if (isCustomer) {
                     reservationDetails.put("tableNumber", tables);
                     reservations.add(reservationDetails);
                 } else if (!customerName.isBlank()) {
@@ -427,12 +618,36 @@ public class BookingRepo {
                     reservations.add(reservationDetails);
                 }
             }
-            return reservations;
+            Map<String, Object> page = new HashMap<>();
+            page.put("content", reservations);
+            page.put("nextCursor", nextCursor);
+            return page;
         } catch (Exception e) {
             throw new Exception("Error fetching reservations from DynamoDB: " + e.getMessage());
         }
     }
 
+    private static String encodeReservationCursor(Map<String, AttributeValue> item, String userKey) {
+        JSONObject key = new JSONObject()
+                .put("reservation_id", item.get("reservation_id").getS())
+                .put("date", item.get("date").getS())
+                .put(userKey, item.get(userKey).getS());
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(key.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Map<String, AttributeValue> decodeReservationCursor(String cursor, String userKey) {
+        if (cursor == null || cursor.isBlank()) return null;
+        try {
+            JSONObject key = new JSONObject(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+            return Map.of(
+                    "reservation_id", new AttributeValue().withS(key.getString("reservation_id")),
+                    "date", new AttributeValue().withS(key.getString("date")),
+                    userKey, new AttributeValue().withS(key.getString(userKey)));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor provided.");
+        }
+    }
+
     public List<Map<String, Object>> getAllReservationWithReservedStatus(String customerEmail) throws Exception {
         // This returns a D.S which has only the fields required for CartResponse.
         //            ScanRequest scanRequest = new ScanRequest()
@@ -463,6 +678,10 @@ public class BookingRepo {
             QueryResult response = amazonDynamoDBClient.query(queryRequest);
 
             List<Map<String, AttributeValue>> items = response.getItems();
+            Set<String> locationIds = new HashSet<>();
+            for (Map<String, AttributeValue> item : items) locationIds.add(item.get("location_id").getS());
+            Map<String, String> locationAddresses = locationIds.isEmpty()
+                    ? Map.of() : locationRepo.getLocationAddresses(locationIds);
 
             List<Map<String, Object>> reservations = new ArrayList<>();
 
@@ -471,12 +690,9 @@ public class BookingRepo {
                 String id = item.get("reservation_id").getS();
                 String timeSlot = item.get("time_slot").getS();
                 String date = item.get("date").getS();
-                String locationAddress = locationRepo.getLocationAddress(item.get("location_id").getS());
+                String locationAddress = locationAddresses.get(item.get("location_id").getS());
                 String preOrderState = item.get("pre_order_state").getS();
-                Map<String, AttributeValue> preOrderMap = item.get("pre_order").getM();
-                for (Map.Entry<String, AttributeValue> entry : preOrderMap.entrySet()) {
-                    preOrder.put(entry.getKey(), entry.getValue().getS());
-                }
+                preOrder.putAll(PreOrderQuantities.fromAttributeMap(item.get("pre_order").getM()));
 
                 Map<String, Object> reservationDetails = new HashMap<>();
                 reservationDetails.put("reservationId", id);
@@ -498,80 +714,143 @@ public class BookingRepo {
 
     }
 
-    public void addDishToCartForReservation(String reservationId, String dishId, LocalDateTime currentDateTime) throws ReservationNotFoundException,IllegalStateException, ReservationCancellationOrModificationException, RuntimeException {
-        try {
-            // Retrieve the reservation by ID
-            Item reservationItem = reservationTable.getItem("reservation_id", reservationId);
-            if (reservationItem == null) {
+    /**
+     * Adds one portion of a dish to the pre-order. The reservation's location is read first
+     * so dish availability can be checked before anything is written; the quantity is then
+     * incremented with a single conditional update. The status, the 30 minute modification
+     * cut-off and the location are checked by the condition expression.
+     * <p>
+     * Reservations written before quantities were numeric are migrated on their first add.
+     * An add that keeps losing to concurrent changes gives up after
+     * {@value #PRE_ORDER_ATTEMPTS} attempts.
+     */
+    public void addDishToCartForReservation(String reservationId, String dishId, Instant now) throws ReservationNotFoundException, IllegalStateException, ReservationCancellationOrModificationException, RuntimeException {
+        for (int attempt = 0; attempt < PRE_ORDER_ATTEMPTS; attempt++) {
+            Item reservation = reservationTable.getItem(new GetItemSpec()
+                    .withPrimaryKey("reservation_id", reservationId)
+                    .withProjectionExpression("location_id"));
+            if (reservation == null)
                 throw new ReservationNotFoundException("Reservation with ID " + reservationId + " not found.");
+            String locationId = reservation.getString("location_id");
+            ensureDishAvailable(locationId, dishId);
+
+            try {
+                incrementPreOrderQuantity(reservationId, dishId, locationId, now);
+                return;
+            } catch (ConditionalCheckFailedException e) {
+                Map<String, AttributeValue> item = e.getItem();
+                if (item == null)
+                    throw new ReservationNotFoundException("Reservation with ID " + reservationId + " not found.");
+                ensureOpenForPreOrder(item.get("status").getS());
+                if (!locationId.equals(item.get("location_id").getS())) continue;
+                if (!item.containsKey(RESERVATION_START_ATTRIBUTE)) {
+                    if (addDishToLegacyReservation(reservationId, dishId, now)) return;
+                    continue;
+                }
+                throw new ReservationCancellationOrModificationException("Cancellation or Modification is only allowed up to 30 minutes or more before the reservation start time.");
+            } catch (AmazonDynamoDBException e) {
+                // String quantities or a missing pre_order map cannot be incremented in place
+                if (!"ValidationException".equals(e.getErrorCode()))
+                    throw new RuntimeException("Failed to add dish to reservation: " + e.getMessage(), e);
+                if (addDishToLegacyReservation(reservationId, dishId, now)) return;
             }
+        }
+        throw new PreOrderConflictException("The reservation was changed concurrently, please try adding the dish again.");
+    }
 
-            // Check the reservation status
-            String status = reservationItem.getString("status").toUpperCase();
-            if (ReservationStatus.CANCELLED.name().equals(status)
-                    || ReservationStatus.FINISHED.name().equals(status)
-                    || ReservationStatus.PENDING_REVIEW.name().equals(status)) {
-                throw new IllegalStateException("Cannot add dish to a reservation that is " + status.toLowerCase() + ".");
-            }
-
-            String locationId = reservationItem.getString("location_id"); // Extract locationId from reservation
-
-            Item dishLocationItem = dishLocationTable.getItem("location_id", locationId, "dish_id", dishId);
-            if (dishLocationItem == null) {
-                throw new IllegalStateException("Dish with ID " + dishId + " is not available for location ID " + locationId + ".");
-            }
-
-            String availability = dishLocationItem.getString("availability"); // Retrieve availability
-            if ("on stop".equalsIgnoreCase(availability)) {
-                throw new IllegalStateException("Dish with ID " + dishId + " is currently 'on stop' and cannot be added to the preorder.");
-            }
+    private void incrementPreOrderQuantity(String reservationId, String dishId, String locationId, Instant now) {
+        amazonDynamoDBClient.updateItem(new UpdateItemRequest()
+                .withTableName(reservationTable.getTableName())
+                .withKey(Map.of("reservation_id", new AttributeValue().withS(reservationId)))
+                .withUpdateExpression("SET pre_order.#dish = if_not_exists(pre_order.#dish, :zero) + :one, pre_order_state = :unsubmitted")
+                .withConditionExpression("NOT (#status IN (:cancelled, :finished, :pendingReview)) AND #start >= :cutoff AND location_id = :loc")
+                .withExpressionAttributeNames(Map.of(
+                        "#dish", dishId,
+                        "#status", "status",
+                        "#start", RESERVATION_START_ATTRIBUTE))
+                .withExpressionAttributeValues(Map.of(
+                        ":zero", new AttributeValue().withN("0"),
+                        ":one", new AttributeValue().withN("1"),
+                        ":unsubmitted", new AttributeValue().withS(PreOrderState.UNSUBMITTED.name()),
+                        ":cancelled", new AttributeValue().withS(ReservationStatus.CANCELLED.name()),
+                        ":finished", new AttributeValue().withS(ReservationStatus.FINISHED.name()),
+                        ":pendingReview", new AttributeValue().withS(ReservationStatus.PENDING_REVIEW.name()),
+                        ":cutoff", new AttributeValue().withN(String.valueOf(now.getEpochSecond() + MODIFICATION_CUTOFF_SECONDS)),
+                        ":loc", new AttributeValue().withS(locationId)))
+                .withReturnValuesOnConditionCheckFailure(ReturnValuesOnConditionCheckFailure.ALL_OLD));
+    }
 
-            // Step 3: Validate time to allow dish addition using cancellation time logic
-            String timeSlot = reservationItem.getString("time_slot"); // Extract time slot from reservation
-            String date = reservationItem.getString("date"); // Extract date from reservation
-            validateCancellationOrModificationTime(date, timeSlot, currentDateTime);
+    /**
+     * Read-modify-write for reservations that still hold string quantities or have no
+     * {@code reservation_start}; rewrites the quantities as numbers and stores the start so
+     * later adds take the single-update path. Conditional on the pre-order being unchanged
+     * since it was read.
+     *
+     * @return false if another add changed the pre-order in between and nothing was written
+     */
+    private boolean addDishToLegacyReservation(String reservationId, String dishId, Instant now) throws ReservationNotFoundException, ReservationCancellationOrModificationException {
+        Item reservationItem = reservationTable.getItem("reservation_id", reservationId);
+        if (reservationItem == null) {
+            throw new ReservationNotFoundException("Reservation with ID " + reservationId + " not found.");
+        }
+        ensureOpenForPreOrder(reservationItem.getString("status"));
 
-            // Retrieve the current pre-order map
-            Map<String, String> preOrder = reservationItem.getMap("pre_order");
-            if (preOrder == null) { // Initialize the map if it doesn't exist
-                preOrder = new HashMap<>();
-            }
+        String locationId = reservationItem.getString("location_id");
+        ensureDishAvailable(locationId, dishId);
 
-            // Increment or add dish count
-            preOrder.put(dishId, String.valueOf(Integer.parseInt(preOrder.getOrDefault(dishId, "0")) + 1));
+        long reservationStart;
+        try {
+            reservationStart = reservationStart(locationId, reservationItem.getString("date"), reservationItem.getString("time_slot"));
+        } catch (LocationNotFoundException e) {
+            throw new RuntimeException("Failed to add dish to reservation: " + e.getMessage(), e);
+        }
+        if (reservationStart - now.getEpochSecond() < MODIFICATION_CUTOFF_SECONDS) {
+            throw new ReservationCancellationOrModificationException("Cancellation or Modification is only allowed up to 30 minutes or more before the reservation start time.");
+        }
 
-            String preOrderState = reservationItem.getString("pre_order_state");
-            preOrderState = "UNSUBMITTED"; // Set state to UNSUBMITTED
+        Map<String, Object> storedPreOrder = reservationItem.getMap("pre_order");
+        Map<String, String> preOrder = PreOrderQuantities.fromDocumentMap(storedPreOrder);
+        preOrder.merge(dishId, "1", (quantity, one) -> String.valueOf(Integer.parseInt(quantity.trim()) + 1));
 
-            // Build the UpdateItemSpec to update both pre_order and pre_order_state fields in DynamoDB
-            UpdateItemSpec updateItemSpec = new UpdateItemSpec()
+        ValueMap values = new ValueMap()
+                .withMap(":p", PreOrderQuantities.toDocumentMap(preOrder))
+                .withString(":s", PreOrderState.UNSUBMITTED.name())
+                .withLong(":start", reservationStart);
+        if (storedPreOrder != null) values.withMap(":previous", storedPreOrder);
+        try {
+            reservationTable.updateItem(new UpdateItemSpec()
                     .withPrimaryKey("reservation_id", reservationId)
-                    .withUpdateExpression("SET #preOrder = :preOrder, #preOrderState = :preOrderState") // Update both fields
-                    .withNameMap(new NameMap()
-                            .with("#preOrder", "pre_order")
-                            .with("#preOrderState", "pre_order_state")) // Map the attribute names
-                    .withValueMap(new ValueMap()
-                            .withMap(":preOrder", preOrder) // Provide preOrder map for the update
-                            .withString(":preOrderState", preOrderState)); // Provide preOrderState value for the update
+                    .withUpdateExpression("SET pre_order = :p, pre_order_state = :s, #start = :start")
+                    .withConditionExpression(storedPreOrder == null ? "attribute_not_exists(pre_order)" : "pre_order = :previous")
+                    .withNameMap(new NameMap().with("#start", RESERVATION_START_ATTRIBUTE))
+                    .withValueMap(values));
+            return true;
+        } catch (ConditionalCheckFailedException e) {
+            // Another add changed the pre-order in between
+            return false;
+        }
+    }
 
-            reservationTable.updateItem(updateItemSpec);
+    private void ensureOpenForPreOrder(String status) {
+        String normalized = status.toUpperCase();
+        if (ReservationStatus.CANCELLED.name().equals(normalized)
+                || ReservationStatus.FINISHED.name().equals(normalized)
+                || ReservationStatus.PENDING_REVIEW.name().equals(normalized)) {
+            throw new IllegalStateException("Cannot add dish to a reservation that is " + normalized.toLowerCase() + ".");
+        }
+    }
 
-        } catch (IllegalStateException e) {
-            // For invalid reservation state
-            throw e;
-        } catch (ReservationNotFoundException e) {
-            // For reservation not found
-            throw e;
-        } catch (ReservationCancellationOrModificationException e) {
-            // For time-based restriction checks
-            throw e;
-        } catch (RuntimeException e) {
-            // Generic exception handling
-            throw new RuntimeException("Failed to add dish to reservation: " + e.getMessage(), e);
+    private void ensureDishAvailable(String locationId, String dishId) {
+        DishAvailabilityMatrix matrix = dishRepo.getAvailabilityMatrix();
+        if (!matrix.isOffered(locationId, dishId)) {
+            throw new IllegalStateException("Dish with ID " + dishId + " is not available for location ID " + locationId + ".");
+        }
+        if (matrix.isOnStop(locationId, dishId)) {
+            throw new IllegalStateException("Dish with ID " + dishId + " is currently 'on stop' and cannot be added to the preorder.");
         }
     }
 
-    public void editReservation(List<Tables> tableList, String reservationId, String timeSlot, int guestsNumber, LocalDateTime currentTime) throws TableNotAvailableException, ReservationNotFoundException, ReservationBookingTimeException, ReservationCancellationOrModificationException, ReservationAlreadyCancelledException {
+    public void editReservation(List<Tables> tableList, String reservationId, String timeSlot, int guestsNumber, LocalDateTime currentTime) throws TableNotAvailableException, ReservationNotFoundException, ReservationBookingTimeException, ReservationCancellationOrModificationException, ReservationAlreadyCancelledException, LocationNotFoundException {
         Reservation reservationDetails = getReservationById(reservationId);
         validateCancellationOrModificationTime(reservationDetails.getDate(), reservationDetails.getTimeSlot(), currentTime);
         validateBookingTime(reservationDetails.getDate(), reservationDetails.getTimeSlot(), currentTime);
@@ -600,45 +879,19 @@ public class BookingRepo {
             tableId.add(tableList.get(0).getTableNumber().split("#")[0]);
             UpdateItemSpec updateItemSpec = new UpdateItemSpec()
                     .withPrimaryKey("reservation_id", reservationId)
-                    .withUpdateExpression("set table_id = :t, time_slot = :ts, guests_number = :g")
+                    .withUpdateExpression("set table_id = :t, time_slot = :ts, guests_number = :g, #start = :start")
+                    .withNameMap(new NameMap().with("#start", RESERVATION_START_ATTRIBUTE))
                     .withValueMap(new ValueMap()
                             .withList(":t", tableId)
                             .withString(":ts", timeSlot)
-                            .withNumber(":g", guestsNumber))
+                            .withNumber(":g", guestsNumber)
+                            .withLong(":start", reservationStart(reservationDetails.getLocationId(), reservationDetails.getDate(), timeSlot)))
                     .withReturnValues(ReturnValue.UPDATED_NEW);
 
             reservationTable.updateItem(updateItemSpec);
         }
     }
 
-    public void updateReservationFeedback(String reservationId, String feedbackId) throws RuntimeException {
-        try {
-            Item reservationItem = reservationTable.getItem("reservation_id", reservationId);
-
-            UpdateItemSpec updateItemSpec = new UpdateItemSpec()
-                    .withPrimaryKey("reservation_id", reservationId)
-                    .withUpdateExpression("set feedback_id= :f")
-                    .withValueMap(new ValueMap()
-                            .withString(":f", feedbackId))
-                    .withReturnValues(ReturnValue.UPDATED_NEW);
-            reservationTable.updateItem(updateItemSpec);
-
-        } catch (RuntimeException e) {
-            throw new RuntimeException("Error updating the feedbackId in reservation table: " + e.getMessage());
-
-        }
-    }
-
-    public boolean feedbackExistsByReservationId(String reservationId) {
-        Item reservationItem = reservationTable.getItem("reservation_id", reservationId);
-        String existingFeedbackId = reservationItem.getString("feedback_id");
-        if (!existingFeedbackId.isEmpty()) {
-            return true;
-        }
-        return false;
-    }
-
-
     public String getWaiterEmailByReservationId(String reservationId) throws ReservationNotFoundException, RuntimeException {
         try {
             // Retrieve the reservation from the Reservation Table using reservationId
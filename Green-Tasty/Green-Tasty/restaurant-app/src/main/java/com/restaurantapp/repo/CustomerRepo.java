@@ -15,10 +15,12 @@ import java.util.*;
 public class CustomerRepo {
     DynamoDB dynamoDBClient;
     Table customerTable;
+    BatchItemLoader batchItemLoader;
 
     public CustomerRepo(DynamoDB dynamoDBClient, String customerTableName){
         this.dynamoDBClient = dynamoDBClient;
         this.customerTable = dynamoDBClient.getTable(customerTableName);
+        this.batchItemLoader = new BatchItemLoader(dynamoDBClient);
     }
 
     public boolean isCustomer(String email) throws Exception {
@@ -51,6 +53,18 @@ public class CustomerRepo {
         return item.asMap();
     }
 
+    /**
+     * Batch variant of {@link #getCustomerDetails(String)} for list views.
+     *
+     * @return customer attributes keyed by email; unknown emails are absent
+     */
+    public Map<String, Map<String, Object>> getCustomersDetails(Collection<String> emails) {
+        Map<String, Map<String, Object>> customers = new HashMap<>();
+        batchItemLoader.load(customerTable.getTableName(), "email", emails, "first_name", "last_name", "image_url")
+                .forEach((email, item) -> customers.put(email, item.asMap()));
+        return customers;
+    }
+
     public List<Map<String, String>> getAllCustomers() throws RuntimeException {
         try {
             ItemCollection<ScanOutcome> items = customerTable.scan();
@@ -0,0 +1,35 @@
+package com.restaurantapp.repo;
+
+import com.amazonaws.services.dynamodbv2.document.DynamoDB;
+import com.amazonaws.services.dynamodbv2.document.Item;
+
+import java.util.*;
+import java.util.concurrent.Executor;
+
+/**
+ * Fetches dish details for a set of dish ids in as few round trips as possible: ids are
+ * deduplicated and read with projected {@code BatchGetItem} calls of up to 100 keys, which
+ * run in parallel when there is more than one.
+ */
+public class DishHydrator {
+    private final BatchItemLoader batchItemLoader;
+    private final String dishTableName;
+
+    public DishHydrator(DynamoDB dynamoDBClient, Executor executor, String dishTableName) {
+        this.batchItemLoader = new BatchItemLoader(dynamoDBClient, executor);
+        this.dishTableName = dishTableName;
+    }
+
+    /**
+     * @param attributes the dish attributes to read; all attributes when empty
+     * @return attribute maps keyed by dish id; ids without a dish are absent
+     */
+    public Map<String, Map<String, Object>> getDishes(Collection<String> dishIds, String... attributes) {
+        if (dishIds.isEmpty()) return Map.of();
+        Map<String, Map<String, Object>> dishes = new HashMap<>();
+        for (Map.Entry<String, Item> entry : batchItemLoader.load(dishTableName, "id", dishIds, attributes).entrySet()) {
+            dishes.put(entry.getKey(), entry.getValue().asMap());
+        }
+        return dishes;
+    }
+}
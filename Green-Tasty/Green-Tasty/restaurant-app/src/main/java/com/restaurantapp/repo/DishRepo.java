@@ -2,21 +2,25 @@ package com.restaurantapp.repo;
 
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.document.*;
-import com.amazonaws.services.dynamodbv2.document.spec.GetItemSpec;
 import com.amazonaws.services.dynamodbv2.document.spec.QuerySpec;
+import com.amazonaws.services.dynamodbv2.document.spec.UpdateItemSpec;
 import com.amazonaws.services.dynamodbv2.document.utils.ValueMap;
-import com.amazonaws.services.dynamodbv2.model.AttributeValue;
-import com.amazonaws.services.dynamodbv2.model.ScanRequest;
-import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.amazonaws.services.dynamodbv2.model.*;
+import com.restaurantapp.cache.DishAvailabilityMatrix;
+import com.restaurantapp.cache.MenuSnapshot;
+import com.restaurantapp.cache.PopularDishIndex;
 import com.restaurantapp.dto.Dish;
 import com.restaurantapp.exception.DishNotFoundException;
 import com.restaurantapp.exception.ReservationNotFoundException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
 
 public class DishRepo {
     AmazonDynamoDB amazonDynamoDBClient;
@@ -25,9 +29,21 @@ public class DishRepo {
     Table reservationTable;
     Table dishLocationTable;
 
+    private final AtomicLong menuVersion = new AtomicLong();
+    private volatile MenuSnapshot menuSnapshot;
+    private volatile DishAvailabilityMatrix availabilityMatrix;
+    PopularDishIndex popularDishIndex;
+    DishHydrator dishHydrator;
+
+    static final int POPULAR_DISHES_LIMIT = 20;
+    private static final int MAX_TRANSACTION_ITEMS = 100;
+    private static final Logger logger = LoggerFactory.getLogger(DishRepo.class);
+
     @Autowired
     public DishRepo(
             AmazonDynamoDB amazonDynamoDBClient,
+            PopularDishIndex popularDishIndex,
+            DishHydrator dishHydrator,
             String dishTableName,
             String reservationTableName,
             String dishLocationTableName
@@ -37,26 +53,32 @@ public class DishRepo {
         this.dishTable = dynamoDBClient.getTable(dishTableName);
         this.reservationTable = dynamoDBClient.getTable(reservationTableName);
         this.dishLocationTable = dynamoDBClient.getTable(dishLocationTableName);
+        this.popularDishIndex = popularDishIndex;
+        this.dishHydrator = dishHydrator;
     }
 
     // getting popular dishes
-    public List<Map<String, Object>> getPopularDishes() throws DishNotFoundException {
-        ItemCollection<ScanOutcome> items = dishTable.scan();
-
-        List<Map<String, Object>> popularDishes = StreamSupport.stream(items.spliterator(), false)
-                .map(item -> Map.of(
-                        "name", item.getString("name"),
-                        "price", item.getString("price"),
-                        "weight", item.getString("weight"),
-                        "imageUrl", item.getString("imageUrl"),
-                        "orderCount", (Object) item.getInt("orderCount")
-                ))
-                .sorted((dish1, dish2) -> Integer.compare(
-                        Integer.parseInt(dish2.get("orderCount").toString()),
-                        Integer.parseInt(dish1.get("orderCount").toString())
-                ))
-                .limit(20)
-                .collect(Collectors.toList());
+    public List<Map<String, Object>> getPopularDishes(String locationId) throws DishNotFoundException {
+        MenuSnapshot snapshot = getMenuSnapshot();
+        String scope = locationId == null || locationId.isBlank() ? PopularDishIndex.GLOBAL : locationId;
+        // Only locations that offer dishes get a ranking, so unknown ids are not cached
+        if (!PopularDishIndex.GLOBAL.equals(scope) && !getAvailabilityMatrix().hasLocation(scope)) {
+            throw new DishNotFoundException("No popular dishes were found in the database.");
+        }
+        List<Map.Entry<String, Long>> ranking = popularDishIndex.top(scope, POPULAR_DISHES_LIMIT);
+        if (ranking == null) {
+            loadLocationOrderCounts(scope);
+            ranking = popularDishIndex.top(scope, POPULAR_DISHES_LIMIT);
+        }
+
+        List<Map<String, Object>> popularDishes = new ArrayList<>(ranking.size());
+        for (Map.Entry<String, Long> entry : ranking) {
+            Map<String, Object> view = snapshot.getPopularView(entry.getKey());
+            if (view == null) continue;
+            Map<String, Object> dish = new HashMap<>(view);
+            dish.put("orderCount", entry.getValue().intValue());
+            popularDishes.add(dish);
+        }
 
         if (popularDishes.isEmpty()) {
             throw new DishNotFoundException("No popular dishes were found in the database.");
@@ -65,6 +87,211 @@ public class DishRepo {
         return popularDishes;
     }
 
+    private void loadLocationOrderCounts(String locationId) {
+        ItemCollection<QueryOutcome> items = dishLocationTable.query(new QuerySpec()
+                .withKeyConditionExpression("location_id = :v_location")
+                .withProjectionExpression("dish_id, orderCount")
+                .withValueMap(new ValueMap().withString(":v_location", locationId)));
+
+        Map<String, Long> orderCounts = new HashMap<>();
+        for (Item item : items) {
+            orderCounts.put(item.getString("dish_id"), item.isPresent("orderCount") ? item.getLong("orderCount") : 0L);
+        }
+        popularDishIndex.load(locationId, orderCounts);
+    }
+
+    /**
+     * Moves the order counts of the reservation's dishes from what was counted for it before
+     * ({@code counted}, {@code null} if nothing was recorded) to {@code target}.
+     * <p>
+     * The per-dish deltas are added to {@code orderCount} of the Dish and DishLocation items
+     * in one transaction with the reservation's {@code counted_pre_order}, which is
+     * conditional on still holding {@code counted}; concurrent or repeated calls therefore
+     * never count a dish twice. Failures are logged and left to the next sync of the
+     * reservation, which starts again from the stored {@code counted_pre_order}.
+     */
+    public void syncOrderCounts(String reservationId, String locationId, Map<String, Integer> counted, Map<String, Integer> target) {
+        Map<String, Integer> previous = counted == null ? Map.of() : counted;
+        Map<String, Integer> deltas = new TreeMap<>();
+        Set<String> dishIds = new HashSet<>(previous.keySet());
+        dishIds.addAll(target.keySet());
+        for (String dishId : dishIds) {
+            int delta = target.getOrDefault(dishId, 0) - previous.getOrDefault(dishId, 0);
+            if (delta != 0) deltas.put(dishId, delta);
+        }
+        if (deltas.isEmpty()) return;
+        if (1 + 2 * deltas.size() > MAX_TRANSACTION_ITEMS) {
+            logger.warn("Order counts of reservation {} not synced: {} dishes exceed one transaction", reservationId, deltas.size());
+            return;
+        }
+
+        try {
+            applyOrderCountDeltas(reservationId, locationId, counted, target, deltas);
+        } catch (TransactionCanceledException e) {
+            // Dishes removed from the menu or the location fail their condition; count the rest
+            List<CancellationReason> reasons = e.getCancellationReasons();
+            if (reasons == null || !"None".equals(reasons.get(0).getCode())) {
+                logger.info("Order counts of reservation {} not synced: {}", reservationId, e.getMessage());
+                return;
+            }
+            List<String> orderedDishIds = new ArrayList<>(deltas.keySet());
+            for (int i = 1; i < reasons.size(); i++) {
+                if ("ConditionalCheckFailed".equals(reasons.get(i).getCode())) deltas.remove(orderedDishIds.get((i - 1) / 2));
+            }
+            try {
+                applyOrderCountDeltas(reservationId, locationId, counted, target, deltas);
+            } catch (Exception retryFailure) {
+                logger.warn("Order counts of reservation {} not synced: {}", reservationId, retryFailure.getMessage());
+            }
+        } catch (Exception e) {
+            logger.warn("Order counts of reservation {} not synced: {}", reservationId, e.getMessage());
+        }
+    }
+
+    private void applyOrderCountDeltas(String reservationId, String locationId, Map<String, Integer> counted,
+                                       Map<String, Integer> target, Map<String, Integer> deltas) {
+        Map<String, AttributeValue> values = new HashMap<>();
+        values.put(":target", numberMap(target));
+        if (counted != null) values.put(":counted", numberMap(counted));
+
+        List<TransactWriteItem> actions = new ArrayList<>();
+        actions.add(new TransactWriteItem().withUpdate(new Update()
+                .withTableName(reservationTable.getTableName())
+                .withKey(Map.of("reservation_id", new AttributeValue().withS(reservationId)))
+                .withUpdateExpression("SET counted_pre_order = :target")
+                .withConditionExpression(counted == null
+                        ? "attribute_not_exists(counted_pre_order)" : "counted_pre_order = :counted")
+                .withExpressionAttributeValues(values)));
+        for (Map.Entry<String, Integer> delta : deltas.entrySet()) {
+            AttributeValue amount = new AttributeValue().withN(delta.getValue().toString());
+            actions.add(new TransactWriteItem().withUpdate(new Update()
+                    .withTableName(dishTable.getTableName())
+                    .withKey(Map.of("id", new AttributeValue().withS(delta.getKey())))
+                    .withUpdateExpression("ADD orderCount :delta")
+                    .withConditionExpression("attribute_exists(id)")
+                    .withExpressionAttributeValues(Map.of(":delta", amount))));
+            actions.add(new TransactWriteItem().withUpdate(new Update()
+                    .withTableName(dishLocationTable.getTableName())
+                    .withKey(Map.of(
+                            "location_id", new AttributeValue().withS(locationId),
+                            "dish_id", new AttributeValue().withS(delta.getKey())))
+                    .withUpdateExpression("ADD orderCount :delta")
+                    .withConditionExpression("attribute_exists(dish_id)")
+                    .withExpressionAttributeValues(Map.of(":delta", amount))));
+        }
+        amazonDynamoDBClient.transactWriteItems(new TransactWriteItemsRequest().withTransactItems(actions));
+
+        for (Map.Entry<String, Integer> delta : deltas.entrySet()) {
+            popularDishIndex.add(PopularDishIndex.GLOBAL, delta.getKey(), delta.getValue());
+            popularDishIndex.add(locationId, delta.getKey(), delta.getValue());
+        }
+    }
+
+    private static AttributeValue numberMap(Map<String, Integer> quantities) {
+        Map<String, AttributeValue> map = new HashMap<>();
+        quantities.forEach((dishId, quantity) -> map.put(dishId, new AttributeValue().withN(quantity.toString())));
+        return new AttributeValue().withM(map);
+    }
+
+    /**
+     * Returns the current menu snapshot, loading it on first use.
+     */
+    public MenuSnapshot getMenuSnapshot() {
+        MenuSnapshot snapshot = menuSnapshot;
+        if (snapshot != null) return snapshot;
+        synchronized (this) {
+            if (menuSnapshot == null) refreshMenu();
+            return menuSnapshot;
+        }
+    }
+
+    /**
+     * Reloads the menu snapshot from the Dish table. Runs periodically and should be called
+     * after dishes are changed so the change is visible right away.
+     */
+    @Scheduled(fixedDelayString = "${dishes.menu.refresh-interval-ms:300000}", initialDelayString = "${dishes.menu.refresh-interval-ms:300000}")
+    public void refreshMenu() {
+        List<Map<String, Object>> dishes = new ArrayList<>();
+        Map<String, AttributeValue> lastEvaluatedKey = null;
+        do {
+            ScanResult scanResult = amazonDynamoDBClient.scan(new ScanRequest()
+                    .withTableName(dishTable.getTableName())
+                    .withProjectionExpression("id, #name, imageUrl, price, #state, weight, orderCount, dishType")
+                    .withExpressionAttributeNames(Map.of(
+                            "#name", "name",
+                            "#state", "state"
+                    ))
+                    .withExclusiveStartKey(lastEvaluatedKey));
+            for (Map<String, AttributeValue> item : scanResult.getItems()) {
+                dishes.add(convertToMap(item));
+            }
+            lastEvaluatedKey = scanResult.getLastEvaluatedKey();
+        } while (lastEvaluatedKey != null && !lastEvaluatedKey.isEmpty());
+
+        MenuSnapshot snapshot = MenuSnapshot.of(menuVersion.incrementAndGet(), dishes);
+        menuSnapshot = snapshot;
+        popularDishIndex.load(PopularDishIndex.GLOBAL, snapshot.getOrderCounts());
+        popularDishIndex.invalidateLocations();
+        logger.info("Menu snapshot {} loaded with {} dishes", snapshot.getVersion(), dishes.size());
+    }
+
+    /**
+     * Returns the current location by dish availability, loading it on first use.
+     */
+    public DishAvailabilityMatrix getAvailabilityMatrix() {
+        DishAvailabilityMatrix matrix = availabilityMatrix;
+        if (matrix != null) return matrix;
+        synchronized (this) {
+            if (availabilityMatrix == null) refreshAvailability();
+            return availabilityMatrix;
+        }
+    }
+
+    /**
+     * Reloads the availability matrix from the DishLocation table. Runs periodically so that
+     * stop/unstop changes made by other instances are picked up.
+     */
+    @Scheduled(fixedDelayString = "${dishes.availability.refresh-interval-ms:300000}", initialDelayString = "${dishes.availability.refresh-interval-ms:300000}")
+    public void refreshAvailability() {
+        Map<String, Map<String, Boolean>> onStopByLocation = new HashMap<>();
+        Map<String, AttributeValue> lastEvaluatedKey = null;
+        do {
+            ScanResult scanResult = amazonDynamoDBClient.scan(new ScanRequest()
+                    .withTableName(dishLocationTable.getTableName())
+                    .withProjectionExpression("location_id, dish_id, availability")
+                    .withExclusiveStartKey(lastEvaluatedKey));
+            for (Map<String, AttributeValue> item : scanResult.getItems()) {
+                AttributeValue availability = item.get("availability");
+                boolean onStop = availability != null && "on stop".equalsIgnoreCase(availability.getS());
+                onStopByLocation.computeIfAbsent(item.get("location_id").getS(), id -> new HashMap<>())
+                        .put(item.get("dish_id").getS(), onStop);
+            }
+            lastEvaluatedKey = scanResult.getLastEvaluatedKey();
+        } while (lastEvaluatedKey != null && !lastEvaluatedKey.isEmpty());
+
+        availabilityMatrix = DishAvailabilityMatrix.of(onStopByLocation);
+        logger.info("Dish availability loaded for {} locations", onStopByLocation.size());
+    }
+
+    /**
+     * Puts a dish on stop at a location or takes it off stop, and applies the change to the
+     * availability matrix right away.
+     */
+    public void updateDishAvailability(String locationId, String dishId, boolean onStop) throws DishNotFoundException {
+        try {
+            dishLocationTable.updateItem(new UpdateItemSpec()
+                    .withPrimaryKey("location_id", locationId, "dish_id", dishId)
+                    .withUpdateExpression("SET availability = :availability")
+                    .withConditionExpression("attribute_exists(dish_id)")
+                    .withValueMap(new ValueMap().withString(":availability", onStop ? "on stop" : "available")));
+        } catch (ConditionalCheckFailedException e) {
+            throw new DishNotFoundException("Dish with ID " + dishId + " is not available for location ID " + locationId + ".");
+        }
+        synchronized (this) {
+            availabilityMatrix = getAvailabilityMatrix().withOnStop(locationId, dishId, onStop);
+        }
+    }
+
     public boolean checkIfDishIdExists(String dishId) throws Exception {
 
         Item item = dishTable.getItem("id", dishId);
@@ -121,46 +348,15 @@ public class DishRepo {
 
 
     public List<Map<String, Object>> getDishes(String dishType, String sort) throws Exception {
-        List<Map<String, Object>> dishes = new ArrayList<>();
-
         try {
-            // Step 1: Prepare the ScanRequest for DynamoDB
-            ScanRequest scanRequest = new ScanRequest()
-                    .withTableName(dishTable.getTableName()) // Table name from environment variable
-                    .withProjectionExpression("id, #name, imageUrl, price, #state, weight, orderCount") // Fields to retrieve
-                    .withExpressionAttributeNames(Map.of(
-                            "#name", "name",
-                            "#state", "state"
-                    ));
-
-            // Step 2: Add filtering logic if dishType is provided
+            String type = MenuSnapshot.ALL_DISH_TYPES;
             if (dishType != null && !dishType.isEmpty()) {
                 // Transform the dishType value into a properly formatted string
-                dishType = dishType.replaceAll("[_+]", " ");
-                dishType = Arrays.stream(dishType.split("\\s+"))
+                type = Arrays.stream(dishType.replaceAll("[_+]", " ").split("\\s+"))
                         .map(word -> word.substring(0, 1).toUpperCase() + word.substring(1).toLowerCase())
                         .collect(Collectors.joining(" "));
-
-                // Add filter expression to ScanRequest
-                Map<String, AttributeValue> expressionAttributeValues = Map.of(
-                        ":dishType", new AttributeValue().withS(dishType)
-                );
-
-                scanRequest
-                        .withFilterExpression("dishType = :dishType") // Only retrieve items matching dishType
-                        .withExpressionAttributeValues(expressionAttributeValues);
             }
-
-            // Step 3: Execute ScanRequest and process results
-            ScanResult scanResult = amazonDynamoDBClient.scan(scanRequest);
-            for (Map<String, AttributeValue> item : scanResult.getItems()) {
-                dishes.add(convertToMap(item)); // Convert results to a Java-friendly Map
-            }
-
-            // Step 4: Sort dishes if a sort parameter is provided
-            sortDishes(dishes, sort);
-
-            return dishes;
+            return getMenuSnapshot().getDishes(type, sort);
 
         } catch (Exception e) {
             // Wrap and rethrow exception with a descriptive error message
@@ -177,33 +373,23 @@ public class DishRepo {
 
         String locationId = reservation.getString("location_id");
 
-        // Step 2: Query dishLocationTable for dishes at the given location
-        QuerySpec querySpec = new QuerySpec()
-                .withKeyConditionExpression("location_id = :v_location")
-                .withValueMap(new ValueMap().withString(":v_location", locationId));
+        // Step 2: Look up the dishes offered at the given location
+        DishAvailabilityMatrix matrix = getAvailabilityMatrix();
+        List<String> dishIds = matrix.getDishIds(locationId);
 
-        ItemCollection<QueryOutcome> items = dishLocationTable.query(querySpec);
+        // Step 3: Retrieve details of all dishes of the location at once
+        Map<String, Map<String, Object>> dishesById = dishHydrator.getDishes(dishIds,
+                "id", "name", "price", "weight", "imageUrl", "state", "orderCount", "dishType", "description");
 
-        // Step 3: Prepare list of dishes
+        // Step 4: Prepare list of dishes
         List<Map<String, Object>> availableDishes = new ArrayList<>();
 
-        for (Item item : items) {
-            String dishId = item.getString("dish_id");
-            String locationSpecificAvailability = item.getString("availability");
-
-            // Step 4: Retrieve dish details from the dish table
-            GetItemSpec getItemSpec = new GetItemSpec()
-                    .withPrimaryKey("id", dishId) // Specify the partition key
-                    .withProjectionExpression("id, #name, price, weight, imageUrl, #state, orderCount, dishType, description")
-                    .withNameMap(Map.of(
-                            "#name", "name",
-                            "#state", "state" // Alias for reserved word "state"
-                    ));
+        for (String dishId : dishIds) {
 
-            Item dish = dishTable.getItem(getItemSpec);
+            Map<String, Object> dish = dishesById.get(dishId);
             if (dish != null) {
-                // Convert the fetched item to a map
-                Map<String, Object> dishDetails = dish.asMap();
+                // Copy the details, they are modified below
+                Map<String, Object> dishDetails = new HashMap<>(dish);
 
                 // Optionally filter by dishType
                 if (dishType != null && !dishType.isEmpty()) {
@@ -224,7 +410,7 @@ public class DishRepo {
                 if ("on stop".equalsIgnoreCase(globalState)) {
                     // If the global state is "on stop", it takes precedence
                     finalState = "on stop";
-                } else if ("on stop".equalsIgnoreCase(locationSpecificAvailability)) {
+                } else if (matrix.isOnStop(locationId, dishId)) {
                     // If the location-specific availability is "on stop", override global state
                     finalState = "on stop";
                 } else {
@@ -246,28 +432,22 @@ public class DishRepo {
 
     }
 
+    /**
+     * Sorts by keys extracted once per dish rather than in every comparison.
+     */
     private void sortDishes(List<Map<String, Object>> dishes, String sort) {
         if (sort == null) return;
 
+        Map<Map<String, Object>, Double> keys = new IdentityHashMap<>();
         switch (sort.toLowerCase()) {
-            case "popularity,asc":
-                dishes.sort(Comparator.comparingInt(dish -> Integer.parseInt(dish.get("orderCount").toString())));
-                break;
-            case "popularity,desc":
-                dishes.sort((dish1, dish2) -> Integer.parseInt(dish2.get("orderCount").toString())
-                        - Integer.parseInt(dish1.get("orderCount").toString()));
-                break;
-            case "price,asc":
-                dishes.sort(Comparator.comparing(dish -> Double.parseDouble(((String) dish.get("price")).replaceAll("[^0-9+]", ""))));
-                break;
-            case "price,desc":
-                dishes.sort((dish1, dish2) -> Double.compare(
-                        Double.parseDouble(((String) dish2.get("price")).replaceAll("[^0-9+]", "")),
-                        Double.parseDouble(((String) dish1.get("price")).replaceAll("[^0-9+]", ""))));
-                break;
-            default:
-                throw new IllegalArgumentException("Unsupported sort parameter: " + sort);
+            case "popularity,asc", "popularity,desc" ->
+                    dishes.forEach(dish -> keys.put(dish, Double.parseDouble(dish.get("orderCount").toString())));
+            case "price,asc", "price,desc" ->
+                    dishes.forEach(dish -> keys.put(dish, MenuSnapshot.parsePrice((String) dish.get("price"))));
+            default -> throw new IllegalArgumentException("Unsupported sort parameter: " + sort);
         }
+        Comparator<Map<String, Object>> comparator = Comparator.comparingDouble(keys::get);
+        dishes.sort(sort.toLowerCase().endsWith(",desc") ? comparator.reversed() : comparator);
     }
 
     // Helper function to convert DynamoDB's AttributeValue into Java's Map<String, Object>
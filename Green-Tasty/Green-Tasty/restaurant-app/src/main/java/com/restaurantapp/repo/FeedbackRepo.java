@@ -1,49 +1,176 @@
 package com.restaurantapp.repo;
 
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.document.*;
+import com.amazonaws.services.dynamodbv2.document.spec.GetItemSpec;
 import com.amazonaws.services.dynamodbv2.document.spec.QuerySpec;
+import com.amazonaws.services.dynamodbv2.document.spec.ScanSpec;
 import com.amazonaws.services.dynamodbv2.document.spec.UpdateItemSpec;
 import com.amazonaws.services.dynamodbv2.document.utils.ValueMap;
-import com.amazonaws.services.dynamodbv2.model.ReturnValue;
+import com.amazonaws.services.dynamodbv2.model.*;
 import com.amazonaws.services.dynamodbv2.xspec.N;
 import com.restaurantapp.dto.Feedback;
+import com.restaurantapp.dto.FeedbackPage;
+import com.restaurantapp.exception.FeedbackAlreadyExistException;
 import com.restaurantapp.exception.FeedbackNotFoundException;
+import com.restaurantapp.exception.ReservationNotFoundException;
+import com.restaurantapp.util.DateFormatter;
 import org.json.JSONArray;
 import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
 
 public class FeedbackRepo {
+    AmazonDynamoDB amazonDynamoDBClient;
     DynamoDB dynamoDBClient;
     Table feedbackTable;
+    Table reservationTable;
+    Table customerTable;
+    Table locationTable;
+    BatchItemLoader batchItemLoader;
+
+    static final String VISIT_DATE_ATTRIBUTE = "visit_date";
+    static final String CUSTOMER_EMAIL_ATTRIBUTE = "customer_email";
+    static final String REVIEWER_NAME_ATTRIBUTE = "reviewer_name";
+    static final String REVIEWER_IMAGE_ATTRIBUTE = "reviewer_image";
+    static final String CUSTOMER_EMAIL_INDEX = "customer_email-index";
+    static final String LOCATION_VISIT_DATE_INDEX = "location_id-visit_date-index";
+    static final String LOCATION_CUISINE_RATING_INDEX = "location_id-cuisine_rating-index";
+    static final String LOCATION_SERVICE_RATING_INDEX = "location_id-service_rating-index";
+    static final String WAITER_RATING_COUNTED = "waiter_rating_counted";
+    static final String LOCATION_RATING_COUNTED = "location_rating_counted";
+    public static final String REPORT_EVENT_SENT = "report_event_sent";
+    static final String FOLLOW_UP_PENDING_ATTRIBUTE = "follow_up_pending";
+    static final String FOLLOW_UP_PENDING_INDEX = "follow_up_pending-index";
+    static final String LOCATION_INDEX = "location_id-index";
+    static final String FEEDBACK_COUNT_ATTRIBUTE = "feedback_count";
+    static final String FEEDBACK_COUNTED_ATTRIBUTE = "feedback_counted";
+    private static final Logger logger = LoggerFactory.getLogger(FeedbackRepo.class);
 
     @Autowired
-    public FeedbackRepo(DynamoDB dynamoDBClient,String feedbackTableName) {
-        this.dynamoDBClient = dynamoDBClient;
+    public FeedbackRepo(AmazonDynamoDB amazonDynamoDBClient, String feedbackTableName, String reservationTableName,
+                        String customerTableName, String locationTableName) {
+        this.amazonDynamoDBClient = amazonDynamoDBClient;
+        this.dynamoDBClient = new DynamoDB(amazonDynamoDBClient);
         this.feedbackTable = dynamoDBClient.getTable(feedbackTableName);
+        this.reservationTable = dynamoDBClient.getTable(reservationTableName);
+        this.customerTable = dynamoDBClient.getTable(customerTableName);
+        this.locationTable = dynamoDBClient.getTable(locationTableName);
+        this.batchItemLoader = new BatchItemLoader(dynamoDBClient);
     }
 
-    public void createNewFeedback(Map<String,Object>feedback) throws Exception {
+    /**
+     * Stores a new feedback together with the reviewer's display data ({@code reviewerName},
+     * {@code reviewerImage} and, for customers, {@code customerEmail}), so that listing
+     * feedbacks needs no reservation or customer lookups.
+     * <p>
+     * The feedback put and the reservation update (feedback id and status) are one
+     * transaction. It is cancelled if the reservation is gone or already has a feedback,
+     * so two concurrent submissions cannot both succeed. The same transaction increments the
+     * location's {@value #FEEDBACK_COUNT_ATTRIBUTE}.
+     *
+     * @param reservationStatus the status the reservation moves to
+     */
+    public void createFeedbackForReservation(Map<String, Object> feedback, String reservationStatus)
+            throws ReservationNotFoundException {
+        String reservationId = (String) feedback.get("reservationId");
+        Item item = new Item()
+                .withPrimaryKey("feedback_id", feedback.get("feedbackId"))
+                .withString("reservation_id", reservationId)
+                .withString("cuisine_comment", (String) feedback.get("cuisineComment"))
+                .withString("service_comment", (String) feedback.get("serviceComment"))
+                .withNumber("cuisine_rating", (Number) feedback.get("cuisineRating"))
+                .withNumber("service_rating", (Number) feedback.get("serviceRating"))
+                .withString("location_id", (String) feedback.get("locationId"))
+                .withString(VISIT_DATE_ATTRIBUTE, (String) feedback.get("visitDate"))
+                .withString(REVIEWER_NAME_ATTRIBUTE, (String) feedback.get("reviewerName"))
+                .withString(REVIEWER_IMAGE_ATTRIBUTE, (String) feedback.get("reviewerImage"))
+                .withLong(FOLLOW_UP_PENDING_ATTRIBUTE, System.currentTimeMillis());
+        if (feedback.get("customerEmail") != null) {
+            item.withString(CUSTOMER_EMAIL_ATTRIBUTE, (String) feedback.get("customerEmail"));
+        }
+
+        List<TransactWriteItem> actions = List.of(
+                new TransactWriteItem().withPut(new Put()
+                        .withTableName(feedbackTable.getTableName())
+                        .withItem(ItemUtils.toAttributeValues(item))
+                        .withConditionExpression("attribute_not_exists(feedback_id)")),
+                new TransactWriteItem().withUpdate(new Update()
+                        .withTableName(reservationTable.getTableName())
+                        .withKey(Map.of("reservation_id", new AttributeValue(reservationId)))
+                        .withUpdateExpression("SET feedback_id = :f, #status = :s")
+                        .withConditionExpression("attribute_exists(reservation_id) AND (attribute_not_exists(feedback_id) OR feedback_id = :none)")
+                        .withExpressionAttributeNames(Map.of("#status", "status"))
+                        .withExpressionAttributeValues(Map.of(
+                                ":f", new AttributeValue((String) feedback.get("feedbackId")),
+                                ":s", new AttributeValue(reservationStatus),
+                                ":none", new AttributeValue("")))
+                        .withReturnValuesOnConditionCheckFailure(ReturnValuesOnConditionCheckFailure.ALL_OLD)),
+                new TransactWriteItem().withUpdate(new Update()
+                        .withTableName(locationTable.getTableName())
+                        .withKey(Map.of("location_id", new AttributeValue((String) feedback.get("locationId"))))
+                        .withUpdateExpression("ADD " + FEEDBACK_COUNT_ATTRIBUTE + " :one")
+                        .withConditionExpression("attribute_exists(location_id)")
+                        .withExpressionAttributeValues(Map.of(":one", new AttributeValue().withN("1")))));
+
         try {
-            feedbackTable.putItem(new Item()
-                    .withPrimaryKey("feedback_id", feedback.get("feedbackId"))
-                    .withString("reservation_id", (String)feedback.get("reservationId"))
-                    .withString("cuisine_comment", (String)feedback.get("cuisineComment"))
-                    .withString("service_comment", (String)feedback.get("serviceComment"))
-                    .withNumber("cuisine_rating", (Number) feedback.get("cuisineRating"))
-                    .withNumber("service_rating", (Number)feedback.get("serviceRating"))
-                    .withString("location_id",(String)feedback.get("locationId"))
-            );
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to update feedback details: " + e.getMessage());
+            amazonDynamoDBClient.transactWriteItems(new TransactWriteItemsRequest().withTransactItems(actions));
+        } catch (TransactionCanceledException e) {
+            List<CancellationReason> reasons = e.getCancellationReasons();
+            CancellationReason reservationReason = reasons != null && reasons.size() > 1 ? reasons.get(1) : null;
+            if (reservationReason != null && "ConditionalCheckFailed".equals(reservationReason.getCode())) {
+                if (reservationReason.getItem() == null)
+                    throw new ReservationNotFoundException("Reservation with ID " + reservationId + " not found.");
+                throw new FeedbackAlreadyExistException("Feedback already exists for the reservation.");
+            }
+            if (reservationReason != null && "TransactionConflict".equals(reservationReason.getCode()))
+                throw new FeedbackAlreadyExistException("Feedback already exists for the reservation.");
+            throw e;
         }
     }
 
 
+    /**
+     * Records a finished follow-up step of a feedback, see {@link #REPORT_EVENT_SENT}.
+     */
+    public void markFollowUpStep(String feedbackId, String stepAttribute) {
+        feedbackTable.updateItem(new UpdateItemSpec()
+                .withPrimaryKey("feedback_id", feedbackId)
+                .withUpdateExpression("SET #step = :done")
+                .withNameMap(Map.of("#step", stepAttribute))
+                .withValueMap(new ValueMap().withBoolean(":done", true)));
+    }
+
+    /**
+     * Takes a feedback out of the pending follow-ups once all its steps succeeded.
+     */
+    public void completeFollowUp(String feedbackId) {
+        feedbackTable.updateItem(new UpdateItemSpec()
+                .withPrimaryKey("feedback_id", feedbackId)
+                .withUpdateExpression("REMOVE " + FOLLOW_UP_PENDING_ATTRIBUTE));
+    }
+
+    /**
+     * Feedbacks whose follow-up was started before {@code startedBefore} (epoch millis) and
+     * has not completed. Read from the sparse {@code follow_up_pending-index}, which only
+     * holds such feedbacks.
+     */
+    public List<Item> findPendingFollowUps(long startedBefore, int limit) {
+        List<Item> pending = new ArrayList<>();
+        for (Item item : feedbackTable.getIndex(FOLLOW_UP_PENDING_INDEX).scan(new ScanSpec()
+                .withFilterExpression("#pending < :before")
+                .withNameMap(Map.of("#pending", FOLLOW_UP_PENDING_ATTRIBUTE))
+                .withValueMap(new ValueMap().withLong(":before", startedBefore))
+                .withMaxResultSize(limit))) {
+            pending.add(item);
+        }
+        return pending;
+    }
+
     public JSONArray sortAndPaginate(JSONArray feedbacks, String sortKey, boolean ascending, int page, int size) {
         // Convert JSONArray to List for sorting
         List<JSONObject> feedbackList = new ArrayList<>();
@@ -70,14 +197,24 @@ public class FeedbackRepo {
     }
 
     public void updateFeedback (Map<String,Object>feedback){
+        String updateExpression = "set cuisine_comment =:cc,cuisine_rating = :cr,service_comment = :sc,service_rating = :sr"
+                + ", " + VISIT_DATE_ATTRIBUTE + " = :vd, " + REVIEWER_NAME_ATTRIBUTE + " = :rn, " + REVIEWER_IMAGE_ATTRIBUTE + " = :ri";
+        ValueMap valueMap = new ValueMap()
+                .withString(":cc",(String)feedback.get("cuisineComment"))
+                .withNumber(":cr",(Number) feedback.get("newCuisineRating"))
+                .withString(":sc", (String)feedback.get("serviceComment"))
+                .withNumber(":sr",(Number)feedback.get("newServiceRating"))
+                .withString(":vd", (String) feedback.get("visitDate"))
+                .withString(":rn", (String) feedback.get("reviewerName"))
+                .withString(":ri", (String) feedback.get("reviewerImage"));
+        if (feedback.get("customerEmail") != null) {
+            updateExpression += ", " + CUSTOMER_EMAIL_ATTRIBUTE + " = :ce";
+            valueMap.withString(":ce", (String) feedback.get("customerEmail"));
+        }
         UpdateItemSpec updateItemSpec = new UpdateItemSpec()
                 .withPrimaryKey("feedback_id",feedback.get("feedbackId"))
-                .withUpdateExpression("set cuisine_comment =:cc,cuisine_rating = :cr,service_comment = :sc,service_rating = :sr")
-                .withValueMap(new ValueMap()
-                        .withString(":cc",(String)feedback.get("cuisineComment"))
-                        .withNumber(":cr",(Number) feedback.get("newCuisineRating"))
-                        .withString(":sc", (String)feedback.get("serviceComment"))
-                        .withNumber(":sr",(Number)feedback.get("newServiceRating")))
+                .withUpdateExpression(updateExpression)
+                .withValueMap(valueMap)
                 .withReturnValues(ReturnValue.UPDATED_NEW);
         feedbackTable.updateItem(updateItemSpec);
     }
@@ -121,4 +258,333 @@ public class FeedbackRepo {
         return feedbackList;
     }
 
+    /**
+     * Returns one page of a location's feedbacks in the order of a sort index: visit date,
+     * or the cuisine or service rating. Only the requested page is read.
+     * <p>
+     * The total is the location's {@value #FEEDBACK_COUNT_ATTRIBUTE}, read once without a
+     * cursor and then carried in it, so pages read nothing but their own items. Only for a
+     * location whose count has not been backfilled yet are its feedbacks counted. Without a
+     * cursor, a page after the first starts after a count-only pass over the preceding
+     * {@code page * size} feedbacks.
+     *
+     * @param sortKey "date" or "rate"
+     * @param type "cuisine" or "service", selects the rating index for "rate"
+     * @param cursor opaque cursor from a previous page, or null to start at {@code page * size}
+     */
+    public FeedbackPage getFeedbackPageByLocation(String locationId, String type, String sortKey, boolean ascending,
+                                                  int page, int size, String cursor) {
+        String indexName = sortIndex(type, sortKey);
+        FeedbackCursor start = decodeFeedbackCursor(cursor);
+        Map<String, AttributeValue> startKey;
+        int totalElements;
+        if (start != null && start.totalElements() >= 0) {
+            startKey = start.startKey();
+            totalElements = start.totalElements();
+        } else {
+            startKey = start == null ? skipFeedbacks(locationId, indexName, ascending, page * size) : start.startKey();
+            Integer feedbackCount = locationFeedbackCount(locationId);
+            totalElements = feedbackCount != null ? feedbackCount : countFeedbacks(locationId);
+        }
+
+        List<Map<String, Object>> feedbacks = new ArrayList<>();
+        Map<String, AttributeValue> lastEvaluatedKey = startKey;
+        if (startKey != null || page == 0) {
+            do {
+                QueryResult result = amazonDynamoDBClient.query(locationQuery(locationId, indexName, ascending)
+                        .withLimit(size - feedbacks.size())
+                        .withExclusiveStartKey(lastEvaluatedKey));
+                for (Map<String, AttributeValue> item : result.getItems()) {
+                    feedbacks.add(ItemUtils.toItem(item).asMap());
+                }
+                lastEvaluatedKey = result.getLastEvaluatedKey();
+            } while (feedbacks.size() < size && lastEvaluatedKey != null && !lastEvaluatedKey.isEmpty());
+        }
+
+        String nextCursor = lastEvaluatedKey == null || lastEvaluatedKey.isEmpty() || feedbacks.isEmpty()
+                ? null : encodeFeedbackCursor(new FeedbackCursor(lastEvaluatedKey, totalElements));
+        return new FeedbackPage(feedbacks, nextCursor, totalElements);
+    }
+
+    /**
+     * Passes over the first {@code offset} of a location's feedbacks in a sort index without
+     * reading them.
+     *
+     * @return the key to continue after them, or {@code null} if there are no more
+     */
+    private Map<String, AttributeValue> skipFeedbacks(String locationId, String indexName, boolean ascending, int offset) {
+        int skipped = 0;
+        Map<String, AttributeValue> lastEvaluatedKey = null;
+        while (skipped < offset) {
+            QueryResult result = amazonDynamoDBClient.query(locationQuery(locationId, indexName, ascending)
+                    .withSelect(Select.COUNT)
+                    .withLimit(offset - skipped)
+                    .withExclusiveStartKey(lastEvaluatedKey));
+            skipped += result.getCount();
+            lastEvaluatedKey = result.getLastEvaluatedKey();
+            if (lastEvaluatedKey == null || lastEvaluatedKey.isEmpty()) return null;
+        }
+        return lastEvaluatedKey;
+    }
+
+    /**
+     * The location's {@value #FEEDBACK_COUNT_ATTRIBUTE}, or {@code null} until it has been
+     * backfilled by {@link #backfillFeedbackCounts()}.
+     */
+    private Integer locationFeedbackCount(String locationId) {
+        Item location = locationTable.getItem(new GetItemSpec()
+                .withPrimaryKey("location_id", locationId)
+                .withProjectionExpression(FEEDBACK_COUNT_ATTRIBUTE + ", " + FEEDBACK_COUNTED_ATTRIBUTE));
+        if (location == null || !location.hasAttribute(FEEDBACK_COUNTED_ATTRIBUTE)) return null;
+        return location.getInt(FEEDBACK_COUNT_ATTRIBUTE);
+    }
+
+    /**
+     * Counts all of a location's feedbacks without reading them.
+     */
+    private int countFeedbacks(String locationId) {
+        int count = 0;
+        Map<String, AttributeValue> lastEvaluatedKey = null;
+        do {
+            QueryResult result = amazonDynamoDBClient.query(locationQuery(locationId, LOCATION_INDEX, true)
+                    .withSelect(Select.COUNT)
+                    .withExclusiveStartKey(lastEvaluatedKey));
+            count += result.getCount();
+            lastEvaluatedKey = result.getLastEvaluatedKey();
+        } while (lastEvaluatedKey != null && !lastEvaluatedKey.isEmpty());
+        return count;
+    }
+
+    /**
+     * Where a page continues, and the total count of the listing or -1 for cursors issued
+     * before the count was carried.
+     */
+    private record FeedbackCursor(Map<String, AttributeValue> startKey, int totalElements) {
+    }
+
+    private QueryRequest locationQuery(String locationId, String indexName, boolean ascending) {
+        return new QueryRequest()
+                .withTableName(feedbackTable.getTableName())
+                .withIndexName(indexName)
+                .withKeyConditionExpression("location_id = :v_location")
+                .withExpressionAttributeValues(Map.of(":v_location", new AttributeValue().withS(locationId)))
+                .withScanIndexForward(ascending);
+    }
+
+    private static String sortIndex(String type, String sortKey) {
+        if ("date".equals(sortKey)) return LOCATION_VISIT_DATE_INDEX;
+        if (!"rate".equals(sortKey)) throw new IllegalArgumentException("Invalid sortKey. Use 'date' or 'rate'.");
+        if ("cuisine".equalsIgnoreCase(type)) return LOCATION_CUISINE_RATING_INDEX;
+        if ("service".equalsIgnoreCase(type)) return LOCATION_SERVICE_RATING_INDEX;
+        throw new IllegalArgumentException("Invalid feedback type!");
+    }
+
+    private static String encodeFeedbackCursor(FeedbackCursor feedbackCursor) {
+        JSONObject key = new JSONObject();
+        feedbackCursor.startKey().forEach((name, value) -> key.put(name, new JSONObject()
+                .put(value.getN() != null ? "N" : "S", value.getN() != null ? value.getN() : value.getS())));
+        JSONObject cursor = new JSONObject().put("key", key).put("total", feedbackCursor.totalElements());
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static FeedbackCursor decodeFeedbackCursor(String cursor) {
+        if (cursor == null || cursor.isBlank()) return null;
+        try {
+            JSONObject decoded = new JSONObject(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+            // Cursors issued before the total was carried hold only the key
+            boolean withTotal = decoded.has("total");
+            JSONObject key = withTotal ? decoded.getJSONObject("key") : decoded;
+            Map<String, AttributeValue> startKey = new HashMap<>();
+            for (String name : key.keySet()) {
+                JSONObject value = key.getJSONObject(name);
+                startKey.put(name, value.has("N") ? new AttributeValue().withN(value.getString("N"))
+                        : new AttributeValue().withS(value.getString("S")));
+            }
+            return new FeedbackCursor(startKey, withTotal ? decoded.getInt("total") : -1);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor provided.");
+        }
+    }
+
+    /**
+     * Copies a customer's new display name and, when given, avatar key onto all of their
+     * feedbacks, found through the customer email index.
+     *
+     * @param imageKey the new avatar key, or {@code null} to keep the stored one
+     * @return the number of feedbacks updated
+     */
+    public int updateReviewerDetails(String customerEmail, String reviewerName, String imageKey) {
+        String updateExpression = "SET " + REVIEWER_NAME_ATTRIBUTE + " = :rn";
+        ValueMap valueMap = new ValueMap()
+                .withString(":rn", reviewerName)
+                .withString(":ce", customerEmail);
+        if (imageKey != null) {
+            updateExpression += ", " + REVIEWER_IMAGE_ATTRIBUTE + " = :ri";
+            valueMap.withString(":ri", imageKey);
+        }
+
+        int updated = 0;
+        Map<String, AttributeValue> lastEvaluatedKey = null;
+        do {
+            QueryResult result = amazonDynamoDBClient.query(new QueryRequest()
+                    .withTableName(feedbackTable.getTableName())
+                    .withIndexName(CUSTOMER_EMAIL_INDEX)
+                    .withKeyConditionExpression(CUSTOMER_EMAIL_ATTRIBUTE + " = :ce")
+                    .withProjectionExpression("feedback_id")
+                    .withExpressionAttributeValues(Map.of(":ce", new AttributeValue().withS(customerEmail)))
+                    .withExclusiveStartKey(lastEvaluatedKey));
+            for (Map<String, AttributeValue> item : result.getItems()) {
+                try {
+                    feedbackTable.updateItem(new UpdateItemSpec()
+                            .withPrimaryKey("feedback_id", item.get("feedback_id").getS())
+                            .withUpdateExpression(updateExpression)
+                            .withConditionExpression(CUSTOMER_EMAIL_ATTRIBUTE + " = :ce")
+                            .withValueMap(valueMap));
+                    updated++;
+                } catch (ConditionalCheckFailedException e) {
+                    // Deleted or reassigned in the meantime
+                }
+            }
+            lastEvaluatedKey = result.getLastEvaluatedKey();
+        } while (lastEvaluatedKey != null && !lastEvaluatedKey.isEmpty());
+        return updated;
+    }
+
+    /**
+     * Startup backfills, see {@link #backfillDenormalizedAttributes()} and
+     * {@link #backfillFeedbackCounts()}.
+     */
+    public void backfill() {
+        backfillDenormalizedAttributes();
+        backfillFeedbackCounts();
+    }
+
+    /**
+     * Sets {@value #FEEDBACK_COUNT_ATTRIBUTE} on locations whose feedbacks were written before
+     * it was kept, counting their feedbacks once. The count is only stored if no feedback was
+     * added while counting; otherwise the location is counted again. Failures are logged and
+     * the remaining locations are counted on the next start.
+     */
+    public void backfillFeedbackCounts() {
+        try {
+            int updated = 0;
+            Map<String, AttributeValue> lastEvaluatedKey = null;
+            do {
+                ScanResult result = amazonDynamoDBClient.scan(new ScanRequest()
+                        .withTableName(locationTable.getTableName())
+                        .withProjectionExpression("location_id")
+                        .withFilterExpression("attribute_not_exists(" + FEEDBACK_COUNTED_ATTRIBUTE + ")")
+                        .withExclusiveStartKey(lastEvaluatedKey));
+                for (Map<String, AttributeValue> item : result.getItems()) {
+                    if (backfillFeedbackCount(item.get("location_id").getS())) updated++;
+                }
+                lastEvaluatedKey = result.getLastEvaluatedKey();
+            } while (lastEvaluatedKey != null && !lastEvaluatedKey.isEmpty());
+            if (updated > 0) logger.info("Feedback counts backfilled on {} locations", updated);
+        } catch (Exception e) {
+            logger.warn("Could not backfill location feedback counts: {}", e.getMessage());
+        }
+    }
+
+    private boolean backfillFeedbackCount(String locationId) {
+        while (true) {
+            Item before = locationTable.getItem(new GetItemSpec()
+                    .withPrimaryKey("location_id", locationId)
+                    .withProjectionExpression(FEEDBACK_COUNT_ATTRIBUTE + ", " + FEEDBACK_COUNTED_ATTRIBUTE)
+                    .withConsistentRead(true));
+            if (before == null || before.hasAttribute(FEEDBACK_COUNTED_ATTRIBUTE)) return false;
+            int count = countFeedbacks(locationId);
+
+            ValueMap valueMap = new ValueMap().withInt(":count", count).withBoolean(":counted", true);
+            String condition = "attribute_not_exists(" + FEEDBACK_COUNT_ATTRIBUTE + ")";
+            if (before.hasAttribute(FEEDBACK_COUNT_ATTRIBUTE)) {
+                // New feedbacks already add to it; only store the count if none was added since the read
+                condition = FEEDBACK_COUNT_ATTRIBUTE + " = :before";
+                valueMap.withNumber(":before", before.getNumber(FEEDBACK_COUNT_ATTRIBUTE));
+            }
+            try {
+                locationTable.updateItem(new UpdateItemSpec()
+                        .withPrimaryKey("location_id", locationId)
+                        .withUpdateExpression("SET " + FEEDBACK_COUNT_ATTRIBUTE + " = :count, " + FEEDBACK_COUNTED_ATTRIBUTE + " = :counted")
+                        .withConditionExpression(condition + " AND attribute_not_exists(" + FEEDBACK_COUNTED_ATTRIBUTE + ")")
+                        .withValueMap(valueMap));
+                return true;
+            } catch (ConditionalCheckFailedException e) {
+                // A feedback was added while counting, or another instance finished first
+            }
+        }
+    }
+
+    /**
+     * Fills the visit date and reviewer attributes on feedbacks written before they were
+     * stored, so that those feedbacks appear in the visit date index and list without
+     * lookups. Called once at startup; failures are logged and the remaining feedbacks are
+     * filled on the next start.
+     */
+    public void backfillDenormalizedAttributes() {
+        try {
+            int updated = 0;
+            Map<String, AttributeValue> lastEvaluatedKey = null;
+            do {
+                ScanResult result = amazonDynamoDBClient.scan(new ScanRequest()
+                        .withTableName(feedbackTable.getTableName())
+                        .withProjectionExpression("feedback_id, reservation_id")
+                        .withFilterExpression("attribute_not_exists(" + VISIT_DATE_ATTRIBUTE + ") OR attribute_not_exists(" + REVIEWER_NAME_ATTRIBUTE + ")")
+                        .withExclusiveStartKey(lastEvaluatedKey));
+                Map<String, String> reservationIds = new HashMap<>();
+                for (Map<String, AttributeValue> item : result.getItems()) {
+                    if (item.containsKey("reservation_id")) {
+                        reservationIds.put(item.get("feedback_id").getS(), item.get("reservation_id").getS());
+                    }
+                }
+                Map<String, Item> reservations = batchItemLoader.load(reservationTable.getTableName(), "reservation_id",
+                        reservationIds.values(), "reservation_id", "date", CUSTOMER_EMAIL_ATTRIBUTE);
+                Set<String> customerEmails = new HashSet<>();
+                for (Item reservation : reservations.values()) {
+                    if (reservation.getString(CUSTOMER_EMAIL_ATTRIBUTE) != null) customerEmails.add(reservation.getString(CUSTOMER_EMAIL_ATTRIBUTE));
+                }
+                Map<String, Item> customers = batchItemLoader.load(customerTable.getTableName(), "email",
+                        customerEmails, "email", "first_name", "last_name", "image_url");
+
+                for (Map.Entry<String, String> entry : reservationIds.entrySet()) {
+                    Item reservation = reservations.get(entry.getValue());
+                    if (reservation == null || reservation.getString("date") == null) continue;
+                    String customerEmail = reservation.getString(CUSTOMER_EMAIL_ATTRIBUTE);
+                    Item customer = customerEmail == null ? null : customers.get(customerEmail);
+
+                    String updateExpression = "SET " + VISIT_DATE_ATTRIBUTE + " = :vd, " + REVIEWER_NAME_ATTRIBUTE + " = :rn, "
+                            + REVIEWER_IMAGE_ATTRIBUTE + " = :ri";
+                    ValueMap valueMap = new ValueMap()
+                            .withString(":vd", DateFormatter.parseDate(reservation.getString("date")).toString())
+                            .withString(":rn", customer == null ? "" : reviewerName(customer.getString("first_name"), customer.getString("last_name")))
+                            .withString(":ri", customer == null || customer.getString("image_url") == null ? "" : customer.getString("image_url"));
+                    if (customer != null) {
+                        updateExpression += ", " + CUSTOMER_EMAIL_ATTRIBUTE + " = :ce";
+                        valueMap.withString(":ce", customerEmail);
+                    }
+                    try {
+                        feedbackTable.updateItem(new UpdateItemSpec()
+                                .withPrimaryKey("feedback_id", entry.getKey())
+                                .withUpdateExpression(updateExpression)
+                                .withConditionExpression("attribute_not_exists(" + REVIEWER_NAME_ATTRIBUTE + ")")
+                                .withValueMap(valueMap));
+                        updated++;
+                    } catch (ConditionalCheckFailedException e) {
+                        // Written in the meantime
+                    }
+                }
+                lastEvaluatedKey = result.getLastEvaluatedKey();
+            } while (lastEvaluatedKey != null && !lastEvaluatedKey.isEmpty());
+            if (updated > 0) logger.info("Visit date and reviewer details backfilled on {} feedbacks", updated);
+        } catch (Exception e) {
+            logger.warn("Could not backfill feedback visit dates and reviewer details: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Display name of a reviewer as shown next to their feedback.
+     */
+    public static String reviewerName(String firstName, String lastName) {
+        return ((firstName == null ? "" : firstName) + " " + (lastName == null ? "" : lastName)).trim();
+    }
 }
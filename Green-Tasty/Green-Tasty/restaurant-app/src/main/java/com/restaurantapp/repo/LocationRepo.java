@@ -1,50 +1,71 @@
 package com.restaurantapp.repo;
 
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.document.*;
 import com.amazonaws.services.dynamodbv2.document.spec.QuerySpec;
 import com.amazonaws.services.dynamodbv2.document.spec.UpdateItemSpec;
 import com.amazonaws.services.dynamodbv2.document.utils.ValueMap;
+import com.restaurantapp.cache.LocationCache;
 import com.restaurantapp.dto.Dish;
 import com.restaurantapp.dto.Location;
+import com.restaurantapp.exception.DishNotFoundException;
 import com.restaurantapp.exception.LocationNotFoundException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
+import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
 public class LocationRepo {
+    AmazonDynamoDB amazonDynamoDBClient;
     DynamoDB dynamoDBClient;
-    DishRepo dishRepo;
+    DishHydrator dishHydrator;
     Table locationTable;
     Table dishLocationTable;
+    BatchItemLoader batchItemLoader;
+    LocationCache locationCache;
+    String feedbackTableName;
 
     @Autowired
     public LocationRepo(
+            AmazonDynamoDB amazonDynamoDBClient,
             DynamoDB dynamoDBClient,
-            DishRepo dishRepo,
+            DishHydrator dishHydrator,
+            LocationCache locationCache,
             String locationTableName,
-            String dishLocationTableName
+            String dishLocationTableName,
+            String feedbackTableName
     ) {
+        this.amazonDynamoDBClient = amazonDynamoDBClient;
+        this.feedbackTableName = feedbackTableName;
         this.dynamoDBClient = dynamoDBClient;
-        this.dishRepo = dishRepo;
+        this.dishHydrator = dishHydrator;
+        this.locationCache = locationCache;
         this.locationTable = dynamoDBClient.getTable(locationTableName);
         this.dishLocationTable = dynamoDBClient.getTable(dishLocationTableName);
+        this.batchItemLoader = new BatchItemLoader(dynamoDBClient);
     }
 
     public List<Location> getAllLocations(){
         try {
+            List<Location> cached = locationCache.getAll();
+            if (cached != null) return cached;
+
             ItemCollection<ScanOutcome> items = locationTable.scan();
             List<Location> locations = new ArrayList<>();
             for (Item item : items) {
                 locations.add(Location.fromMap(item.asMap()));
             }
+            locationCache.putAll(locations);
             return locations;
         } catch (Exception e) {
             throw new RuntimeException("Error fetching locations from DynamoDb.");
@@ -52,16 +73,31 @@ public class LocationRepo {
     }
 
     public Location getLocationById(String id) throws LocationNotFoundException {
-        try {
-            Item item = locationTable.getItem("location_id", id);
-            System.out.println(item);
-            if (item == null) {
-                throw new LocationNotFoundException("Location Id "+id+" not found");
+        return lookup(id).getLocation();
+    }
+
+    /**
+     * Returns the time zone of a location, resolved once when the location is cached.
+     */
+    public ZoneId getLocationZone(String id) throws LocationNotFoundException {
+        return lookup(id).getZone();
+    }
+
+    private LocationCache.CachedLocation lookup(String id) throws LocationNotFoundException {
+        LocationCache.CachedLocation cached = locationCache.get(id);
+        if (cached == null) {
+            Item item;
+            try {
+                item = locationTable.getItem("location_id", id);
+            } catch (RuntimeException e) {
+                throw new RuntimeException("Error fetching location for locationId: " + id);
             }
-            return Location.fromMap(item.asMap());
-        } catch (RuntimeException e) {
-            throw new RuntimeException("Error fetching location for locationId: " + id);
+            cached = item == null ? locationCache.putMissing(id) : locationCache.put(Location.fromMap(item.asMap()));
         }
+        if (cached.getLocation() == null) {
+            throw new LocationNotFoundException("Location Id "+id+" not found");
+        }
+        return cached;
     }
 
     public List<Map<String,Object>> getSpecialDishesForLocation(String locationId){
@@ -74,16 +110,26 @@ public class LocationRepo {
                             .withString(":v_location", locationId)
                             .withBoolean(":v_special", true));
 
-            ItemCollection<QueryOutcome> items = dishLocationTable.query(querySpec);
-            List<Map<String,Object>> specialDishes = new ArrayList<>();
-
-            // Fetch detailed dish information from the Dish table using dishId
-            for (Item item : items) {
-                String dishId = item.getString("dish_id");
+            List<String> dishIds = new ArrayList<>();
+            for (Item item : dishLocationTable.query(querySpec)) {
+                dishIds.add(item.getString("dish_id"));
+            }
 
-                // Fetch dish details from Dish table
-                 Map<String,Object> dish= dishRepo.getDishByIdForLocation(dishId);
-                specialDishes.add(dish);
+            // Fetch detailed dish information of all special dishes from the Dish table at once
+            Map<String, Map<String, Object>> dishesById = dishHydrator.getDishes(dishIds, "name", "price", "weight", "imageUrl");
+            List<Map<String,Object>> specialDishes = new ArrayList<>();
+            for (String dishId : dishIds) {
+                Map<String, Object> dish = dishesById.get(dishId);
+                if (dish == null) {
+                    throw new DishNotFoundException("Dish not found for dishId: " + dishId);
+                }
+
+                Map<String, Object> dishMap = new HashMap<>();
+                dishMap.put("name", dish.get("name"));
+                dishMap.put("price", dish.get("price"));
+                dishMap.put("weight", dish.get("weight"));
+                dishMap.put("imageUrl", dish.get("imageUrl"));
+                specialDishes.add(dishMap);
             }
 
             return specialDishes;
@@ -97,12 +143,11 @@ public class LocationRepo {
 
     // getting location info for drop down
     public List<Map<String,Object>> getLocationInfoOptions(){
-        ItemCollection<ScanOutcome> items = locationTable.scan();
         List<Map<String,Object>> locationInfoArray = new ArrayList<>();
-        for(Item location : items){
+        for(Location location : getAllLocations()){
             Map<String, Object> locationMap = new HashMap<>();
-            locationMap.put("locationId",location.getString("location_id"));
-            locationMap.put("address",location.getString("address"));
+            locationMap.put("locationId",location.getLocationId());
+            locationMap.put("address",location.getAddress());
             locationInfoArray.add(locationMap);
         }
         return locationInfoArray;
@@ -111,9 +156,10 @@ public class LocationRepo {
 
     public String getLocationAddress(String locationId) throws Exception {
        try{
-           Item item = locationTable.getItem("location_id", locationId);
-           if(item==null)return null;
-           return item.getString("address");
+           return lookup(locationId).getLocation().getAddress();
+       }
+       catch(LocationNotFoundException e){
+           return null;
        }
        catch(Exception e){
            throw new Exception("Error fetching location address from DynamoDB. "+e.getMessage());
@@ -121,61 +167,65 @@ public class LocationRepo {
 
     }
 
-    public void updateLocationAverageRatings(String locationId, float newLocationRating) throws Exception {
+    /**
+     * Batch variant of {@link #getLocationAddress(String)}.
+     *
+     * @return addresses keyed by location id; unknown ids are absent
+     */
+    public Map<String, String> getLocationAddresses(Collection<String> locationIds) throws Exception {
         try {
+            Map<String, String> addresses = new HashMap<>();
+            Set<String> uncached = new HashSet<>();
+            for (String locationId : locationIds) {
+                LocationCache.CachedLocation cached = locationCache.get(locationId);
+                if (cached == null) uncached.add(locationId);
+                else if (cached.getLocation() != null) addresses.put(locationId, cached.getLocation().getAddress());
+            }
+            if (uncached.isEmpty()) return addresses;
+
+            Map<String, Item> items = batchItemLoader.load(locationTable.getTableName(), "location_id", uncached);
+            for (String locationId : uncached) {
+                Item item = items.get(locationId);
+                if (item == null) {
+                    locationCache.putMissing(locationId);
+                    continue;
+                }
+                Location location = locationCache.put(Location.fromMap(item.asMap())).getLocation();
+                addresses.put(locationId, location.getAddress());
+            }
+            return addresses;
+        } catch (Exception e) {
+            throw new Exception("Error fetching location addresses from DynamoDB. " + e.getMessage());
+        }
+    }
 
-            Item locationItem = locationTable.getItem("location_id", locationId);
-
-            if (locationItem == null) {
+    /**
+     * Counts the cuisine rating of a new feedback towards the location's average, once per
+     * feedback however often it is called. The average itself is derived from
+     * {@code rating_sum} and {@code rating_count} when the location is read.
+     */
+    public void updateLocationAverageRatings(String feedbackId, String locationId, float newLocationRating) throws Exception {
+        try {
+            if (!RatingAggregates.addOnce(amazonDynamoDBClient, locationTable, "location_id", locationId, "rating",
+                    BigDecimal.valueOf(newLocationRating), feedbackTableName, feedbackId, FeedbackRepo.LOCATION_RATING_COUNTED)) {
                 throw new IllegalArgumentException("Location not found with ID: " + locationId);
             }
-
-            float currentAverageRating = Float.parseFloat(locationItem.getString("rating"));
-            float totalRatingsCount = locationItem.getFloat("total_rating_count");
-
-            float rawNewAverage = (currentAverageRating * totalRatingsCount + newLocationRating) / (totalRatingsCount + 1);
-
-            // Use BigDecimal for precise rounding to 2 decimal places
-            BigDecimal updatedAverageRatingString = new BigDecimal(rawNewAverage)
-                    .setScale(2, RoundingMode.HALF_UP);
-
-            locationTable.updateItem(new UpdateItemSpec()
-                    .withPrimaryKey("location_id", locationId)
-                    .withUpdateExpression("SET rating = :avg, total_rating_count = :count")
-                    .withValueMap(new ValueMap()
-                            .withString(":avg", String.valueOf(updatedAverageRatingString))
-                            .withNumber(":count", totalRatingsCount + 1))
-            );
-
-            System.out.println("Location ratings updated successfully. Location ID: " +locationId);
-
+            locationCache.invalidate(locationId);
         } catch (Exception e) {
             throw new Exception("Error updating Location ratings: " + e.getMessage(), e);
         }
     }
+
+    /**
+     * Replaces a cuisine rating that was already counted with a new one.
+     */
     public void adjustLocationRating(String locationId, float oldLocationRating, float newLocationRating) throws Exception {
         try {
-            Item locationItem = locationTable.getItem("location_id", locationId);
-
-            if (locationItem == null) {
+            if (!RatingAggregates.add(locationTable, "location_id", locationId, "rating",
+                    BigDecimal.valueOf(newLocationRating).subtract(BigDecimal.valueOf(oldLocationRating)), 0)) {
                 throw new LocationNotFoundException("Location not found with ID: " + locationId);
             }
-            float currentAverageLocationRating = Float.parseFloat(locationItem.getString("rating"));
-            float totalRatingsCount = locationItem.getFloat("total_rating_count");
-            float ratingDifference = newLocationRating - oldLocationRating;
-            float rawAdjustedAverage = currentAverageLocationRating + (ratingDifference / totalRatingsCount);
-
-            // Round to 2 decimal places using BigDecimal
-            BigDecimal adjustedAverage = new BigDecimal(rawAdjustedAverage)
-                    .setScale(2, RoundingMode.HALF_UP);
-            String adjustedAverageString = String.valueOf(adjustedAverage);
-            locationTable.updateItem(new UpdateItemSpec()
-                    .withPrimaryKey("location_id", locationId)
-                    .withUpdateExpression("SET rating = :newAvg")
-                    .withValueMap(new ValueMap()
-                            .withString(":newAvg", adjustedAverageString))
-            );
-
+            locationCache.invalidate(locationId);
         } catch (Exception e) {
             throw new Exception("Error updating Location ratings: " + e.getMessage(), e);
         }
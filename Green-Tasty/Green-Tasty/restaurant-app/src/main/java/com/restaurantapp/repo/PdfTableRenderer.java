@@ -0,0 +1,104 @@
+package com.restaurantapp.repo;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Draws a table with a title across as many landscape A4 pages as its rows need. Each
+ * page repeats the header row. The column layout is computed once per table and each
+ * row is drawn as one path and one text object, so page content stays small.
+ * <p>
+ * Cell text that is wider than its column is cut off with an ellipsis.
+ */
+final class PdfTableRenderer implements Closeable {
+
+    private static final PDRectangle LANDSCAPE_A4 = new PDRectangle(PDRectangle.A4.getHeight(), PDRectangle.A4.getWidth());
+    private static final PDFont TITLE_FONT = PDType1Font.HELVETICA_BOLD;
+    private static final PDFont HEADER_FONT = PDType1Font.HELVETICA_BOLD;
+    private static final PDFont BODY_FONT = PDType1Font.HELVETICA;
+    private static final float TITLE_FONT_SIZE = 14;
+    private static final float CELL_FONT_SIZE = 7;
+    private static final float MARGIN = 50;
+    private static final float TABLE_WIDTH = LANDSCAPE_A4.getWidth() - 2 * MARGIN - 50;
+    private static final float TABLE_TOP = LANDSCAPE_A4.getHeight() - 100;
+    private static final float ROW_HEIGHT = 15;
+    private static final float CELL_MARGIN = 2;
+    private static final String ELLIPSIS = "...";
+
+    private final PDDocument document;
+    private final String[] headers;
+    private final float cellWidth;
+    private final float textWidth;
+    private PDPageContentStream contentStream;
+    private float yPosition;
+
+    PdfTableRenderer(PDDocument document, String title, String[] headers) throws IOException {
+        this.document = document;
+        this.headers = headers;
+        this.cellWidth = TABLE_WIDTH / headers.length;
+        this.textWidth = cellWidth - 2 * CELL_MARGIN;
+        startPage(title);
+    }
+
+    void addRow(String... cells) throws IOException {
+        if (yPosition < MARGIN) startPage(null);
+        drawRow(cells, BODY_FONT);
+    }
+
+    @Override
+    public void close() throws IOException {
+        contentStream.close();
+    }
+
+    private void startPage(String title) throws IOException {
+        if (contentStream != null) contentStream.close();
+        PDPage page = new PDPage(LANDSCAPE_A4);
+        document.addPage(page);
+        contentStream = new PDPageContentStream(document, page);
+
+        if (title != null) {
+            contentStream.beginText();
+            contentStream.setFont(TITLE_FONT, TITLE_FONT_SIZE);
+            contentStream.newLineAtOffset(MARGIN, LANDSCAPE_A4.getHeight() - 50);
+            contentStream.showText(title);
+            contentStream.endText();
+        }
+        yPosition = TABLE_TOP;
+        drawRow(headers, HEADER_FONT);
+    }
+
+    private void drawRow(String[] cells, PDFont font) throws IOException {
+        for (int i = 0; i < cells.length; i++) {
+            contentStream.addRect(MARGIN + i * cellWidth, yPosition, cellWidth, ROW_HEIGHT);
+        }
+        contentStream.stroke();
+
+        contentStream.beginText();
+        contentStream.setFont(font, CELL_FONT_SIZE);
+        contentStream.newLineAtOffset(MARGIN + CELL_MARGIN, yPosition + CELL_MARGIN);
+        for (int i = 0; i < cells.length; i++) {
+            if (i > 0) contentStream.newLineAtOffset(cellWidth, 0);
+            contentStream.showText(fit(cells[i] == null ? "" : cells[i], font));
+        }
+        contentStream.endText();
+        yPosition -= ROW_HEIGHT;
+    }
+
+    private String fit(String text, PDFont font) throws IOException {
+        if (width(text, font) <= textWidth) return text;
+        int length = text.length();
+        while (length > 0 && width(text.substring(0, length) + ELLIPSIS, font) > textWidth) length--;
+        return text.substring(0, length) + ELLIPSIS;
+    }
+
+    private static float width(String text, PDFont font) throws IOException {
+        return font.getStringWidth(text) / 1000 * CELL_FONT_SIZE;
+    }
+}
@@ -0,0 +1,128 @@
+package com.restaurantapp.repo;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.document.Item;
+import com.amazonaws.services.dynamodbv2.document.Table;
+import com.amazonaws.services.dynamodbv2.document.spec.GetItemSpec;
+import com.amazonaws.services.dynamodbv2.document.spec.UpdateItemSpec;
+import com.amazonaws.services.dynamodbv2.document.utils.ValueMap;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.CancellationReason;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.TransactWriteItem;
+import com.amazonaws.services.dynamodbv2.model.TransactWriteItemsRequest;
+import com.amazonaws.services.dynamodbv2.model.TransactionCanceledException;
+import com.amazonaws.services.dynamodbv2.model.Update;
+import com.restaurantapp.util.Ratings;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the {@code rating_sum} and {@code rating_count} attributes of waiter and location
+ * items with a single {@code ADD}, so concurrent feedbacks cannot overwrite each other.
+ * <p>
+ * Items that still carry only a legacy average and {@code total_rating_count} are seeded
+ * with the equivalent sum and count the first time they are rated.
+ */
+final class RatingAggregates {
+
+    private static final String LEGACY_COUNT_ATTRIBUTE = "total_rating_count";
+
+    private RatingAggregates() {
+    }
+
+    /**
+     * Adds {@code ratingDelta} to the sum and {@code countDelta} to the count of an item.
+     *
+     * @return false if the item does not exist
+     */
+    static boolean add(Table table, String keyName, String keyValue, String legacyAverageAttribute,
+                       BigDecimal ratingDelta, int countDelta) {
+        try {
+            addToSeeded(table, keyName, keyValue, ratingDelta, countDelta);
+            return true;
+        } catch (ConditionalCheckFailedException e) {
+            // Not rated since sum and count were introduced, or not there at all
+        }
+        if (!seedFromLegacy(table, keyName, keyValue, legacyAverageAttribute)) return false;
+        addToSeeded(table, keyName, keyValue, ratingDelta, countDelta);
+        return true;
+    }
+
+    /**
+     * Counts the rating of a new feedback towards an item exactly once. The {@code ADD} runs
+     * in one transaction with setting {@code countedFlag} on the feedback item, conditional on
+     * the flag being absent, so repeating the call after a write that did succeed (a timeout,
+     * a retry, a resumed follow-up) changes nothing.
+     *
+     * @return false if the item does not exist
+     */
+    static boolean addOnce(AmazonDynamoDB client, Table table, String keyName, String keyValue, String legacyAverageAttribute,
+                           BigDecimal rating, String feedbackTableName, String feedbackId, String countedFlag) {
+        TransactWriteItemsRequest request = new TransactWriteItemsRequest().withTransactItems(
+                new TransactWriteItem().withUpdate(new Update()
+                        .withTableName(feedbackTableName)
+                        .withKey(Map.of("feedback_id", new AttributeValue(feedbackId)))
+                        .withUpdateExpression("SET #counted = :counted")
+                        .withConditionExpression("attribute_exists(feedback_id) AND attribute_not_exists(#counted)")
+                        .withExpressionAttributeNames(Map.of("#counted", countedFlag))
+                        .withExpressionAttributeValues(Map.of(":counted", new AttributeValue().withBOOL(true)))),
+                new TransactWriteItem().withUpdate(new Update()
+                        .withTableName(table.getTableName())
+                        .withKey(Map.of(keyName, new AttributeValue(keyValue)))
+                        .withUpdateExpression("ADD " + Ratings.SUM_ATTRIBUTE + " :r, " + Ratings.COUNT_ATTRIBUTE + " :n")
+                        .withConditionExpression("attribute_exists(" + Ratings.SUM_ATTRIBUTE + ")")
+                        .withExpressionAttributeValues(Map.of(
+                                ":r", new AttributeValue().withN(rating.toPlainString()),
+                                ":n", new AttributeValue().withN("1")))));
+
+        for (int attempt = 0; attempt < 2; attempt++) {
+            try {
+                client.transactWriteItems(request);
+                return true;
+            } catch (TransactionCanceledException e) {
+                List<CancellationReason> reasons = e.getCancellationReasons();
+                if (reasons == null || reasons.size() < 2) throw e;
+                // Counted before; nothing left to do
+                if ("ConditionalCheckFailed".equals(reasons.get(0).getCode())) return true;
+                if (!"ConditionalCheckFailed".equals(reasons.get(1).getCode())) throw e;
+            }
+            if (!seedFromLegacy(table, keyName, keyValue, legacyAverageAttribute)) return false;
+        }
+        throw new IllegalStateException("Rating of feedback " + feedbackId + " could not be counted");
+    }
+
+    private static void addToSeeded(Table table, String keyName, String keyValue, BigDecimal ratingDelta, int countDelta) {
+        table.updateItem(new UpdateItemSpec()
+                .withPrimaryKey(keyName, keyValue)
+                .withUpdateExpression("ADD " + Ratings.SUM_ATTRIBUTE + " :r, " + Ratings.COUNT_ATTRIBUTE + " :n")
+                .withConditionExpression("attribute_exists(" + Ratings.SUM_ATTRIBUTE + ")")
+                .withValueMap(new ValueMap()
+                        .withNumber(":r", ratingDelta)
+                        .withNumber(":n", countDelta)));
+    }
+
+    private static boolean seedFromLegacy(Table table, String keyName, String keyValue, String legacyAverageAttribute) {
+        Item item = table.getItem(new GetItemSpec().withPrimaryKey(keyName, keyValue).withConsistentRead(true));
+        if (item == null) return false;
+        if (item.isPresent(Ratings.SUM_ATTRIBUTE)) return true;
+
+        BigDecimal count = item.isPresent(LEGACY_COUNT_ATTRIBUTE) ? item.getNumber(LEGACY_COUNT_ATTRIBUTE) : BigDecimal.ZERO;
+        BigDecimal average = item.isPresent(legacyAverageAttribute)
+                ? new BigDecimal(item.get(legacyAverageAttribute).toString()) : BigDecimal.ZERO;
+        try {
+            table.updateItem(new UpdateItemSpec()
+                    .withPrimaryKey(keyName, keyValue)
+                    .withUpdateExpression("SET " + Ratings.SUM_ATTRIBUTE + " = :s, " + Ratings.COUNT_ATTRIBUTE + " = :c")
+                    .withConditionExpression("attribute_not_exists(" + Ratings.SUM_ATTRIBUTE + ")")
+                    .withValueMap(new ValueMap()
+                            .withNumber(":s", average.multiply(count))
+                            .withNumber(":c", count)));
+        } catch (ConditionalCheckFailedException e) {
+            // Seeded concurrently
+        }
+        return true;
+    }
+}
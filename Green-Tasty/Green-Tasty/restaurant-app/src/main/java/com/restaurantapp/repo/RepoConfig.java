@@ -3,11 +3,18 @@ package com.restaurantapp.repo;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.document.DynamoDB;
 import com.amazonaws.services.s3.AmazonS3;
+import com.restaurantapp.cache.LocationCache;
+import com.restaurantapp.cache.PopularDishIndex;
+import com.restaurantapp.cache.TableAvailabilityCache;
+import com.restaurantapp.cache.WaiterLoadIndex;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 @Configuration
 public class RepoConfig {
 
@@ -31,6 +38,24 @@ public class RepoConfig {
     String feedbackTableName;
     @Value("${reports.table}")
     String reportTableName;
+    @Value("${tables.cache.max-entries:2000}")
+    int tablesCacheMaxEntries;
+    @Value("${tables.cache.ttl-seconds:30}")
+    long tablesCacheTtlSeconds;
+    @Value("${waiters.load-index.ttl-seconds:300}")
+    long waiterLoadIndexTtlSeconds;
+    @Value("${locations.cache.max-entries:1000}")
+    int locationCacheMaxEntries;
+    @Value("${locations.cache.ttl-seconds:600}")
+    long locationCacheTtlSeconds;
+    @Value("${locations.cache.negative-ttl-seconds:60}")
+    long locationCacheNegativeTtlSeconds;
+    @Value("${dynamodb.batch-read.parallelism:4}")
+    int batchReadParallelism;
+    @Value("${reports.upload.part-size-bytes:5242880}")
+    int reportsUploadPartSize;
+    @Value("${reports.csv.gzip:false}")
+    boolean reportsCsvGzip;
 
     @Bean
     @Qualifier("customerRepo")
@@ -44,30 +69,67 @@ public class RepoConfig {
         return new AdminRepo(dynamoDBClient, adminTableName);
     }
 
-    @Bean
+    @Bean(initMethod = "seedLoadIndex")
     @Qualifier("waiterRepo")
     WaiterRepo provideWaiterRepo(@Qualifier("newDynamoDBClient") AmazonDynamoDB dynamoDBClient,
-                                 @Qualifier("locationRepo") LocationRepo locationRepo) {
-        return new WaiterRepo(dynamoDBClient, locationRepo, waiterTableName);
+                                 @Qualifier("locationRepo") LocationRepo locationRepo,
+                                 @Qualifier("waiterLoadIndex") WaiterLoadIndex waiterLoadIndex) {
+        return new WaiterRepo(dynamoDBClient, locationRepo, waiterLoadIndex, waiterTableName, feedbackTableName);
+    }
+
+    @Bean
+    @Qualifier("waiterLoadIndex")
+    WaiterLoadIndex provideWaiterLoadIndex() {
+        return new WaiterLoadIndex(waiterLoadIndexTtlSeconds);
     }
 
     @Bean
     @Qualifier("locationRepo")
-    LocationRepo provideLocationRepo(@Qualifier("dynamoDBClient") DynamoDB dynamoDBClient,
-                                     @Qualifier("dishRepo") DishRepo dishRepo) {
-        return new LocationRepo(dynamoDBClient, dishRepo, locationTableName, dishLocationTableName);
+    LocationRepo provideLocationRepo(@Qualifier("newDynamoDBClient") AmazonDynamoDB amazonDynamoDBClient,
+                                     @Qualifier("dynamoDBClient") DynamoDB dynamoDBClient,
+                                     @Qualifier("dishHydrator") DishHydrator dishHydrator,
+                                     @Qualifier("locationCache") LocationCache locationCache) {
+        return new LocationRepo(amazonDynamoDBClient, dynamoDBClient, dishHydrator, locationCache, locationTableName,
+                dishLocationTableName, feedbackTableName);
+    }
+
+    @Bean
+    @Qualifier("locationCache")
+    LocationCache provideLocationCache() {
+        return new LocationCache(locationCacheMaxEntries, locationCacheTtlSeconds, locationCacheNegativeTtlSeconds);
     }
 
     @Bean
     @Qualifier("dishRepo")
-    DishRepo provideDishRepo(@Qualifier("newDynamoDBClient") AmazonDynamoDB dynamoDBClient) {
-        return new DishRepo(dynamoDBClient, dishTableName, reservationTableName, dishLocationTableName);
+    DishRepo provideDishRepo(@Qualifier("newDynamoDBClient") AmazonDynamoDB dynamoDBClient,
+                             @Qualifier("popularDishIndex") PopularDishIndex popularDishIndex,
+                             @Qualifier("dishHydrator") DishHydrator dishHydrator) {
+        return new DishRepo(dynamoDBClient, popularDishIndex, dishHydrator, dishTableName, reservationTableName, dishLocationTableName);
+    }
+
+    @Bean
+    @Qualifier("dishHydrator")
+    DishHydrator provideDishHydrator(@Qualifier("dynamoDBClient") DynamoDB dynamoDBClient,
+                                     @Qualifier("batchReadExecutor") ExecutorService batchReadExecutor) {
+        return new DishHydrator(dynamoDBClient, batchReadExecutor, dishTableName);
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    @Qualifier("batchReadExecutor")
+    ExecutorService provideBatchReadExecutor() {
+        return Executors.newFixedThreadPool(batchReadParallelism);
     }
 
     @Bean
+    @Qualifier("popularDishIndex")
+    PopularDishIndex providePopularDishIndex() {
+        return new PopularDishIndex();
+    }
+
+    @Bean(initMethod = "backfill")
     @Qualifier("feedbackRepo")
-    FeedbackRepo provideFeedbackRepo(@Qualifier("dynamoDBClient") DynamoDB dynamoDBClient) {
-        return new FeedbackRepo(dynamoDBClient, feedbackTableName);
+    FeedbackRepo provideFeedbackRepo(@Qualifier("newDynamoDBClient") AmazonDynamoDB dynamoDBClient) {
+        return new FeedbackRepo(dynamoDBClient, feedbackTableName, reservationTableName, customerTableName, locationTableName);
     }
 
     @Bean
@@ -75,21 +137,33 @@ public class RepoConfig {
     BookingRepo provideBookingRepo(@Qualifier("newDynamoDBClient") AmazonDynamoDB dynamoDBClient,
                                    @Qualifier("locationRepo") LocationRepo locationRepo,
                                    @Qualifier("waiterRepo") WaiterRepo waiterRepo,
-                                   @Qualifier("customerRepo") CustomerRepo customerRepo
+                                   @Qualifier("customerRepo") CustomerRepo customerRepo,
+                                   @Qualifier("dishRepo") DishRepo dishRepo,
+                                   @Qualifier("tableAvailabilityCache") TableAvailabilityCache tableAvailabilityCache
     ) {
-        return new BookingRepo(dynamoDBClient, locationRepo, waiterRepo, customerRepo, reservationTableName, tablesTableName, waiterTableName, dishLocationTableName);
+        return new BookingRepo(dynamoDBClient, locationRepo, waiterRepo, customerRepo, dishRepo, tableAvailabilityCache, reservationTableName, tablesTableName, waiterTableName);
     }
 
     @Bean
+    @Qualifier("tableAvailabilityCache")
+    TableAvailabilityCache provideTableAvailabilityCache() {
+        return new TableAvailabilityCache(tablesCacheMaxEntries, tablesCacheTtlSeconds);
+    }
+
+    @Bean(initMethod = "backfillLocationDates")
     @Qualifier("tableRepo")
-    TableRepo provideTableRepo(@Qualifier("newDynamoDBClient") AmazonDynamoDB dynamoDBClient) {
-        return new TableRepo(dynamoDBClient, tablesTableName);
+    TableRepo provideTableRepo(@Qualifier("newDynamoDBClient") AmazonDynamoDB dynamoDBClient,
+                               @Qualifier("tableAvailabilityCache") TableAvailabilityCache tableAvailabilityCache) {
+        return new TableRepo(dynamoDBClient, tableAvailabilityCache, tablesTableName);
     }
 
     @Bean
     @Qualifier("reportsRepo")
     ReportsRepo provideReportsRepo(@Qualifier("newDynamoDBClient") AmazonDynamoDB dynamoDBClient,
-                                   @Qualifier("s3Client") AmazonS3 amazonS3Client) {
-        return new ReportsRepo(dynamoDBClient, amazonS3Client, waiterTableName, reportTableName);
+                                   @Qualifier("s3Client") AmazonS3 amazonS3Client,
+                                   @Qualifier("locationRepo") LocationRepo locationRepo,
+                                   @Qualifier("reportQueryExecutor") ExecutorService reportQueryExecutor) {
+        return new ReportsRepo(dynamoDBClient, amazonS3Client, locationRepo, reportQueryExecutor, waiterTableName, reportTableName,
+                reportsUploadPartSize, reportsCsvGzip);
     }
 }
@@ -3,32 +3,44 @@ package com.restaurantapp.repo;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.document.DynamoDB;
 import com.amazonaws.services.dynamodbv2.document.Item;
+import com.amazonaws.services.dynamodbv2.document.ItemUtils;
 import com.amazonaws.services.dynamodbv2.document.Table;
+import com.amazonaws.services.dynamodbv2.document.spec.GetItemSpec;
+import com.amazonaws.services.dynamodbv2.document.spec.PutItemSpec;
 import com.amazonaws.services.dynamodbv2.document.spec.UpdateItemSpec;
+import com.amazonaws.services.dynamodbv2.document.utils.ValueMap;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
-import com.amazonaws.services.dynamodbv2.model.ScanRequest;
-import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+import com.amazonaws.services.dynamodbv2.model.ReturnValue;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.model.GeneratePresignedUrlRequest;
 import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.restaurantapp.dto.Location;
 import com.restaurantapp.dto.LocationReport;
+import com.restaurantapp.dto.RatingAggregate;
 import com.restaurantapp.dto.WaiterReport;
 import com.restaurantapp.util.DateFormatter;
+import com.restaurantapp.util.ReportPeriod;
+import org.apache.pdfbox.io.MemoryUsageSetting;
 import org.apache.pdfbox.pdmodel.PDDocument;
-import org.apache.pdfbox.pdmodel.PDPage;
-import org.apache.pdfbox.pdmodel.PDPageContentStream;
-import org.apache.pdfbox.pdmodel.common.PDRectangle;
-import org.apache.pdfbox.pdmodel.font.PDType1Font;
-import org.springframework.beans.factory.annotation.Value;
-
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+
+import java.io.BufferedWriter;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.zip.GZIPOutputStream;
 
 public class ReportsRepo {
     private final AmazonDynamoDB amazonDynamoDBClient;
@@ -36,86 +48,249 @@ public class ReportsRepo {
     private final AmazonS3 s3Client;
     private final Table waiterTable;
     private final Table reportsTable;
+    private final LocationRepo locationRepo;
+    private final BatchItemLoader batchItemLoader;
+    private final Executor queryExecutor;
+    private final int uploadPartSize;
+    private final boolean gzipCsv;
+
+    static final String LOCATION_DATE_INDEX = "location_id-date-index";
+    static final String WAITER_DATE_INDEX = "waiter_email-date-index";
+    static final String SERVICE_FEEDBACK_ATTRIBUTE = "service_feedback_stats";
+    static final String CUISINE_FEEDBACK_ATTRIBUTE = "cuisine_feedback_stats";
+    static final String LEGACY_FEEDBACK_ATTRIBUTES =
+            "total_service_feedback, minimum_service_feedback, total_cuisine_feedback, minimum_cuisine_feedback";
+    static final String ROLLUP_MARKER_ID = "ROLLUP#READY";
+    static final String PENDING_ROLLUP_EDITS_ATTRIBUTE = "pending_rollup_edits";
+    static final String APPLIED_EDITS_ATTRIBUTE = "applied_edits";
+    private static final ReportPeriod[] LARGEST_PERIOD_FIRST = {ReportPeriod.MONTH, ReportPeriod.WEEK};
+    private static final int MAX_ROLLUP_ATTEMPTS = 5;
+
+    private volatile boolean rollupsReady;
+
+    /**
+     * Writes the rows of a CSV file.
+     */
+    @FunctionalInterface
+    public interface CsvContent {
+        void writeTo(Writer csvWriter) throws IOException;
+    }
 
-    @Value("${reports.table}") String reportTableName;
+    /**
+     * Draws the pages of a PDF file.
+     */
+    @FunctionalInterface
+    public interface PdfContent {
+        void drawOn(PDDocument document) throws IOException;
+    }
 
-    public ReportsRepo(AmazonDynamoDB amazonDynamoDBClient, AmazonS3 amazonS3Client,String waiterTableName,String reportTableName) {
+    public ReportsRepo(AmazonDynamoDB amazonDynamoDBClient, AmazonS3 amazonS3Client, LocationRepo locationRepo,
+                       Executor queryExecutor, String waiterTableName, String reportTableName,
+                       int uploadPartSize, boolean gzipCsv) {
         this.amazonDynamoDBClient = amazonDynamoDBClient;
         this.dynamoDBClient = new DynamoDB(amazonDynamoDBClient);
         this.s3Client = amazonS3Client;
+        this.locationRepo = locationRepo;
+        this.queryExecutor = queryExecutor;
+        this.uploadPartSize = uploadPartSize;
+        this.gzipCsv = gzipCsv;
+        this.batchItemLoader = new BatchItemLoader(dynamoDBClient);
         this.waiterTable = dynamoDBClient.getTable(waiterTableName);
         this.reportsTable = dynamoDBClient.getTable(reportTableName);
     }
 
+    /**
+     * Aggregates the report items of a date range per waiter.
+     * <p>
+     * Whole months and weeks inside the range are read from the rollups that reports-app
+     * maintains, with one batched GetItem. Only the days at the edges that no rollup
+     * covers are read from daily items, with paginated queries on the waiter_email-date
+     * index when a waiter is given and on the location_id-date index otherwise. Without a
+     * waiter or location, every location is read, and daily queries run in parallel.
+     */
     public Map<String, WaiterReport> fetchWaiterReports(String startDate, String endDate, String waiterId, String locationId) {
-        String filterExpression = "#date BETWEEN :startDate AND :endDate";
-        Map<String, String> attributeNameMap = new HashMap<>(Map.of("#date", "date"));
-        Map<String, AttributeValue> attributeValueMap = new HashMap<>(Map.of(
-                ":startDate", new AttributeValue().withS(DateFormatter.convertToISOFormat(startDate)),
-                ":endDate", new AttributeValue().withS(DateFormatter.convertToISOFormat(endDate))
-        ));
-
-        if (waiterId != null && locationId != null && !waiterId.isBlank() && !locationId.isBlank()) {
-            filterExpression += " AND #waiter_email = :waiterId AND #location_id = :locationId";
-            attributeNameMap.putAll(Map.of(
-                    "#waiter_email", "waiter_email",
-                    "#location_id", "location_id"
-            ));
-            attributeValueMap.putAll(Map.of(
-                    ":waiterId", new AttributeValue().withS(waiterId),
-                    ":locationId", new AttributeValue().withS(locationId)
-            ));
-
-        } else if ((waiterId == null || waiterId.isBlank()) && locationId != null) {
-            filterExpression += " AND #location_id = :locationId";
-            attributeNameMap.put("#location_id", "location_id");
-            attributeValueMap.put(":locationId", new AttributeValue().withS(locationId));
-        } else if (waiterId != null && !waiterId.isBlank()) {
-            filterExpression += " AND #waiter_email = :waiterId";
-            attributeNameMap.put("#waiter_email", "waiter_email");
-            attributeValueMap.put(":waiterId", new AttributeValue().withS(waiterId));
+        boolean hasWaiter = waiterId != null && !waiterId.isBlank();
+        boolean hasLocation = locationId != null && !locationId.isBlank();
+
+        List<Map.Entry<ReportPeriod, LocalDate>> rollupPeriods = new ArrayList<>();
+        List<LocalDate[]> dailyRanges = new ArrayList<>();
+        planRange(DateFormatter.parseDate(startDate), DateFormatter.parseDate(endDate), rollupsReady(), rollupPeriods, dailyRanges);
+
+        // Per waiter and day or period: waiter_email, location_id and the figures of a daily item
+        List<Map<String, Object>> entries = new ArrayList<>();
+        for (LocalDate[] range : dailyRanges) {
+            String isoStartDate = range[0].toString();
+            String isoEndDate = range[1].toString();
+            List<Map<String, AttributeValue>> reportItems;
+            if (hasWaiter) {
+                reportItems = queryReports(WAITER_DATE_INDEX, "waiter_email", waiterId, isoStartDate, isoEndDate,
+                        hasLocation ? locationId : null);
+            } else if (hasLocation) {
+                reportItems = queryReports(LOCATION_DATE_INDEX, "location_id", locationId, isoStartDate, isoEndDate, null);
+            } else {
+                reportItems = queryAllLocations(isoStartDate, isoEndDate);
+            }
+            reportItems.forEach(item -> entries.add(ItemUtils.toItem(item).asMap()));
+        }
+        if (!rollupPeriods.isEmpty()) {
+            entries.addAll(readRollups(rollupPeriods, hasWaiter ? waiterId : null, hasLocation ? locationId : null));
         }
 
-        ScanRequest scanRequest = new ScanRequest()
-                .withTableName(reportTableName)
-                .withFilterExpression(filterExpression)
-                .withExpressionAttributeNames(attributeNameMap)
-                .withExpressionAttributeValues(attributeValueMap);
+        Set<String> waiterEmails = new HashSet<>();
+        entries.forEach(entry -> waiterEmails.add((String) entry.get("waiter_email")));
+        Map<String, Item> waiters = batchItemLoader.load(waiterTable.getTableName(), "email", waiterEmails, "first_name", "last_name");
 
-        ScanResult scanResult = amazonDynamoDBClient.scan(scanRequest);
         Map<String, WaiterReport> waiterReportsMap = new HashMap<>();
 
-        scanResult.getItems().forEach(item -> {
-            String waiterEmail = item.get("waiter_email").getS();
-            double hoursWorked = Double.parseDouble(item.get("waiter_working_hours").getN());
-            double ordersProcessed = Double.parseDouble(item.get("waiter_orders_processed").getN());
-            List<Double> totalServiceFeedback = item.get("total_service_feedback").getL()
-                    .stream().mapToDouble(x -> Double.parseDouble(x.getN())).boxed().collect(Collectors.toList());
-            double minServiceFeedback = Double.parseDouble(item.get("minimum_service_feedback").getN());
-            List<Double> totalCuisineFeedback = item.get("total_cuisine_feedback").getL()
-                    .stream().mapToDouble(x -> Double.parseDouble(x.getN())).boxed().collect(Collectors.toList());
-            double minCuisineFeedback = Double.parseDouble(item.get("minimum_cuisine_feedback").getN());
-            double revenue = Double.parseDouble(item.get("total_revenue").getN());
+        entries.forEach(entry -> {
+            String waiterEmail = (String) entry.get("waiter_email");
+            double hoursWorked = ((Number) entry.get("waiter_working_hours")).doubleValue();
+            double ordersProcessed = ((Number) entry.get("waiter_orders_processed")).doubleValue();
+            RatingAggregate serviceFeedback = readAggregate(entry, SERVICE_FEEDBACK_ATTRIBUTE, "total_service_feedback");
+            RatingAggregate cuisineFeedback = readAggregate(entry, CUISINE_FEEDBACK_ATTRIBUTE, "total_cuisine_feedback");
+            double revenue = ((Number) entry.get("total_revenue")).doubleValue();
 
             if (!waiterReportsMap.containsKey(waiterEmail)) {
-                Item waiterDetails = waiterTable.getItem("email", waiterEmail);
-                String location = item.get("location_id").getS();
+                Item waiterDetails = waiters.get(waiterEmail);
+                String location = (String) entry.get("location_id");
                 String waiterName = waiterDetails.getString("first_name") + " " + waiterDetails.getString("last_name");
-                waiterReportsMap.put(waiterEmail, new WaiterReport(location, waiterName, waiterEmail, startDate, endDate, hoursWorked, ordersProcessed, totalServiceFeedback, minServiceFeedback, totalCuisineFeedback, minCuisineFeedback, revenue));
+                waiterReportsMap.put(waiterEmail, new WaiterReport(location, waiterName, waiterEmail, startDate, endDate, hoursWorked, ordersProcessed, serviceFeedback, cuisineFeedback, revenue));
             } else {
                 WaiterReport existingReport = waiterReportsMap.get(waiterEmail);
                 existingReport.setHoursWorked(existingReport.getHoursWorked() + hoursWorked);
                 existingReport.setOrdersProcessed(existingReport.getOrdersProcessed() + ordersProcessed);
-                existingReport.getTotalServiceFeedback().addAll(totalServiceFeedback);
-                existingReport.setMinServiceFeedback(existingReport.getMinServiceFeedback() + minServiceFeedback);
-                existingReport.getTotalCuisineFeedback().addAll(totalCuisineFeedback);
-                existingReport.setMinCuisineFeedback(existingReport.getMinCuisineFeedback() + minCuisineFeedback);
+                existingReport.getServiceFeedback().merge(serviceFeedback);
+                existingReport.getCuisineFeedback().merge(cuisineFeedback);
                 existingReport.setRevenue(existingReport.getRevenue() + revenue);
             }
         });
         return waiterReportsMap;
     }
 
+    /**
+     * Splits a date range into the largest whole months and weeks it contains and the
+     * remaining day ranges.
+     */
+    static void planRange(LocalDate from, LocalDate to, boolean useRollups,
+                          List<Map.Entry<ReportPeriod, LocalDate>> rollupPeriods, List<LocalDate[]> dailyRanges) {
+        LocalDate dailyStart = null;
+        LocalDate day = from;
+        while (!day.isAfter(to)) {
+            ReportPeriod covering = null;
+            if (useRollups) {
+                for (ReportPeriod period : LARGEST_PERIOD_FIRST) {
+                    if (period.start(day).equals(day) && !period.end(day).isAfter(to)) {
+                        covering = period;
+                        break;
+                    }
+                }
+            }
+            if (covering == null) {
+                if (dailyStart == null) dailyStart = day;
+                day = day.plusDays(1);
+                continue;
+            }
+            if (dailyStart != null) {
+                dailyRanges.add(new LocalDate[]{dailyStart, day.minusDays(1)});
+                dailyStart = null;
+            }
+            rollupPeriods.add(Map.entry(covering, day));
+            day = covering.end(day).plusDays(1);
+        }
+        if (dailyStart != null) dailyRanges.add(new LocalDate[]{dailyStart, to});
+    }
+
+    /**
+     * Reads the waiter entries of the rollups of the given periods: the waiter's own
+     * rollups when a waiter is given, otherwise the rollups of the location or of every
+     * location.
+     */
+    private List<Map<String, Object>> readRollups(List<Map.Entry<ReportPeriod, LocalDate>> periods, String waiterId, String locationId) {
+        String scope = waiterId != null ? "WAITER" : "LOCATION";
+        List<String> ids = waiterId != null ? List.of(waiterId)
+                : locationId != null ? List.of(locationId)
+                : locationRepo.getAllLocations().stream().map(Location::getLocationId).toList();
+        List<String> rollupIds = new ArrayList<>();
+        for (Map.Entry<ReportPeriod, LocalDate> period : periods) {
+            ids.forEach(id -> rollupIds.add(rollupId(period.getKey(), period.getValue(), scope, id)));
+        }
+
+        List<Map<String, Object>> entries = new ArrayList<>();
+        for (Item rollup : batchItemLoader.load(reportsTable.getTableName(), "report_id", rollupIds).values()) {
+            Map<String, Object> rollupWaiters = rollup.getRawMap("waiters");
+            rollupWaiters.forEach((waiterEmail, value) -> {
+                Map<String, Object> entry = new HashMap<>(rawMap(value));
+                if (waiterId != null && locationId != null && !locationId.equals(entry.get("location_id"))) return;
+                entry.put("waiter_email", waiterEmail);
+                entries.add(entry);
+            });
+        }
+        return entries;
+    }
+
+    /**
+     * Whether reports-app has built rollups for all daily items yet. Until then, reports
+     * are served from daily items only.
+     */
+    private boolean rollupsReady() {
+        if (!rollupsReady) {
+            rollupsReady = reportsTable.getItem("report_id", ROLLUP_MARKER_ID) != null;
+        }
+        return rollupsReady;
+    }
+
+    private List<Map<String, AttributeValue>> queryAllLocations(String isoStartDate, String isoEndDate) {
+        List<CompletableFuture<List<Map<String, AttributeValue>>>> futures = locationRepo.getAllLocations().stream()
+                .map(location -> CompletableFuture.supplyAsync(() -> queryReports(LOCATION_DATE_INDEX, "location_id",
+                        location.getLocationId(), isoStartDate, isoEndDate, null), queryExecutor))
+                .toList();
+        List<Map<String, AttributeValue>> items = new ArrayList<>();
+        try {
+            for (CompletableFuture<List<Map<String, AttributeValue>>> future : futures) {
+                items.addAll(future.join());
+            }
+        } catch (CompletionException e) {
+            futures.forEach(future -> future.cancel(true));
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            throw e;
+        }
+        return items;
+    }
+
+    /**
+     * Reads all report items of one key in a date range from the given index, following
+     * LastEvaluatedKey so that results past 1 MB are not lost.
+     *
+     * @param locationId optional location filter
+     */
+    private List<Map<String, AttributeValue>> queryReports(String indexName, String keyName, String keyValue,
+                                                           String isoStartDate, String isoEndDate, String locationId) {
+        Map<String, String> names = new HashMap<>(Map.of("#key", keyName, "#date", "date"));
+        Map<String, AttributeValue> values = new HashMap<>(Map.of(
+                ":key", new AttributeValue().withS(keyValue),
+                ":startDate", new AttributeValue().withS(isoStartDate),
+                ":endDate", new AttributeValue().withS(isoEndDate)));
+        QueryRequest request = new QueryRequest()
+                .withTableName(reportsTable.getTableName())
+                .withIndexName(indexName)
+                .withKeyConditionExpression("#key = :key AND #date BETWEEN :startDate AND :endDate");
+        if (locationId != null) {
+            names.put("#location_id", "location_id");
+            values.put(":locationId", new AttributeValue().withS(locationId));
+            request.withFilterExpression("#location_id = :locationId");
+        }
+        request.withExpressionAttributeNames(names).withExpressionAttributeValues(values);
+
+        List<Map<String, AttributeValue>> items = new ArrayList<>();
+        Map<String, AttributeValue> lastEvaluatedKey = null;
+        do {
+            QueryResult result = amazonDynamoDBClient.query(request.withExclusiveStartKey(lastEvaluatedKey));
+            items.addAll(result.getItems());
+            lastEvaluatedKey = result.getLastEvaluatedKey();
+        } while (lastEvaluatedKey != null && !lastEvaluatedKey.isEmpty());
+        return items;
+    }
+
     public Map<String, LocationReport> generateLocationReports(Map<String, WaiterReport> waiterReportMap) {
         Map<String, LocationReport> locationReportsMap = new HashMap<>();
 
@@ -127,26 +302,22 @@ public class ReportsRepo {
                         locationId,
                         waiterReport.getStartDate(),
                         waiterReport.getEndDate(),
-                        waiterReport.getOrdersProcessed(),
-                        new ArrayList<>() {{
-                            addAll(waiterReport.getTotalCuisineFeedback());
-                        }},
-                        waiterReport.getMinCuisineFeedback(),
-                        waiterReport.getRevenue()
+                        0,
+                        RatingAggregate.empty(),
+                        0
                 ));
             }
 
             LocationReport existingLocationReport = locationReportsMap.get(locationId);
             existingLocationReport.setOrdersProcessed(existingLocationReport.getOrdersProcessed() + waiterReport.getOrdersProcessed());
-            existingLocationReport.getTotalCuisineFeedback().addAll(waiterReport.getTotalCuisineFeedback());
-            existingLocationReport.setMinCuisineFeedback(Math.min(existingLocationReport.getMinCuisineFeedback(), waiterReport.getMinCuisineFeedback()));
+            existingLocationReport.getCuisineFeedback().merge(waiterReport.getCuisineFeedback());
             existingLocationReport.setRevenue(existingLocationReport.getRevenue() + waiterReport.getRevenue());
         }
         return locationReportsMap;
     }
 
-    public String generateWaiterCSV(Map<String, WaiterReport> reportDataCurr, Map<String, WaiterReport> reportDataPrev) {
-        StringBuilder csvBuilder = new StringBuilder("Location ID,Waiter,Waiter's e-mail,Report period start,Report period end,Waiter working hours,Waiter orders processed,Delta of Waiter Orders processed to previous period in %,Average Service Feedback Waiter (1 to 5),Minimum Service Feedback Waiter (1 to 5),Delta of Average Service Feedback Waiter to previous period in %\n");
+    public void generateWaiterCSV(Map<String, WaiterReport> reportDataCurr, Map<String, WaiterReport> reportDataPrev, Writer csvWriter) throws IOException {
+        csvWriter.write("Location ID,Waiter,Waiter's e-mail,Report period start,Report period end,Waiter working hours,Waiter orders processed,Delta of Waiter Orders processed to previous period in %,Average Service Feedback Waiter (1 to 5),Minimum Service Feedback Waiter (1 to 5),Delta of Average Service Feedback Waiter to previous period in %\n");
         for (WaiterReport report : reportDataCurr.values()) {
             WaiterReport prevReport = reportDataPrev.getOrDefault(report.getWaiterEmail(), WaiterReport.getBlankReport());
 
@@ -154,14 +325,14 @@ public class ReportsRepo {
                     ? 0
                     : ((report.getOrdersProcessed() - prevReport.getOrdersProcessed()) / prevReport.getOrdersProcessed()) * 100;
 
-            double avgServiceFeedbackCurr = report.getTotalServiceFeedback().stream().mapToDouble(Double::doubleValue).average().orElse(0);
-            double avgServiceFeedbackPrev = prevReport.getTotalServiceFeedback().stream().mapToDouble(Double::doubleValue).average().orElse(0);
+            double avgServiceFeedbackCurr = report.getServiceFeedback().getAverage();
+            double avgServiceFeedbackPrev = prevReport.getServiceFeedback().getAverage();
             double deltaAvgServiceFeedback = avgServiceFeedbackPrev == 0
                     ? 0
                     : ((avgServiceFeedbackCurr - avgServiceFeedbackPrev) / avgServiceFeedbackPrev) * 100;
 
 
-            csvBuilder.append(report.getLocationId()).append(",")
+            csvWriter.append(new StringBuilder().append(report.getLocationId()).append(",")
                     .append(report.getWaiterName()).append(",")
                     .append(report.getWaiterEmail()).append(",")
                     .append(report.getStartDate()).append(",")
@@ -171,113 +342,50 @@ public class ReportsRepo {
                     .append(String.format("%.2f", deltaOrdersProcessed)).append(",")
                     .append(String.format("%.2f", avgServiceFeedbackCurr)).append(",")
                     .append(report.getMinServiceFeedback()).append(",")
-                    .append(deltaAvgServiceFeedback).append("\n");
+                    .append(deltaAvgServiceFeedback).append("\n"));
         }
-        return csvBuilder.toString();
     }
 
-    public byte[] generateWaiterPDF(Map<String, WaiterReport> reportDataCurr, Map<String, WaiterReport> reportDataPrev, String startDate, String endDate) throws IOException {
-
-        try (PDDocument document = new PDDocument()) {
-            PDRectangle landscape = new PDRectangle(PDRectangle.A4.getHeight(), PDRectangle.A4.getWidth());
-            PDPage page = new PDPage(landscape);
-            document.addPage(page);
-
-            PDPageContentStream contentStream = new PDPageContentStream(document, page);
-
-            try {
-                contentStream.setFont(PDType1Font.HELVETICA_BOLD, 14);
-
-                contentStream.beginText();
-                contentStream.newLineAtOffset(50, landscape.getHeight() - 50);
-                contentStream.showText("Waiter Report (" + startDate + "-" + endDate + ")");
-                contentStream.endText();
-
-                float yPosition = landscape.getHeight() - 100;
-                float margin = 50;
-                float tableWidth = landscape.getWidth() - 2 * margin - 50;
-                float rowHeight = 15;
-                float cellMargin = 2;
-
-                String[] headers = {
-                        "Location ID", "Waiter", "Report Start", "Report End",
-                        "Hours Worked", "Orders Processed",
-                        "Delta Orders (%)", "Avg Service Fdbck.",
-                        "Min Service Fbck.", "Delta Serv. Fdbck (%)"
-                };
-
-                contentStream.setFont(PDType1Font.HELVETICA_BOLD, 8);
-
-                for (int i = 0; i < headers.length; i++) {
-                    float cellWidth = tableWidth / headers.length;
-                    contentStream.addRect(margin + i * cellWidth, yPosition, cellWidth, rowHeight);
-                    contentStream.beginText();
-                    contentStream.setFont(PDType1Font.HELVETICA_BOLD, 7);
-                    contentStream.newLineAtOffset(margin + i * cellWidth + cellMargin, yPosition + cellMargin);
-                    contentStream.showText(headers[i]);
-                    contentStream.endText();
-                }
-                contentStream.stroke();
-
-                contentStream.setFont(PDType1Font.HELVETICA, 7);
-                yPosition -= rowHeight;
-                for (WaiterReport report : reportDataCurr.values()) {
-                    WaiterReport prevReport = reportDataPrev.getOrDefault(report.getWaiterEmail(), WaiterReport.getBlankReport());
-
-                    double deltaOrdersProcessed = prevReport.getOrdersProcessed() == 0
-                            ? 0
-                            : ((report.getOrdersProcessed() - prevReport.getOrdersProcessed()) / prevReport.getOrdersProcessed()) * 100;
-
-                    double avgServiceFeedbackCurr = report.getTotalServiceFeedback().stream().mapToDouble(Double::doubleValue).average().orElse(0);
-                    double avgServiceFeedbackPrev = prevReport.getTotalServiceFeedback().stream().mapToDouble(Double::doubleValue).average().orElse(0);
-                    double deltaAvgServiceFeedback = avgServiceFeedbackPrev == 0
-                            ? 0
-                            : ((avgServiceFeedbackCurr - avgServiceFeedbackPrev) / avgServiceFeedbackPrev) * 100;
-
-                    String[] rowData = {
-                            report.getLocationId(),
-                            report.getWaiterName(),
-                            report.getStartDate(),
-                            report.getEndDate(),
-                            String.valueOf(report.getHoursWorked()),
-                            String.valueOf(report.getOrdersProcessed()),
-                            String.format("%.2f", deltaOrdersProcessed),
-                            String.format("%.2f", avgServiceFeedbackCurr),
-                            String.valueOf(report.getMinServiceFeedback()),
-                            String.format("%.2f", deltaAvgServiceFeedback)
-                    };
-
-                    for (int i = 0; i < rowData.length; i++) {
-                        float cellWidth = tableWidth / rowData.length;
-                        contentStream.addRect(margin + i * cellWidth, yPosition, cellWidth, rowHeight);
-                        contentStream.beginText();
-                        contentStream.newLineAtOffset(margin + i * cellWidth + cellMargin, yPosition + cellMargin);
-                        contentStream.showText(rowData[i]);
-                        contentStream.endText();
-                    }
-                    contentStream.stroke();
-                    yPosition -= rowHeight;
-
-                    if (yPosition < 50) {
-                        contentStream.close();
-                        page = new PDPage(landscape);
-                        document.addPage(page);
-                        contentStream = new PDPageContentStream(document, page);
-                        yPosition = landscape.getHeight() - 100;
-                    }
-                }
-            } finally {
-                contentStream.close();
+    public void generateWaiterPDF(Map<String, WaiterReport> reportDataCurr, Map<String, WaiterReport> reportDataPrev, String startDate, String endDate, PDDocument document) throws IOException {
+        String[] headers = {
+                "Location ID", "Waiter", "Report Start", "Report End",
+                "Hours Worked", "Orders Processed",
+                "Delta Orders (%)", "Avg Service Fdbck.",
+                "Min Service Fbck.", "Delta Serv. Fdbck (%)"
+        };
+
+        try (PdfTableRenderer table = new PdfTableRenderer(document, "Waiter Report (" + startDate + "-" + endDate + ")", headers)) {
+            for (WaiterReport report : reportDataCurr.values()) {
+                WaiterReport prevReport = reportDataPrev.getOrDefault(report.getWaiterEmail(), WaiterReport.getBlankReport());
+
+                double deltaOrdersProcessed = prevReport.getOrdersProcessed() == 0
+                        ? 0
+                        : ((report.getOrdersProcessed() - prevReport.getOrdersProcessed()) / prevReport.getOrdersProcessed()) * 100;
+
+                double avgServiceFeedbackCurr = report.getServiceFeedback().getAverage();
+                double avgServiceFeedbackPrev = prevReport.getServiceFeedback().getAverage();
+                double deltaAvgServiceFeedback = avgServiceFeedbackPrev == 0
+                        ? 0
+                        : ((avgServiceFeedbackCurr - avgServiceFeedbackPrev) / avgServiceFeedbackPrev) * 100;
+
+                table.addRow(
+                        report.getLocationId(),
+                        report.getWaiterName(),
+                        report.getStartDate(),
+                        report.getEndDate(),
+                        String.valueOf(report.getHoursWorked()),
+                        String.valueOf(report.getOrdersProcessed()),
+                        String.format("%.2f", deltaOrdersProcessed),
+                        String.format("%.2f", avgServiceFeedbackCurr),
+                        String.valueOf(report.getMinServiceFeedback()),
+                        String.format("%.2f", deltaAvgServiceFeedback)
+                );
             }
-
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            document.save(outputStream);
-            return outputStream.toByteArray();
         }
     }
 
-    public String generateLocationCSV(Map<String, LocationReport> reportDataCurr, Map<String, LocationReport> reportDataPrev) {
-        StringBuilder csvBuilder = new StringBuilder("Location ID,Report period start,Report period end,Orders processed within location,Delta of orders processed within location to previous period (in %),Average cuisine Feedback by Restaurant location (1 to 5),Minimum cuisine Feedback by Restaurant location (1 to 5),Delta of average cuisine Feedback by Restaurant location to previous period (in %),Revenue for orders within reported period,Delta of revenue for orders to previous period (in %)\n");
+    public void generateLocationCSV(Map<String, LocationReport> reportDataCurr, Map<String, LocationReport> reportDataPrev, Writer csvWriter) throws IOException {
+        csvWriter.write("Location ID,Report period start,Report period end,Orders processed within location,Delta of orders processed within location to previous period (in %),Average cuisine Feedback by Restaurant location (1 to 5),Minimum cuisine Feedback by Restaurant location (1 to 5),Delta of average cuisine Feedback by Restaurant location to previous period (in %),Revenue for orders within reported period,Delta of revenue for orders to previous period (in %)\n");
         for (LocationReport report : reportDataCurr.values()) {
             LocationReport prevReport = reportDataPrev.getOrDefault(report.getLocationId(), LocationReport.getBlankReport());
 
@@ -285,8 +393,8 @@ public class ReportsRepo {
                     ? 0
                     : ((report.getOrdersProcessed() - prevReport.getOrdersProcessed()) / prevReport.getOrdersProcessed()) * 100;
 
-            double avgCuisineFeedbackCurr = report.getTotalCuisineFeedback().stream().mapToDouble(Double::doubleValue).average().orElse(0);
-            double avgCuisineFeedbackPrev = prevReport.getTotalCuisineFeedback().stream().mapToDouble(Double::doubleValue).average().orElse(0);
+            double avgCuisineFeedbackCurr = report.getCuisineFeedback().getAverage();
+            double avgCuisineFeedbackPrev = prevReport.getCuisineFeedback().getAverage();
             double deltaAvgCuisineFeedback = avgCuisineFeedbackPrev == 0
                     ? 0
                     : ((avgCuisineFeedbackCurr - avgCuisineFeedbackPrev) / avgCuisineFeedbackPrev) * 100;
@@ -296,7 +404,7 @@ public class ReportsRepo {
                     : ((report.getRevenue() - prevReport.getRevenue()) / prevReport.getRevenue()) * 100;
 
 
-            csvBuilder.append(report.getLocationId()).append(",")
+            csvWriter.append(new StringBuilder().append(report.getLocationId()).append(",")
                     .append(report.getStartDate()).append(",")
                     .append(report.getEndDate()).append(",")
                     .append(report.getOrdersProcessed()).append(",")
@@ -305,190 +413,278 @@ public class ReportsRepo {
                     .append(report.getMinCuisineFeedback()).append(",")
                     .append(String.format("%.2f", deltaAvgCuisineFeedback)).append(",")
                     .append(report.getRevenue()).append(",")
-                    .append(String.format("%.2f", deltaRevenue)).append("\n");
+                    .append(String.format("%.2f", deltaRevenue)).append("\n"));
         }
-        return csvBuilder.toString();
     }
 
-    public byte[] generateLocationPDF(Map<String, LocationReport> reportDataCurr, Map<String, LocationReport> reportDataPrev, String startDate, String endDate) throws IOException {
+    public void generateLocationPDF(Map<String, LocationReport> reportDataCurr, Map<String, LocationReport> reportDataPrev, String startDate, String endDate, PDDocument document) throws IOException {
+        String[] headers = {
+                "Location ID", "Report Start", "Report End",
+                "Orders Processed", "Delta Orders (%)",
+                "Avg Cuisine Fdbck.", "Min Cuisine Fdbck.",
+                "Delta Cus. Fdbck (%)", "Revenue", "Delta Revenue (%)"
+        };
+
+        try (PdfTableRenderer table = new PdfTableRenderer(document, "Location Report (" + startDate + "-" + endDate + ")", headers)) {
+            for (LocationReport report : reportDataCurr.values()) {
 
-        try (PDDocument document = new PDDocument()) {
-            PDRectangle landscape = new PDRectangle(PDRectangle.A4.getHeight(), PDRectangle.A4.getWidth());
-            PDPage page = new PDPage(landscape);
-            document.addPage(page);
+                LocationReport prevReport = reportDataPrev.getOrDefault(report.getLocationId(), new LocationReport(
+                        report.getLocationId(), report.getStartDate(), report.getEndDate(), 0, RatingAggregate.empty(), 0
+                ));
+
+                double deltaOrdersProcessed = prevReport.getOrdersProcessed() == 0
+                        ? 0
+                        : ((report.getOrdersProcessed() - prevReport.getOrdersProcessed()) / prevReport.getOrdersProcessed()) * 100;
+
+                double avgCuisineFeedbackCurr = report.getCuisineFeedback().getAverage();
+                double avgCuisineFeedbackPrev = prevReport.getCuisineFeedback().getAverage();
+                double deltaAvgCuisineFeedback = avgCuisineFeedbackPrev == 0
+                        ? 0
+                        : ((avgCuisineFeedbackCurr - avgCuisineFeedbackPrev) / avgCuisineFeedbackPrev) * 100;
+
+                double deltaRevenue = prevReport.getRevenue() == 0
+                        ? 0
+                        : ((report.getRevenue() - prevReport.getRevenue()) / prevReport.getRevenue()) * 100;
+
+                table.addRow(
+                        report.getLocationId(),
+                        report.getStartDate(),
+                        report.getEndDate(),
+                        String.valueOf(report.getOrdersProcessed()),
+                        String.format("%.2f", deltaOrdersProcessed),
+                        String.format("%.2f", avgCuisineFeedbackCurr),
+                        String.valueOf(report.getMinCuisineFeedback()),
+                        String.format("%.2f", deltaAvgCuisineFeedback),
+                        String.format("%.2f", report.getRevenue()),
+                        String.format("%.2f", deltaRevenue)
+                );
+            }
+        }
+    }
 
-            PDPageContentStream contentStream = new PDPageContentStream(document, page);
+    /**
+     * Renders a PDF file and streams it to S3. Pages are buffered in a scratch file
+     * instead of the heap, and the saved document goes through a multipart upload
+     * buffer of one part, like {@link #uploadCsvToS3}.
+     */
+    public String uploadPdfToS3(String bucketName, String fileName, PdfContent content) throws IOException {
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentType("application/pdf");
 
+        try (PDDocument document = new PDDocument(MemoryUsageSetting.setupTempFileOnly())) {
+            content.drawOn(document);
+            S3MultipartOutputStream upload = new S3MultipartOutputStream(s3Client, bucketName, fileName, metadata, uploadPartSize);
             try {
-                contentStream.setFont(PDType1Font.HELVETICA_BOLD, 14);
-
-                contentStream.beginText();
-                contentStream.newLineAtOffset(50, landscape.getHeight() - 50);
-                contentStream.showText("Location Report (" + startDate + "-" + endDate + ")");
-                contentStream.endText();
-
-                float yPosition = landscape.getHeight() - 100;
-                float margin = 50;
-                float tableWidth = landscape.getWidth() - 2 * margin - 50;
-                float rowHeight = 15;
-                float cellMargin = 2;
-
-                String[] headers = {
-                        "Location ID", "Report Start", "Report End",
-                        "Orders Processed", "Delta Orders (%)",
-                        "Avg Cuisine Fdbck.", "Min Cuisine Fdbck.",
-                        "Delta Cus. Fdbck (%)", "Revenue", "Delta Revenue (%)"
-                };
-
-                contentStream.setFont(PDType1Font.HELVETICA_BOLD, 8);
-
-                for (int i = 0; i < headers.length; i++) {
-                    float cellWidth = tableWidth / headers.length;
-                    contentStream.addRect(margin + i * cellWidth, yPosition, cellWidth, rowHeight);
-                    contentStream.beginText();
-                    contentStream.setFont(PDType1Font.HELVETICA_BOLD, 7);
-                    contentStream.newLineAtOffset(margin + i * cellWidth + cellMargin, yPosition + cellMargin);
-                    contentStream.showText(headers[i]);
-                    contentStream.endText();
-                }
-                contentStream.stroke();
-
-                contentStream.setFont(PDType1Font.HELVETICA, 7);
-                yPosition -= rowHeight;
-                for (LocationReport report : reportDataCurr.values()) {
-
-                    LocationReport prevReport = reportDataPrev.getOrDefault(report.getLocationId(), new LocationReport(
-                            report.getLocationId(), report.getStartDate(), report.getEndDate(), 0, List.of(), 0, 0
-                    ));
-
-                    double deltaOrdersProcessed = prevReport.getOrdersProcessed() == 0
-                            ? 0
-                            : ((report.getOrdersProcessed() - prevReport.getOrdersProcessed()) / prevReport.getOrdersProcessed()) * 100;
-
-                    double avgCuisineFeedbackCurr = report.getTotalCuisineFeedback().stream().mapToDouble(Double::doubleValue).average().orElse(0);
-                    double avgCuisineFeedbackPrev = prevReport.getTotalCuisineFeedback().stream().mapToDouble(Double::doubleValue).average().orElse(0);
-                    double deltaAvgCuisineFeedback = avgCuisineFeedbackPrev == 0
-                            ? 0
-                            : ((avgCuisineFeedbackCurr - avgCuisineFeedbackPrev) / avgCuisineFeedbackPrev) * 100;
-
-                    double deltaRevenue = prevReport.getRevenue() == 0
-                            ? 0
-                            : ((report.getRevenue() - prevReport.getRevenue()) / prevReport.getRevenue()) * 100;
-
-                    String[] rowData = {
-                            report.getLocationId(),
-                            report.getStartDate(),
-                            report.getEndDate(),
-                            String.valueOf(report.getOrdersProcessed()),
-                            String.format("%.2f", deltaOrdersProcessed),
-                            String.format("%.2f", avgCuisineFeedbackCurr),
-                            String.valueOf(report.getMinCuisineFeedback()),
-                            String.format("%.2f", deltaAvgCuisineFeedback),
-                            String.format("%.2f", report.getRevenue()),
-                            String.format("%.2f", deltaRevenue)
-                    };
-
-                    for (int i = 0; i < rowData.length; i++) {
-                        float cellWidth = tableWidth / rowData.length;
-                        contentStream.addRect(margin + i * cellWidth, yPosition, cellWidth, rowHeight);
-                        contentStream.beginText();
-                        contentStream.newLineAtOffset(margin + i * cellWidth + cellMargin, yPosition + cellMargin);
-                        contentStream.showText(rowData[i]);
-                        contentStream.endText();
+                // PDDocument.save closes its stream even on failure, which would complete the upload
+                document.save(new FilterOutputStream(upload) {
+                    @Override
+                    public void write(byte[] bytes, int offset, int length) throws IOException {
+                        out.write(bytes, offset, length);
                     }
-                    contentStream.stroke();
-                    yPosition -= rowHeight;
-
-                    if (yPosition < 50) {
-                        contentStream.close();
-                        page = new PDPage(landscape);
-                        document.addPage(page);
-                        contentStream = new PDPageContentStream(document, page);
-                        yPosition = landscape.getHeight() - 100;
+
+                    @Override
+                    public void close() throws IOException {
+                        flush();
                     }
-                }
-            } finally {
-                contentStream.close();
+                });
+            } catch (IOException | RuntimeException e) {
+                upload.abort();
+                throw e;
             }
-
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            document.save(outputStream);
-            return outputStream.toByteArray();
+            upload.close();
         }
+        return presign(bucketName, fileName);
     }
 
-    public String uploadToS3(String bucketName, String fileName, String contentType, byte[] data) {
+    /**
+     * Streams a CSV file to S3 while it is written. Rows go through a buffer of one
+     * multipart upload part ({@code reports.upload.part-size-bytes}), gzip-encoded when
+     * {@code reports.csv.gzip} is set, so the file is never held in memory as a whole.
+     * If writing fails, the upload is aborted and nothing is stored.
+     */
+    public String uploadCsvToS3(String bucketName, String fileName, CsvContent content) throws IOException {
         ObjectMetadata metadata = new ObjectMetadata();
-        metadata.setContentLength(data.length);
-        metadata.setContentType(contentType);
-        s3Client.putObject(bucketName, fileName, new ByteArrayInputStream(data), metadata);
+        metadata.setContentType("text/csv; charset=UTF-8");
+        if (gzipCsv) metadata.setContentEncoding("gzip");
 
+        S3MultipartOutputStream upload = new S3MultipartOutputStream(s3Client, bucketName, fileName, metadata, uploadPartSize);
+        Writer csvWriter;
+        try {
+            OutputStream out = gzipCsv ? new GZIPOutputStream(upload, 8192) : upload;
+            csvWriter = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            content.writeTo(csvWriter);
+        } catch (IOException | RuntimeException e) {
+            upload.abort();
+            throw e;
+        }
+        csvWriter.close();
+        return presign(bucketName, fileName);
+    }
+
+    /**
+     * @return a download link for a stored report file, or {@code null} if there is none
+     */
+    public String findReportFile(String bucketName, String fileName) {
+        return s3Client.doesObjectExist(bucketName, fileName) ? presign(bucketName, fileName) : null;
+    }
+
+    private String presign(String bucketName, String fileName) {
         GeneratePresignedUrlRequest urlRequest = new GeneratePresignedUrlRequest(bucketName, fileName)
                 .withExpiration(new Date(System.currentTimeMillis() + (7L * 24 * 60 * 60 * 1000))); // 7 days
         URL url = s3Client.generatePresignedUrl(urlRequest);
         return url.toString();
     }
 
-    public static double roundToSingleDecimal(double value) {
-        // Convert the double to BigDecimal, set scaling to 1 decimal place, and round
-        BigDecimal roundedValue = new BigDecimal(value).setScale(1, RoundingMode.HALF_UP);
-        return roundedValue.doubleValue();
-    }
-
+    /**
+     * Replaces a feedback's ratings in the waiter's daily report and in the rollups covering
+     * that day.
+     * <p>
+     * The daily item is updated conditionally on its version, so a concurrent reservation
+     * update in reports-app is not lost, and the same write records the edit in
+     * {@value #PENDING_ROLLUP_EDITS_ATTRIBUTE}. Each rollup notes the edits it has applied in
+     * {@value #APPLIED_EDITS_ATTRIBUTE}, and an edit leaves the pending map once every rollup
+     * has it. Edits left pending by a failure are applied on the next update of the day.
+     */
     public void updateReportWithUpdatedFeedback(String waiterEmail, String date, BigDecimal oldServiceRating, BigDecimal newServiceRating,BigDecimal oldCuisineRating, BigDecimal newCuisineRating) throws Exception {
         try {
             String reportKey = waiterEmail + "#" + date;
-            Item reportItem = reportsTable.getItem("report_id", reportKey);
-
-            List<Double> servicefeedbackList = new ArrayList<BigDecimal>(reportItem.getList("total_service_feedback")).stream().map(BigDecimal::doubleValue).collect(Collectors.toList());
-            List<Double> cuisinefeedbackList = new ArrayList<BigDecimal>(reportItem.getList("total_cuisine_feedback")).stream().map(BigDecimal::doubleValue).collect(Collectors.toList());
-            Double newMinService=6.0D;
-            Double newMinCuisine=6.0D;
+            Map<String, Object> edit = Map.of(
+                    "old_service", oldServiceRating,
+                    "new_service", newServiceRating,
+                    "old_cuisine", oldCuisineRating,
+                    "new_cuisine", newCuisineRating);
+            Item reportItem = updateDailyRatings(reportKey, UUID.randomUUID().toString(), edit);
+            applyPendingRollupEdits(reportItem, waiterEmail, date);
+        } catch (Exception e) {
+            throw new Exception("Error updating the report's table: " + e.getMessage() + Arrays.toString(e.getStackTrace()));
+        }
+    }
 
-            if(!servicefeedbackList.isEmpty() && servicefeedbackList.contains(roundToSingleDecimal(oldServiceRating.doubleValue()))) {
-                System.out.println(servicefeedbackList.remove(roundToSingleDecimal(oldServiceRating.doubleValue()))); // Remove the old rating
-                servicefeedbackList.add(roundToSingleDecimal(newServiceRating.doubleValue()));   // Add the new rating
+    /**
+     * @return the daily item as written
+     */
+    private Item updateDailyRatings(String reportKey, String editId, Map<String, Object> edit) {
+        for (int attempt = 0; attempt < MAX_ROLLUP_ATTEMPTS; attempt++) {
+            Item reportItem = reportsTable.getItem(new GetItemSpec().withPrimaryKey("report_id", reportKey).withConsistentRead(true));
+            if (reportItem == null) throw new IllegalStateException("No report found for " + reportKey);
+            Map<String, Object> report = reportItem.asMap();
+
+            RatingAggregate serviceFeedback = readAggregate(report, SERVICE_FEEDBACK_ATTRIBUTE, "total_service_feedback")
+                    .replace(rating(edit, "old_service"), rating(edit, "new_service"));
+            RatingAggregate cuisineFeedback = readAggregate(report, CUISINE_FEEDBACK_ATTRIBUTE, "total_cuisine_feedback")
+                    .replace(rating(edit, "old_cuisine"), rating(edit, "new_cuisine"));
+            Map<String, Object> pendingEdits = report.get(PENDING_ROLLUP_EDITS_ATTRIBUTE) == null
+                    ? new HashMap<>() : new HashMap<>(rawMap(report.get(PENDING_ROLLUP_EDITS_ATTRIBUTE)));
+            pendingEdits.put(editId, edit);
+
+            ValueMap valueMap = new ValueMap()
+                    .withMap(":service_feedback", serviceFeedback.toMap())
+                    .withMap(":cuisine_feedback", cuisineFeedback.toMap())
+                    .withMap(":pending", pendingEdits);
+            String condition = "attribute_not_exists(version)";
+            if (reportItem.hasAttribute("version")) {
+                condition = "version = :v";
+                valueMap.withLong(":v", reportItem.getLong("version"));
             }
-            if (!cuisinefeedbackList.isEmpty() && cuisinefeedbackList.contains(roundToSingleDecimal(oldCuisineRating.doubleValue()))) {
-                System.out.println(cuisinefeedbackList.remove(roundToSingleDecimal(oldCuisineRating.doubleValue()))); // Remove the old rating
-                cuisinefeedbackList.add(roundToSingleDecimal(newCuisineRating.doubleValue()));   // Add the new rating
+            valueMap.withLong(":next", reportItem.hasAttribute("version") ? reportItem.getLong("version") + 1 : 1);
+            try {
+                return reportsTable.updateItem(new UpdateItemSpec()
+                        .withPrimaryKey("report_id", reportKey)
+                        .withUpdateExpression("SET " + SERVICE_FEEDBACK_ATTRIBUTE + " = :service_feedback, "
+                                + CUISINE_FEEDBACK_ATTRIBUTE + " = :cuisine_feedback, "
+                                + PENDING_ROLLUP_EDITS_ATTRIBUTE + " = :pending, version = :next"
+                                + " REMOVE " + LEGACY_FEEDBACK_ATTRIBUTES)
+                        .withConditionExpression(condition)
+                        .withValueMap(valueMap)
+                        .withReturnValues(ReturnValue.ALL_NEW)).getItem();
+            } catch (ConditionalCheckFailedException e) {
+                // Updated concurrently, read again
             }
+        }
+        throw new IllegalStateException("Too many concurrent updates to report " + reportKey);
+    }
 
-            // Adjust minimum feedback
-            Double currentMinService = reportItem.getNumber("minimum_service_feedback").doubleValue();
-            if (Objects.equals(currentMinService, oldServiceRating.doubleValue()) || Double.valueOf(newServiceRating.doubleValue()).compareTo(currentMinService) < 0) {
-                         newMinService = servicefeedbackList.stream()
-                        .min(Double::compareTo)
-                        .orElse(roundToSingleDecimal(newServiceRating.doubleValue())); // Find the new minimum
+    /**
+     * Applies the edits pending on a daily item to the waiter and location rollups of every
+     * period containing the day, then takes each edit out of the pending map.
+     */
+    private void applyPendingRollupEdits(Item reportItem, String waiterEmail, String date) {
+        Map<String, Object> pendingEdits = reportItem.getRawMap(PENDING_ROLLUP_EDITS_ATTRIBUTE);
+        if (pendingEdits == null) return;
+
+        LocalDate reportDate = DateFormatter.parseDate(date);
+        for (Map.Entry<String, Object> pending : pendingEdits.entrySet()) {
+            Map<String, Object> edit = rawMap(pending.getValue());
+            for (ReportPeriod period : ReportPeriod.values()) {
+                LocalDate start = period.start(reportDate);
+                for (String rollupId : List.of(rollupId(period, start, "WAITER", waiterEmail),
+                        rollupId(period, start, "LOCATION", reportItem.getString("location_id")))) {
+                    updateRollupRatings(rollupId, waiterEmail, pending.getKey(), edit);
+                }
             }
+            reportsTable.updateItem(new UpdateItemSpec()
+                    .withPrimaryKey("report_id", reportItem.getString("report_id"))
+                    .withUpdateExpression("REMOVE " + PENDING_ROLLUP_EDITS_ATTRIBUTE + ".#edit")
+                    .withNameMap(Map.of("#edit", pending.getKey())));
+        }
+    }
 
-            Double currentMinCuisine = reportItem.getNumber("minimum_cuisine_feedback").doubleValue();
-            if (Objects.equals(currentMinCuisine, roundToSingleDecimal(oldCuisineRating.doubleValue())) || Double.valueOf(newCuisineRating.doubleValue()).compareTo(currentMinCuisine) < 0) {
-                         newMinCuisine = cuisinefeedbackList.stream()
-                        .min(Double::compareTo)
-                        .orElse(roundToSingleDecimal(newCuisineRating.doubleValue())); // Find the new minimum
+    /**
+     * Replaces a waiter's ratings in a rollup, guarded by the rollup's version like the
+     * updates reports-app makes. Rollups that do not exist yet are left to its backfill,
+     * and rollups that already applied the edit are left alone.
+     */
+    private void updateRollupRatings(String rollupId, String waiterEmail, String editId, Map<String, Object> edit) {
+        for (int attempt = 0; attempt < MAX_ROLLUP_ATTEMPTS; attempt++) {
+            Item rollup = reportsTable.getItem(new GetItemSpec().withPrimaryKey("report_id", rollupId).withConsistentRead(true));
+            if (rollup == null || !rollup.getRawMap("waiters").containsKey(waiterEmail)) return;
+            Set<String> appliedEdits = rollup.hasAttribute(APPLIED_EDITS_ATTRIBUTE)
+                    ? new HashSet<>(rollup.getStringSet(APPLIED_EDITS_ATTRIBUTE)) : new HashSet<>();
+            if (!appliedEdits.add(editId)) return;
+
+            Map<String, Object> rollupWaiters = new HashMap<>(rollup.getRawMap("waiters"));
+            Map<String, Object> entry = new HashMap<>(rawMap(rollupWaiters.get(waiterEmail)));
+            entry.put(SERVICE_FEEDBACK_ATTRIBUTE, readAggregate(entry, SERVICE_FEEDBACK_ATTRIBUTE, null)
+                    .replace(rating(edit, "old_service"), rating(edit, "new_service")).toMap());
+            entry.put(CUISINE_FEEDBACK_ATTRIBUTE, readAggregate(entry, CUISINE_FEEDBACK_ATTRIBUTE, null)
+                    .replace(rating(edit, "old_cuisine"), rating(edit, "new_cuisine")).toMap());
+            rollupWaiters.put(waiterEmail, entry);
+
+            long version = rollup.getLong("version");
+            try {
+                reportsTable.putItem(new PutItemSpec()
+                        .withItem(rollup.withLong("version", version + 1)
+                                .withMap("waiters", rollupWaiters)
+                                .withStringSet(APPLIED_EDITS_ATTRIBUTE, appliedEdits))
+                        .withConditionExpression("version = :v")
+                        .withValueMap(new ValueMap().withLong(":v", version)));
+                return;
+            } catch (ConditionalCheckFailedException e) {
+                // Changed concurrently, read again
             }
+        }
+        throw new IllegalStateException("Too many concurrent updates to rollup " + rollupId);
+    }
 
+    private static BigDecimal rating(Map<String, Object> edit, String name) {
+        return new BigDecimal(edit.get(name).toString());
+    }
 
-            String updateExpression =  "SET total_service_feedback = :total_service_feedback," +
-                    "minimum_service_feedback = :minimum_service_feedback," +
-                    "total_cuisine_feedback = :total_cuisine_feedback," +
-                    "minimum_cuisine_feedback = :minimum_cuisine_feedback";
+    static String rollupId(ReportPeriod period, LocalDate start, String scope, String id) {
+        return "ROLLUP#" + period.name() + "#" + start + "#" + scope + "#" + id;
+    }
 
-            Map<String, Object> valueMap = Map.of(
-                    ":total_service_feedback", servicefeedbackList,
-                    ":minimum_service_feedback", BigDecimal.valueOf(roundToSingleDecimal(newMinService)),
-                    ":total_cuisine_feedback", cuisinefeedbackList,
-                    ":minimum_cuisine_feedback", BigDecimal.valueOf(roundToSingleDecimal(newMinCuisine))
-            );
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> rawMap(Object value) {
+        return (Map<String, Object>) value;
+    }
 
-            reportsTable.updateItem(new UpdateItemSpec()
-                    .withPrimaryKey("report_id", waiterEmail + "#" + date)
-                    .withUpdateExpression(updateExpression)
-                    .withValueMap(valueMap)
-            );
-        } catch (Exception e) {
-            throw new Exception("Error updating the report's table: " + e.getMessage() + Arrays.toString(e.getStackTrace()));
-        }
+    /**
+     * Reads a rating aggregate of a report item, or builds it from the rating list that
+     * items written before aggregates still carry.
+     */
+    private static RatingAggregate readAggregate(Map<String, Object> reportItem, String attribute, String legacyListAttribute) {
+        if (reportItem.get(attribute) != null) return RatingAggregate.fromMap(rawMap(reportItem.get(attribute)));
+        return RatingAggregate.fromRatings(legacyListAttribute == null ? null : (List<?>) reportItem.get(legacyListAttribute));
     }
 }
@@ -0,0 +1,130 @@
+package com.restaurantapp.repo;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes an S3 object through a buffer of one part. Each full buffer is sent as a part of
+ * a multipart upload, so memory stays at one part however large the object gets. An
+ * object that fits into the first part is stored with a single PutObject instead.
+ * <p>
+ * {@link #close()} completes the upload. {@link #abort()} discards it, as does a failure
+ * while sending a part.
+ */
+class S3MultipartOutputStream extends OutputStream {
+
+    /** Smallest part size S3 accepts for all parts but the last. */
+    static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+
+    private final AmazonS3 s3Client;
+    private final String bucketName;
+    private final String key;
+    private final ObjectMetadata metadata;
+    private final byte[] buffer;
+    private final List<PartETag> partETags = new ArrayList<>();
+    private int position;
+    private String uploadId;
+    private boolean closed;
+
+    S3MultipartOutputStream(AmazonS3 s3Client, String bucketName, String key, ObjectMetadata metadata, int partSize) {
+        if (partSize < MIN_PART_SIZE)
+            throw new IllegalArgumentException("Part size must be at least " + MIN_PART_SIZE + " bytes");
+        this.s3Client = s3Client;
+        this.bucketName = bucketName;
+        this.key = key;
+        this.metadata = metadata;
+        this.buffer = new byte[partSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        if (position == buffer.length) flushPart();
+        buffer[position++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        ensureOpen();
+        while (length > 0) {
+            if (position == buffer.length) flushPart();
+            int count = Math.min(length, buffer.length - position);
+            System.arraycopy(bytes, offset, buffer, position, count);
+            position += count;
+            offset += count;
+            length -= count;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            if (uploadId == null) {
+                metadata.setContentLength(position);
+                s3Client.putObject(bucketName, key, new ByteArrayInputStream(buffer, 0, position), metadata);
+                return;
+            }
+            if (position > 0) uploadPart(true);
+            s3Client.completeMultipartUpload(new CompleteMultipartUploadRequest(bucketName, key, uploadId, partETags));
+        } catch (RuntimeException e) {
+            abortUpload();
+            throw new IOException("Failed to upload " + key + " to S3", e);
+        }
+    }
+
+    /**
+     * Discards everything written so far, including parts that were already sent.
+     */
+    void abort() {
+        if (closed) return;
+        closed = true;
+        abortUpload();
+    }
+
+    private void flushPart() throws IOException {
+        try {
+            if (uploadId == null) {
+                uploadId = s3Client.initiateMultipartUpload(new InitiateMultipartUploadRequest(bucketName, key, metadata)).getUploadId();
+            }
+            uploadPart(false);
+        } catch (RuntimeException e) {
+            abort();
+            throw new IOException("Failed to upload " + key + " to S3", e);
+        }
+    }
+
+    private void uploadPart(boolean lastPart) {
+        partETags.add(s3Client.uploadPart(new UploadPartRequest()
+                .withBucketName(bucketName)
+                .withKey(key)
+                .withUploadId(uploadId)
+                .withPartNumber(partETags.size() + 1)
+                .withInputStream(new ByteArrayInputStream(buffer, 0, position))
+                .withPartSize(position)
+                .withLastPart(lastPart)).getPartETag());
+        position = 0;
+    }
+
+    private void abortUpload() {
+        if (uploadId != null) {
+            s3Client.abortMultipartUpload(new AbortMultipartUploadRequest(bucketName, key, uploadId));
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) throw new IOException("Stream closed");
+    }
+}
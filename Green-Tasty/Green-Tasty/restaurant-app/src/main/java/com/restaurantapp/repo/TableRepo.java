@@ -2,14 +2,18 @@ package com.restaurantapp.repo;
 
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.document.DynamoDB;
-import com.amazonaws.services.dynamodbv2.document.Item;
 import com.amazonaws.services.dynamodbv2.document.Table;
 import com.amazonaws.services.dynamodbv2.document.UpdateItemOutcome;
 import com.amazonaws.services.dynamodbv2.document.spec.UpdateItemSpec;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
 import com.amazonaws.services.dynamodbv2.model.QueryRequest;
 import com.amazonaws.services.dynamodbv2.model.QueryResult;
 import com.amazonaws.services.dynamodbv2.model.ReturnValue;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.restaurantapp.cache.DayTableAvailability;
+import com.restaurantapp.cache.TableAvailabilityCache;
 import com.restaurantapp.dto.Tables;
 import com.restaurantapp.service.TableService;
 import org.slf4j.Logger;
@@ -17,17 +21,24 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 
-import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.LocalTime;
 import java.time.ZoneId;
-import java.time.format.DateTimeFormatter;
 import java.util.*;
 
 public class TableRepo {
+    /**
+     * GSI on the tables table: partition key {@code location_date} ("locationId#dd-MM-yyyy"),
+     * sort key {@code capacity} (N). Table items are seeded outside this application, so the
+     * composite attribute is filled in by {@link #backfillLocationDates()} and by
+     * {@link #queryTablesForDate} for items that still lack it.
+     */
+    static final String LOCATION_DATE_INDEX = "location_date-capacity-index";
+    static final String LOCATION_DATE_ATTRIBUTE = "location_date";
+
     AmazonDynamoDB amazonDynamoDBClient;
     DynamoDB dynamoDBClient;
     Table tablesTable;
+    private final TableAvailabilityCache availabilityCache;
     private final Logger logger;
 
     @Value("${tables.table}")
@@ -35,116 +46,194 @@ public class TableRepo {
 
     public TableRepo(
             AmazonDynamoDB amazonDynamoDBClient,
+            TableAvailabilityCache availabilityCache,
             String tablesTableName
     ) {
         this.amazonDynamoDBClient = amazonDynamoDBClient;
         this.dynamoDBClient = new DynamoDB(amazonDynamoDBClient);
         this.tablesTable = dynamoDBClient.getTable(tablesTableName);
+        this.availabilityCache = availabilityCache;
         logger = LoggerFactory.getLogger(TableService.class);
     }
 
-    public boolean isTimePresent(String locationId, String tableId, String timeSlot) {
-        Item item = tablesTable.getItem("location_id", locationId, "table_number", tableId);
-        Map<String, Boolean> availableSlots = (Map<String, Boolean>) item.get("available_slots");
-        return availableSlots.containsKey(timeSlot);
+    /**
+     * Reads availability straight from DynamoDB. Used on booking paths that must not act on
+     * a cached view; the result also refreshes the cache when it covers the whole day.
+     */
+    public List<Tables> getAvailableTables(String locationId, String date, String time, String guests, String zone) throws Exception {
+        try {
+            DayTableAvailability availability = loadDayAvailability(locationId, date, guests);
+            if (guests == null) availabilityCache.put(availability);
+            return availability.findAvailable(time, guests, LocalDateTime.now(ZoneId.of(zone)));
+        } catch (Exception e) {
+            logger.error(e.getMessage());
+            logger.trace(Arrays.toString(e.getStackTrace()));
+            throw new Exception("Error checking table availability.");
+        }
     }
 
-    public boolean isTimeAvailable(String locationId, String tableId, String timeSlot) {
-        Item item = tablesTable.getItem("location_id", locationId, "table_number", tableId);
-        Map<String, Boolean> availableSlots = (Map<String, Boolean>) item.get("available_slots");
-        return availableSlots.get(timeSlot);
+    /**
+     * Answers availability from the in-memory {@link TableAvailabilityCache}, loading the whole
+     * day of the location on a miss.
+     */
+    public List<Tables> findAvailableTables(String locationId, String date, String time, String guests, String zone) throws Exception {
+        try {
+            DayTableAvailability availability = availabilityCache.get(locationId, date);
+            if (availability == null) {
+                availability = loadDayAvailability(locationId, date, null);
+                availabilityCache.put(availability);
+            }
+            return availability.findAvailable(time, guests, LocalDateTime.now(ZoneId.of(zone)));
+        } catch (Exception e) {
+            logger.error(e.getMessage());
+            logger.trace(Arrays.toString(e.getStackTrace()));
+            throw new Exception("Error checking table availability.");
+        }
     }
 
-    public List<Tables> getAvailableTables(String locationId, String date, String time, String guests, String zone) throws Exception {
-        try {
-            QueryRequest queryRequest = null;
-            Map<String, String> expressionAttributeNames = null;
-            Map<String, AttributeValue> expressionAttributeValues = null;
-            String filter = null;
-            if (guests != null) {
-                expressionAttributeValues = Map.of(
-                        ":location_id", new AttributeValue().withS(locationId),
-                        ":date", new AttributeValue().withS(date),
-                        ":capacity", new AttributeValue().withN(guests)
-                );
-                expressionAttributeNames = Map.of("#dateAlias", "date", "#capacityAlias", "capacity");
-                filter = "#dateAlias = :date AND #capacityAlias >= :capacity";
-            } else {
-                expressionAttributeValues = Map.of(
-                        ":location_id", new AttributeValue().withS(locationId),
-                        ":date", new AttributeValue().withS(date)
-                );
-                expressionAttributeNames = Map.of("#dateAlias", "date");
-                filter = "#dateAlias = :date";
+    private DayTableAvailability loadDayAvailability(String locationId, String date, String guests) {
+        List<Tables> tables = new ArrayList<>();
+        for (Map<String, AttributeValue> item : queryTablesForDate(locationId, date, guests)) {
+            Map<String, Boolean> availableSlots = new HashMap<>();
+            for (Map.Entry<String, AttributeValue> entry : item.get("available_slots").getM().entrySet()) {
+                availableSlots.put(entry.getKey(), entry.getValue().getBOOL());
             }
+            tables.add(new Tables(item.get("table_number").getS(), item.get("location_id").getS(),
+                    item.get("capacity").getN(), item.get("date").getS(), availableSlots));
+        }
+        return DayTableAvailability.of(locationId, date, tables);
+    }
+
+    /**
+     * Reads the table items of a single location and date through the
+     * {@value #LOCATION_DATE_INDEX} index, following LastEvaluatedKey until the
+     * result set is exhausted. When guests is given the capacity bound is part of
+     * the key condition, so tables that are too small are never read.
+     * <p>
+     * Items are put in the index by {@link #backfillLocationDates()} at startup. Only when a
+     * whole day is read and the index has nothing for it is the location's partition queried
+     * for items the backfill has not reached yet; those get the index attribute, so the next
+     * read finds them in the index. An empty result for a guests filter is final.
+     */
+    private List<Map<String, AttributeValue>> queryTablesForDate(String locationId, String date, String guests) {
+        List<Map<String, AttributeValue>> items = queryIndexForDate(locationId, date, guests);
+        if (!items.isEmpty() || guests != null) return items;
+
+        items = queryLocationForDate(locationId, date);
+        for (Map<String, AttributeValue> item : items) {
+            setLocationDate(item.get("location_id").getS(), item.get("table_number").getS(), item.get("date").getS());
+        }
+        return items;
+    }
 
-            queryRequest = new QueryRequest()
+    private List<Map<String, AttributeValue>> queryIndexForDate(String locationId, String date, String guests) {
+        Map<String, String> expressionAttributeNames = new HashMap<>();
+        Map<String, AttributeValue> expressionAttributeValues = new HashMap<>();
+        expressionAttributeNames.put("#locationDate", LOCATION_DATE_ATTRIBUTE);
+        expressionAttributeValues.put(":location_date", new AttributeValue().withS(locationDateKey(locationId, date)));
+        String keyCondition = "#locationDate = :location_date";
+        if (guests != null) {
+            expressionAttributeNames.put("#capacityAlias", "capacity");
+            expressionAttributeValues.put(":capacity", new AttributeValue().withN(guests));
+            keyCondition += " AND #capacityAlias >= :capacity";
+        }
+
+        List<Map<String, AttributeValue>> items = new ArrayList<>();
+        Map<String, AttributeValue> lastEvaluatedKey = null;
+        do {
+            QueryRequest queryRequest = new QueryRequest()
                     .withTableName(tablesTableName)
-                    .withKeyConditionExpression("location_id = :location_id")
-                    .withFilterExpression(filter)
+                    .withIndexName(LOCATION_DATE_INDEX)
+                    .withKeyConditionExpression(keyCondition)
                     .withExpressionAttributeNames(expressionAttributeNames)
-                    .withExpressionAttributeValues(expressionAttributeValues);
+                    .withExpressionAttributeValues(expressionAttributeValues)
+                    .withExclusiveStartKey(lastEvaluatedKey);
 
             QueryResult queryResult = amazonDynamoDBClient.query(queryRequest);
+            items.addAll(queryResult.getItems());
+            lastEvaluatedKey = queryResult.getLastEvaluatedKey();
+        } while (lastEvaluatedKey != null && !lastEvaluatedKey.isEmpty());
+        return items;
+    }
 
-            List<Map<String, AttributeValue>> items = queryResult.getItems();
-            if (items.isEmpty()) return new ArrayList<>();
-
-            List<Tables> result = new ArrayList<>();
-            LocalDateTime requestedDateTime = null;
-            if (time != null)
-                requestedDateTime = LocalDateTime.of(LocalDate.parse(date, DateTimeFormatter.ofPattern("dd-MM-yyyy")),
-                        LocalTime.parse(time, DateTimeFormatter.ofPattern("HH:mm")));
-
-            LocalTime currTime = LocalTime.now(ZoneId.of(zone));
-            LocalDate currDate = LocalDate.now(ZoneId.of(zone));
-            LocalDateTime currDateTime = LocalDateTime.of(currDate, currTime);
-
-            for (Map<String, AttributeValue> item : items) {
-                String tableNumber = item.get("table_number").getS();
-                String locationID = item.get("location_id").getS();
-                String capacity = item.get("capacity").getN();
-                String dateTable = item.get("date").getS();
-
-                Map<String, AttributeValue> rawAvailableSlots = item.get("available_slots").getM();
-                Map<String, Boolean> availableSlots = new HashMap<>();
-                for (Map.Entry<String, AttributeValue> entry : rawAvailableSlots.entrySet()) {
-                    availableSlots.put(entry.getKey(), entry.getValue().getBOOL());
-                }
+    /**
+     * Reads the table items of a location and date that are not in the
+     * {@value #LOCATION_DATE_INDEX} index yet, filtering the location's partition the way
+     * tables were read before the index existed.
+     */
+    private List<Map<String, AttributeValue>> queryLocationForDate(String locationId, String date) {
+        Map<String, String> expressionAttributeNames = Map.of(
+                "#dateAlias", "date",
+                "#locationDate", LOCATION_DATE_ATTRIBUTE);
+        Map<String, AttributeValue> expressionAttributeValues = Map.of(
+                ":location_id", new AttributeValue().withS(locationId),
+                ":date", new AttributeValue().withS(date));
+        String filter = "#dateAlias = :date AND attribute_not_exists(#locationDate)";
 
-                Map<String, Boolean> matchingTimeRanges = new TreeMap<>();
-                for (Map.Entry<String, Boolean> entry : availableSlots.entrySet()) {
-                    String timeRange = entry.getKey();
-                    boolean isAvailable = entry.getValue();
-
-                    String[] times = timeRange.split("-");
-                    LocalTime startTime = LocalTime.parse(times[0].trim(), DateTimeFormatter.ofPattern("HH:mm"));
-                    LocalDateTime startDateTime = LocalDateTime.of(LocalDate.parse(date, DateTimeFormatter.ofPattern("dd-MM-yyyy")), startTime);
-
-                    if (isAvailable) {
-                        if (time != null) {
-                            if ((requestedDateTime.isBefore(startDateTime) || requestedDateTime.equals(startDateTime))
-                                    && !requestedDateTime.isBefore(currDateTime)) {
-                                matchingTimeRanges.put(timeRange, true);
-                            }
-                        } else if (startDateTime.isAfter(currDateTime)) {
-                            matchingTimeRanges.put(timeRange, true);
-                        }
+        List<Map<String, AttributeValue>> items = new ArrayList<>();
+        Map<String, AttributeValue> lastEvaluatedKey = null;
+        do {
+            QueryResult queryResult = amazonDynamoDBClient.query(new QueryRequest()
+                    .withTableName(tablesTable.getTableName())
+                    .withKeyConditionExpression("location_id = :location_id")
+                    .withFilterExpression(filter)
+                    .withExpressionAttributeNames(expressionAttributeNames)
+                    .withExpressionAttributeValues(expressionAttributeValues)
+                    .withExclusiveStartKey(lastEvaluatedKey));
+            items.addAll(queryResult.getItems());
+            lastEvaluatedKey = queryResult.getLastEvaluatedKey();
+        } while (lastEvaluatedKey != null && !lastEvaluatedKey.isEmpty());
+        return items;
+    }
+
+    /**
+     * Fills {@value #LOCATION_DATE_ATTRIBUTE} on table items that do not have it yet, so that
+     * they appear in the {@value #LOCATION_DATE_INDEX} index. Called once at startup;
+     * failures are logged and the remaining items are filled on the next start or when
+     * their day is read.
+     */
+    public void backfillLocationDates() {
+        try {
+            int updated = 0;
+            Map<String, AttributeValue> lastEvaluatedKey = null;
+            do {
+                ScanResult result = amazonDynamoDBClient.scan(new ScanRequest()
+                        .withTableName(tablesTable.getTableName())
+                        .withProjectionExpression("location_id, table_number, #dateAlias")
+                        .withFilterExpression("attribute_exists(#dateAlias) AND attribute_not_exists(" + LOCATION_DATE_ATTRIBUTE + ")")
+                        .withExpressionAttributeNames(Map.of("#dateAlias", "date"))
+                        .withExclusiveStartKey(lastEvaluatedKey));
+                for (Map<String, AttributeValue> item : result.getItems()) {
+                    if (setLocationDate(item.get("location_id").getS(), item.get("table_number").getS(), item.get("date").getS())) {
+                        updated++;
                     }
                 }
-                if (!matchingTimeRanges.isEmpty()) {
-                    Tables tableDetails = new Tables(tableNumber, locationID, capacity, dateTable, matchingTimeRanges);
-                    result.add(tableDetails);
-                }
-            }
-            return result;
+                lastEvaluatedKey = result.getLastEvaluatedKey();
+            } while (lastEvaluatedKey != null && !lastEvaluatedKey.isEmpty());
+            if (updated > 0) logger.info("Location dates backfilled on {} table items", updated);
         } catch (Exception e) {
-            logger.error(e.getMessage());
-            logger.trace(Arrays.toString(e.getStackTrace()));
-            throw new Exception("Error checking table availability.");
+            logger.warn("Could not backfill table location dates: {}", e.getMessage());
         }
     }
 
+    private boolean setLocationDate(String locationId, String tableNumber, String date) {
+        try {
+            tablesTable.updateItem(new UpdateItemSpec()
+                    .withPrimaryKey("location_id", locationId, "table_number", tableNumber)
+                    .withUpdateExpression("SET " + LOCATION_DATE_ATTRIBUTE + " = :location_date")
+                    .withConditionExpression("attribute_not_exists(" + LOCATION_DATE_ATTRIBUTE + ")")
+                    .withValueMap(Map.of(":location_date", locationDateKey(locationId, date))));
+            return true;
+        } catch (ConditionalCheckFailedException e) {
+            // Filled in the meantime
+            return false;
+        }
+    }
+
+    public static String locationDateKey(String locationId, String date) {
+        return locationId + "#" + date;
+    }
+
     public void updateTable(String tableId, String locationId, String date, String timeSlot, boolean isAvailable) throws Exception {
         try {
             UpdateItemOutcome outcome = tablesTable.updateItem(new UpdateItemSpec()
@@ -160,8 +249,10 @@ public class TableRepo {
                     .withReturnValues(ReturnValue.UPDATED_NEW)
             );
             logger.info("Update successful: {}", outcome.getItem());
+            availabilityCache.updateSlot(locationId, date, tableId, timeSlot, isAvailable);
         } catch (Exception e) {
             logger.error(e.getMessage());
+            availabilityCache.invalidate(locationId, date);
             throw new Exception("Failed to update table details for Id: " + tableId);
         }
     }
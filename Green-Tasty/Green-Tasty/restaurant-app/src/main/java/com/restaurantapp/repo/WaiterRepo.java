@@ -8,23 +8,27 @@ import com.amazonaws.services.dynamodbv2.document.UpdateItemOutcome;
 import com.amazonaws.services.dynamodbv2.document.spec.UpdateItemSpec;
 import com.amazonaws.services.dynamodbv2.document.utils.ValueMap;
 import com.amazonaws.services.dynamodbv2.model.*;
+import com.restaurantapp.cache.WaiterLoadIndex;
 import com.restaurantapp.dto.SignUp;
 import com.restaurantapp.dto.UpdatePasswordRequest;
 import com.restaurantapp.dto.UpdatePasswordRequest;
+import com.restaurantapp.exception.LocationNotFoundException;
 import com.restaurantapp.exception.PasswordMismatchException;
 import com.restaurantapp.exception.UserDoesNotExistsException;
 import com.restaurantapp.exception.WaiterNotFoundException;
+import com.restaurantapp.util.DateFormatter;
+import com.restaurantapp.util.Ratings;
 import com.restaurantapp.util.ValidationUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.crypto.bcrypt.BCrypt;
 
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.time.DayOfWeek;
 import java.time.LocalDate;
 import java.time.ZoneId;
-import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -33,15 +37,23 @@ public class WaiterRepo {
     DynamoDB dynamoDBClient;
     Table waiterTable;
     LocationRepo locationRepo;
+    WaiterLoadIndex waiterLoadIndex;
+
+    static final String LOCATION_INDEX = "location_id-index";
+    private static final Logger logger = LoggerFactory.getLogger(WaiterRepo.class);
 
     @Value("${waiter.table}")
     private String waiterTableName;
+    private final String feedbackTableName;
 
-    public WaiterRepo(AmazonDynamoDB amazonDynamoDBClient, LocationRepo locationRepo, String waiterTableName) {
+    public WaiterRepo(AmazonDynamoDB amazonDynamoDBClient, LocationRepo locationRepo, WaiterLoadIndex waiterLoadIndex, String waiterTableName,
+                      String feedbackTableName) {
         this.amazonDynamoDBClient = amazonDynamoDBClient;
+        this.feedbackTableName = feedbackTableName;
         this.dynamoDBClient = new DynamoDB(amazonDynamoDBClient);
         this.waiterTable = dynamoDBClient.getTable(waiterTableName);
         this.locationRepo = locationRepo;
+        this.waiterLoadIndex = waiterLoadIndex;
     }
 
     public boolean isWaiter(String email) throws Exception {
@@ -96,81 +108,119 @@ public class WaiterRepo {
     public Map<String, Object> getWaiterDetails(String email) throws WaiterNotFoundException {
         Item item = waiterTable.getItem("email", email);
         if (item == null) throw new WaiterNotFoundException("Waiter with email " + email + " not found.");
-        return item.asMap();
+        Map<String, Object> waiter = item.asMap();
+        waiter.put("waiter_rating", Ratings.average(waiter, "waiter_rating"));
+        return waiter;
     }
 
+    /**
+     * Picks the waiter with the fewest bookings on the given date from the in-memory
+     * {@link WaiterLoadIndex}. A missing or expired location is reloaded with a Query on
+     * the location index of the Waiter table first.
+     */
     public String getLeastBusyWaiter(String locationId, String date) throws Exception {
         try {
-            Map<String, AttributeValue> expressionAttributeValues = Map.of(":location_id", new AttributeValue().withS(locationId));
-            ScanRequest scanRequest = new ScanRequest()
-                    .withTableName(waiterTableName)
-                    .withFilterExpression("location_id = :location_id")
-                    .withExpressionAttributeValues(expressionAttributeValues);
-
-            ScanResult scanResult = amazonDynamoDBClient.scan(scanRequest);
-            List<Map<String, AttributeValue>> items = scanResult.getItems();
-
-            if (items == null || items.isEmpty()) throw new Exception("No waiters available.");
-
-            String email = "";
-            int min = Integer.MAX_VALUE;
+            LocalDate localDate = DateFormatter.parseDate(date);
+            String email = waiterLoadIndex.leastBusy(locationId, localDate);
+            if (email == null) {
+                loadWaitersOfLocation(locationId);
+                email = waiterLoadIndex.leastBusy(locationId, localDate);
+            }
+            if (email == null) throw new Exception("No waiters available.");
+            return email;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
 
-            String zoneId = locationRepo.getLocationById(locationId).getZone();
-            LocalDate currentDate = LocalDate.now(ZoneId.of(zoneId));
-            LocalDate localDate = LocalDate.parse(date, DateTimeFormatter.ofPattern("dd-MM-yyyy"));
-            DayOfWeek dayOfWeek = localDate.getDayOfWeek();
-            int index = dayOfWeek.getValue() - 1;
+    private void loadWaitersOfLocation(String locationId) throws LocationNotFoundException {
+        List<WaiterLoadIndex.WaiterLoad> waiters = new ArrayList<>();
+        Map<String, AttributeValue> lastEvaluatedKey = null;
+        do {
+            QueryResult result = amazonDynamoDBClient.query(new QueryRequest()
+                    .withTableName(waiterTable.getTableName())
+                    .withIndexName(LOCATION_INDEX)
+                    .withKeyConditionExpression("location_id = :location_id")
+                    .withExpressionAttributeValues(Map.of(":location_id", new AttributeValue().withS(locationId)))
+                    .withExclusiveStartKey(lastEvaluatedKey));
+            for (Map<String, AttributeValue> item : result.getItems()) {
+                waiters.add(toWaiterLoad(item));
+            }
+            lastEvaluatedKey = result.getLastEvaluatedKey();
+        } while (lastEvaluatedKey != null && !lastEvaluatedKey.isEmpty());
 
-            boolean currDay = localDate.equals(currentDate);
+        ZoneId zone = locationRepo.getLocationZone(locationId);
+        waiterLoadIndex.replaceLocation(locationId, zone, waiters);
+    }
 
-            for (Map<String, AttributeValue> item : items) {
-                int visitorCount = 0;
-                if (currDay) {
-                    visitorCount = Integer.parseInt(item.get("visitor_count").getN());
+    /**
+     * Fills the {@link WaiterLoadIndex} for every location with one Scan of the Waiter
+     * table. Called once at startup; failures are logged and leave the locations to be
+     * loaded on first use instead.
+     */
+    public void seedLoadIndex() {
+        try {
+            Map<String, List<WaiterLoadIndex.WaiterLoad>> waitersByLocation = new HashMap<>();
+            Map<String, AttributeValue> lastEvaluatedKey = null;
+            do {
+                ScanResult result = amazonDynamoDBClient.scan(new ScanRequest()
+                        .withTableName(waiterTable.getTableName())
+                        .withProjectionExpression("email, location_id, customer_count, visitor_count")
+                        .withExclusiveStartKey(lastEvaluatedKey));
+                for (Map<String, AttributeValue> item : result.getItems()) {
+                    if (!item.containsKey("location_id")) continue;
+                    waitersByLocation.computeIfAbsent(item.get("location_id").getS(), id -> new ArrayList<>())
+                            .add(toWaiterLoad(item));
                 }
-                List<Integer> countCustomer = item.get("customer_count").getL().stream()
-                        .map(AttributeValue::getN)
-                        .map(Integer::parseInt)
-                        .toList();
-
-                int customerCount = countCustomer.get(index);
-                String waiterEmail = item.get("email").getS();
+                lastEvaluatedKey = result.getLastEvaluatedKey();
+            } while (lastEvaluatedKey != null && !lastEvaluatedKey.isEmpty());
 
-                if (min > customerCount + visitorCount) {
-                    min = customerCount + visitorCount;
-                    email = waiterEmail;
-                }
+            for (Map.Entry<String, List<WaiterLoadIndex.WaiterLoad>> entry : waitersByLocation.entrySet()) {
+                ZoneId zone = locationRepo.getLocationZone(entry.getKey());
+                waiterLoadIndex.replaceLocation(entry.getKey(), zone, entry.getValue());
             }
-            return email;
+            logger.info("Waiter load index seeded for {} locations", waitersByLocation.size());
         } catch (Exception e) {
-            throw new RuntimeException(e);
+            logger.warn("Could not seed waiter load index, locations will be loaded on demand: {}", e.getMessage());
         }
     }
 
+    private static WaiterLoadIndex.WaiterLoad toWaiterLoad(Map<String, AttributeValue> item) {
+        int[] customerCounts = item.containsKey("customer_count")
+                ? item.get("customer_count").getL().stream().mapToInt(count -> Integer.parseInt(count.getN())).toArray()
+                : new int[7];
+        int visitorCount = item.containsKey("visitor_count") ? Integer.parseInt(item.get("visitor_count").getN()) : 0;
+        return new WaiterLoadIndex.WaiterLoad(item.get("email").getS(), customerCounts, visitorCount);
+    }
+
+    /**
+     * Changes a waiter's visitor count or the customer count of the date's weekday in place
+     * and passes the stored result on to the {@link WaiterLoadIndex}.
+     */
     public void updateWaiterBusyCount(String waiterEmail, String date, String countName, int change) throws Exception {
         try {
-            ValueMap valueMap = null;
+            UpdateItemSpec updateItemSpec = new UpdateItemSpec()
+                    .withPrimaryKey("email", waiterEmail)
+                    .withReturnValues(ReturnValue.ALL_NEW);
             if (countName.equals("visitor_count")) {
-                int currCount = waiterTable.getItem("email", waiterEmail).getNumber(countName).intValue();
-                valueMap = new ValueMap().with(":newCount", currCount + change);
+                updateItemSpec
+                        .withUpdateExpression("SET visitor_count = visitor_count + :change")
+                        .withValueMap(new ValueMap().withInt(":change", change));
             } else {
-                LocalDate localDate = LocalDate.parse(date, DateTimeFormatter.ofPattern("dd-MM-yyyy"));
-                DayOfWeek dayOfWeek = localDate.getDayOfWeek();
-                int index = dayOfWeek.getValue() - 1;
-
-                Item item = waiterTable.getItem("email", waiterEmail);
-                List<BigDecimal> x = item.getList("customer_count");
-                List<Integer> customerCount = x.stream()
-                        .map(BigDecimal::intValue)
-                        .collect(Collectors.toList());
-                customerCount.set(index, customerCount.get(index) + change);
-                valueMap = new ValueMap().with(":newCount", customerCount);
+                int index = DateFormatter.parseDate(date).getDayOfWeek().getValue() - 1;
+                updateItemSpec
+                        .withUpdateExpression("SET customer_count[" + index + "] = customer_count[" + index + "] + :change")
+                        .withValueMap(new ValueMap().withInt(":change", change));
+            }
+            Item updated = waiterTable.updateItem(updateItemSpec).getItem();
+
+            if (countName.equals("visitor_count")) {
+                waiterLoadIndex.updateVisitorCount(waiterEmail, updated.getInt("visitor_count"));
+            } else {
+                List<BigDecimal> customerCount = updated.getList("customer_count");
+                waiterLoadIndex.updateCustomerCounts(waiterEmail,
+                        customerCount.stream().mapToInt(BigDecimal::intValue).toArray());
             }
-            UpdateItemSpec updateItemSpec = new UpdateItemSpec()
-                    .withPrimaryKey("email", waiterEmail)
-                    .withUpdateExpression("SET " + countName + " = :newCount")
-                    .withValueMap(valueMap);
-            waiterTable.updateItem(updateItemSpec);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -210,59 +260,30 @@ public class WaiterRepo {
         return waiterTable.getItem("email", waiterEmail).getNumber("visitor_count").toString();
     }
 
-    public void updateWaiterAverageRatings(String waiterEmail, float newServiceRating) throws Exception {
+    /**
+     * Counts the service rating of a new feedback towards the waiter's average, once per
+     * feedback however often it is called.
+     */
+    public void updateWaiterAverageRatings(String feedbackId, String waiterEmail, float newServiceRating) throws Exception {
         try {
-
-            Item waiterItem = waiterTable.getItem("email", waiterEmail);
-
-            if (waiterItem == null) {
+            if (!RatingAggregates.addOnce(amazonDynamoDBClient, waiterTable, "email", waiterEmail, "waiter_rating",
+                    BigDecimal.valueOf(newServiceRating), feedbackTableName, feedbackId, FeedbackRepo.WAITER_RATING_COUNTED)) {
                 throw new WaiterNotFoundException("Waiter not found with ID: " + waiterEmail);
             }
-
-            float currentAverageRating = waiterItem.getFloat("waiter_rating");
-            float totalRatingsCount = waiterItem.getFloat("total_rating_count");
-            float rawNewAverage = (currentAverageRating * totalRatingsCount + newServiceRating) / (totalRatingsCount + 1);
-            // Round to 2 decimal places
-            BigDecimal newAverageRating = BigDecimal.valueOf(rawNewAverage).setScale(2, RoundingMode.HALF_UP);
-            waiterTable.updateItem(new UpdateItemSpec()
-                    .withPrimaryKey("email", waiterEmail)
-                    .withUpdateExpression("SET waiter_rating = :avg, total_rating_count = :count")
-                    .withValueMap(new ValueMap()
-                            .withNumber(":avg", newAverageRating)
-                            .withNumber(":count", totalRatingsCount + 1))
-            );
-
         } catch (Exception e) {
             throw new RuntimeException("Error updating waiter ratings: " + e.getMessage());
         }
     }
 
+    /**
+     * Replaces a service rating that was already counted with a new one.
+     */
     public void adjustWaiterServiceRating(String waiterEmail, float oldServiceRating, float newServiceRating) throws Exception {
         try {
-            Item waiterItem = waiterTable.getItem("email", waiterEmail);
-
-            if (waiterItem == null) {
+            if (!RatingAggregates.add(waiterTable, "email", waiterEmail, "waiter_rating",
+                    BigDecimal.valueOf(newServiceRating).subtract(BigDecimal.valueOf(oldServiceRating)), 0)) {
                 throw new WaiterNotFoundException("Waiter not found with ID: " + waiterEmail);
             }
-
-            float currentAverageRating = waiterItem.getFloat("waiter_rating");
-            float totalRatingsCount = waiterItem.getFloat("total_rating_count");
-
-            float ratingDifference = newServiceRating - oldServiceRating;
-            float rawAdjustedAverage = currentAverageRating + (ratingDifference / totalRatingsCount);
-
-            // Round to 2 decimal places using BigDecimal
-            BigDecimal adjustedAverage = BigDecimal.valueOf(rawAdjustedAverage)
-                    .setScale(2, RoundingMode.HALF_UP);
-
-            waiterTable.updateItem(new UpdateItemSpec()
-                    .withPrimaryKey("email", waiterEmail)
-                    .withUpdateExpression("SET waiter_rating = :avg")
-                    .withValueMap(new ValueMap()
-                            .withNumber(":avg", adjustedAverage))
-            );
-
-            System.out.println("Waiter ratings adjusted successfully for Waiter ID: " + waiterEmail);
         } catch (Exception e) {
             throw new Exception("Error adjusting waiter ratings: " + e.getMessage(), e);
         }
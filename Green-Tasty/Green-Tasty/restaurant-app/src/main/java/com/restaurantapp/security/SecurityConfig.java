@@ -78,6 +78,7 @@ public class SecurityConfig {
         corsConfiguration.setAllowedOrigins(List.of("*")); // Allow all origins
         corsConfiguration.setAllowedMethods(List.of("GET", "POST", "PUT", "DELETE", "OPTIONS", "PATCH"));
         corsConfiguration.setAllowedHeaders(List.of("Content-Type","X-Amz-Date","Authorization","X-Api-Key","X-Amz-Security-Token"));
+        corsConfiguration.setExposedHeaders(List.of("X-Next-Cursor", "X-Page-Size"));
         corsConfiguration.setAllowCredentials(false);
 
         UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
@@ -9,8 +9,6 @@ import com.restaurantapp.dto.Tables;
 import com.restaurantapp.exception.*;
 import com.amazonaws.services.kms.model.NotFoundException;
 import com.restaurantapp.exception.LocationNotFoundException;
-import com.restaurantapp.exception.TableAlreadyReservedException;
-import com.restaurantapp.exception.TimeSlotNotFoundException;
 import com.restaurantapp.repo.*;
 import com.restaurantapp.util.ValidationUtil;
 import org.slf4j.Logger;
@@ -19,13 +17,17 @@ import org.json.JSONObject;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 
 @Service
 public class BookingService {
+    private static final int MAX_RESERVATIONS_PAGE_SIZE = 100;
+
     private BookingRepo bookingRepo;
     private TableRepo tableRepo;
     private LocationRepo locationRepo;
@@ -43,8 +45,11 @@ public class BookingService {
         logger = LoggerFactory.getLogger(BookingService.class);
     }
 
-    public List<Map<String, Object>> getAllReservations(String userEmail, String date, String time, String tableNumber) throws Exception {
-        return bookingRepo.getAllReservation(userEmail, date, time, tableNumber);
+    public Map<String, Object> getAllReservations(String userEmail, String date, String time, String tableNumber,
+                                                  String cursor, int pageSize) throws Exception {
+        if (pageSize < 1 || pageSize > MAX_RESERVATIONS_PAGE_SIZE)
+            throw new IllegalArgumentException("Page size must be between 1 and " + MAX_RESERVATIONS_PAGE_SIZE + ".");
+        return bookingRepo.getAllReservation(userEmail, date, time, tableNumber, cursor, pageSize);
     }
 
     public void addDishToCartForReservation(String reservationId, String dishId) throws Exception {
@@ -57,9 +62,7 @@ public class BookingService {
         if (validateDishId != null)
             throw new ValidationException(validateDishId);
 
-        Reservation reservationDetails = bookingRepo.getReservationById(reservationId);
-        Location locationDetails = locationRepo.getLocationById(reservationDetails.getLocationId());
-        bookingRepo.addDishToCartForReservation(reservationId, dishId, LocalDateTime.now(ZoneId.of(locationDetails.getZone())));
+        bookingRepo.addDishToCartForReservation(reservationId, dishId, Instant.now());
     }
 
     private boolean checkIfSameTableNeedsToBeAllotted(String requestedTimeSlot, String reservedTimeSlot, int requestedGuestNum, int reservedGuestNum) {
@@ -101,6 +104,7 @@ public class BookingService {
         Reservation reservationDetails = bookingRepo.getReservationById(reservationId);
         List<String> bookedTables = reservationDetails.getTableIds();
         Location locationDetails = locationRepo.getLocationById(reservationDetails.getLocationId());
+        ZoneId zone = locationRepo.getLocationZone(reservationDetails.getLocationId());
 
         //submitted reservation equals existing reservation
         if (checkIfSubmittedReservationEqualsExistingReservation(timeSlot, reservationDetails.getTimeSlot(), guestsNumber, reservationDetails.getGuestsNumber())) {
@@ -108,14 +112,14 @@ public class BookingService {
         }
         //condition when the table will be same just the guestNumber needs to be modified in reservation table
         else if (checkIfSameTableNeedsToBeAllotted(timeSlot, reservationDetails.getTimeSlot(), guestsNumber, reservationDetails.getGuestsNumber())) {
-            bookingRepo.editReservation(null, reservationId, null, guestsNumber, LocalDateTime.now(ZoneId.of(locationDetails.getZone())));
+            bookingRepo.editReservation(null, reservationId, null, guestsNumber, LocalDateTime.now(zone));
         } else {
             List<Tables> availableTables = tableRepo.getAvailableTables(reservationDetails.getLocationId(),
                     reservationDetails.getDate(), timeFrom,
                     guestsNum, locationDetails.getZone());
 
 
-            bookingRepo.editReservation(availableTables, reservationId, timeSlot, guestsNumber, LocalDateTime.now(ZoneId.of(locationDetails.getZone())));
+            bookingRepo.editReservation(availableTables, reservationId, timeSlot, guestsNumber, LocalDateTime.now(zone));
 
             //freeing the previously booked tables
             logger.info("............Going to free the booked tables................");
@@ -150,9 +154,9 @@ public class BookingService {
             throw new ReservationAlreadyCancelledException("Reservation with ID " + reservationId + " already cancelled.");
         }
         Reservation reservationDetails = bookingRepo.getReservationById(reservationId);
-        Location locationDetails = locationRepo.getLocationById(reservationDetails.getLocationId());
+        ZoneId zone = locationRepo.getLocationZone(reservationDetails.getLocationId());
 
-        bookingRepo.cancelReservation(reservationId, LocalDateTime.now(ZoneId.of(locationDetails.getZone())));
+        bookingRepo.cancelReservation(reservationId, LocalDateTime.now(zone));
         for (String tableId : reservationDetails.getTableIds()) {
             tableRepo.updateTable(tableId + "#" + reservationDetails.getDate(),
                     reservationDetails.getLocationId(),
@@ -175,28 +179,17 @@ public class BookingService {
         if (reservation.getTableIds().isEmpty()) {
             throw new IllegalArgumentException("Please select at least one table");
         }
+        if (new HashSet<>(reservation.getTableIds()).size() != reservation.getTableIds().size()) {
+            throw new IllegalArgumentException("The same table is selected more than once");
+        }
 
         bookingRepo.validateBookingTime(
                 reservation.getDate(),
                 reservation.getTimeSlot(),
-                LocalDateTime.now(
-                        ZoneId.of(
-                                locationRepo.getLocationById(
-                                        reservation.getLocationId()
-                                ).getZone()
-                        )
-                ));
+                LocalDateTime.now(locationRepo.getLocationZone(reservation.getLocationId())));
         String locationAddress = locationRepo.getLocationAddress(reservation.getLocationId());
 
-        for (String tableId : reservation.getTableIds()) {
-            if (!tableRepo.isTimePresent(reservation.getLocationId(), tableId + "#" + reservation.getDate(), reservation.getTimeSlot()))
-                throw new TimeSlotNotFoundException("Invalid date/timeslot provided.");
-            if (!tableRepo.isTimeAvailable(reservation.getLocationId(), tableId + "#" + reservation.getDate(), reservation.getTimeSlot()))
-                throw new TableAlreadyReservedException("Table already reserved.");
-            else
-                tableRepo.updateTable(tableId + "#" + reservation.getDate(), reservation.getLocationId(), reservation.getDate(), reservation.getTimeSlot(), false);
-        }
-
+        // books the tables and inserts the reservation atomically
         bookingRepo.addReservation(customerEmail, "", "", reservation);
 
         return Map.of("date", reservation.getDate(),
@@ -217,6 +210,8 @@ public class BookingService {
 
         if (clientType == null || reservation.getDate().isBlank() || reservation.getLocationId().isBlank() || reservation.getTimeFrom().isBlank() || reservation.getTimeTo().isBlank() || reservation.getGuestsNumber() == 0 || reservation.getTableIds().isEmpty()) {
             throw new IllegalArgumentException("Missing required fields");
+        } else if (new HashSet<>(reservation.getTableIds()).size() != reservation.getTableIds().size()) {
+            throw new IllegalArgumentException("The same table is selected more than once");
         } else if (clientType.equals("CUSTOMER") && ((json.optString("customerName", null) == null || json.optString("customerName", null).isBlank()) && (json.optString("customerEmail", null) == null || json.optString("customerEmail", null).isBlank()))) {
             throw new IllegalArgumentException("Missing required fields");
         }
@@ -233,18 +228,7 @@ public class BookingService {
         bookingRepo.validateBookingTime(
                 reservation.getDate(),
                 reservation.getTimeSlot(),
-                LocalDateTime.now(
-                        ZoneId.of(location.getZone())
-                ));
-
-        for (String tableId : reservation.getTableIds()) {
-            if (!tableRepo.isTimePresent(reservation.getLocationId(), tableId + "#" + reservation.getDate(), reservation.getTimeSlot()))
-                throw new TimeSlotNotFoundException("Invalid date/timeslot provided.");
-            if (!tableRepo.isTimeAvailable(reservation.getLocationId(), tableId + "#" + reservation.getDate(), reservation.getTimeSlot()))
-                throw new TableAlreadyReservedException("Table already reserved.");
-            else
-                tableRepo.updateTable(tableId + "#" + reservation.getDate(), reservation.getLocationId(), reservation.getDate(), reservation.getTimeSlot(), false);
-        }
+                LocalDateTime.now(locationRepo.getLocationZone(location.getLocationId())));
 
         String locationAddress = locationRepo.getLocationAddress(reservation.getLocationId());
 
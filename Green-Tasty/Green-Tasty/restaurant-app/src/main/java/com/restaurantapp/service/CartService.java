@@ -3,6 +3,7 @@ package com.restaurantapp.service;
 import com.restaurantapp.dto.*;
 import com.restaurantapp.exception.*;
 import com.restaurantapp.repo.BookingRepo;
+import com.restaurantapp.repo.DishHydrator;
 import com.restaurantapp.repo.DishRepo;
 import com.restaurantapp.repo.LocationRepo;
 import com.restaurantapp.util.ValidationUtil;
@@ -22,13 +23,15 @@ import java.util.*;
 public class CartService {
     private BookingRepo bookingRepo;
     private DishRepo dishRepo;
+    private DishHydrator dishHydrator;
     private LocationRepo locationRepo;
     private final Logger logger;
 
-    public CartService(BookingRepo bookingRepo, DishRepo dishRepo, LocationRepo locationRepo)
+    public CartService(BookingRepo bookingRepo, DishRepo dishRepo, DishHydrator dishHydrator, LocationRepo locationRepo)
     {
         this.bookingRepo = bookingRepo;
         this.dishRepo = dishRepo;
+        this.dishHydrator = dishHydrator;
         this.locationRepo = locationRepo;
         logger = LoggerFactory.getLogger(CartService.class);
     }
@@ -38,8 +41,15 @@ public class CartService {
         Map<Object, Object> responseBody = new HashMap<>();
         List<Map<String, Object>> content = bookingRepo.getAllReservationWithReservedStatus(customerEmail);
 
+        // Fetch the details of every pre-ordered dish of all reservations at once
+        Set<String> dishIds = new HashSet<>();
         for (Map<String, Object> entry : content) {
-            Map<String, String> preOrder = (Map<String, String>) entry.get("preOrder");
+            dishIds.addAll(preOrderOf(entry).keySet());
+        }
+        Map<String, Map<String, Object>> dishesById = dishHydrator.getDishes(dishIds, "id", "name", "price", "imageUrl");
+
+        for (Map<String, Object> entry : content) {
+            Map<String, String> preOrder = preOrderOf(entry);
 
             entry.remove("preOrder");
 
@@ -50,11 +60,14 @@ public class CartService {
                 String dishId = preOrderEntry.getKey();
                 String quantity = preOrderEntry.getValue();
 
-                Dish dish = dishRepo.getDishById(dishId);
-                dishDetails.put("dishId", dish.getId());
-                dishDetails.put("dishImageUrl", dish.getImageUrl());
-                dishDetails.put("dishName", dish.getName());
-                dishDetails.put("dishPrice", dish.getPrice());
+                Map<String, Object> dish = dishesById.get(dishId);
+                if (dish == null) {
+                    throw new DishNotFoundException("Dish not found for dishId: " + dishId);
+                }
+                dishDetails.put("dishId", (String) dish.get("id"));
+                dishDetails.put("dishImageUrl", (String) dish.get("imageUrl"));
+                dishDetails.put("dishName", (String) dish.get("name"));
+                dishDetails.put("dishPrice", (String) dish.get("price"));
                 dishDetails.put("dishQuantity", quantity);
                 dishItems.add(dishDetails);
             }
@@ -93,25 +106,28 @@ public class CartService {
         else
             throw new ValidationException("Pre-order is only allowed when reservation is in RESERVED state.");
 
-        Location locationDetails = locationRepo.getLocationById(reservation.getLocationId());
+        ZoneId zone = locationRepo.getLocationZone(reservation.getLocationId());
 
         String validatePreOrderState = ValidationUtil.validatePreOrderStateValue(preOrderState);
         if (validatePreOrderState != null) {
             throw new ValidationException(validatePreOrderState);
         }
 
-        List<Map<String, Object>> dishItems = (List<Map<String, Object>>) requestBody.getOrDefault("dishItems", null);
-        if (dishItems == null) {
+        if (!(requestBody.get("dishItems") instanceof List<?> dishItems)) {
             String msg = "Invalid request payload. Missing dishItems!!!";
             throw new ValidationException(msg);
         }
         Map<String, String> dishQuantityMap = new HashMap<>();
 
-        for (Map<String, Object> dish : dishItems) {
-            long quantity = Long.parseLong(dish.getOrDefault("dishQuantity", 0).toString());
+        for (Object dishItem : dishItems) {
+            if (!(dishItem instanceof Map<?, ?> dish)) {
+                throw new ValidationException("Invalid request payload. Invalid dishItems!!!");
+            }
+            Object dishQuantity = dish.get("dishQuantity");
+            long quantity = Long.parseLong(dishQuantity == null ? "0" : dishQuantity.toString());
             if (quantity <= 0)
                 continue;
-            String dishId = (String) dish.getOrDefault("dishId", "");
+            String dishId = dish.get("dishId") == null ? "" : (String) dish.get("dishId");
 
             String validateDishId = ValidationUtil.isValidString(dishId, "Dish ID");
             String validateDishQty = ValidationUtil.isValidQuantity(quantity, reservation.getGuestsNumber());
@@ -129,9 +145,18 @@ public class CartService {
             }
         }
 
-        bookingRepo.updateReservationWithPreOrderDetails(reservationId, preOrderState, dishQuantityMap, LocalDateTime.now(ZoneId.of(locationDetails.getZone())));
+        bookingRepo.updateReservationWithPreOrderDetails(reservationId, preOrderState, dishQuantityMap, LocalDateTime.now(zone));
 
         return buildCartResponse(customerEmail);
 
     }
+
+    /**
+     * Reads the dish id to quantity map that BookingRepo puts under "preOrder".
+     */
+    private static Map<String, String> preOrderOf(Map<String, Object> reservation) {
+        Map<String, String> preOrder = new HashMap<>();
+        ((Map<?, ?>) reservation.get("preOrder")).forEach((dishId, quantity) -> preOrder.put((String) dishId, (String) quantity));
+        return preOrder;
+    }
 }
@@ -2,7 +2,9 @@ package com.restaurantapp.service;
 
 import com.restaurantapp.dto.Dish;
 import com.restaurantapp.exception.DishNotFoundException;
+import com.restaurantapp.exception.UnauthorizedException;
 import com.restaurantapp.exception.ValidationException;
+import com.restaurantapp.repo.AdminRepo;
 import com.restaurantapp.repo.DishRepo;
 import com.restaurantapp.util.ValidationUtil;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -15,18 +17,20 @@ import java.util.Set;
 @Service
 public class DishService {
     private final DishRepo dishRepo;
+    private final AdminRepo adminRepo;
 
 
     private static final Set<String> ALLOWED_DISH_TYPES = Set.of("DESSERT", "APPETIZER", "MAIN_COURSE");
     private static final Set<String> ALLOWED_SORT = Set.of("popularity,asc", "popularity,desc", "price,asc", "price,desc");
 
     @Autowired
-    public DishService(DishRepo dishRepo) {
+    public DishService(DishRepo dishRepo, AdminRepo adminRepo) {
         this.dishRepo = dishRepo;
+        this.adminRepo = adminRepo;
     }
 
-    public List<Map<String, Object>> getPopularDishes() throws DishNotFoundException {
-            return dishRepo.getPopularDishes();
+    public List<Map<String, Object>> getPopularDishes(String locationId) throws DishNotFoundException {
+            return dishRepo.getPopularDishes(locationId);
     }
 
     public List<Map<String, Object>> getAllDishes(String dishType, String sort) throws Exception {
@@ -44,6 +48,24 @@ public class DishService {
         return dishRepo.getDishes(dishType, sort);
     }
 
+    /**
+     * Reloads the menu served by the dish listings; only admins may trigger it.
+     */
+    public long refreshMenu(String email) throws Exception {
+        if (!adminRepo.isAdmin(email)) {
+            throw new UnauthorizedException("Only admins can refresh the menu.");
+        }
+        dishRepo.refreshMenu();
+        return dishRepo.getMenuSnapshot().getVersion();
+    }
+
+    public void updateDishAvailability(String email, String dishId, String locationId, boolean onStop) throws Exception {
+        if (!adminRepo.isAdmin(email)) {
+            throw new UnauthorizedException("Only admins can change dish availability.");
+        }
+        dishRepo.updateDishAvailability(locationId, dishId, onStop);
+    }
+
     public Dish getDishById(String id) throws Exception {
         return dishRepo.getDishById(id);
     }
@@ -0,0 +1,200 @@
+package com.restaurantapp.service;
+
+import com.amazonaws.services.dynamodbv2.document.Item;
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.SendMessageRequest;
+import com.restaurantapp.dto.Reservation;
+import com.restaurantapp.exception.ReservationNotFoundException;
+import com.restaurantapp.repo.BookingRepo;
+import com.restaurantapp.repo.FeedbackRepo;
+import com.restaurantapp.repo.LocationRepo;
+import com.restaurantapp.repo.WaiterRepo;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Work that follows a stored feedback but is not needed for the response: waiter and
+ * location rating aggregates, dish popularity of the finished reservation and the report
+ * event.
+ * <p>
+ * Steps run on the {@code feedbackExecutor} pool and each is retried on its own with a
+ * growing backoff. Every step is safe to repeat: ratings are counted in one transaction
+ * with a per-feedback flag, order counts are conditional on what the reservation already
+ * counted, and the report event is marked as sent on the feedback (reports-app ignores a
+ * repeated event).
+ * <p>
+ * The feedback item is the outbox: it is stored with {@code follow_up_pending}, which is
+ * removed once all steps succeeded. Follow-ups that are still pending after
+ * {@code feedback.follow-up.resume-after-ms}, because a step gave up after
+ * {@code feedback.async.max-attempts} or the app stopped, are run again by
+ * {@link #resumePending()}.
+ */
+@Service
+public class FeedbackFollowUpService {
+
+    private static final Logger logger = LoggerFactory.getLogger(FeedbackFollowUpService.class);
+
+    private final BookingRepo bookingRepo;
+    private final FeedbackRepo feedbackRepo;
+    private final WaiterRepo waiterRepo;
+    private final LocationRepo locationRepo;
+    private final AmazonSQS amazonSQSClient;
+    private final ExecutorService feedbackExecutor;
+    private final int maxAttempts;
+    private final long retryBackoffMillis;
+    private final long resumeAfterMillis;
+    private final int resumeBatchSize;
+    @Value("${aws.region}")
+    private String awsRegion;
+    @Value("${aws.account.id}")
+    private String awsAccountId;
+    @Value("${report_info_queue}")
+    private String reportInfoQueue;
+
+    @Autowired
+    public FeedbackFollowUpService(BookingRepo bookingRepo, FeedbackRepo feedbackRepo, WaiterRepo waiterRepo, LocationRepo locationRepo,
+                                   AmazonSQS amazonSQSClient,
+                                   @Qualifier("feedbackExecutor") ExecutorService feedbackExecutor,
+                                   @Value("${feedback.async.max-attempts:3}") int maxAttempts,
+                                   @Value("${feedback.async.retry-backoff-ms:500}") long retryBackoffMillis,
+                                   @Value("${feedback.follow-up.resume-after-ms:600000}") long resumeAfterMillis,
+                                   @Value("${feedback.follow-up.resume-batch-size:100}") int resumeBatchSize) {
+        this.bookingRepo = bookingRepo;
+        this.feedbackRepo = feedbackRepo;
+        this.waiterRepo = waiterRepo;
+        this.locationRepo = locationRepo;
+        this.amazonSQSClient = amazonSQSClient;
+        this.feedbackExecutor = feedbackExecutor;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.retryBackoffMillis = retryBackoffMillis;
+        this.resumeAfterMillis = resumeAfterMillis;
+        this.resumeBatchSize = resumeBatchSize;
+    }
+
+    /**
+     * Schedules the follow-up steps of a new feedback.
+     *
+     * @param reservation the reservation attributes as read before the feedback was stored
+     */
+    public CompletableFuture<Void> feedbackCreated(String feedbackId, Map<String, Object> reservation,
+                                                   float cuisineRating, float serviceRating) {
+        return followUp(feedbackId, reservation, cuisineRating, serviceRating, false);
+    }
+
+    /**
+     * Runs the follow-ups again that did not complete in time.
+     */
+    @Scheduled(fixedDelayString = "${feedback.follow-up.resume-interval-ms:300000}")
+    public void resumePending() {
+        List<Item> pending;
+        try {
+            pending = feedbackRepo.findPendingFollowUps(System.currentTimeMillis() - resumeAfterMillis, resumeBatchSize);
+        } catch (Exception e) {
+            logger.warn("Could not read pending feedback follow-ups: {}", e.getMessage());
+            return;
+        }
+        for (Item feedback : pending) {
+            String feedbackId = feedback.getString("feedback_id");
+            try {
+                Map<String, Object> reservation = bookingRepo.getReservation(feedback.getString("reservation_id"));
+                logger.info("Resuming follow-up of feedback {}", feedbackId);
+                followUp(feedbackId, reservation,
+                        feedback.getFloat("cuisine_rating"), feedback.getFloat("service_rating"),
+                        feedback.isPresent(FeedbackRepo.REPORT_EVENT_SENT) && feedback.getBoolean(FeedbackRepo.REPORT_EVENT_SENT));
+            } catch (ReservationNotFoundException e) {
+                logger.warn("Dropping follow-up of feedback {}: {}", feedbackId, e.getMessage());
+                feedbackRepo.completeFollowUp(feedbackId);
+            } catch (Exception e) {
+                logger.warn("Could not resume follow-up of feedback {}: {}", feedbackId, e.getMessage());
+            }
+        }
+    }
+
+    private CompletableFuture<Void> followUp(String feedbackId, Map<String, Object> reservation,
+                                             float cuisineRating, float serviceRating, boolean reportEventSent) {
+        String reservationId = (String) reservation.get("reservation_id");
+        String waiterEmail = (String) reservation.get("waiter_email");
+        Reservation details = bookingRepo.toReservation(reservation);
+
+        List<CompletableFuture<Boolean>> steps = new ArrayList<>(List.of(
+                runWithRetry("waiter rating of " + reservationId,
+                        () -> waiterRepo.updateWaiterAverageRatings(feedbackId, waiterEmail, serviceRating)),
+                runWithRetry("location rating of " + reservationId,
+                        () -> locationRepo.updateLocationAverageRatings(feedbackId, details.getLocationId(), cuisineRating)),
+                runWithRetry("order counts of " + reservationId,
+                        () -> bookingRepo.syncFinishedOrderCounts(reservation))));
+        if (!reportEventSent) {
+            steps.add(runWithRetry("report event of " + reservationId, () -> {
+                amazonSQSClient.sendMessage(new SendMessageRequest()
+                        .withQueueUrl("https://sqs." + awsRegion + ".amazonaws.com/" + awsAccountId + "/" + reportInfoQueue)
+                        .withMessageBody(new JSONObject()
+                                .put("date", details.getDate())
+                                .put("reservation_id", reservationId)
+                                .put("waiter_email", waiterEmail)
+                                .put("feedback_id", feedbackId)
+                                .put("pre_order", details.getPreOrder())
+                                .put("table_id", details.getTableIds())
+                                .put("location_id", details.getLocationId())
+                                .put("status", details.getStatus())
+                                .put("time_slot", details.getTimeSlot())
+                                .put("guests_number", details.getGuestsNumber())
+                                .toString()));
+                feedbackRepo.markFollowUpStep(feedbackId, FeedbackRepo.REPORT_EVENT_SENT);
+            }));
+        }
+
+        return CompletableFuture.allOf(steps.toArray(new CompletableFuture<?>[0])).thenRun(() -> {
+            if (steps.stream().allMatch(CompletableFuture::join)) {
+                try {
+                    feedbackRepo.completeFollowUp(feedbackId);
+                } catch (Exception e) {
+                    logger.warn("Could not complete follow-up of feedback {}: {}", feedbackId, e.getMessage());
+                }
+            }
+        });
+    }
+
+    /**
+     * @return completes with whether the step succeeded
+     */
+    private CompletableFuture<Boolean> runWithRetry(String name, Step step) {
+        return CompletableFuture.supplyAsync(() -> {
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    step.run();
+                    return true;
+                } catch (Exception e) {
+                    if (attempt >= maxAttempts) {
+                        logger.error("Giving up on {} after {} attempts, left for the next resume", name, attempt, e);
+                        return false;
+                    }
+                    logger.warn("Attempt {} of {} failed, retrying: {}", attempt, name, e.getMessage());
+                }
+                try {
+                    Thread.sleep(retryBackoffMillis << (attempt - 1));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    logger.error("Interrupted while retrying {}", name);
+                    return false;
+                }
+            }
+        }, feedbackExecutor);
+    }
+
+    @FunctionalInterface
+    private interface Step {
+        void run() throws Exception;
+    }
+}
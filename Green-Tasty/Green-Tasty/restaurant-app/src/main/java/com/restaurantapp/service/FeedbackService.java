@@ -1,9 +1,5 @@
 package com.restaurantapp.service;
 
-import com.amazonaws.services.s3.AmazonS3;
-import com.amazonaws.services.s3.model.GeneratePresignedUrlRequest;
-import com.amazonaws.services.sqs.AmazonSQS;
-import com.amazonaws.services.sqs.model.SendMessageRequest;
 import com.restaurantapp.dto.Feedback;
 import com.restaurantapp.dto.Reservation;
 import com.restaurantapp.dto.ReservationStatus;
@@ -12,15 +8,14 @@ import com.restaurantapp.exception.FeedbackNotFoundException;
 import com.restaurantapp.exception.ReservationAlreadyCancelledException;
 import com.restaurantapp.exception.ReservationNotFoundException;
 import com.restaurantapp.repo.*;
-import org.json.JSONObject;
+import com.restaurantapp.util.DateFormatter;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
-import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 @Service
@@ -29,27 +24,23 @@ public class FeedbackService {
     private BookingRepo bookingRepo;
     private FeedbackRepo feedbackRepo;
     private WaiterRepo waiterRepo;
-    private AmazonSQS amazonSQSClient;
+    private FeedbackFollowUpService feedbackFollowUpService;
     private ReportsRepo reportsRepo;
-    private AmazonS3 s3Client;
+    private CustomerRepo customerRepo;
+    private PresignedUrlService presignedUrlService;
     private static final String BUCKET_NAME = "run8-team9-deployment-bucket";
     private static final String PROFILE_FOLDER = "images/profile";
-    @Value("${aws.region}")
-    private String awsRegion;
-    @Value("${aws.account.id}")
-    private String awsAccountId;
-    @Value("${report_info_queue}")
-    private String reportInfoQueue;
 
     @Autowired
-    public FeedbackService(LocationRepo locationRepo, BookingRepo bookingRepo, FeedbackRepo feedbackRepo, WaiterRepo waiterRepo, AmazonSQS amazonSQSClient,ReportsRepo reportsRepo,AmazonS3 s3Client) {
+    public FeedbackService(LocationRepo locationRepo, BookingRepo bookingRepo, FeedbackRepo feedbackRepo, WaiterRepo waiterRepo, FeedbackFollowUpService feedbackFollowUpService,ReportsRepo reportsRepo,CustomerRepo customerRepo,PresignedUrlService presignedUrlService) {
         this.locationRepo = locationRepo;
         this.bookingRepo = bookingRepo;
         this.feedbackRepo = feedbackRepo;
         this.waiterRepo = waiterRepo;
-        this.amazonSQSClient = amazonSQSClient;
+        this.feedbackFollowUpService = feedbackFollowUpService;
         this.reportsRepo = reportsRepo;
-        this.s3Client = s3Client;
+        this.customerRepo = customerRepo;
+        this.presignedUrlService = presignedUrlService;
     }
 
     public String postFeedbackService(Feedback feedback) throws Exception {
@@ -59,8 +50,9 @@ public class FeedbackService {
             throw new IllegalArgumentException("reservationId is required.");
         }
 
-        Reservation reservation = bookingRepo.getReservationById(feedback.getReservationId());
-        if (bookingRepo.feedbackExistsByReservationId(feedback.getReservationId())) {
+        Map<String, Object> reservationAttributes = bookingRepo.getReservation(feedback.getReservationId());
+        Reservation reservation = bookingRepo.toReservation(reservationAttributes);
+        if (reservation.getFeedbackId() != null && !reservation.getFeedbackId().isEmpty()) {
             throw new FeedbackAlreadyExistException("Feedback already exists for the reservation.");
         }
 
@@ -102,47 +94,21 @@ public class FeedbackService {
         }
 
         // Set feedback ID
-        Map<String,Object> feedbackToSave = Map.of(
+        Map<String,Object> feedbackToSave = new HashMap<>(Map.of(
                 "feedbackId",feedbackId,
                 "reservationId",feedback.getReservationId(),
                 "cuisineComment",feedback.getCuisineComment(),
                 "cuisineRating",cuisineRating,
                 "serviceComment",feedback.getServiceComment(),
                 "serviceRating",serviceRating,
-                "locationId",reservation.getLocationId());
-
-        // Save feedback
-        feedbackRepo.createNewFeedback(feedbackToSave);
-
-        // Update reservation
-        bookingRepo.updateReservationFeedback(feedback.getReservationId(), feedbackId);
-        bookingRepo.updateReservationStatus(feedback.getReservationId(), ReservationStatus.FINISHED.toString());
-
-        // Update waiter and location ratings
-        String waiterEmail = bookingRepo.getWaiterEmailByReservationId(feedback.getReservationId());
-        waiterRepo.updateWaiterAverageRatings(waiterEmail, serviceRating);
-
-        String locationId = reservation.getLocationId();
-        locationRepo.updateLocationAverageRatings(locationId, cuisineRating);
-
-        // Send SQS Message
-        SendMessageRequest sendMessageRequest = new SendMessageRequest()
-                .withQueueUrl("https://sqs." + awsRegion + ".amazonaws.com/" + awsAccountId + "/" + reportInfoQueue)
-                .withMessageBody(new JSONObject()
-                        .put("date", reservation.getDate())
-                        .put("reservation_id", feedback.getReservationId())
-                        .put("waiter_email", waiterEmail)
-                        .put("feedback_id", feedbackId)
-                        .put("pre_order", reservation.getPreOrder())
-                        .put("table_id", reservation.getTableIds())
-                        .put("location_id", reservation.getLocationId())
-                        .put("status", reservation.getStatus())
-                        .put("time_slot", reservation.getTimeSlot())
-                        .put("guests_number", reservation.getGuestsNumber())
-                        .toString());
-
-        amazonSQSClient.sendMessage(sendMessageRequest);
+                "locationId",reservation.getLocationId(),
+                "visitDate",DateFormatter.parseDate(reservation.getDate()).toString()));
+        addReviewerDetails(feedbackToSave, (String) reservationAttributes.get("customer_email"));
 
+        // Save feedback and finish the reservation in one transaction; ratings, dish
+        // popularity and the report event follow asynchronously
+        feedbackRepo.createFeedbackForReservation(feedbackToSave, ReservationStatus.FINISHED.toString());
+        feedbackFollowUpService.feedbackCreated(feedbackId, reservationAttributes, cuisineRating, serviceRating);
 
         return "Feedback has been created";
     }
@@ -152,7 +118,8 @@ public class FeedbackService {
         if (feedback.getReservationId() == null || feedback.getReservationId().isEmpty()) {
             throw new IllegalArgumentException("reservationId is required.");
         }
-        Reservation reservation = bookingRepo.getReservationById(feedback.getReservationId());
+        Map<String, Object> reservationAttributes = bookingRepo.getReservation(feedback.getReservationId());
+        Reservation reservation = bookingRepo.toReservation(reservationAttributes);
 
 
         System.out.println(feedback.toString());
@@ -200,14 +167,16 @@ public class FeedbackService {
             }
         }
 
-        Map<String,Object> updatedFeedback = Map.of(
+        Map<String,Object> updatedFeedback = new HashMap<>(Map.of(
                 "feedbackId",feedbackId,
                 "reservationId",feedback.getReservationId(),
                 "cuisineComment",feedback.getCuisineComment(),
                 "newCuisineRating",newCuisineRating != 0 ? newCuisineRating : oldFeedback.getCuisineRating(),
                 "serviceComment",feedback.getServiceComment(),
                 "newServiceRating",newServiceRating != 0 ? newServiceRating : oldFeedback.getServiceRating(),
-                "locationId",reservation.getLocationId());
+                "locationId",reservation.getLocationId(),
+                "visitDate",DateFormatter.parseDate(reservation.getDate()).toString()));
+        addReviewerDetails(updatedFeedback, (String) reservationAttributes.get("customer_email"));
 
 
         feedbackRepo.updateFeedback(updatedFeedback);
@@ -244,6 +213,23 @@ public class FeedbackService {
 
     }
 
+    /**
+     * Adds the reviewer's display name and avatar key, which are stored on the feedback so
+     * that feedback lists need no customer lookups. Visitors have neither.
+     */
+    private void addReviewerDetails(Map<String, Object> feedback, String customerEmail) {
+        Map<String, Object> customer = customerEmail == null ? null
+                : customerRepo.getCustomersDetails(Set.of(customerEmail)).get(customerEmail);
+        if (customer == null) {
+            feedback.put("reviewerName", "");
+            feedback.put("reviewerImage", "");
+            return;
+        }
+        feedback.put("customerEmail", customerEmail);
+        feedback.put("reviewerName", FeedbackRepo.reviewerName((String) customer.get("first_name"), (String) customer.get("last_name")));
+        feedback.put("reviewerImage", customer.get("image_url") == null ? "" : customer.get("image_url"));
+    }
+
     public Map<String,Object> getWaiterDetailsService(Map<String,String> allParams) throws Exception{
         Feedback feedback;
         String cuisineComment = "";
@@ -259,8 +245,7 @@ public class FeedbackService {
         }
 
         String waiterName = (String)waiter.getOrDefault("first_name","DefaultWaiter")+" "+ (String)waiter.getOrDefault("last_name","DefaultWaiter");
-        Object imageUrl =  s3Client.generatePresignedUrl(new GeneratePresignedUrlRequest(BUCKET_NAME, fileName)
-                .withExpiration(new Date(System.currentTimeMillis() + (5L * 60 * 1000))));
+        Object imageUrl = presignedUrlService.presign(BUCKET_NAME, fileName);
         return Map.of("waiterName",waiterName,
                 "waiterRating",waiter.get("waiter_rating"),
                 "imageUrl",imageUrl,
@@ -1,8 +1,7 @@
 package com.restaurantapp.service;
 
-import com.amazonaws.services.s3.AmazonS3;
-import com.amazonaws.services.s3.model.GeneratePresignedUrlRequest;
 import com.restaurantapp.dto.Feedback;
+import com.restaurantapp.dto.FeedbackPage;
 import com.restaurantapp.dto.Location;
 import com.restaurantapp.dto.Reservation;
 import com.restaurantapp.exception.LocationNotFoundException;
@@ -13,14 +12,13 @@ import com.restaurantapp.repo.BookingRepo;
 import com.restaurantapp.repo.CustomerRepo;
 import com.restaurantapp.repo.FeedbackRepo;
 import com.restaurantapp.repo.LocationRepo;
+import com.restaurantapp.util.DateFormatter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.math.BigDecimal;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.net.URL;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
@@ -33,17 +31,17 @@ public class LocationService {
     private FeedbackRepo feedbackRepo;
     private CustomerRepo customerRepo;
     private final Logger logger;
-    private AmazonS3 s3Client;
+    private PresignedUrlService presignedUrlService;
 
     private static final String BUCKET_NAME = "run8-team9-deployment-bucket";
 
     @Autowired
-    public LocationService(LocationRepo locationRepo, BookingRepo bookingRepo, FeedbackRepo feedbackRepo, CustomerRepo customerRepo, AmazonS3 s3Client) {
+    public LocationService(LocationRepo locationRepo, BookingRepo bookingRepo, FeedbackRepo feedbackRepo, CustomerRepo customerRepo, PresignedUrlService presignedUrlService) {
         this.locationRepo = locationRepo;
         this.bookingRepo = bookingRepo;
         this.feedbackRepo = feedbackRepo;
         this.customerRepo = customerRepo;
-        this.s3Client = s3Client;
+        this.presignedUrlService = presignedUrlService;
         logger = LoggerFactory.getLogger(TableService.class);
     }
 
@@ -69,19 +67,31 @@ public class LocationService {
             if ((Integer) queryParams.get("size") > 20) {
                 throw new IllegalArgumentException("Size limit exceeded");
             }
+            if ((Integer) queryParams.get("size") < 1 || (Integer) queryParams.get("page") < 0) {
+                throw new IllegalArgumentException("Invalid page or size");
+            }
 
-           // List<Map<String, String>> reservations = bookingRepo.getReservationsByLocation(locationId);
-            List<Map<String, Object>> allFeedbacks = buildFeedbackList((String) queryParams.get("type"), locationId);
+            String type = (String) queryParams.get("type");
+            String sortKey = (String) queryParams.get("sortKey");
+            if (!"service".equalsIgnoreCase(type) && !"cuisine".equalsIgnoreCase(type)) {
+                throw new IllegalArgumentException("Invalid feedback type!");
+            }
 
-            List<Map<String, Object>> sortedPaginated = sortAndPaginate(
-                    allFeedbacks,
-                    (String) queryParams.get("sortKey"),
+            // Only the requested page is read, in the order of the matching index
+            FeedbackPage feedbackPage = feedbackRepo.getFeedbackPageByLocation(
+                    locationId,
+                    type,
+                    sortKey,
                     (Boolean) queryParams.get("ascending"),
                     (Integer) queryParams.get("page"),
-                    (Integer) queryParams.get("size")
+                    (Integer) queryParams.get("size"),
+                    (String) queryParams.get("cursor")
             );
+            List<Map<String, Object>> pageFeedbacks = buildFeedbackList(type, locationId, feedbackPage.content());
 
-            return buildResponse(allFeedbacks, sortedPaginated, queryParams);
+            Map<String, Object> response = buildResponse(feedbackPage.totalElements(), pageFeedbacks, queryParams);
+            response.put("nextCursor", feedbackPage.nextCursor());
+            return response;
 
     }
 
@@ -91,6 +101,7 @@ public class LocationService {
         if(type.isEmpty()) throw new IllegalArgumentException("Type is not provided");
         int page = parseOrDefault(requestParams.get("page"), 0);
         int size = parseOrDefault(requestParams.get("size"), 1);
+        String cursor = requestParams.get("cursor");
         String sortParam = requestParams.getOrDefault("sort", "date,asc");
         String[] sortParts = sortParam.split(",");
         String sortKey = sortParts[0];
@@ -102,6 +113,7 @@ public class LocationService {
         result.put("size", size);
         result.put("sortKey", sortKey);
         result.put("ascending", ascending);
+        result.put("cursor", cursor);
 
         return result;
 
@@ -114,9 +126,26 @@ public class LocationService {
         }
     }
 
-    private List<Map<String, Object>> buildFeedbackList(String type, String locationId) throws UserDoesNotExistsException, ReservationNotFoundException, ReservationAlreadyCancelledException {
+    private List<Map<String, Object>> buildFeedbackList(String type, String locationId, List<Map<String, Object>> feedbacks) {
         List<Map<String, Object>> feedbackList = new ArrayList<>();
-        List<Map<String,Object>> feedbacks = feedbackRepo.getFeedbacksByLocation(locationId);
+
+        // Feedbacks store the reviewer details; those not backfilled yet are looked up in batches
+        Set<String> reservationIds = new HashSet<>();
+        for (Map<String, Object> feedback : feedbacks) {
+            if (!feedback.containsKey("reviewer_name") || !feedback.containsKey("visit_date")) {
+                reservationIds.add((String) feedback.get("reservation_id"));
+            }
+        }
+        Map<String, Map<String, Object>> reservations = reservationIds.isEmpty()
+                ? Map.of() : bookingRepo.getReservations(reservationIds, "reservation_id", "date", "customer_email");
+        Set<String> customerEmails = new HashSet<>();
+        for (Map<String, Object> reservation : reservations.values()) {
+            if (reservation.get("customer_email") != null) customerEmails.add((String) reservation.get("customer_email"));
+        }
+        Map<String, Map<String, Object>> customers = customerEmails.isEmpty()
+                ? Map.of() : customerRepo.getCustomersDetails(customerEmails);
+
+        List<String> avatarKeys = new ArrayList<>();
         for (Map<String,Object> feedback: feedbacks){
             Map<String, Object> feedbackMap = new HashMap<>();
             feedbackMap.put("id",feedback.get("feedback_id"));
@@ -131,67 +160,35 @@ public class LocationService {
             } else {
                 throw new IllegalArgumentException("Invalid feedback type!");
             }
-            Map<String,Object> reservation = bookingRepo.getReservation((String)feedback.get("reservation_id"));
-            feedbackMap.put("date",reservation.get("date"));
-            Map<String, Object> customerDetails = customerRepo.getCustomerDetails((String)reservation.getOrDefault("customer_email","visitor"));
-            String fileName = (String) customerDetails.getOrDefault("image_url", "");
-            String userName = customerDetails.getOrDefault("first_name", "") + " " + customerDetails.getOrDefault("last_name", "");
-            feedbackMap.put("userName", userName.trim());
-            feedbackMap.put("userAvatarUrl", s3Client.generatePresignedUrl(new GeneratePresignedUrlRequest(BUCKET_NAME, fileName).withExpiration(new Date(System.currentTimeMillis() + (5L * 60 * 1000)))));
+            String fileName;
+            if (feedback.containsKey("reviewer_name") && feedback.containsKey("visit_date")) {
+                feedbackMap.put("date", LocalDate.parse((String) feedback.get("visit_date")).format(DateFormatter.STANDARD_FORMATTER));
+                feedbackMap.put("userName", feedback.get("reviewer_name"));
+                fileName = (String) feedback.getOrDefault("reviewer_image", "");
+            } else {
+                Map<String,Object> reservation = reservations.getOrDefault((String) feedback.get("reservation_id"), Map.of());
+                feedbackMap.put("date",reservation.get("date"));
+                Map<String, Object> customerDetails = customers.getOrDefault((String) reservation.getOrDefault("customer_email","visitor"), Map.of());
+                fileName = (String) customerDetails.getOrDefault("image_url", "");
+                String userName = customerDetails.getOrDefault("first_name", "") + " " + customerDetails.getOrDefault("last_name", "");
+                feedbackMap.put("userName", userName.trim());
+            }
+            avatarKeys.add(fileName);
             feedbackMap.put("locationId",locationId);
             feedbackList.add(feedbackMap);
         }
 
-        return feedbackList;
-    }
-
-    public List<Map<String, Object>> sortAndPaginate(
-            List<Map<String, Object>> feedbacks,
-            String sortKey,
-            boolean ascending,
-            int page,
-            int size) {
-
-
-        if (sortKey.equals("date")) {
-            // Sort by "date"
-            SimpleDateFormat dateFormat = new SimpleDateFormat("dd-MM-yyyy");
-            feedbacks.sort((r1, r2) -> {
-                try {
-                    Date date1 = dateFormat.parse((String) r1.get("date"));
-                    Date date2 = dateFormat.parse((String) r2.get("date"));
-                    return ascending ? date1.compareTo(date2) : date2.compareTo(date1);
-                } catch (ParseException e) {
-                    throw new IllegalArgumentException("Invalid date format in review data");
-                }
-            });
-        } else if (sortKey.equals("rate")) {
-            // Sort by "rate"
-            feedbacks.sort((r1, r2) -> {
-                BigDecimal rate1 = (BigDecimal) r1.get("rate");
-                BigDecimal rate2 = (BigDecimal) r2.get("rate");
-                return ascending ? rate1.compareTo(rate2) : rate2.compareTo(rate1);
-            });
-        } else {
-            throw new IllegalArgumentException("Invalid sortKey. Use 'date' or 'rate'.");
+        // Sign all avatar URLs of the page at once
+        Map<String, URL> avatarUrls = presignedUrlService.presignAll(BUCKET_NAME, avatarKeys);
+        for (int i = 0; i < feedbackList.size(); i++) {
+            feedbackList.get(i).put("userAvatarUrl", avatarUrls.get(avatarKeys.get(i)));
         }
 
-
-        // Pagination logic
-        int fromIndex = page * size;
-        int toIndex = Math.min(fromIndex + size, feedbacks.size());
-
-        // Check bounds for pagination
-        if (fromIndex >= feedbacks.size()) {
-            return new ArrayList<>(); // Return an empty list if the page is out of bounds
-        }
-
-        return feedbacks.subList(fromIndex, toIndex);
+        return feedbackList;
     }
 
-
     public  Map<String, Object> buildResponse(
-            List<Map<String, Object>> allFeedbacks,
+            int totalElements,
             List<Map<String, Object>> sortedPaginated,
             Map<String, Object> queryParams) {
 
@@ -223,13 +220,13 @@ public class LocationService {
 
         // Pagination core fields
         response.put("content", sortedPaginated);
-        response.put("totalElements", allFeedbacks.size());
-        response.put("totalPages", (int) Math.ceil((double) allFeedbacks.size() / size));
+        response.put("totalElements", totalElements);
+        response.put("totalPages", (int) Math.ceil((double) totalElements / size));
         response.put("size", size);
         response.put("number", page);
         response.put("numberOfElements", sortedPaginated.size());
         response.put("first", page == 0);
-        response.put("last", page == (allFeedbacks.size() - 1) / size);
+        response.put("last", page == (totalElements - 1) / size);
         response.put("empty", sortedPaginated.isEmpty());
 
         // Metadata
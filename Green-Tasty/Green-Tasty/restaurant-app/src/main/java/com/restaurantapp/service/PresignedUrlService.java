@@ -0,0 +1,160 @@
+package com.restaurantapp.service;
+
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GeneratePresignedUrlRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Signs GET URLs for S3 objects such as avatars and keeps them per object until shortly
+ * before they expire.
+ * <p>
+ * URLs are signed for {@code s3.presigned-urls.expiry-seconds} and handed out again while
+ * at least {@code s3.presigned-urls.min-remaining-seconds} of that is left, so a client
+ * always gets a URL that is valid for at least that long. The cache is bounded and evicts
+ * the least recently used key.
+ * <p>
+ * A URL stops working when the session credentials that signed it expire. The credentials
+ * provider replaces them a few minutes before that, so URLs signed with credentials that
+ * have since been replaced are signed again rather than handed out.
+ */
+@Service
+public class PresignedUrlService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PresignedUrlService.class);
+
+    private final AmazonS3 s3Client;
+    private final AWSCredentialsProvider credentialsProvider;
+    private final long expiryMillis;
+    private final long minRemainingMillis;
+    private final Map<String, SignedUrl> urls;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    @Autowired
+    public PresignedUrlService(AmazonS3 s3Client,
+                               @Qualifier("credentialsProvider") AWSCredentialsProvider credentialsProvider,
+                               @Value("${s3.presigned-urls.expiry-seconds:300}") long expirySeconds,
+                               @Value("${s3.presigned-urls.min-remaining-seconds:120}") long minRemainingSeconds,
+                               @Value("${s3.presigned-urls.max-entries:10000}") int maxEntries) {
+        if (minRemainingSeconds >= expirySeconds)
+            throw new IllegalArgumentException("Presigned URL expiry must be longer than the minimum remaining validity");
+        this.s3Client = s3Client;
+        this.credentialsProvider = credentialsProvider;
+        this.expiryMillis = expirySeconds * 1000;
+        this.minRemainingMillis = minRemainingSeconds * 1000;
+        this.urls = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SignedUrl> eldest) {
+                boolean evict = size() > maxEntries;
+                if (evict) evictions.increment();
+                return evict;
+            }
+        };
+    }
+
+    /**
+     * Returns a GET URL for the object that stays valid for at least the configured minimum.
+     */
+    public URL presign(String bucketName, String key) {
+        return presignAll(bucketName, Collections.singletonList(key)).get(key);
+    }
+
+    /**
+     * Bulk variant of {@link #presign} for list views: cached URLs are taken under one lock
+     * and only the remaining keys are signed.
+     *
+     * @return URLs keyed by object key
+     */
+    public Map<String, URL> presignAll(String bucketName, Collection<String> keys) {
+        Map<String, URL> result = new HashMap<>();
+        List<String> toSign = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        String accessKeyId = credentialsProvider.getCredentials().getAWSAccessKeyId();
+        synchronized (urls) {
+            for (String key : new LinkedHashSet<>(keys)) {
+                SignedUrl signed = urls.get(cacheKey(bucketName, key));
+                if (signed != null && signed.expiresAt - now >= minRemainingMillis && signed.accessKeyId.equals(accessKeyId)) {
+                    hits.increment();
+                    result.put(key, signed.url);
+                } else {
+                    misses.increment();
+                    toSign.add(key);
+                }
+            }
+        }
+        if (toSign.isEmpty()) return result;
+
+        Date expiration = new Date(now + expiryMillis);
+        Map<String, SignedUrl> signed = new HashMap<>();
+        for (String key : toSign) {
+            URL url = s3Client.generatePresignedUrl(new GeneratePresignedUrlRequest(bucketName, key).withExpiration(expiration));
+            signed.put(cacheKey(bucketName, key), new SignedUrl(url, expiration.getTime(), accessKeyId));
+            result.put(key, url);
+        }
+        synchronized (urls) {
+            urls.putAll(signed);
+        }
+        return result;
+    }
+
+    @Scheduled(fixedDelayString = "${s3.presigned-urls.purge-interval-ms:60000}")
+    public void purgeExpiring() {
+        long now = System.currentTimeMillis();
+        int removed = 0;
+        synchronized (urls) {
+            Iterator<SignedUrl> iterator = urls.values().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().expiresAt - now < minRemainingMillis) {
+                    iterator.remove();
+                    removed++;
+                }
+            }
+        }
+        logger.debug("Presigned URL cache: size={}, hits={}, misses={}, hitRate={}, evictions={}, purged={}",
+                size(), getHitCount(), getMissCount(), String.format("%.3f", getHitRate()), getEvictionCount(), removed);
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public double getHitRate() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0.0 : (double) hitCount / total;
+    }
+
+    public int size() {
+        synchronized (urls) {
+            return urls.size();
+        }
+    }
+
+    private static String cacheKey(String bucketName, String key) {
+        return bucketName + "/" + key;
+    }
+
+    private record SignedUrl(URL url, long expiresAt, String accessKeyId) {
+    }
+}
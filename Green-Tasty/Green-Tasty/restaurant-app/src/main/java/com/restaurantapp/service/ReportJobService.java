@@ -0,0 +1,106 @@
+package com.restaurantapp.service;
+
+import com.restaurantapp.dto.ReportJob;
+import com.restaurantapp.exception.ReportJobNotFoundException;
+import com.restaurantapp.exception.ReportJobRejectedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs report requests in the background on the bounded {@code reportJobExecutor} pool.
+ * <p>
+ * A request that matches a job which is still queued or running, or which finished less
+ * than {@code reports.jobs.reuse-seconds} ago, gets that job back instead of a new one.
+ * Finished jobs are kept for {@code reports.jobs.retention-seconds}. Jobs live in memory
+ * only, so clients must poll the instance that accepted them.
+ */
+@Service
+public class ReportJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReportJobService.class);
+
+    private final ReportsService reportsService;
+    private final ExecutorService reportJobExecutor;
+    private final long reuseMillis;
+    private final long retentionMillis;
+    private final Map<String, ReportJob> jobs = new ConcurrentHashMap<>();
+    private final Map<String, ReportJob> jobsByRequest = new HashMap<>();
+
+    @Autowired
+    public ReportJobService(ReportsService reportsService,
+                            @Qualifier("reportJobExecutor") ExecutorService reportJobExecutor,
+                            @Value("${reports.jobs.reuse-seconds:300}") long reuseSeconds,
+                            @Value("${reports.jobs.retention-seconds:3600}") long retentionSeconds) {
+        this.reportsService = reportsService;
+        this.reportJobExecutor = reportJobExecutor;
+        this.reuseMillis = reuseSeconds * 1000;
+        this.retentionMillis = retentionSeconds * 1000;
+    }
+
+    public Map<String, Object> submit(Map<Object, Object> queryParameters) {
+        reportsService.checkReportType((String) queryParameters.get("reportType"));
+        String requestKey = String.join("|",
+                ((String) queryParameters.get("reportType")).toUpperCase(),
+                String.valueOf(queryParameters.get("fromDate")),
+                String.valueOf(queryParameters.get("toDate")),
+                String.valueOf(queryParameters.get("locationId")),
+                String.valueOf(queryParameters.get("waiterId")));
+
+        synchronized (jobsByRequest) {
+            ReportJob existing = jobsByRequest.get(requestKey);
+            if (existing != null && existing.getStatus() != ReportJob.Status.FAILED
+                    && (!existing.isFinished() || System.currentTimeMillis() - existing.getFinishedAt() < reuseMillis)) {
+                return existing.toMap();
+            }
+
+            ReportJob job = new ReportJob(UUID.randomUUID().toString(), requestKey);
+            try {
+                reportJobExecutor.execute(() -> run(job, queryParameters));
+            } catch (RejectedExecutionException e) {
+                throw new ReportJobRejectedException("Too many reports are being generated, please try again later.");
+            }
+            jobs.put(job.getJobId(), job);
+            jobsByRequest.put(requestKey, job);
+            return job.toMap();
+        }
+    }
+
+    public Map<String, Object> getJob(String jobId) {
+        ReportJob job = jobs.get(jobId);
+        if (job == null) throw new ReportJobNotFoundException("Report job not found: " + jobId);
+        return job.toMap();
+    }
+
+    @Scheduled(fixedDelayString = "${reports.jobs.purge-interval-ms:60000}")
+    public void purgeFinished() {
+        long now = System.currentTimeMillis();
+        synchronized (jobsByRequest) {
+            jobs.values().removeIf(job -> job.isFinished() && now - job.getFinishedAt() >= retentionMillis);
+            jobsByRequest.values().removeIf(job -> !jobs.containsKey(job.getJobId()));
+        }
+    }
+
+    private void run(ReportJob job, Map<Object, Object> queryParameters) {
+        job.running();
+        try {
+            job.done(reportsService.getReports(queryParameters));
+        } catch (IllegalArgumentException e) {
+            job.failed(e.getMessage());
+        } catch (Exception e) {
+            logger.error("Report job {} failed", job.getJobId(), e);
+            job.failed("Report generation failed");
+        }
+    }
+}
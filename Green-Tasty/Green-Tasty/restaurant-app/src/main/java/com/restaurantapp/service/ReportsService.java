@@ -5,41 +5,61 @@ import com.restaurantapp.dto.WaiterReport;
 import com.restaurantapp.repo.ReportsRepo;
 import com.restaurantapp.util.DateFormatter;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.HexFormat;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
 
 @Service
 public class ReportsService {
+    private static final String REPORTS_BUCKET = "run8-team9-deployment-bucket";
+    /** Part of every artifact hash; bump it when the CSV or PDF layout changes. */
+    private static final String ARTIFACT_FORMAT_VERSION = "1";
+
     ReportsRepo reportsRepo;
+    private final ExecutorService reportRenderExecutor;
 
     @Autowired
-    public ReportsService(ReportsRepo reportsRepo) {
+    public ReportsService(ReportsRepo reportsRepo, @Qualifier("reportRenderExecutor") ExecutorService reportRenderExecutor) {
         this.reportsRepo = reportsRepo;
+        this.reportRenderExecutor = reportRenderExecutor;
+    }
+
+    public void checkReportType(String reportType) {
+        if (reportType == null || reportType.isBlank() || (!reportType.equalsIgnoreCase("Staff_Performance") && !reportType.equalsIgnoreCase("Location_Performance"))) {
+            throw new IllegalArgumentException("Please provide a valid reportType.");
+        }
     }
 
-    public Object getReports(HashMap<Object, Object> queryParameters) throws IOException {
+    public Map<String, Object> getReports(Map<Object, Object> queryParameters) throws IOException {
         ArrayList<Map<String, Object>> reportArray = new ArrayList<>();
         String reportType = (String) queryParameters.get("reportType");
         String fromDateString = (String) queryParameters.get("fromDate");
-        LocalDate fromDate = LocalDate.parse(fromDateString, DateTimeFormatter.ofPattern("dd-MM-yyyy"));
+        LocalDate fromDate = LocalDate.parse(fromDateString, DateFormatter.STANDARD_FORMATTER);
         String toDateString = (String) queryParameters.get("toDate");
-        LocalDate toDate = LocalDate.parse(toDateString, DateTimeFormatter.ofPattern("dd-MM-yyyy"));
+        LocalDate toDate = LocalDate.parse(toDateString, DateFormatter.STANDARD_FORMATTER);
         long diff = ChronoUnit.DAYS.between(fromDate, toDate);
         String csvLink = "";
         String pdfLink = "";
 
 
-        if (reportType == null || reportType.isBlank() || (!reportType.equalsIgnoreCase("Staff_Performance") && !reportType.equalsIgnoreCase("Location_Performance"))) {
-            throw new IllegalArgumentException("Please provide a valid reportType.");
-        } else if (reportType.equalsIgnoreCase("Staff_Performance")) {
+        checkReportType(reportType);
+        if (reportType.equalsIgnoreCase("Staff_Performance")) {
             Map<String, WaiterReport> reportDataWaiterPrev = reportsRepo.fetchWaiterReports(
                     DateFormatter.convertToStandardFormat(fromDate.minusDays(diff).toString()),
                     fromDateString,
@@ -51,17 +71,14 @@ public class ReportsService {
                     (String) queryParameters.get("waiterId"),
                     (String) queryParameters.get("locationId"));
 
-            csvLink = reportsRepo.uploadToS3("run8-team9-deployment-bucket", "reports/WaiterReport" + fromDateString + "-" + toDateString + ".csv", "text/csv", reportsRepo.generateWaiterCSV(reportDataWaiterCurr, reportDataWaiterPrev).getBytes());
-            pdfLink = reportsRepo.uploadToS3("run8-team9-deployment-bucket", "reports/WaiterReport" + fromDateString + "-" + toDateString + ".pdf", "application/pdf", reportsRepo.generateWaiterPDF(reportDataWaiterCurr, reportDataWaiterPrev, fromDateString, toDateString));
-
             for (WaiterReport report : reportDataWaiterCurr.values()) {
                 WaiterReport prevReport = reportDataWaiterPrev.getOrDefault(report.getWaiterEmail(), WaiterReport.getBlankReport());
                 double deltaOrdersProcessed = prevReport.getOrdersProcessed() == 0
                         ? 0
                         : ((report.getOrdersProcessed() - prevReport.getOrdersProcessed()) / prevReport.getOrdersProcessed()) * 100;
 
-                double avgServiceFeedbackCurr = report.getTotalServiceFeedback().stream().mapToDouble(Double::doubleValue).average().orElse(0);
-                double avgServiceFeedbackPrev = prevReport.getTotalServiceFeedback().stream().mapToDouble(Double::doubleValue).average().orElse(0);
+                double avgServiceFeedbackCurr = report.getServiceFeedback().getAverage();
+                double avgServiceFeedbackPrev = prevReport.getServiceFeedback().getAverage();
                 double deltaAvgServiceFeedback = avgServiceFeedbackPrev == 0
                         ? 0
                         : ((avgServiceFeedbackCurr - avgServiceFeedbackPrev) / avgServiceFeedbackPrev) * 100;
@@ -81,6 +98,13 @@ public class ReportsService {
                     }
                 });
             }
+
+            String[] links = uploadReportFiles("reports/WaiterReport" + fromDateString + "-" + toDateString + "-"
+                            + artifactHash(reportType, fromDateString, toDateString, reportDataWaiterCurr.keySet(), reportArray),
+                    csvWriter -> reportsRepo.generateWaiterCSV(reportDataWaiterCurr, reportDataWaiterPrev, csvWriter),
+                    document -> reportsRepo.generateWaiterPDF(reportDataWaiterCurr, reportDataWaiterPrev, fromDateString, toDateString, document));
+            csvLink = links[0];
+            pdfLink = links[1];
         } else {
             Map<String, WaiterReport> reportDataWaiterCurr = reportsRepo.fetchWaiterReports(
                     fromDateString,
@@ -96,9 +120,6 @@ public class ReportsService {
             Map<String, LocationReport> reportDataLocationCurr = reportsRepo.generateLocationReports(reportDataWaiterCurr);
             Map<String, LocationReport> reportDataLocationPrev = reportsRepo.generateLocationReports(reportDataWaiterPrev);
 
-            csvLink = reportsRepo.uploadToS3("run8-team9-deployment-bucket", "reports/LocationReport" + fromDateString + "-" + toDateString + ".csv", "text/csv", reportsRepo.generateLocationCSV(reportDataLocationCurr, reportDataLocationPrev).getBytes());
-            pdfLink = reportsRepo.uploadToS3("run8-team9-deployment-bucket", "reports/LocationReport" + fromDateString + "-" + toDateString + ".pdf", "application/pdf", reportsRepo.generateLocationPDF(reportDataLocationCurr, reportDataLocationPrev, fromDateString, toDateString));
-
             for (LocationReport report : reportDataLocationCurr.values()) {
                 LocationReport prevReport = reportDataLocationPrev.getOrDefault(report.getLocationId(), LocationReport.getBlankReport());
 
@@ -106,8 +127,8 @@ public class ReportsService {
                         ? 0
                         : ((report.getOrdersProcessed() - prevReport.getOrdersProcessed()) / prevReport.getOrdersProcessed()) * 100;
 
-                double avgCuisineFeedbackCurr = report.getTotalCuisineFeedback().stream().mapToDouble(Double::doubleValue).average().orElse(0);
-                double avgCuisineFeedbackPrev = prevReport.getTotalCuisineFeedback().stream().mapToDouble(Double::doubleValue).average().orElse(0);
+                double avgCuisineFeedbackCurr = report.getCuisineFeedback().getAverage();
+                double avgCuisineFeedbackPrev = prevReport.getCuisineFeedback().getAverage();
                 double deltaAvgCuisineFeedback = avgCuisineFeedbackPrev == 0
                         ? 0
                         : ((avgCuisineFeedbackCurr - avgCuisineFeedbackPrev) / avgCuisineFeedbackPrev) * 100;
@@ -131,10 +152,62 @@ public class ReportsService {
                     }
                 });
             }
+
+            String[] links = uploadReportFiles("reports/LocationReport" + fromDateString + "-" + toDateString + "-"
+                            + artifactHash(reportType, fromDateString, toDateString, reportDataLocationCurr.keySet(), reportArray),
+                    csvWriter -> reportsRepo.generateLocationCSV(reportDataLocationCurr, reportDataLocationPrev, csvWriter),
+                    document -> reportsRepo.generateLocationPDF(reportDataLocationCurr, reportDataLocationPrev, fromDateString, toDateString, document));
+            csvLink = links[0];
+            pdfLink = links[1];
         }
         return Map.of("content", reportArray,
                 "downloadLinkCSV", csvLink,
                 "downloadLinkPDF", pdfLink
         );
     }
+
+    /**
+     * Renders and uploads the CSV and PDF files of a report at the same time, the CSV on
+     * the {@code reportRenderExecutor} pool and the PDF on the calling thread. File names
+     * carry a hash of the report content, so a file that is already stored is reused
+     * instead of being rendered again.
+     *
+     * @return the CSV and PDF download links
+     */
+    private String[] uploadReportFiles(String fileName, ReportsRepo.CsvContent csv, ReportsRepo.PdfContent pdf) throws IOException {
+        CompletableFuture<String> csvLink = CompletableFuture.supplyAsync(() -> {
+            try {
+                String existing = reportsRepo.findReportFile(REPORTS_BUCKET, fileName + ".csv");
+                return existing != null ? existing : reportsRepo.uploadCsvToS3(REPORTS_BUCKET, fileName + ".csv", csv);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, reportRenderExecutor);
+        String pdfLink = reportsRepo.findReportFile(REPORTS_BUCKET, fileName + ".pdf");
+        if (pdfLink == null) pdfLink = reportsRepo.uploadPdfToS3(REPORTS_BUCKET, fileName + ".pdf", pdf);
+        try {
+            return new String[]{csvLink.join(), pdfLink};
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException io) throw io.getCause();
+            throw e;
+        }
+    }
+
+    /**
+     * Hashes everything the report files are rendered from. Rows are sorted first, as
+     * report maps do not keep an order.
+     */
+    private static String artifactHash(String reportType, String fromDate, String toDate, Collection<String> reportKeys,
+                                       List<Map<String, Object>> rows) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        digest.update((ARTIFACT_FORMAT_VERSION + "|" + reportType.toUpperCase() + "|" + fromDate + "|" + toDate).getBytes(StandardCharsets.UTF_8));
+        reportKeys.stream().sorted().forEach(key -> digest.update(("|" + key).getBytes(StandardCharsets.UTF_8)));
+        rows.stream().map(Object::toString).sorted().forEach(row -> digest.update(("|" + row).getBytes(StandardCharsets.UTF_8)));
+        return HexFormat.of().formatHex(digest.digest(), 0, 16);
+    }
 }
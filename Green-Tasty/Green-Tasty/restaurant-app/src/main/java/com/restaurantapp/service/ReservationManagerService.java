@@ -4,7 +4,15 @@ import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.model.*;
 import com.amazonaws.services.sqs.AmazonSQS;
 import com.amazonaws.services.sqs.model.SendMessageRequest;
+import com.restaurantapp.dto.PreOrderState;
 import com.restaurantapp.dto.ReservationStatus;
+import com.restaurantapp.repo.DishRepo;
+import com.restaurantapp.repo.LocationRepo;
+import com.restaurantapp.repo.WaiterRepo;
+import com.restaurantapp.util.DateFormatter;
+import com.restaurantapp.util.PreOrderQuantities;
+import com.restaurantapp.util.TimeSlot;
+import com.restaurantapp.util.TimingWheel;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -13,29 +21,41 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import java.time.DayOfWeek;
 import java.time.LocalDate;
-import java.time.LocalDateTime;
-import java.time.LocalTime;
 import java.time.ZoneId;
-import java.time.format.DateTimeFormatter;
-import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
+import java.time.ZoneOffset;
+import java.util.*;
 
+/**
+ * Moves reservations through RESERVED, IN_PROGRESS and PENDING_REVIEW at their slot
+ * boundaries.
+ * <p>
+ * Open reservations are read from the {@code status-date-index} of the Reservation table,
+ * all of them once at startup and then only those of the dates around today, and each one
+ * is put on a {@link TimingWheel} at its next boundary. The wheel is advanced every minute
+ * and only due transitions are written, each conditional on the reservation still having
+ * the status, date and slot it was scheduled with, so cancelled or edited reservations are
+ * skipped and re-scheduled by the next refresh.
+ */
 @Service
 public class ReservationManagerService {
     private static final Logger logger = LoggerFactory.getLogger(ReservationManagerService.class);
 
+    static final String STATUS_DATE_INDEX = "status-date-index";
+
     private final AmazonDynamoDB amazonDynamoDBClient;
     private final AmazonSQS amazonSQSClient;
+    private final WaiterRepo waiterRepo;
+    private final DishRepo dishRepo;
+    private final LocationRepo locationRepo;
+
+    private final TimingWheel<Transition> timingWheel = new TimingWheel<>(System.currentTimeMillis());
+    private final Map<String, Transition> scheduled = new HashMap<>();
+    private volatile boolean initialLoadDone;
 
     @Value("${reservation.table}")
     private String reservationTable;
 
-    @Value("${waiter.table}")
-    private String waiterTable;
-
     @Value("${aws.account.id}")
     private String accountId;
 
@@ -45,66 +65,157 @@ public class ReservationManagerService {
     @Value("${report_info_queue}")
     private String reportInfoQueue;
 
-    @Value("${location.table}")
-    private String locationTable;
-
     @Autowired
-    public ReservationManagerService(AmazonDynamoDB amazonDynamoDBClient, AmazonSQS amazonSQSClient) {
+    public ReservationManagerService(AmazonDynamoDB amazonDynamoDBClient, AmazonSQS amazonSQSClient,
+                                     WaiterRepo waiterRepo, DishRepo dishRepo, LocationRepo locationRepo) {
         this.amazonDynamoDBClient = amazonDynamoDBClient;
         this.amazonSQSClient = amazonSQSClient;
+        this.waiterRepo = waiterRepo;
+        this.dishRepo = dishRepo;
+        this.locationRepo = locationRepo;
     }
 
-    @Scheduled(cron = "0 */15 * * * *")// Runs every 5 minutes - adjust as needed
-    public void processReservations() {
+    /**
+     * Schedules open reservations that are not on the wheel yet or whose status, date or
+     * slot changed since they were scheduled. The first run loads every open reservation,
+     * later runs only the dates from yesterday to tomorrow.
+     */
+    @Scheduled(initialDelay = 0, fixedDelayString = "${reservations.lifecycle.refresh-interval-ms:300000}")
+    public void refreshReservations() {
         try {
-            ScanRequest scanRequest = new ScanRequest()
-                    .withTableName(reservationTable)
-                    .withFilterExpression("#status = :status1 OR #status = :status2")
-                    .withExpressionAttributeNames(Map.of("#status", "status"))
-                    .withExpressionAttributeValues(Map.of(":status1", new AttributeValue().withS("RESERVED"),
-                            ":status2", new AttributeValue().withS("IN_PROGRESS")));
-
-            ScanResult scanResult = amazonDynamoDBClient.scan(scanRequest);
-            List<Map<String, AttributeValue>> items = scanResult.getItems();
-
-            for (Map<String, AttributeValue> item : items) {
-                ReservationStatus reservationStatus = ReservationStatus.valueOf(item.get("status").getS());
-                String date = item.get("date").getS();
-                String zoneId = getZoneFromLocation(item.get("location_id"));
-
-                String timeSlot = item.get("time_slot").getS();
-                String[] time = timeSlot.split("-");
-                LocalDateTime currentDateTime = LocalDateTime.of(LocalDate.now(ZoneId.of(zoneId)), LocalTime.now(ZoneId.of(zoneId)));
-                LocalDateTime dateTimeFrom = LocalDateTime.of(LocalDate.parse(date, DateTimeFormatter.ofPattern("dd-MM-yyyy")), LocalTime.parse(time[0]));
-                LocalDateTime dateTimeTo = LocalDateTime.of(LocalDate.parse(date, DateTimeFormatter.ofPattern("dd-MM-yyyy")), LocalTime.parse(time[1]));
-
-                if (currentDateTime.isBefore(dateTimeFrom)) reservationStatus = ReservationStatus.RESERVED;
-                else if (currentDateTime.isBefore(dateTimeTo)) reservationStatus = ReservationStatus.IN_PROGRESS;
-                else if (currentDateTime.isAfter(dateTimeTo)) {
-                    reservationStatus = ReservationStatus.PENDING_REVIEW;
-                    sendMessageToQueue(item);
+            List<Map<String, AttributeValue>> items = new ArrayList<>();
+            for (ReservationStatus status : List.of(ReservationStatus.RESERVED, ReservationStatus.IN_PROGRESS)) {
+                if (!initialLoadDone) {
+                    items.addAll(queryByStatus(status, null));
+                } else {
+                    LocalDate today = LocalDate.now(ZoneOffset.UTC);
+                    for (LocalDate date : List.of(today.minusDays(1), today, today.plusDays(1))) {
+                        items.addAll(queryByStatus(status, date.format(DateFormatter.STANDARD_FORMATTER)));
+                    }
                 }
-                updateReservationStatus(item.get("reservation_id"), item.get("waiter_email"), item.get("customer_email"), reservationStatus.name());
             }
 
+            int added = 0;
+            synchronized (timingWheel) {
+                for (Map<String, AttributeValue> item : items) {
+                    Transition transition = Transition.of(item, locationRepo.getLocationZone(item.get("location_id").getS()));
+                    if (transition.equals(scheduled.get(transition.reservationId))) continue;
+                    scheduled.put(transition.reservationId, transition);
+                    timingWheel.schedule(transition.dueEpochMillis(), transition);
+                    added++;
+                }
+            }
+            initialLoadDone = true;
+            logger.info("Reservation lifecycle refresh: read={}, scheduled={}, pending={}", items.size(), added, timingWheel.size());
         } catch (Exception e) {
-            logger.error("Failed to update table Reservation: {}", e.getMessage(), e);
+            logger.error("Failed to refresh reservation lifecycle schedule: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Advances the wheel to the current minute and applies the transitions that became due.
+     */
+    @Scheduled(cron = "0 * * * * *")
+    public void processReservations() {
+        List<Transition> due;
+        synchronized (timingWheel) {
+            due = timingWheel.advance(System.currentTimeMillis());
+        }
+        int written = 0;
+        for (Transition transition : due) {
+            try {
+                if (apply(transition)) written++;
+            } catch (Exception e) {
+                logger.error("Failed to update status of reservation {}: {}", transition.reservationId, e.getMessage(), e);
+            }
+        }
+        if (!due.isEmpty()) logger.info("Reservation lifecycle: due={}, written={}", due.size(), written);
+    }
+
+    private boolean apply(Transition transition) throws Exception {
+        synchronized (timingWheel) {
+            if (!transition.equals(scheduled.get(transition.reservationId))) return false;
+            scheduled.remove(transition.reservationId);
+        }
+
+        long now = System.currentTimeMillis();
+        ReservationStatus newStatus = now < transition.startEpochMillis ? ReservationStatus.RESERVED
+                : now < transition.endEpochMillis ? ReservationStatus.IN_PROGRESS
+                : ReservationStatus.PENDING_REVIEW;
+        if (newStatus == transition.status) {
+            // Fired early (e.g. clock adjustments); put it back on the wheel
+            synchronized (timingWheel) {
+                scheduled.put(transition.reservationId, transition);
+                timingWheel.schedule(transition.dueEpochMillis(), transition);
+            }
+            return false;
+        }
+
+        Map<String, AttributeValue> previous = updateReservationStatus(transition, newStatus);
+        if (previous == null) return false;
+
+        if (newStatus == ReservationStatus.PENDING_REVIEW) {
+            sendMessageToQueue(previous);
+            syncOrderCounts(previous);
+            AttributeValue customerEmail = previous.get("customer_email");
+            boolean isVisitor = customerEmail == null || customerEmail.getS().isBlank();
+            waiterRepo.updateWaiterBusyCount(previous.get("waiter_email").getS(), transition.date,
+                    isVisitor ? "visitor_count" : "customer_count", -1);
+        } else {
+            Transition next = transition.withStatus(newStatus);
+            synchronized (timingWheel) {
+                if (!scheduled.containsKey(next.reservationId)) {
+                    scheduled.put(next.reservationId, next);
+                    timingWheel.schedule(next.dueEpochMillis(), next);
+                }
+            }
         }
-        logger.info("Updated table Reservation successfully");
+        return true;
+    }
+
+    /**
+     * Counts the dishes of a finished visit whose pre-order was submitted.
+     */
+    private void syncOrderCounts(Map<String, AttributeValue> item) {
+        AttributeValue preOrderState = item.get("pre_order_state");
+        if (preOrderState == null || !PreOrderState.SUBMITTED.name().equalsIgnoreCase(preOrderState.getS())) return;
+        AttributeValue preOrder = item.get("pre_order");
+        AttributeValue counted = item.get("counted_pre_order");
+        dishRepo.syncOrderCounts(
+                item.get("reservation_id").getS(),
+                item.get("location_id").getS(),
+                counted == null ? null : PreOrderQuantities.toCounts(PreOrderQuantities.fromAttributeMap(counted.getM())),
+                preOrder == null ? Map.of() : PreOrderQuantities.toCounts(PreOrderQuantities.fromAttributeMap(preOrder.getM())));
     }
 
-    private String getZoneFromLocation(AttributeValue locationId) {
-        return amazonDynamoDBClient.getItem(new GetItemRequest()
-                        .withTableName(locationTable)
-                        .withProjectionExpression("#zone")
-                        .withExpressionAttributeNames(Map.of("#zone", "zone"))
-                        .withKey(Map.of(
-                                "location_id", locationId)))
-                .getItem()
-                .get("zone")
-                .getS();
+    private List<Map<String, AttributeValue>> queryByStatus(ReservationStatus status, String date) {
+        Map<String, String> names = new HashMap<>(Map.of("#status", "status"));
+        Map<String, AttributeValue> values = new HashMap<>(Map.of(":status", new AttributeValue().withS(status.name())));
+        String keyCondition = "#status = :status";
+        if (date != null) {
+            keyCondition += " AND #date = :date";
+            names.put("#date", "date");
+            values.put(":date", new AttributeValue().withS(date));
+        }
+
+        List<Map<String, AttributeValue>> items = new ArrayList<>();
+        Map<String, AttributeValue> lastEvaluatedKey = null;
+        do {
+            QueryResult result = amazonDynamoDBClient.query(new QueryRequest()
+                    .withTableName(reservationTable)
+                    .withIndexName(STATUS_DATE_INDEX)
+                    .withKeyConditionExpression(keyCondition)
+                    .withProjectionExpression("reservation_id, location_id, #status, #date, time_slot")
+                    .withExpressionAttributeNames(names)
+                    .withExpressionAttributeValues(values)
+                    .withExclusiveStartKey(lastEvaluatedKey));
+            items.addAll(result.getItems());
+            lastEvaluatedKey = result.getLastEvaluatedKey();
+        } while (lastEvaluatedKey != null && !lastEvaluatedKey.isEmpty());
+        return items;
     }
 
+
     private void sendMessageToQueue(Map<String, AttributeValue> item) {
         AttributeValue customerEmail = item.get("customer_email");
         AttributeValue visitorId = item.get("visitor_id");
@@ -117,7 +228,7 @@ public class ReservationManagerService {
                         .put("customer_email", customerEmail != null ? customerEmail.getS() : "")
                         .put("visitor_id", visitorId != null ? visitorId.getS() : "")
                         .put("feedback_id", item.get("feedback_id").getS())
-                        .put("pre_order", item.get("pre_order").getM())
+                        .put("pre_order", PreOrderQuantities.fromAttributeMap(item.get("pre_order").getM()))
                         .put("table_id", item.get("table_id").getL())
                         .put("location_id", item.get("location_id").getS())
                         .put("status", item.get("status").getS())
@@ -128,62 +239,87 @@ public class ReservationManagerService {
         amazonSQSClient.sendMessage(sendMessageRequest);
     }
 
-    private void updateReservationStatus(AttributeValue reservationId, AttributeValue waiterId, AttributeValue customerId, String newStatus) throws Exception {
-        if (newStatus.equals("PENDING_REVIEW")) {
-            GetItemRequest waiterGetItemRequest = new GetItemRequest()
-                    .withTableName(waiterTable)
-                    .withKey(Map.of("email", waiterId));
+    /**
+     * Writes the new status if the reservation still has the status, date and slot it was
+     * scheduled with.
+     *
+     * @return the item as it was before the update, or {@code null} if it had changed
+     */
+    private Map<String, AttributeValue> updateReservationStatus(Transition transition, ReservationStatus newStatus) {
+        try {
+            return amazonDynamoDBClient.updateItem(new UpdateItemRequest()
+                    .withTableName(reservationTable)
+                    .withKey(Map.of("reservation_id", new AttributeValue().withS(transition.reservationId)))
+                    .withUpdateExpression("SET #status = :new")
+                    .withConditionExpression("#status = :expected AND #date = :date AND time_slot = :slot")
+                    .withExpressionAttributeNames(Map.of("#status", "status", "#date", "date"))
+                    .withExpressionAttributeValues(Map.of(
+                            ":new", new AttributeValue().withS(newStatus.name()),
+                            ":expected", new AttributeValue().withS(transition.status.name()),
+                            ":date", new AttributeValue().withS(transition.date),
+                            ":slot", new AttributeValue().withS(transition.timeSlot)))
+                    .withReturnValues(ReturnValue.ALL_OLD))
+                    .getAttributes();
+        } catch (ConditionalCheckFailedException e) {
+            return null;
+        }
+    }
 
-            Map<String, AttributeValue> waiterItem = amazonDynamoDBClient.getItem(waiterGetItemRequest).getItem();
+    /**
+     * The next status change of one reservation as scheduled; equal transitions describe the
+     * same reservation in the same status, date and slot.
+     */
+    private static final class Transition {
+        private final String reservationId;
+        private final ReservationStatus status;
+        private final String date;
+        private final String timeSlot;
+        private final long startEpochMillis;
+        private final long endEpochMillis;
 
-            if (waiterItem == null) {
-                throw new Exception("Waiter ID: " + waiterId + " not found in Waiter Table.");
-            }
-            Map<String, AttributeValueUpdate> waiterUpdateValues;
-            if (customerId == null) {
-                int currCount = Integer.parseInt(waiterItem.get("visitor_count").getN());
-                String visitorCount = String.valueOf(currCount - 1);
-                waiterUpdateValues = Map.of(
-                        "visitor_count", new AttributeValueUpdate()
-                                .withValue(new AttributeValue().withN(visitorCount))
-                                .withAction("PUT")
-                );
-            } else {
-                LocalDate localDate = LocalDate.now();
-                DayOfWeek dayOfWeek = localDate.getDayOfWeek();
-                int index = dayOfWeek.getValue() - 1;
-
-                List<Integer> customerCount = waiterItem.get("customer_count").getL().stream()
-                        .map(AttributeValue::getN)
-                        .map(Integer::parseInt)
-                        .collect(Collectors.toList());
-                customerCount.set(index, customerCount.get(index) - 1);
-
-                waiterUpdateValues = Map.of(
-                        "customer_count", new AttributeValueUpdate()
-                                .withValue(new AttributeValue().withL(customerCount.stream().map(x -> new AttributeValue().withN(x.toString())).toList()))
-                                .withAction("PUT")
-                );
-            }
+        private Transition(String reservationId, ReservationStatus status, String date, String timeSlot,
+                           long startEpochMillis, long endEpochMillis) {
+            this.reservationId = reservationId;
+            this.status = status;
+            this.date = date;
+            this.timeSlot = timeSlot;
+            this.startEpochMillis = startEpochMillis;
+            this.endEpochMillis = endEpochMillis;
+        }
 
-            UpdateItemRequest waiterUpdateItemRequest = new UpdateItemRequest()
-                    .withTableName(waiterTable)
-                    .withKey(Map.of("email", waiterId))
-                    .withAttributeUpdates(waiterUpdateValues);
+        private static Transition of(Map<String, AttributeValue> item, ZoneId zone) {
+            String date = item.get("date").getS();
+            String timeSlot = item.get("time_slot").getS();
+            TimeSlot slot = TimeSlot.of(timeSlot);
+            LocalDate reservationDate = DateFormatter.parseDate(date);
+            return new Transition(
+                    item.get("reservation_id").getS(),
+                    ReservationStatus.valueOf(item.get("status").getS()),
+                    date,
+                    timeSlot,
+                    slot.startOn(reservationDate).atZone(zone).toInstant().toEpochMilli(),
+                    slot.endOn(reservationDate).atZone(zone).toInstant().toEpochMilli());
+        }
 
-            amazonDynamoDBClient.updateItem(waiterUpdateItemRequest);
+        private Transition withStatus(ReservationStatus newStatus) {
+            return new Transition(reservationId, newStatus, date, timeSlot, startEpochMillis, endEpochMillis);
         }
 
-        // Update the reservation table
-        Map<String, AttributeValueUpdate> reservationUpdateValues = Map.of(
-                "status", new AttributeValueUpdate()
-                        .withValue(new AttributeValue().withS(newStatus))
-                        .withAction("PUT")
-        );
-        UpdateItemRequest reservationUpdateItemRequest = new UpdateItemRequest()
-                .withTableName(reservationTable)
-                .withKey(Map.of("reservation_id", reservationId))
-                .withAttributeUpdates(reservationUpdateValues);
-        amazonDynamoDBClient.updateItem(reservationUpdateItemRequest);
+        private long dueEpochMillis() {
+            return status == ReservationStatus.RESERVED ? startEpochMillis : endEpochMillis;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Transition other)) return false;
+            return reservationId.equals(other.reservationId) && status == other.status
+                    && date.equals(other.date) && timeSlot.equals(other.timeSlot);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(reservationId, status, date, timeSlot);
+        }
     }
-}
\ No newline at end of file
+}
@@ -14,7 +14,6 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.ZoneId;
-import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -43,22 +42,23 @@ public class TableService {
         String date = DateFormatter.convertToStandardFormat(queryParams.get("date"));
         String time = queryParams.getOrDefault("time", null);
         String guests = queryParams.getOrDefault("guests", null);
-        String zone = locationRepo.getLocationById(locationId).getZone();
+        String zone = location.getZone();
+        ZoneId zoneId = locationRepo.getLocationZone(locationId);
 
-        LocalDate currentDate = LocalDate.now(ZoneId.of(zone));
-        LocalDate parsedDate = LocalDate.parse(date, DateTimeFormatter.ofPattern("dd-MM-yyyy"));
+        LocalDate currentDate = LocalDate.now(zoneId);
+        LocalDate parsedDate = DateFormatter.parseDate(date);
 
         if (parsedDate.isBefore(currentDate)) throw new IllegalArgumentException("Invalid date provided.");
         else if (guests != null && Integer.parseInt(guests) <= 0)
             throw new IllegalArgumentException("Invalid no. of guests provided.");
 
         if (time != null) {
-            LocalDateTime currentDateTime = LocalDateTime.now(ZoneId.of(zone));
+            LocalDateTime currentDateTime = LocalDateTime.now(zoneId);
             LocalDateTime parsedDateTime = LocalDateTime.of(parsedDate, LocalTime.parse(time));
             if (parsedDateTime.isBefore(currentDateTime)) throw new IllegalArgumentException("Invalid time provided.");
         }
 
-        List<Tables> availableTables = tableRepo.getAvailableTables(locationId, date, time, guests, zone);
+        List<Tables> availableTables = tableRepo.findAvailableTables(locationId, date, time, guests, zone);
         if (availableTables.isEmpty()) throw new TableNotAvailableException("Table not available.", "GET");
 
         List<Map<String, Object>> transformedTables = availableTables.stream()
@@ -1,7 +1,6 @@
 package com.restaurantapp.service;
 
 import com.amazonaws.services.s3.AmazonS3;
-import com.amazonaws.services.s3.model.GeneratePresignedUrlRequest;
 import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.restaurantapp.dto.SignIn;
 import com.restaurantapp.dto.SignUp;
@@ -13,11 +12,15 @@ import com.restaurantapp.exception.UserDoesNotExistsException;
 import com.restaurantapp.exception.ValidationException;
 import com.restaurantapp.repo.AdminRepo;
 import com.restaurantapp.repo.CustomerRepo;
+import com.restaurantapp.repo.FeedbackRepo;
 import com.restaurantapp.repo.WaiterRepo;
 import com.restaurantapp.security.JWTService;
 import com.restaurantapp.util.ValidationUtil;
 import org.apache.commons.codec.binary.Base64;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
@@ -26,11 +29,12 @@ import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
 
 
-import java.util.Date;
 import java.io.ByteArrayInputStream;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 
 @Service
 public class UserService {
@@ -39,6 +43,10 @@ public class UserService {
     private AdminRepo adminRepo;
     private BCryptPasswordEncoder encoder;
     private AmazonS3 s3Client;
+    private PresignedUrlService presignedUrlService;
+    private FeedbackRepo feedbackRepo;
+    private ExecutorService backgroundExecutor;
+    private static final Logger logger = LoggerFactory.getLogger(UserService.class);
 
     private static final String BUCKET_NAME = "run8-team9-deployment-bucket"; // Replace with your bucket name
     private static final String PROFILE_FOLDER = "images/profile";
@@ -50,12 +58,17 @@ public class UserService {
     AuthenticationManager authManager;
 
     @Autowired
-    public UserService(WaiterRepo waiterRepo, CustomerRepo customerRepo, AdminRepo adminRepo, BCryptPasswordEncoder encoder, AmazonS3 s3Client) {
+    public UserService(WaiterRepo waiterRepo, CustomerRepo customerRepo, AdminRepo adminRepo, BCryptPasswordEncoder encoder, AmazonS3 s3Client,
+                       PresignedUrlService presignedUrlService, FeedbackRepo feedbackRepo,
+                       @Qualifier("backgroundExecutor") ExecutorService backgroundExecutor) {
         this.waiterRepo = waiterRepo;
         this.customerRepo = customerRepo;
         this.adminRepo = adminRepo;
         this.encoder = encoder;
         this.s3Client = s3Client;
+        this.presignedUrlService = presignedUrlService;
+        this.feedbackRepo = feedbackRepo;
+        this.backgroundExecutor = backgroundExecutor;
     }
 
     public Object userSignUp(SignUp signUp) throws Exception {
@@ -133,7 +146,7 @@ public class UserService {
             else userProfile = customerRepo.getCustomerDetails(email);
             String fileName = (String) userProfile.get("image_url");
 
-            return Map.of("firstName", userProfile.get("first_name"),"lastName", userProfile.get("last_name"),"imageUrl", s3Client.generatePresignedUrl(new GeneratePresignedUrlRequest(BUCKET_NAME, fileName).withExpiration(new Date(System.currentTimeMillis() + (5L * 60 * 1000)))));
+            return Map.of("firstName", userProfile.get("first_name"),"lastName", userProfile.get("last_name"),"imageUrl", presignedUrlService.presign(BUCKET_NAME, fileName));
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -177,6 +190,7 @@ public class UserService {
 
         if (customerRepo.isCustomer(email)) {
             customerRepo.updateCustomerDetails(email, request.getFirstName(), request.getLastName(), imageUrl == null ? "" : imageUrl);
+            updateReviewerDetailsAsync(email, request.getFirstName(), request.getLastName(), imageUrl);
         } else if (waiterRepo.isWaiter(email)) {
             waiterRepo.updateWaiterInfo(email, request.getFirstName(), request.getLastName(), imageUrl == null ? "" : imageUrl);
         } else if (adminRepo.isAdmin(email)) {
@@ -188,6 +202,19 @@ public class UserService {
     }
 
 
+    /**
+     * Copies a customer's new name and avatar onto their feedbacks in the background; the
+     * profile update itself does not wait for it.
+     */
+    private void updateReviewerDetailsAsync(String email, String firstName, String lastName, String imageKey) {
+        String reviewerName = FeedbackRepo.reviewerName(firstName, lastName);
+        CompletableFuture.runAsync(() -> feedbackRepo.updateReviewerDetails(email, reviewerName, imageKey), backgroundExecutor)
+                .exceptionally(e -> {
+                    logger.warn("Could not update reviewer details on feedbacks of {}: {}", email, e.getMessage());
+                    return null;
+                });
+    }
+
     public void updateProfilePassword(String email, UpdatePasswordRequest request) throws Exception {
 
         if(request.newPassword().equals(request.oldPassword())){
@@ -0,0 +1,72 @@
+package com.restaurantapp.util;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Conversions for the {@code pre_order} map of a reservation (dish id to quantity).
+ * <p>
+ * Quantities are written as numbers so they can be incremented in place. Items written
+ * before that stored them as strings, so every reader accepts both forms.
+ */
+public class PreOrderQuantities {
+
+    private PreOrderQuantities() {
+        throw new UnsupportedOperationException("Utility class cannot be instantiated");
+    }
+
+    /**
+     * Converts a low-level {@code pre_order} attribute map to dish id to quantity strings.
+     */
+    public static Map<String, String> fromAttributeMap(Map<String, AttributeValue> preOrder) {
+        Map<String, String> quantities = new HashMap<>();
+        if (preOrder == null) return quantities;
+        for (Map.Entry<String, AttributeValue> entry : preOrder.entrySet()) {
+            AttributeValue value = entry.getValue();
+            quantities.put(entry.getKey(), value.getN() != null ? value.getN() : value.getS());
+        }
+        return quantities;
+    }
+
+    /**
+     * Converts a document API {@code pre_order} map, whose values are strings or numbers,
+     * to dish id to quantity strings.
+     */
+    public static Map<String, String> fromDocumentMap(Map<String, Object> preOrder) {
+        Map<String, String> quantities = new HashMap<>();
+        if (preOrder == null) return quantities;
+        for (Map.Entry<String, Object> entry : preOrder.entrySet()) {
+            Object value = entry.getValue();
+            quantities.put(entry.getKey(), value instanceof BigDecimal number ? number.toPlainString() : String.valueOf(value));
+        }
+        return quantities;
+    }
+
+    /**
+     * Converts dish id to quantity strings to integer counts, leaving out zero quantities.
+     */
+    public static Map<String, Integer> toCounts(Map<String, String> preOrder) {
+        Map<String, Integer> counts = new HashMap<>();
+        if (preOrder == null) return counts;
+        for (Map.Entry<String, String> entry : preOrder.entrySet()) {
+            int quantity = new BigDecimal(entry.getValue().trim()).intValue();
+            if (quantity != 0) counts.put(entry.getKey(), quantity);
+        }
+        return counts;
+    }
+
+    /**
+     * Converts dish id to quantity strings to the numeric map that is stored.
+     */
+    public static Map<String, BigDecimal> toDocumentMap(Map<String, String> preOrder) {
+        Map<String, BigDecimal> quantities = new HashMap<>();
+        if (preOrder == null) return quantities;
+        for (Map.Entry<String, String> entry : preOrder.entrySet()) {
+            quantities.put(entry.getKey(), new BigDecimal(entry.getValue().trim()));
+        }
+        return quantities;
+    }
+}
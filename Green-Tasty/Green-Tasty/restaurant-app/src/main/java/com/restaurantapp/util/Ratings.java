@@ -0,0 +1,37 @@
+package com.restaurantapp.util;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Map;
+
+/**
+ * Derives average ratings from the {@code rating_sum} and {@code rating_count} attributes
+ * kept on waiter and location items.
+ */
+public final class Ratings {
+
+    public static final String SUM_ATTRIBUTE = "rating_sum";
+    public static final String COUNT_ATTRIBUTE = "rating_count";
+
+    private Ratings() {
+    }
+
+    /**
+     * Returns the average rating of an item rounded to two decimals. Items that have not
+     * been rated since the sum and count were introduced still carry only the average in
+     * {@code legacyAverageAttribute}, which is returned as is.
+     *
+     * @return the average, or {@code null} if the item has no rating at all
+     */
+    public static BigDecimal average(Map<String, Object> attributes, String legacyAverageAttribute) {
+        Object sum = attributes.get(SUM_ATTRIBUTE);
+        Object count = attributes.get(COUNT_ATTRIBUTE);
+        if (sum == null || count == null) {
+            Object legacy = attributes.get(legacyAverageAttribute);
+            return legacy == null ? null : new BigDecimal(legacy.toString());
+        }
+        BigDecimal ratingCount = new BigDecimal(count.toString());
+        if (ratingCount.signum() == 0) return BigDecimal.ZERO.setScale(2);
+        return new BigDecimal(sum.toString()).divide(ratingCount, 2, RoundingMode.HALF_UP);
+    }
+}
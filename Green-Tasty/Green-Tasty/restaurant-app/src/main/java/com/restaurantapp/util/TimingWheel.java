@@ -0,0 +1,101 @@
+package com.restaurantapp.util;
+
+import java.util.*;
+
+/**
+ * Hierarchical timing wheel with a one minute tick.
+ * <p>
+ * Tasks due within the next hour sit in a 60 slot minute wheel, tasks due within a day
+ * in a 24 slot hour wheel and tasks due within 64 days in a day wheel; anything later is
+ * kept in an overflow list. Scheduling is O(1) and each tick only touches the slot that is
+ * due, plus one coarser slot on the hour and day boundaries whose tasks are cascaded down
+ * into the finer wheel. Not thread-safe on its own; callers synchronize.
+ */
+public final class TimingWheel<T> {
+
+    private static final long TICK_MILLIS = 60_000;
+    private static final int MINUTES = 60;
+    private static final int HOURS = 24;
+    private static final int DAYS = 64;
+    private static final long TICKS_PER_HOUR = MINUTES;
+    private static final long TICKS_PER_DAY = MINUTES * HOURS;
+
+    private final List<Entry<T>>[] minuteWheel = newWheel(MINUTES);
+    private final List<Entry<T>>[] hourWheel = newWheel(HOURS);
+    private final List<Entry<T>>[] dayWheel = newWheel(DAYS);
+    private final List<Entry<T>> overflow = new ArrayList<>();
+    private final List<T> expired = new ArrayList<>();
+    private long currentTick;
+    private int size;
+
+    public TimingWheel(long nowEpochMillis) {
+        this.currentTick = nowEpochMillis / TICK_MILLIS;
+    }
+
+    /**
+     * Schedules a task for the minute containing {@code dueEpochMillis}. Tasks that are
+     * already due are returned by the next {@link #advance}.
+     */
+    public void schedule(long dueEpochMillis, T task) {
+        size++;
+        place(new Entry<>(dueEpochMillis / TICK_MILLIS, task));
+    }
+
+    /**
+     * Moves the wheel forward to the minute containing {@code nowEpochMillis} and returns
+     * every task that became due on the way.
+     */
+    public List<T> advance(long nowEpochMillis) {
+        List<T> due = new ArrayList<>();
+        long targetTick = nowEpochMillis / TICK_MILLIS;
+        while (currentTick < targetTick) {
+            currentTick++;
+            if (currentTick % TICKS_PER_DAY == 0) {
+                cascade(dayWheel, (int) ((currentTick / TICKS_PER_DAY) % DAYS));
+                List<Entry<T>> later = new ArrayList<>(overflow);
+                overflow.clear();
+                later.forEach(this::place);
+            }
+            if (currentTick % TICKS_PER_HOUR == 0) {
+                cascade(hourWheel, (int) ((currentTick / TICKS_PER_HOUR) % HOURS));
+            }
+            List<Entry<T>> slot = minuteWheel[(int) (currentTick % MINUTES)];
+            for (Entry<T> entry : slot) due.add(entry.task);
+            slot.clear();
+        }
+        due.addAll(expired);
+        expired.clear();
+        size -= due.size();
+        return due;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void place(Entry<T> entry) {
+        long delay = entry.dueTick - currentTick;
+        if (delay <= 0) expired.add(entry.task);
+        else if (delay < MINUTES) minuteWheel[(int) (entry.dueTick % MINUTES)].add(entry);
+        else if (delay < TICKS_PER_DAY) hourWheel[(int) ((entry.dueTick / TICKS_PER_HOUR) % HOURS)].add(entry);
+        else if (delay < TICKS_PER_DAY * DAYS) dayWheel[(int) ((entry.dueTick / TICKS_PER_DAY) % DAYS)].add(entry);
+        else overflow.add(entry);
+    }
+
+    private void cascade(List<Entry<T>>[] wheel, int index) {
+        List<Entry<T>> entries = new ArrayList<>(wheel[index]);
+        wheel[index].clear();
+        entries.forEach(this::place);
+    }
+
+    // Arrays of a generic type cannot be created; the array never leaves this class
+    @SuppressWarnings("unchecked")
+    private static <T> List<Entry<T>>[] newWheel(int slots) {
+        List<Entry<T>>[] wheel = (List<Entry<T>>[]) new List<?>[slots];
+        for (int i = 0; i < slots; i++) wheel[i] = new ArrayList<>();
+        return wheel;
+    }
+
+    private record Entry<T>(long dueTick, T task) {
+    }
+}
@@ -19,6 +19,12 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
 @Configuration
 public class UtilsConfig {
     @Value("${aws.access.key.id}")
@@ -36,6 +42,24 @@ public class UtilsConfig {
     @Value("${aws.role.arn}")
     private String roleArn;
 
+    @Value("${background.executor.threads:2}")
+    private int backgroundThreads;
+
+    @Value("${feedback.async.threads:2}")
+    private int feedbackThreads;
+
+    @Value("${reports.render.threads:4}")
+    private int reportRenderThreads;
+
+    @Value("${reports.query.threads:4}")
+    private int reportQueryThreads;
+
+    @Value("${reports.jobs.threads:2}")
+    private int reportJobThreads;
+
+    @Value("${reports.jobs.queue-capacity:50}")
+    private int reportJobQueueCapacity;
+
     @Bean("passwordEncoder")
     BCryptPasswordEncoder passwordEncoder(){
         return new BCryptPasswordEncoder(12);
@@ -57,6 +81,44 @@ public class UtilsConfig {
     }
 
 
+    @Bean(destroyMethod = "shutdown")
+    @Qualifier("backgroundExecutor")
+    ExecutorService provideBackgroundExecutor() {
+        return Executors.newFixedThreadPool(backgroundThreads);
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    @Qualifier("feedbackExecutor")
+    ExecutorService provideFeedbackExecutor() {
+        return Executors.newFixedThreadPool(feedbackThreads);
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    @Qualifier("reportRenderExecutor")
+    ExecutorService provideReportRenderExecutor() {
+        return Executors.newFixedThreadPool(reportRenderThreads);
+    }
+
+    /**
+     * Runs the per-location queries of a report, apart from the batch reads on request paths.
+     */
+    @Bean(destroyMethod = "shutdown")
+    @Qualifier("reportQueryExecutor")
+    ExecutorService provideReportQueryExecutor() {
+        return Executors.newFixedThreadPool(reportQueryThreads);
+    }
+
+    /**
+     * Runs report jobs. The queue is bounded, so a burst of requests is rejected instead
+     * of piling up.
+     */
+    @Bean(destroyMethod = "shutdown")
+    @Qualifier("reportJobExecutor")
+    ExecutorService provideReportJobExecutor() {
+        return new ThreadPoolExecutor(reportJobThreads, reportJobThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(reportJobQueueCapacity));
+    }
+
     @Bean
     @Qualifier("amazonSQSClient")
     AmazonSQS provideAmazonSQSClient(@Qualifier("credentialsProvider") AWSCredentialsProvider credentialsProvider) {
@@ -0,0 +1,90 @@
+package com.restaurantapp.benchmark;
+
+import com.restaurantapp.util.DateFormatter;
+import com.restaurantapp.util.TimeSlot;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares slot and date parsing as done per table item before {@link TimeSlot} existed
+ * (split plus a new {@code DateTimeFormatter.ofPattern} per call, formats tried via exceptions)
+ * with the interned {@link TimeSlot} and the cached {@link DateFormatter} codec.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.restaurantapp.benchmark.TimeSlotParsingBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimeSlotParsingBenchmark {
+
+    private static final String[] SLOTS = {
+            "10:30-12:00", "12:15-13:45", "14:00-15:30", "15:45-17:15", "17:30-19:00", "19:15-20:45", "21:00-22:30"
+    };
+    private static final String DATE = "14-06-2025";
+    private static final String ISO_DATE = "2025-06-14";
+
+    @Benchmark
+    public void legacySlotStarts(Blackhole blackhole) {
+        for (String slot : SLOTS) {
+            String[] times = slot.split("-");
+            LocalTime startTime = LocalTime.parse(times[0].trim(), DateTimeFormatter.ofPattern("HH:mm"));
+            LocalTime endTime = LocalTime.parse(times[1].trim(), DateTimeFormatter.ofPattern("HH:mm"));
+            LocalDate date = LocalDate.parse(DATE, DateTimeFormatter.ofPattern("dd-MM-yyyy"));
+            blackhole.consume(LocalDateTime.of(date, startTime));
+            blackhole.consume(LocalDateTime.of(date, endTime));
+        }
+    }
+
+    @Benchmark
+    public void timeSlotStarts(Blackhole blackhole) {
+        for (String slot : SLOTS) {
+            TimeSlot timeSlot = TimeSlot.of(slot);
+            LocalDate date = DateFormatter.parseDate(DATE);
+            blackhole.consume(timeSlot.startOn(date));
+            blackhole.consume(timeSlot.endOn(date));
+        }
+    }
+
+    @Benchmark
+    public LocalDate legacyIsoDateDetection() {
+        DateTimeFormatter[] formatters = {
+                DateTimeFormatter.ofPattern("dd-MM-yyyy"),
+                DateTimeFormatter.ofPattern("yyyy-MM-dd"),
+                DateTimeFormatter.ofPattern("dd-MM-yy"),
+                DateTimeFormatter.ofPattern("yy-MM-dd")
+        };
+        for (DateTimeFormatter formatter : formatters) {
+            try {
+                return LocalDate.parse(ISO_DATE, formatter);
+            } catch (DateTimeParseException e) {
+                // Ignore and try the next format
+            }
+        }
+        throw new DateTimeParseException("Date provided in unsupported format.", ISO_DATE, 0);
+    }
+
+    @Benchmark
+    public LocalDate codecIsoDateDetection() {
+        return DateFormatter.parseDate(ISO_DATE);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(TimeSlotParsingBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
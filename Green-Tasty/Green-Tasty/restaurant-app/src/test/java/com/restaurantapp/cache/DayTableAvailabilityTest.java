@@ -0,0 +1,83 @@
+package com.restaurantapp.cache;
+
+import com.restaurantapp.dto.Tables;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DayTableAvailabilityTest {
+
+    private static final String DATE = "2025-06-10";
+    private static final String MORNING = "10:30-12:00";
+    private static final String NOON = "12:15-13:45";
+    private static final String AFTERNOON = "14:00-15:30";
+
+    private final DayTableAvailability availability = DayTableAvailability.of("loc-1", DATE, List.of(
+            table("1#" + DATE, "4", Map.of(MORNING, true, NOON, false, AFTERNOON, true)),
+            table("2#" + DATE, "2", Map.of(MORNING, true, NOON, true))));
+
+    @Test
+    void findAvailable_withoutTimeSkipsSlotsThatHaveStarted() {
+        List<Tables> tables = availability.findAvailable(null, null, at("11:00"));
+
+        assertEquals(Map.of("1#" + DATE, Map.of(AFTERNOON, true), "2#" + DATE, Map.of(NOON, true)), slotsByTable(tables));
+    }
+
+    @Test
+    void findAvailable_appliesCapacity() {
+        List<Tables> tables = availability.findAvailable(null, "3", at("09:00"));
+
+        assertEquals(Map.of("1#" + DATE, Map.of(MORNING, true, AFTERNOON, true)), slotsByTable(tables));
+    }
+
+    @Test
+    void findAvailable_withTimeReturnsFreeSlotsStartingAtOrAfterIt() {
+        List<Tables> tables = availability.findAvailable("12:15", null, at("09:00"));
+
+        assertEquals(Map.of("1#" + DATE, Map.of(AFTERNOON, true), "2#" + DATE, Map.of(NOON, true)), slotsByTable(tables));
+    }
+
+    @Test
+    void findAvailable_withTimeInThePastFindsNothing() {
+        assertTrue(availability.findAvailable("10:00", null, at("11:00")).isEmpty());
+    }
+
+    @Test
+    void withSlot_returnsCopyWithOnlyThatSlotFlipped() {
+        DayTableAvailability updated = availability.withSlot("1#" + DATE, NOON, true);
+
+        assertEquals(Map.of(MORNING, true, NOON, true, AFTERNOON, true),
+                slotsByTable(updated.findAvailable(null, null, at("09:00"))).get("1#" + DATE));
+        assertEquals(Map.of(MORNING, true, AFTERNOON, true),
+                slotsByTable(availability.findAvailable(null, null, at("09:00"))).get("1#" + DATE));
+    }
+
+    @Test
+    void withSlot_unknownTableOrSlotNeedsReload() {
+        assertNull(availability.withSlot("3#" + DATE, NOON, false));
+        assertNull(availability.withSlot("1#" + DATE, "18:00-19:30", false));
+        // Table 2 has no afternoon slot although the day does
+        assertNull(availability.withSlot("2#" + DATE, AFTERNOON, false));
+    }
+
+    private static Tables table(String tableNumber, String capacity, Map<String, Boolean> slots) {
+        return new Tables(tableNumber, "loc-1", capacity, DATE, slots);
+    }
+
+    private static LocalDateTime at(String time) {
+        return LocalDateTime.parse(DATE + "T" + time);
+    }
+
+    private static Map<String, Map<String, Boolean>> slotsByTable(List<Tables> tables) {
+        Map<String, Map<String, Boolean>> slots = new LinkedHashMap<>();
+        for (Tables table : tables) slots.put(table.getTableNumber(), table.getAvailableSlots());
+        return slots;
+    }
+}
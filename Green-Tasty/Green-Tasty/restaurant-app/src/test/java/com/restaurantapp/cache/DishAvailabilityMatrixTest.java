@@ -0,0 +1,69 @@
+package com.restaurantapp.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DishAvailabilityMatrixTest {
+
+    private final DishAvailabilityMatrix matrix = DishAvailabilityMatrix.of(Map.of(
+            "loc-1", Map.of("dish-1", false, "dish-2", true),
+            "loc-2", Map.of("dish-1", true)));
+
+    @Test
+    void of_keepsOfferedAndOnStopPerLocation() {
+        assertTrue(matrix.isOffered("loc-1", "dish-1"));
+        assertFalse(matrix.isOnStop("loc-1", "dish-1"));
+        assertTrue(matrix.isOnStop("loc-1", "dish-2"));
+        assertTrue(matrix.isOnStop("loc-2", "dish-1"));
+        assertFalse(matrix.isOffered("loc-2", "dish-2"));
+        assertFalse(matrix.isOnStop("loc-2", "dish-2"));
+    }
+
+    @Test
+    void unknownLocationOrDishIsNeitherOfferedNorOnStop() {
+        assertFalse(matrix.hasLocation("loc-3"));
+        assertFalse(matrix.isOffered("loc-3", "dish-1"));
+        assertFalse(matrix.isOffered("loc-1", "dish-3"));
+        assertFalse(matrix.isOnStop("loc-1", "dish-3"));
+        assertEquals(List.of(), matrix.getDishIds("loc-3"));
+    }
+
+    @Test
+    void getDishIds_includesDishesOnStop() {
+        assertEquals(List.of("dish-1", "dish-2"), matrix.getDishIds("loc-1").stream().sorted().toList());
+        assertEquals(List.of("dish-1"), matrix.getDishIds("loc-2"));
+    }
+
+    @Test
+    void withOnStop_changesOnlyThatLocationInACopy() {
+        DishAvailabilityMatrix stopped = matrix.withOnStop("loc-1", "dish-1", true);
+
+        assertTrue(stopped.isOnStop("loc-1", "dish-1"));
+        assertTrue(stopped.isOnStop("loc-1", "dish-2"));
+        assertTrue(stopped.isOnStop("loc-2", "dish-1"));
+        assertFalse(matrix.isOnStop("loc-1", "dish-1"));
+    }
+
+    @Test
+    void withOnStop_unstopsDish() {
+        DishAvailabilityMatrix unstopped = matrix.withOnStop("loc-2", "dish-1", false);
+
+        assertFalse(unstopped.isOnStop("loc-2", "dish-1"));
+        assertTrue(unstopped.isOffered("loc-2", "dish-1"));
+        assertFalse(unstopped.isOnStop("loc-1", "dish-1"));
+        assertTrue(matrix.isOnStop("loc-2", "dish-1"));
+    }
+
+    @Test
+    void withOnStop_dishNotOfferedAtLocationIsIgnored() {
+        assertSame(matrix, matrix.withOnStop("loc-2", "dish-2", true));
+        assertSame(matrix, matrix.withOnStop("loc-3", "dish-1", true));
+    }
+}
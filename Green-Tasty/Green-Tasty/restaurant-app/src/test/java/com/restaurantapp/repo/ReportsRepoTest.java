@@ -0,0 +1,72 @@
+package com.restaurantapp.repo;
+
+import com.restaurantapp.util.ReportPeriod;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReportsRepoTest {
+
+    private final List<Map.Entry<ReportPeriod, LocalDate>> rollupPeriods = new ArrayList<>();
+    private final List<LocalDate[]> dailyRanges = new ArrayList<>();
+
+    @Test
+    void planRange_fullMonthUsesMonthRollup() {
+        ReportsRepo.planRange(date("2025-06-01"), date("2025-06-30"), true, rollupPeriods, dailyRanges);
+
+        assertEquals(List.of(Map.entry(ReportPeriod.MONTH, date("2025-06-01"))), rollupPeriods);
+        assertTrue(dailyRanges.isEmpty());
+    }
+
+    @Test
+    void planRange_partialWeeksAroundFullWeekAreReadDaily() {
+        // Wednesday to Wednesday, with the full week starting Monday 9 June in between
+        ReportsRepo.planRange(date("2025-06-04"), date("2025-06-18"), true, rollupPeriods, dailyRanges);
+
+        assertEquals(List.of(Map.entry(ReportPeriod.WEEK, date("2025-06-09"))), rollupPeriods);
+        assertEquals(2, dailyRanges.size());
+        assertArrayEquals(new LocalDate[]{date("2025-06-04"), date("2025-06-08")}, dailyRanges.get(0));
+        assertArrayEquals(new LocalDate[]{date("2025-06-16"), date("2025-06-18")}, dailyRanges.get(1));
+    }
+
+    @Test
+    void planRange_prefersMonthOverWeeksAndContinuesAfterIt() {
+        ReportsRepo.planRange(date("2025-05-28"), date("2025-07-13"), true, rollupPeriods, dailyRanges);
+
+        assertEquals(List.of(
+                Map.entry(ReportPeriod.MONTH, date("2025-06-01")),
+                Map.entry(ReportPeriod.WEEK, date("2025-07-07"))), rollupPeriods);
+        assertEquals(2, dailyRanges.size());
+        assertArrayEquals(new LocalDate[]{date("2025-05-28"), date("2025-05-31")}, dailyRanges.get(0));
+        assertArrayEquals(new LocalDate[]{date("2025-07-01"), date("2025-07-06")}, dailyRanges.get(1));
+    }
+
+    @Test
+    void planRange_withoutRollupsReadsWholeRangeDaily() {
+        ReportsRepo.planRange(date("2025-06-01"), date("2025-06-30"), false, rollupPeriods, dailyRanges);
+
+        assertTrue(rollupPeriods.isEmpty());
+        assertEquals(1, dailyRanges.size());
+        assertArrayEquals(new LocalDate[]{date("2025-06-01"), date("2025-06-30")}, dailyRanges.get(0));
+    }
+
+    @Test
+    void planRange_singleDay() {
+        ReportsRepo.planRange(date("2025-06-09"), date("2025-06-09"), true, rollupPeriods, dailyRanges);
+
+        assertTrue(rollupPeriods.isEmpty());
+        assertEquals(1, dailyRanges.size());
+        assertArrayEquals(new LocalDate[]{date("2025-06-09"), date("2025-06-09")}, dailyRanges.get(0));
+    }
+
+    private static LocalDate date(String isoDate) {
+        return LocalDate.parse(isoDate);
+    }
+}
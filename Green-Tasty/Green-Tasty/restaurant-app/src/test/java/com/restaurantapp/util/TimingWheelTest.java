@@ -0,0 +1,85 @@
+package com.restaurantapp.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimingWheelTest {
+
+    // Midnight UTC, so the wheel starts on an hour and a day boundary
+    private static final long MIDNIGHT = Instant.parse("2025-06-01T00:00:00Z").toEpochMilli();
+
+    @Test
+    void advance_firesTaskInItsMinuteOnly() {
+        TimingWheel<String> wheel = new TimingWheel<>(MIDNIGHT);
+        wheel.schedule(at(Duration.ofMinutes(5).plusSeconds(30)), "task");
+
+        assertTrue(wheel.advance(at(Duration.ofMinutes(4).plusSeconds(59))).isEmpty());
+        assertEquals(List.of("task"), wheel.advance(at(Duration.ofMinutes(5))));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void advance_cascadesFromHourWheelAtTheHourBoundary() {
+        TimingWheel<String> wheel = new TimingWheel<>(MIDNIGHT);
+        wheel.schedule(at(Duration.ofHours(2)), "on the hour");
+        wheel.schedule(at(Duration.ofHours(2).plusMinutes(30)), "half past");
+
+        assertTrue(wheel.advance(at(Duration.ofHours(2).minusMinutes(1))).isEmpty());
+        assertEquals(List.of("on the hour"), wheel.advance(at(Duration.ofHours(2))));
+        assertTrue(wheel.advance(at(Duration.ofHours(2).plusMinutes(29))).isEmpty());
+        assertEquals(List.of("half past"), wheel.advance(at(Duration.ofHours(2).plusMinutes(30))));
+    }
+
+    @Test
+    void advance_cascadesFromDayWheelThroughHourAndMinuteWheels() {
+        TimingWheel<String> wheel = new TimingWheel<>(MIDNIGHT);
+        Duration due = Duration.ofDays(3).plusHours(5).plusMinutes(15);
+        wheel.schedule(at(due), "in three days");
+
+        assertTrue(wheel.advance(at(Duration.ofDays(3))).isEmpty());
+        assertTrue(wheel.advance(at(due.minusMinutes(1))).isEmpty());
+        assertEquals(List.of("in three days"), wheel.advance(at(due)));
+    }
+
+    @Test
+    void advance_placesOverflowOnceItIsWithinTheDayWheel() {
+        TimingWheel<String> wheel = new TimingWheel<>(MIDNIGHT);
+        Duration due = Duration.ofDays(70).plusMinutes(1);
+        wheel.schedule(at(due), "far ahead");
+
+        assertTrue(wheel.advance(at(due.minusMinutes(1))).isEmpty());
+        assertEquals(List.of("far ahead"), wheel.advance(at(due)));
+    }
+
+    @Test
+    void advance_startedMidHourFiresAcrossTheBoundary() {
+        TimingWheel<String> wheel = new TimingWheel<>(MIDNIGHT + Duration.ofMinutes(37).toMillis());
+        wheel.schedule(at(Duration.ofHours(1).plusMinutes(5)), "minute wheel");
+        wheel.schedule(at(Duration.ofHours(2).plusMinutes(1)), "hour wheel");
+
+        assertEquals(List.of("minute wheel"), wheel.advance(at(Duration.ofHours(1).plusMinutes(5))));
+        assertTrue(wheel.advance(at(Duration.ofHours(2))).isEmpty());
+        assertEquals(List.of("hour wheel"), wheel.advance(at(Duration.ofHours(2).plusMinutes(1))));
+    }
+
+    @Test
+    void schedule_alreadyDueTaskIsReturnedByNextAdvance() {
+        TimingWheel<String> wheel = new TimingWheel<>(MIDNIGHT + Duration.ofMinutes(10).toMillis());
+        wheel.schedule(at(Duration.ofMinutes(3)), "overdue");
+        wheel.schedule(at(Duration.ofMinutes(10)), "now");
+
+        assertEquals(2, wheel.size());
+        assertEquals(List.of("overdue", "now"), wheel.advance(at(Duration.ofMinutes(10))));
+        assertEquals(0, wheel.size());
+    }
+
+    private static long at(Duration sinceMidnight) {
+        return MIDNIGHT + sinceMidnight.toMillis();
+    }
+}